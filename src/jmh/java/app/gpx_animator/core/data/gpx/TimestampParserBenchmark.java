@@ -0,0 +1,76 @@
+package app.gpx_animator.core.data.gpx;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares parsing the timestamps of a GPX file the way the content handler
+ * did before, collecting the characters in a {@link StringBuilder} and
+ * parsing them with {@link ZonedDateTime}, with the {@link TimestampParser}.
+ * The timestamps are those of a ride of about two hours with one point per
+ * second, like in the test file "bikeride.gpx".
+ *
+ * Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@SuppressWarnings({"HardCodedStringLiteral", "PMD.BeanMembersShouldSerialize"})
+public class TimestampParserBenchmark {
+
+    private static final int POINTS = 8_000;
+    private static final long START = Instant.parse("2019-10-22T14:36:00Z").toEpochMilli();
+
+    @Param({"Z", "+02:00"})
+    private String offset;
+
+    private char[][] timestamps;
+
+    @Setup
+    public void setUp() {
+        final var formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSXXX").withZone(ZoneOffset.of(offset));
+        timestamps = new char[POINTS][];
+        for (var i = 0; i < POINTS; i++) {
+            timestamps[i] = formatter.format(Instant.ofEpochMilli(START + i * 1_000L)).toCharArray();
+        }
+    }
+
+    @Benchmark
+    public long zonedDateTime() {
+        var sum = 0L;
+        for (final var timestamp : timestamps) {
+            final var sb = new StringBuilder();
+            sb.append(timestamp, 0, timestamp.length);
+            sum += ZonedDateTime.parse(sb.toString()).toInstant().toEpochMilli();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long timestampParser() {
+        var sum = 0L;
+        for (final var timestamp : timestamps) {
+            sum += TimestampParser.parse(timestamp, 0, timestamp.length);
+        }
+        return sum;
+    }
+
+}
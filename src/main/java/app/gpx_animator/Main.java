@@ -53,7 +53,7 @@ public final class Main {
         final var cf = new CommandLineConfigurationFactory(args);
         final var configuration = cf.getConfiguration().validate();
 
-        new Thread(TileCache::ageCache).start();
+        TileCache.startBackgroundSweep();
 
         if (cf.isGui() && !GraphicsEnvironment.isHeadless()) {
             EventQueue.invokeLater(() -> {
@@ -66,7 +66,7 @@ public final class Main {
                 }
             });
         } else {
-            new Renderer(configuration).render(new RenderingContext() {
+            final var renderingContext = new RenderingContext() {
                 @Override
                 public void setProgress1(final int pct, final String message) {
                     LOGGER.info("{}% {}", pct, message);
@@ -76,7 +76,12 @@ public final class Main {
                 public boolean isCancelled1() {
                     return false;
                 }
-            });
+            };
+            if (cf.getTileSeeder() != null) {
+                cf.getTileSeeder().seed(renderingContext);
+            } else {
+                new Renderer(configuration).render(renderingContext);
+            }
         }
     }
 
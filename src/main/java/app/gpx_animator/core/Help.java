@@ -18,6 +18,7 @@ import app.gpx_animator.core.configuration.Configuration;
 import app.gpx_animator.core.configuration.TrackConfiguration;
 import app.gpx_animator.core.configuration.adapter.FontXmlAdapter;
 import app.gpx_animator.core.preferences.Preferences;
+import app.gpx_animator.core.renderer.TileSeeder;
 
 import java.io.PrintWriter;
 
@@ -41,7 +42,9 @@ public final class Help {
         w.writeOptionHelp(Option.BACKGROUND_COLOR, "background-color", false, cfg.getBackgroundColor()); // NON-NLS
         w.writeOptionHelp(Option.BACKGROUND_IMAGE, "background-image", false, cfg.getBackgroundImage()); // NON-NLS
         w.writeOptionHelp(Option.BACKGROUND_MAP_VISIBILITY, "background-map-visibility", false, cfg.getBackgroundMapVisibility()); //NON-NLS
+        w.writeOptionHelp(Option.BUILD_TILE_PACK, "file", false, null); //NON-NLS
         w.writeOptionHelp(Option.COLOR, "color", true, resourceBundle.getString("help.option.color.default")); //NON-NLS
+        w.writeOptionHelp(Option.ENCODER_QUEUE_SIZE, "frames", false, cfg.getEncoderQueueSize()); //NON-NLS
         w.writeOptionHelp(Option.FLASHBACK_COLOR, "ARGBcolor", false, "opaque white - #ffffffff"); // TODO cfg.getFlashbackColor()  NON-NLS
         w.writeOptionHelp(Option.FLASHBACK_DURATION, "duration", false, cfg.getFlashbackDuration()); //NON-NLS
         w.writeOptionHelp(Option.FONT, "font", false, new FontXmlAdapter().marshal(cfg.getFont()));
@@ -53,12 +56,14 @@ public final class Help {
         w.writeOptionHelp(Option.INPUT, "input", true, tc.getInputGpx()); //NON-NLS
         w.writeOptionHelp(Option.INFORMATION_POSITION, "information-position", false, cfg.getInformationPosition());
         w.writeOptionHelp(Option.INFORMATION_MARGIN, "information-margin", false, cfg.getInformationMargin()); //NON-NLS
+        w.writeOptionHelp(Option.CANVAS_STORAGE, "storage", false, cfg.getCanvasStorage()); //NON-NLS
         w.writeOptionHelp(Option.COMMENT_POSITION, "comment-position", false, cfg.getCommentPosition());
         w.writeOptionHelp(Option.COMMENT_MARGIN, "comment-margin", false, cfg.getCommentMargin()); //NON-NLS
         w.writeOptionHelp(Option.TRACK_ICON, "trackIcon", true, tc.getTrackIcon()); //NON-NLS
         w.writeOptionHelp(Option.TRACK_ICON_FILE, "trackIconFile", true, tc.getInputIcon()); //NON-NLS
         w.writeOptionHelp(Option.TRACK_ICON_MIRROR, "mirrorTrackIcon", true, tc.isTrackIconMirrored()); //NON-NLS
         w.writeOptionHelp(Option.LABEL, "label", true, tc.getLabel()); //NON-NLS
+        w.writeOptionHelp(Option.LAZY_MAP_TILES, "lazy-map-tiles", false, cfg.isLazyMapTiles()); //NON-NLS
         w.writeOptionHelp(Option.LINE_WIDTH, "width", true, tc.getLineWidth()); //NON-NLS
         w.writeOptionHelp(Option.LOGO_POSITION, "logo-position", false, cfg.getLogoPosition()); //NON-NLS
         w.writeOptionHelp(Option.LOGO_MARGIN, "logo-margin", false, cfg.getLogoMargin()); //NON-NLS
@@ -68,11 +73,23 @@ public final class Help {
         w.writeOptionHelp(Option.MAX_LON, "longitude", false, cfg.getMaxLon()); //NON-NLS
         w.writeOptionHelp(Option.MIN_LAT, "latitude", false, cfg.getMinLat()); //NON-NLS
         w.writeOptionHelp(Option.MIN_LON, "longitude", false, cfg.getMinLon()); //NON-NLS
+        w.writeOptionHelp(Option.OFFLINE, "offline", false, cfg.isOffline()); //NON-NLS
+        w.writeOptionHelp(Option.OFFLINE_TILE_COLOR, "color", false, cfg.getOfflineTileColor()); //NON-NLS
         w.writeOptionHelp(Option.OUTPUT, "output", false, cfg.getOutput()); //NON-NLS
+        w.writeOptionHelp(Option.OUTPUT_THREADS, "threads", false, cfg.getOutputThreads()); //NON-NLS
         w.writeOptionHelp(Option.PHOTO_TIME, "milliseconds", false, cfg.getPhotoTime()); //NON-NLS
         w.writeOptionHelp(Option.PHOTO_DIR, "directory", false, cfg.getPhotoDirectory()); //NON-NLS
+        w.writeOptionHelp(Option.PNG_COMPRESSION_LEVEL, "level", false, cfg.getPngCompressionLevel()); //NON-NLS
         w.writeOptionHelp(Option.PRE_DRAW_TRACK, "predraw-track", false, cfg.isPreDrawTrack()); // NON-NLS
         w.writeOptionHelp(Option.PRE_DRAW_TRACK_COLOR, "predraw-track-color", true, tc.getPreDrawTrackColor()); // NON-NLS
+        w.writeOptionHelp(Option.RENDER_THREADS, "threads", false, cfg.getRenderThreads()); //NON-NLS
+        w.writeOptionHelp(Option.SEED_CORRIDOR, "meters", false, TileSeeder.DEFAULT_CORRIDOR); //NON-NLS
+        w.writeOptionHelp(Option.SEED_DRY_RUN, "seed-dry-run", false, null); //NON-NLS
+        w.writeOptionHelp(Option.SEED_TILE_PACK, "file", false, null); //NON-NLS
+        w.writeOptionHelp(Option.SEED_TILES, "seed-tiles", false, null); //NON-NLS
+        w.writeOptionHelp(Option.SEED_ZOOM_MAX, "zoom", false, null); //NON-NLS
+        w.writeOptionHelp(Option.SEED_ZOOM_MIN, "zoom", false, null); //NON-NLS
+        w.writeOptionHelp(Option.SIMPLIFY_TOLERANCE, "pixels", false, cfg.getSimplifyTolerance()); //NON-NLS
         w.writeOptionHelp(Option.SKIP_IDLE, "skip-idle", false, cfg.isSkipIdle());
         w.writeOptionHelp(Option.SPEEDUP, "speedup", false, cfg.getSpeedup()); //NON-NLS
         w.writeOptionHelp(Option.TAIL_DURATION, "time", false, cfg.getTailDuration()); //NON-NLS
@@ -65,7 +65,23 @@ public enum Option {
     TRACK_ICON("track-icon"),
     TRACK_ICON_FILE("track-icon-file"),
     TRACK_ICON_MIRROR("track-icon-mirror"),
-    SPEED_UNIT("speed-unit");
+    SPEED_UNIT("speed-unit"),
+    RENDER_THREADS("render-threads"),
+    ENCODER_QUEUE_SIZE("encoder-queue-size"),
+    OUTPUT_THREADS("output-threads"),
+    PNG_COMPRESSION_LEVEL("png-compression-level"),
+    BUILD_TILE_PACK("build-tile-pack"),
+    SEED_TILES("seed-tiles"),
+    SEED_ZOOM_MIN("seed-zoom-min"),
+    SEED_ZOOM_MAX("seed-zoom-max"),
+    SEED_CORRIDOR("seed-corridor"),
+    SEED_TILE_PACK("seed-tile-pack"),
+    SEED_DRY_RUN("seed-dry-run"),
+    OFFLINE("offline"),
+    OFFLINE_TILE_COLOR("offline-tile-color"),
+    LAZY_MAP_TILES("lazy-map-tiles"),
+    CANVAS_STORAGE("canvas-storage"),
+    SIMPLIFY_TOLERANCE("simplify-tolerance");
 
     private static final java.util.Map<String, Option> OPTION_MAP = new HashMap<>();
 
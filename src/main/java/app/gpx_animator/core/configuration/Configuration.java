@@ -22,6 +22,7 @@ import app.gpx_animator.core.configuration.adapter.FontXmlAdapter;
 import app.gpx_animator.core.data.Position;
 import app.gpx_animator.core.data.SpeedUnit;
 import app.gpx_animator.core.preferences.Preferences;
+import app.gpx_animator.core.renderer.canvas.CanvasStorage;
 
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
@@ -47,6 +48,11 @@ public final class Configuration {
     private static final String DEFAULT_TMS_URL_TEMPLATE = "https://{switch:a,b,c}.tile.openstreetmap.org/{zoom}/{x}/{y}.png";
     private static final int DEFAULT_MARGIN = 20;
     private static final int DEFAULT_VIEWPORT_INERTIA = 50;
+    private static final int DEFAULT_RENDER_THREADS = 1;
+    private static final int DEFAULT_ENCODER_QUEUE_SIZE = 8;
+    private static final int DEFAULT_OUTPUT_THREADS = 1;
+    private static final int DEFAULT_PNG_COMPRESSION_LEVEL = -1;
+    private static final double DEFAULT_SIMPLIFY_TOLERANCE = 0;
     public static final long DEFAULT_PHOTO_ANIMATION_DURATION = 700L;
 
     private final transient ResourceBundle resourceBundle = Preferences.getResourceBundle();
@@ -117,6 +123,25 @@ public final class Configuration {
 
     private SpeedUnit speedUnit;
 
+    private int renderThreads = DEFAULT_RENDER_THREADS;
+
+    private int encoderQueueSize = DEFAULT_ENCODER_QUEUE_SIZE;
+
+    private int outputThreads = DEFAULT_OUTPUT_THREADS;
+
+    private int pngCompressionLevel = DEFAULT_PNG_COMPRESSION_LEVEL;
+
+    private boolean offline;
+
+    @XmlJavaTypeAdapter(ColorXmlAdapter.class)
+    private Color offlineTileColor;
+
+    private boolean lazyMapTiles;
+
+    private CanvasStorage canvasStorage = CanvasStorage.HEAP;
+
+    private double simplifyTolerance = DEFAULT_SIMPLIFY_TOLERANCE;
+
     @XmlElementWrapper
     @XmlElement(name = "trackConfiguration") //NON-NLS
     private List<TrackConfiguration> trackConfigurationList;
@@ -143,6 +168,15 @@ public final class Configuration {
             final Position informationPosition, final int informationMargin,
             final Position commentPosition, final int commentMargin,
             final String photoDirectory, final Long photoTime, final Long photoAnimationDuration,
+            final int renderThreads,
+            final int encoderQueueSize,
+            final int outputThreads,
+            final int pngCompressionLevel,
+            final boolean offline,
+            final Color offlineTileColor,
+            final boolean lazyMapTiles,
+            final CanvasStorage canvasStorage,
+            final double simplifyTolerance,
             final List<TrackConfiguration> trackConfigurationList) {
 
         this.margin = margin;
@@ -189,6 +223,15 @@ public final class Configuration {
         this.photoTime = photoTime;
         this.photoAnimationDuration = photoAnimationDuration;
         this.speedUnit = speedUnit;
+        this.renderThreads = renderThreads;
+        this.encoderQueueSize = encoderQueueSize;
+        this.outputThreads = outputThreads;
+        this.pngCompressionLevel = pngCompressionLevel;
+        this.offline = offline;
+        this.offlineTileColor = offlineTileColor;
+        this.lazyMapTiles = lazyMapTiles;
+        this.canvasStorage = canvasStorage;
+        this.simplifyTolerance = simplifyTolerance;
     }
 
     public static Builder createBuilder() {
@@ -367,6 +410,104 @@ public final class Configuration {
         return photoAnimationDuration;
     }
 
+    /**
+     * The number of threads used to render the frames of the video. A value
+     * of <code>0</code> means to use one thread per available processor.
+     *
+     * @return the number of render threads
+     */
+    public int getRenderThreads() {
+        return renderThreads > 0 ? renderThreads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * The number of rendered frames which can wait for the encoder running in
+     * its own thread. A value of <code>0</code> encodes the frames in the
+     * rendering thread.
+     *
+     * @return the size of the encoder queue
+     */
+    public int getEncoderQueueSize() {
+        return encoderQueueSize;
+    }
+
+    /**
+     * The number of threads used to compress and write the frames when
+     * rendering an image sequence. A value of <code>0</code> means to use one
+     * thread per available processor.
+     *
+     * @return the number of output threads
+     */
+    public int getOutputThreads() {
+        return outputThreads > 0 ? outputThreads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * The deflate level (<code>0</code> to <code>9</code>) used for PNG image
+     * sequences. A value of <code>-1</code> keeps the default of the image
+     * encoder.
+     *
+     * @return the PNG compression level
+     */
+    public int getPngCompressionLevel() {
+        return pngCompressionLevel;
+    }
+
+    /**
+     * In offline mode, map tiles are taken from the tile cache and the tile
+     * packs only, without any network access. Missing tiles are replaced by
+     * placeholders.
+     *
+     * @return <code>true</code> to render without downloading map tiles
+     */
+    public boolean isOffline() {
+        return offline;
+    }
+
+    /**
+     * The color of the placeholders for missing map tiles in offline mode.
+     * Without a color, the missing tiles are replaced by the enlarged part of
+     * a cached tile of a lower zoom level, if there is one.
+     *
+     * @return the color of the placeholders or <code>null</code> to use tiles of lower zoom levels
+     */
+    public Color getOfflineTileColor() {
+        return offlineTileColor;
+    }
+
+    /**
+     * With lazy map tiles, a moving map loads only the tiles the viewport
+     * reaches, shortly before it reaches them, instead of loading the whole
+     * map before the first frame.
+     *
+     * @return <code>true</code> to load the map tiles along the viewport
+     */
+    public boolean isLazyMapTiles() {
+        return lazyMapTiles;
+    }
+
+    /**
+     * Where the pixels of the map are stored. Storing them outside of the
+     * Java heap keeps large maps away from the garbage collector.
+     *
+     * @return the storage of the map
+     */
+    public CanvasStorage getCanvasStorage() {
+        return canvasStorage;
+    }
+
+    /**
+     * The tolerance in pixels for drawing the tracks with fewer points. A
+     * point closer than this to the previous point drawn is left out of the
+     * drawn line, the marker still moves along all points. A value of
+     * <code>0</code> draws all points.
+     *
+     * @return the tolerance in pixels
+     */
+    public double getSimplifyTolerance() {
+        return simplifyTolerance;
+    }
+
     public List<TrackConfiguration> getTrackConfigurationList() {
         return trackConfigurationList;
     }
@@ -442,7 +583,16 @@ public final class Configuration {
         private Long photoTime = 3_000L;
         private Long photoAnimationDuration = DEFAULT_PHOTO_ANIMATION_DURATION;
         private SpeedUnit speedUnit = SpeedUnit.KMH;
+        private int renderThreads = DEFAULT_RENDER_THREADS;
 
+        private int encoderQueueSize = DEFAULT_ENCODER_QUEUE_SIZE;
+        private int outputThreads = DEFAULT_OUTPUT_THREADS;
+        private int pngCompressionLevel = DEFAULT_PNG_COMPRESSION_LEVEL;
+        private boolean offline;
+        private Color offlineTileColor;
+        private boolean lazyMapTiles;
+        private CanvasStorage canvasStorage = CanvasStorage.HEAP;
+        private double simplifyTolerance = DEFAULT_SIMPLIFY_TOLERANCE;
 
         public Configuration build() {
             return new Configuration(
@@ -460,6 +610,15 @@ public final class Configuration {
                     informationPosition, informationMargin,
                     commentPosition, commentMargin,
                     photoDirectory, photoTime, photoAnimationDuration,
+                    renderThreads,
+                    encoderQueueSize,
+                    outputThreads,
+                    pngCompressionLevel,
+                    offline,
+                    offlineTileColor,
+                    lazyMapTiles,
+                    canvasStorage,
+                    simplifyTolerance,
                     Collections.unmodifiableList(trackConfigurationList)
             );
         }
@@ -684,6 +843,73 @@ public final class Configuration {
             this.speedUnit = speedUnit;
             return this;
         }
+
+        public Builder renderThreads(final int renderThreads) {
+            this.renderThreads = renderThreads;
+            return this;
+        }
+
+        public Builder encoderQueueSize(final int encoderQueueSize) {
+            this.encoderQueueSize = encoderQueueSize;
+            return this;
+        }
+
+        public Builder outputThreads(final int outputThreads) {
+            this.outputThreads = outputThreads;
+            return this;
+        }
+
+        public Builder pngCompressionLevel(final int pngCompressionLevel) {
+            this.pngCompressionLevel = pngCompressionLevel;
+            return this;
+        }
+
+        public Builder offline(final boolean offline) {
+            this.offline = offline;
+            return this;
+        }
+
+        public Builder offlineTileColor(final Color offlineTileColor) {
+            this.offlineTileColor = offlineTileColor;
+            return this;
+        }
+
+        public Builder lazyMapTiles(final boolean lazyMapTiles) {
+            this.lazyMapTiles = lazyMapTiles;
+            return this;
+        }
+
+        public Builder canvasStorage(final CanvasStorage canvasStorage) {
+            this.canvasStorage = canvasStorage;
+            return this;
+        }
+
+        public Builder simplifyTolerance(final double simplifyTolerance) {
+            this.simplifyTolerance = simplifyTolerance;
+            return this;
+        }
+
+        /**
+         * Takes the settings which can't be changed in the GUI from another
+         * configuration, so they are kept when the configuration is edited.
+         * The numbers of threads are taken as configured, without replacing
+         * <code>0</code> by the number of processors.
+         *
+         * @param configuration the configuration to take the settings from
+         * @return this builder
+         */
+        public Builder renderSettings(final Configuration configuration) {
+            this.renderThreads = configuration.renderThreads;
+            this.encoderQueueSize = configuration.encoderQueueSize;
+            this.outputThreads = configuration.outputThreads;
+            this.pngCompressionLevel = configuration.pngCompressionLevel;
+            this.offline = configuration.offline;
+            this.offlineTileColor = configuration.offlineTileColor;
+            this.lazyMapTiles = configuration.lazyMapTiles;
+            this.canvasStorage = configuration.canvasStorage;
+            this.simplifyTolerance = configuration.simplifyTolerance;
+            return this;
+        }
     }
 
 }
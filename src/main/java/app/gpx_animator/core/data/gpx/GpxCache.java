@@ -0,0 +1,342 @@
+package app.gpx_animator.core.data.gpx;
+
+import app.gpx_animator.core.UserException;
+import app.gpx_animator.core.preferences.Preferences;
+import app.gpx_animator.core.util.CacheFiles;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.jetbrains.annotations.NonNls;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the points of parsed GPX files in a binary format, in the
+ * directory {@link Preferences#getGpxCacheDir()}, so a GPX file rendered
+ * again, e.g. with another style, is read with a memory mapped read
+ * instead of being parsed again.
+ *
+ * A parsed file is identified by its path, size, modification time and
+ * the hash of its content. The points are stored while the GPX file is
+ * parsed, one record per point in the order of the file, the comments and
+ * names as indices into a table of texts at the end of the file. Every
+ * track segment starts with the number of its points, so reading the
+ * cached file passes the points exactly like parsing the GPX file does,
+ * with the number of points known in advance. When the cache is larger than
+ * {@link Preferences#getGpxCacheMaxSize()}, the least recently used files
+ * are removed.
+ */
+public final class GpxCache {
+
+    @NonNls
+    private static final Logger LOGGER = LoggerFactory.getLogger(GpxCache.class);
+
+    private static final String FILE_EXTENSION = ".gpxac.trk"; //NON-NLS
+    private static final String TEMP_FILE_SUFFIX = ".tmp"; //NON-NLS
+    private static final int MAGIC = 0x47505854; // "GPXT"
+    private static final int VERSION = 2;
+    private static final int NO_TEXT = -1;
+    private static final int BUFFER_SIZE = 64 * 1_024;
+
+    private static final byte TAG_END = 0;
+    private static final byte TAG_START_SEGMENT = 1;
+    private static final byte TAG_END_SEGMENT = 2;
+    private static final byte TAG_TRACK_POINT = 3;
+    private static final byte TAG_WAYPOINT = 4;
+
+    private GpxCache() throws InstantiationException {
+        throw new InstantiationException("GpxCache is a utility class and can't be instantiated!");
+    }
+
+    /**
+     * Passes the points of a GPX file to the listener, reading them from the
+     * cache, or parsing the GPX file and adding its points to the cache.
+     *
+     * @param inputGpx the GPX file, maybe compressed with gzip
+     * @param listener the listener receiving the points
+     * @param cacheDir the directory of the cache, usually {@link Preferences#getGpxCacheDir()}
+     * @param maxSize  the maximum size of the cache in bytes, 0 to parse the GPX file without the cache
+     * @throws UserException if the file can't be read or is invalid, or the listener rejects a point
+     */
+    public static void parseGpx(@NonNull final File inputGpx, @NonNull final GpxPointListener listener, @NonNull final Path cacheDir,
+                                final long maxSize) throws UserException {
+        if (maxSize <= 0) {
+            GpxParser.parseGpx(inputGpx, listener);
+            return;
+        }
+
+        final Path file;
+        try {
+            file = cacheDir.resolve(createKey(inputGpx).concat(FILE_EXTENSION));
+        } catch (final IOException e) {
+            throw new UserException("error reading input file", e);
+        }
+        if (Files.isRegularFile(file) && read(file, listener)) {
+            CacheFiles.touch(file);
+            LOGGER.info("Read the points of {} from the cache", inputGpx);
+            return;
+        }
+
+        try (var writer = new CacheWriter(file, listener)) {
+            GpxParser.parseGpx(inputGpx, writer);
+            if (writer.finish()) {
+                CacheFiles.evictBySize(file, FILE_EXTENSION, maxSize);
+            }
+        } catch (final IOException e) {
+            LOGGER.warn("Can't remove old cached GPX files from {}", cacheDir, e);
+        }
+    }
+
+    //
+    // The key is the hash of the path, the size, the modification time and
+    // the hash of the content, so a file changed without changing its size
+    // and modification time is parsed again, too.
+    //
+    private static String createKey(@NonNull final File inputGpx) throws IOException {
+        final var path = inputGpx.toPath().toAbsolutePath();
+        try {
+            final var contentDigest = MessageDigest.getInstance("SHA-256");
+            final var buffer = new byte[BUFFER_SIZE];
+            try (InputStream in = Files.newInputStream(path)) {
+                for (var read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                    contentDigest.update(buffer, 0, read);
+                }
+            }
+            final var keyDigest = MessageDigest.getInstance("SHA-256");
+            keyDigest.update(path.toString().getBytes(StandardCharsets.UTF_8));
+            keyDigest.update(ByteBuffer.allocate(2 * Long.BYTES)
+                    .putLong(Files.size(path)).putLong(Files.getLastModifiedTime(path).toMillis()).flip());
+            keyDigest.update(contentDigest.digest());
+            return CacheFiles.toHex(keyDigest.digest());
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    //
+    // The cached file is checked completely before any point is passed to the
+    // listener, so a broken file can still be replaced by parsing the GPX file.
+    //
+    private static boolean read(@NonNull final Path file, @NonNull final GpxPointListener listener) throws UserException {
+        final ByteBuffer buffer;
+        final String[] texts;
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Unknown format of cached GPX file"); //NON-NLS
+            }
+            texts = readTexts(buffer);
+            replay(buffer.duplicate(), texts, new GpxSummary());
+        } catch (final IOException | RuntimeException e) {
+            LOGGER.warn("Can't read the cached points from {}", file, e);
+            return false;
+        }
+        replay(buffer, texts, listener);
+        return true;
+    }
+
+    // the texts are stored at the end of the file, followed by their position
+    private static String[] readTexts(@NonNull final ByteBuffer buffer) {
+        final var texts = buffer.duplicate().position((int) buffer.getLong(buffer.limit() - Long.BYTES));
+        final var textArray = new String[texts.getInt()];
+        for (var i = 0; i < textArray.length; i++) {
+            final var bytes = new byte[texts.getInt()];
+            texts.get(bytes);
+            textArray[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return textArray;
+    }
+
+    private static void replay(@NonNull final ByteBuffer buffer, @NonNull final String[] texts,
+                               @NonNull final GpxPointListener listener) throws UserException {
+        for (var tag = buffer.get(); tag != TAG_END; tag = buffer.get()) {
+            switch (tag) {
+                case TAG_START_SEGMENT -> listener.startTrackSegment(buffer.getInt());
+                case TAG_END_SEGMENT -> listener.endTrackSegment();
+                case TAG_TRACK_POINT -> listener.trackPoint(buffer.getDouble(), buffer.getDouble(), buffer.getLong(), readText(buffer, texts));
+                case TAG_WAYPOINT -> listener.waypoint(buffer.getDouble(), buffer.getDouble(), buffer.getLong(), readText(buffer, texts));
+                default -> throw new IndexOutOfBoundsException("Unknown record in cached GPX file: " + tag); //NON-NLS
+            }
+        }
+    }
+
+    private static String readText(@NonNull final ByteBuffer buffer, @NonNull final String[] texts) {
+        final var textIndex = buffer.getInt();
+        return textIndex == NO_TEXT ? null : texts[textIndex];
+    }
+
+    //
+    // Writes the points into a temporary file while passing them on to the
+    // listener. If the file can't be written, the points are still passed
+    // on, only the cache is left out. The number of points of a segment is
+    // written when the segment ends, so it is known on reading the file even
+    // if the GPX file was parsed only once.
+    //
+    @SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+    private static final class CacheWriter implements GpxPointListener, AutoCloseable {
+
+        private final Path file;
+        private final GpxPointListener listener;
+        private final Map<String, Integer> textIndices = new HashMap<>();
+        private final List<String> texts = new ArrayList<>();
+        private Path tempFile;
+        private FileChannel channel;
+        private DataOutputStream out;
+        private long pointCountPosition;
+        private int pointCount;
+
+        CacheWriter(@NonNull final Path file, @NonNull final GpxPointListener listener) {
+            this.file = file;
+            this.listener = listener;
+            try {
+                Files.createDirectories(file.getParent());
+                tempFile = Files.createTempFile(file.getParent(), file.getFileName().toString(), TEMP_FILE_SUFFIX);
+                channel = FileChannel.open(tempFile, StandardOpenOption.WRITE);
+                out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+            } catch (final IOException e) {
+                abort(e);
+            }
+        }
+
+        @Override
+        public void startTrackSegment(final int count) throws UserException {
+            if (out != null) {
+                try {
+                    out.writeByte(TAG_START_SEGMENT);
+                    out.flush();
+                    pointCountPosition = channel.position();
+                    out.writeInt(count);
+                    pointCount = 0;
+                } catch (final IOException e) {
+                    abort(e);
+                }
+            }
+            listener.startTrackSegment(count);
+        }
+
+        @Override
+        public void trackPoint(final double lat, final double lon, final long time, final String cmt) throws UserException {
+            writePoint(TAG_TRACK_POINT, lat, lon, time, cmt);
+            pointCount++;
+            listener.trackPoint(lat, lon, time, cmt);
+        }
+
+        @Override
+        public void endTrackSegment() throws UserException {
+            if (out != null) {
+                try {
+                    out.writeByte(TAG_END_SEGMENT);
+                    out.flush();
+                    channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(pointCount).flip(), pointCountPosition);
+                } catch (final IOException e) {
+                    abort(e);
+                }
+            }
+            listener.endTrackSegment();
+        }
+
+        @Override
+        public void waypoint(final double lat, final double lon, final long time, final String name) throws UserException {
+            writePoint(TAG_WAYPOINT, lat, lon, time, name);
+            listener.waypoint(lat, lon, time, name);
+        }
+
+        private void writePoint(final byte tag, final double lat, final double lon, final long time, final String text) {
+            if (out != null) {
+                try {
+                    out.writeByte(tag);
+                    out.writeDouble(lat);
+                    out.writeDouble(lon);
+                    out.writeLong(time);
+                    out.writeInt(text == null ? NO_TEXT : textIndices.computeIfAbsent(text, key -> {
+                        texts.add(key);
+                        return texts.size() - 1;
+                    }));
+                } catch (final IOException e) {
+                    abort(e);
+                }
+            }
+        }
+
+        /**
+         * Writes the texts and moves the complete file into the cache.
+         *
+         * @return {@code true} if the file was added to the cache
+         */
+        boolean finish() {
+            if (out == null) {
+                return false;
+            }
+            try {
+                out.writeByte(TAG_END);
+                out.flush();
+                final var textsPosition = channel.position();
+                out.writeInt(texts.size());
+                for (final var text : texts) {
+                    final var bytes = text.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+                out.writeLong(textsPosition);
+                out.flush();
+                if (channel.position() > Integer.MAX_VALUE) {
+                    throw new IOException("Too many points to be mapped into memory"); //NON-NLS
+                }
+                out.close();
+                out = null;
+                Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                tempFile = null;
+                return true;
+            } catch (final IOException e) {
+                abort(e);
+                return false;
+            }
+        }
+
+        private void abort(@NonNull final IOException e) {
+            LOGGER.warn("Can't cache the points in {}", file, e);
+            close();
+        }
+
+        @Override
+        @SuppressWarnings("PMD.NullAssignment") // Nothing is written anymore
+        public void close() {
+            try {
+                if (out != null) {
+                    out.close();
+                } else if (channel != null) {
+                    channel.close();
+                }
+                if (tempFile != null) {
+                    Files.deleteIfExists(tempFile);
+                }
+            } catch (final IOException e) {
+                LOGGER.warn("Can't remove temporary file {}", tempFile, e);
+            }
+            out = null;
+            channel = null;
+            tempFile = null;
+        }
+    }
+
+}
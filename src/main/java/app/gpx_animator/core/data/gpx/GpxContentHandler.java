@@ -14,17 +14,18 @@
  */
 package app.gpx_animator.core.data.gpx;
 
-import app.gpx_animator.core.data.LatLon;
-import app.gpx_animator.core.data.Waypoint;
+import app.gpx_animator.core.UserException;
+import edu.umd.cs.findbugs.annotations.NonNull;
 import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
-import java.time.ZonedDateTime;
-import java.util.ArrayList;
-import java.util.List;
-
-import static app.gpx_animator.core.util.Utils.isEqual;
+import java.util.Arrays;
 
+/**
+ * Reads the points of a GPX file and passes them to a
+ * {@link GpxPointListener}, without keeping them.
+ */
 @SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
 public final class GpxContentHandler extends DefaultHandler {
 
@@ -37,10 +38,13 @@ public final class GpxContentHandler extends DefaultHandler {
     private static final String ELEM_NAME = "name"; //NON-NLS
     private static final String ELEM_CMT = "cmt"; //NON-NLS
 
-    private final List<List<LatLon>> timePointListList = new ArrayList<>();
-    private final List<LatLon> waypointList = new ArrayList<>();
-    private List<LatLon> timePointList;
+    private final GpxPointListener listener;
+    private final int[] segmentSizes;
+    private int segmentIndex;
     private StringBuilder sb;
+    // the characters of a time element are collected in a reused buffer, to parse them without creating any objects
+    private char[] timeChars = new char[32];
+    private int timeLength = -1;
     private long time = Long.MIN_VALUE;
     private double lat;
     private double lon;
@@ -48,22 +52,55 @@ public final class GpxContentHandler extends DefaultHandler {
     private String cmt;
 
 
+    public GpxContentHandler(@NonNull final GpxPointListener listener) {
+        this(listener, null);
+    }
+
+
+    /**
+     * @param listener     the listener receiving the points
+     * @param segmentSizes the number of track points of each track segment, known from parsing the file before, or {@code null}
+     */
+    GpxContentHandler(@NonNull final GpxPointListener listener, final int[] segmentSizes) {
+        this.listener = listener;
+        this.segmentSizes = segmentSizes;
+    }
+
+
     @Override
-    public void startElement(final String uri, final String localName, final String qName, final Attributes attributes) {
-        if (isEqual(ELEM_TRKSEG, qName)) {
-            timePointList = new ArrayList<>();
-        } else if (isEqual(ELEM_TRKPT, qName) || isEqual(ELEM_WPT, qName)) {
-            lat = Double.parseDouble(attributes.getValue(ATTR_LAT));
-            lon = Double.parseDouble(attributes.getValue(ATTR_LON));
-        } else if (isEqual(ELEM_TIME, qName) || isEqual(ELEM_NAME, qName) || isEqual(ELEM_CMT, qName)) {
-            sb = new StringBuilder();
+    public void startElement(final String uri, final String localName, final String qName, final Attributes attributes)
+            throws SAXException {
+        // XML element names are case sensitive, so they are compared exactly, which is much faster than a collator
+        switch (qName) {
+            case ELEM_TRKSEG -> {
+                final var pointCount = segmentSizes != null && segmentIndex < segmentSizes.length ? segmentSizes[segmentIndex] : -1;
+                segmentIndex++;
+                try {
+                    listener.startTrackSegment(pointCount);
+                } catch (final UserException e) {
+                    throw new SAXException(e);
+                }
+            }
+            case ELEM_TRKPT, ELEM_WPT -> {
+                lat = Double.parseDouble(attributes.getValue(ATTR_LAT));
+                lon = Double.parseDouble(attributes.getValue(ATTR_LON));
+            }
+            case ELEM_TIME -> timeLength = 0;
+            case ELEM_NAME, ELEM_CMT -> sb = new StringBuilder();
+            default -> { }
         }
     }
 
 
     @Override
     public void characters(final char[] ch, final int start, final int length) {
-        if (sb != null) {
+        if (timeLength >= 0) {
+            if (timeLength + length > timeChars.length) {
+                timeChars = Arrays.copyOf(timeChars, Math.max(timeChars.length * 2, timeLength + length));
+            }
+            System.arraycopy(ch, start, timeChars, timeLength, length);
+            timeLength += length;
+        } else if (sb != null) {
             sb.append(ch, start, length);
         }
     }
@@ -71,37 +108,33 @@ public final class GpxContentHandler extends DefaultHandler {
 
     @Override
     @SuppressWarnings("PMD.NullAssignment") // XML parsing ending elements, it's okay here
-    public void endElement(final String uri, final String localName, final String qName) {
-        if (isEqual(ELEM_TRKSEG, qName)) {
-            timePointListList.add(timePointList);
-            timePointList = null;
-        } else if (isEqual(ELEM_TRKPT, qName)) {
-            timePointList.add(new LatLon(lat, lon, time, cmt));
-            time = Long.MIN_VALUE;
-            cmt = null;
-        } else if (isEqual(ELEM_WPT, qName)) {
-            waypointList.add(new Waypoint(lat, lon, time, name));
-        } else if (isEqual(ELEM_TIME, qName)) {
-            final var dateTime = ZonedDateTime.parse(sb.toString());
-            time = dateTime.toInstant().toEpochMilli();
-            sb = null;
-        } else if (isEqual(ELEM_NAME, qName)) {
-            name = sb.toString();
-            sb = null;
-        } else if (isEqual(ELEM_CMT, qName)) {
-            cmt = sb.toString();
-            sb = null;
+    public void endElement(final String uri, final String localName, final String qName) throws SAXException {
+        try {
+            switch (qName) {
+                case ELEM_TRKSEG -> listener.endTrackSegment();
+                case ELEM_TRKPT -> {
+                    listener.trackPoint(lat, lon, time, cmt);
+                    time = Long.MIN_VALUE;
+                    cmt = null;
+                }
+                case ELEM_WPT -> listener.waypoint(lat, lon, time, name);
+                case ELEM_TIME -> {
+                    time = TimestampParser.parse(timeChars, 0, timeLength);
+                    timeLength = -1;
+                }
+                case ELEM_NAME -> {
+                    name = sb.toString();
+                    sb = null;
+                }
+                case ELEM_CMT -> {
+                    cmt = sb.toString();
+                    sb = null;
+                }
+                default -> { }
+            }
+        } catch (final UserException e) {
+            throw new SAXException(e);
         }
     }
 
-
-    public List<List<LatLon>> getPointLists() {
-        return timePointListList;
-    }
-
-
-    public List<LatLon> getWaypointList() {
-        return waypointList;
-    }
-
 }
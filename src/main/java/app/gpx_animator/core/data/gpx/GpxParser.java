@@ -15,6 +15,9 @@
 package app.gpx_animator.core.data.gpx;
 
 import app.gpx_animator.core.UserException;
+import org.jetbrains.annotations.NonNls;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.xml.sax.SAXException;
 
 import javax.xml.parsers.ParserConfigurationException;
@@ -29,23 +32,52 @@ import java.util.zip.GZIPInputStream;
 
 public final class GpxParser {
 
+    @NonNls
+    private static final Logger LOGGER = LoggerFactory.getLogger(GpxParser.class);
+
+    // files of this size or larger are parsed twice, to know the number of points in advance
+    private static final long TWO_PASS_MIN_SIZE = 16 * 1_024 * 1_024;
+
+    // creating a parser is expensive, so every thread reuses its own parser
+    private static final ThreadLocal<SAXParser> SAX_PARSER = ThreadLocal.withInitial(GpxParser::createSaxParser);
+
     private GpxParser() throws InstantiationException {
         throw new InstantiationException("GpxParser is a utility class and can't be instantiated!");
     }
 
-    public static void parseGpx(final File inputGpx, final GpxContentHandler dh) throws UserException {
-        final SAXParser saxParser;
-        try {
-            saxParser = SAXParserFactory.newInstance().newSAXParser();
-        } catch (final ParserConfigurationException | SAXException e) {
-            throw new RuntimeException("can't create XML parser", e);
+    /**
+     * Parses a GPX file, passing the points to the listener. A large file is
+     * parsed twice: first only to count the points of each track segment,
+     * which needs hardly any memory, then to pass the points together with
+     * the number of points of their segment, so the listener can store them
+     * in storage of the final size right away. GPX files may be parsed on
+     * more than one thread at the same time.
+     *
+     * @param inputGpx the GPX file, maybe compressed with gzip
+     * @param listener the listener receiving the points
+     * @throws UserException if the file can't be read or is invalid, or the listener rejects a point
+     */
+    public static void parseGpx(final File inputGpx, final GpxPointListener listener) throws UserException {
+        if (inputGpx.length() >= TWO_PASS_MIN_SIZE) {
+            final var summary = new GpxSummary();
+            parse(inputGpx, new GpxContentHandler(summary));
+            LOGGER.info("GPX file {} contains {}", inputGpx, summary);
+            parse(inputGpx, new GpxContentHandler(listener, summary.getSegmentSizes()));
+        } else {
+            parse(inputGpx, new GpxContentHandler(listener));
         }
+    }
 
+    private static void parse(final File inputGpx, final GpxContentHandler dh) throws UserException {
+        final var saxParser = SAX_PARSER.get();
         try {
             try (InputStream is = new FileInputStream(inputGpx)) {
                 try (var dis = decompressStream(is)) {
                     saxParser.parse(dis, dh);
                 } catch (final SAXException e) {
+                    if (e.getException() instanceof UserException userException) {
+                        throw userException;
+                    }
                     throw new UserException("error parsing input GPX file", e);
                 } catch (final RuntimeException e) {
                     throw new RuntimeException("internal error when parsing GPX file", e);
@@ -53,6 +85,16 @@ public final class GpxParser {
             }
         } catch (final IOException e) {
             throw new UserException("error reading input file", e);
+        } finally {
+            saxParser.reset();
+        }
+    }
+
+    private static SAXParser createSaxParser() {
+        try {
+            return SAXParserFactory.newInstance().newSAXParser();
+        } catch (final ParserConfigurationException | SAXException e) {
+            throw new RuntimeException("can't create XML parser", e);
         }
     }
 
@@ -0,0 +1,46 @@
+package app.gpx_animator.core.data.gpx;
+
+import app.gpx_animator.core.UserException;
+
+/**
+ * Receives the points of a GPX file one after the other, in the order of
+ * the file, so the points can be stored in their final form without
+ * keeping any intermediate objects for the whole file.
+ */
+public interface GpxPointListener {
+
+    /**
+     * Starts a track segment. The track points following until
+     * {@link #endTrackSegment()} belong to this segment.
+     *
+     * @param pointCount the number of track points of the segment, or -1 if it is not known in advance
+     * @throws UserException error to be shown to the user
+     */
+    void startTrackSegment(int pointCount) throws UserException;
+
+    /**
+     * @param lat  the latitude
+     * @param lon  the longitude
+     * @param time the time in milliseconds since the epoch, or {@link Long#MIN_VALUE} if the point has no time
+     * @param cmt  the comment, may be {@code null}
+     * @throws UserException error to be shown to the user
+     */
+    void trackPoint(double lat, double lon, long time, String cmt) throws UserException;
+
+    /**
+     * Ends the current track segment.
+     *
+     * @throws UserException error to be shown to the user
+     */
+    void endTrackSegment() throws UserException;
+
+    /**
+     * @param lat  the latitude
+     * @param lon  the longitude
+     * @param time the time in milliseconds since the epoch, or {@link Long#MIN_VALUE} if the waypoint has no time
+     * @param name the name, may be {@code null}
+     * @throws UserException error to be shown to the user
+     */
+    void waypoint(double lat, double lon, long time, String name) throws UserException;
+
+}
@@ -0,0 +1,66 @@
+package app.gpx_animator.core.data.gpx;
+
+import java.util.Arrays;
+
+/**
+ * Counts the points of a GPX file and collects the area and the time range
+ * they cover, without keeping the points, so a large file can be read once
+ * with little memory before its points are stored.
+ */
+final class GpxSummary implements GpxPointListener {
+
+    private int[] segmentSizes = new int[8];
+    private int segmentCount;
+    private int pointCount;
+    private int waypointCount;
+    private long minTime = Long.MAX_VALUE;
+    private long maxTime = Long.MIN_VALUE;
+    private double minLat = Double.POSITIVE_INFINITY;
+    private double maxLat = Double.NEGATIVE_INFINITY;
+    private double minLon = Double.POSITIVE_INFINITY;
+    private double maxLon = Double.NEGATIVE_INFINITY;
+
+    @Override
+    public void startTrackSegment(final int pointCount) {
+        if (segmentCount == segmentSizes.length) {
+            segmentSizes = Arrays.copyOf(segmentSizes, segmentCount * 2);
+        }
+        segmentCount++;
+    }
+
+    @Override
+    public void trackPoint(final double lat, final double lon, final long time, final String cmt) {
+        segmentSizes[segmentCount - 1]++;
+        pointCount++;
+        if (time != Long.MIN_VALUE) {
+            minTime = Math.min(minTime, time);
+            maxTime = Math.max(maxTime, time);
+        }
+        minLat = Math.min(minLat, lat);
+        maxLat = Math.max(maxLat, lat);
+        minLon = Math.min(minLon, lon);
+        maxLon = Math.max(maxLon, lon);
+    }
+
+    @Override
+    public void endTrackSegment() { }
+
+    @Override
+    public void waypoint(final double lat, final double lon, final long time, final String name) {
+        waypointCount++;
+    }
+
+    /**
+     * @return the number of track points of each track segment, in the order of the file
+     */
+    int[] getSegmentSizes() {
+        return Arrays.copyOf(segmentSizes, segmentCount);
+    }
+
+    @Override
+    public String toString() {
+        return "%d points in %d segments, %d waypoints, latitude %f to %f, longitude %f to %f, time %d to %d".formatted( //NON-NLS
+                pointCount, segmentCount, waypointCount, minLat, maxLat, minLon, maxLon, minTime, maxTime);
+    }
+
+}
@@ -0,0 +1,152 @@
+package app.gpx_animator.core.data.gpx;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.time.ZonedDateTime;
+
+/**
+ * Parses the timestamps of GPX files into epoch milliseconds. The common
+ * RFC 3339 forms, like {@code 2019-10-22T14:36:00.000Z} or
+ * {@code 2019-10-22T16:36:00+02:00}, are read straight from the characters
+ * without creating any objects. Everything else is parsed by
+ * {@link ZonedDateTime#parse(CharSequence)}, which also reports invalid
+ * timestamps.
+ */
+public final class TimestampParser {
+
+    private static final int DATE_TIME_LENGTH = 19; // 2019-10-22T14:36:00
+    private static final int DAYS_0000_TO_1970 = 719_528;
+    private static final int SECONDS_PER_DAY = 86_400;
+    private static final int MAX_OFFSET_HOURS = 18;
+    private static final int MILLIS_DIGITS = 3;
+
+    private TimestampParser() throws InstantiationException {
+        throw new InstantiationException("TimestampParser is a utility class and can't be instantiated!");
+    }
+
+    public static long parse(@NonNull final String timestamp) {
+        return parse(timestamp.toCharArray(), 0, timestamp.length());
+    }
+
+    /**
+     * Parses a timestamp, ignoring leading and trailing whitespace.
+     *
+     * @param chars  the characters containing the timestamp
+     * @param start  the index of the first character
+     * @param length the number of characters
+     * @return the timestamp in milliseconds since the epoch
+     * @throws java.time.format.DateTimeParseException if the timestamp is invalid
+     */
+    public static long parse(@NonNull final char[] chars, final int start, final int length) {
+        var from = start;
+        var to = start + length;
+        while (from < to && Character.isWhitespace(chars[from])) {
+            from++;
+        }
+        while (to > from && Character.isWhitespace(chars[to - 1])) {
+            to--;
+        }
+
+        final var time = parseRfc3339(chars, from, to);
+        return time != Long.MIN_VALUE ? time
+                : ZonedDateTime.parse(new String(chars, from, to - from)).toInstant().toEpochMilli();
+    }
+
+    //
+    // Returns Long.MIN_VALUE if the timestamp is not in one of the common
+    // forms or out of range, then it is left to ZonedDateTime.
+    //
+    private static long parseRfc3339(@NonNull final char[] chars, final int from, final int to) {
+        if (to - from < DATE_TIME_LENGTH + 1
+                || chars[from + 4] != '-' || chars[from + 7] != '-' || (chars[from + 10] | 0x20) != 't'
+                || chars[from + 13] != ':' || chars[from + 16] != ':') {
+            return Long.MIN_VALUE;
+        }
+        final var year = digits(chars, from, 4);
+        final var month = digits(chars, from + 5, 2);
+        final var day = digits(chars, from + 8, 2);
+        final var hour = digits(chars, from + 11, 2);
+        final var minute = digits(chars, from + 14, 2);
+        final var second = digits(chars, from + 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return Long.MIN_VALUE;
+        }
+
+        var index = from + DATE_TIME_LENGTH;
+        var millis = 0;
+        if (chars[index] == '.') {
+            final var fractionStart = ++index;
+            while (index < to && isDigit(chars[index])) {
+                if (index - fractionStart < MILLIS_DIGITS) {
+                    millis = millis * 10 + chars[index] - '0';
+                }
+                index++;
+            }
+            final var fractionDigits = index - fractionStart;
+            if (fractionDigits == 0 || fractionDigits > 9) {
+                return Long.MIN_VALUE;
+            }
+            for (var digit = fractionDigits; digit < MILLIS_DIGITS; digit++) {
+                millis *= 10;
+            }
+        }
+
+        final int offsetSeconds;
+        if (index == to - 1 && (chars[index] | 0x20) == 'z') {
+            offsetSeconds = 0;
+        } else if (index == to - 6 && (chars[index] == '+' || chars[index] == '-') && chars[index + 3] == ':') {
+            final var offsetHours = digits(chars, index + 1, 2);
+            final var offsetMinutes = digits(chars, index + 4, 2);
+            if (offsetHours < 0 || offsetMinutes < 0 || offsetMinutes > 59
+                    || offsetHours > MAX_OFFSET_HOURS || offsetHours == MAX_OFFSET_HOURS && offsetMinutes > 0) {
+                return Long.MIN_VALUE;
+            }
+            offsetSeconds = (chars[index] == '-' ? -1 : 1) * (offsetHours * 3_600 + offsetMinutes * 60);
+        } else {
+            return Long.MIN_VALUE;
+        }
+
+        final var seconds = toEpochDay(year, month, day) * SECONDS_PER_DAY + hour * 3_600 + minute * 60 + second - offsetSeconds;
+        return seconds * 1_000 + millis;
+    }
+
+    // the number of the day like LocalDate.toEpochDay(), for years from 0 on
+    private static long toEpochDay(final int year, final int month, final int day) {
+        var days = 365L * year + (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+        days += (367 * month - 362) / 12 + day - 1;
+        if (month > 2) {
+            days -= isLeapYear(year) ? 1 : 2;
+        }
+        return days - DAYS_0000_TO_1970;
+    }
+
+    private static int lengthOfMonth(final int year, final int month) {
+        return switch (month) {
+            case 2 -> isLeapYear(year) ? 29 : 28;
+            case 4, 6, 9, 11 -> 30;
+            default -> 31;
+        };
+    }
+
+    private static boolean isLeapYear(final int year) {
+        return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    // the value of the digits, or -1 if any of the characters is not a digit
+    private static int digits(@NonNull final char[] chars, final int from, final int count) {
+        var value = 0;
+        for (var index = from; index < from + count; index++) {
+            if (!isDigit(chars[index])) {
+                return -1;
+            }
+            value = value * 10 + chars[index] - '0';
+        }
+        return value;
+    }
+
+    private static boolean isDigit(final char c) {
+        return c >= '0' && c <= '9';
+    }
+
+}
@@ -0,0 +1,338 @@
+package app.gpx_animator.core.data.gpx;
+
+import app.gpx_animator.core.data.LatLon;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * A compact, column oriented store for the points of one track segment.
+ * The points are sorted by time; points with identical timestamps keep the
+ * order in which they were added. All lookups by time use a binary search.
+ *
+ * The text of a point is the comment of a track point or the name of a
+ * waypoint. The texts are deduplicated, because usually many points share
+ * the same comment.
+ */
+public final class TrackSegment {
+
+    private static final int NO_TEXT = -1;
+
+    private final long[] times;
+    private final double[] xs;
+    private final double[] ys;
+    private final double[] lats;
+    private final double[] lons;
+    private final int[] textIndices;
+    private final String[] texts;
+
+    private TrackSegment(final long[] times, final double[] xs, final double[] ys, final double[] lats, final double[] lons,
+                         final int[] textIndices, final String[] texts) {
+        this.times = times;
+        this.xs = xs;
+        this.ys = ys;
+        this.lats = lats;
+        this.lons = lons;
+        this.textIndices = textIndices;
+        this.texts = texts;
+    }
+
+    public static Builder createBuilder() {
+        return new Builder();
+    }
+
+    public int size() {
+        return times.length;
+    }
+
+    public boolean isEmpty() {
+        return times.length == 0;
+    }
+
+    public long getTime(final int index) {
+        return times[index];
+    }
+
+    public double getX(final int index) {
+        return xs[index];
+    }
+
+    public double getY(final int index) {
+        return ys[index];
+    }
+
+    public double getLat(final int index) {
+        return lats[index];
+    }
+
+    public double getLon(final int index) {
+        return lons[index];
+    }
+
+    public String getText(final int index) {
+        final var textIndex = textIndices[index];
+        return textIndex == NO_TEXT ? null : texts[textIndex];
+    }
+
+    public long getFirstTime() {
+        return times[0];
+    }
+
+    public long getLastTime() {
+        return times[times.length - 1];
+    }
+
+    /**
+     * Creates a point object for the track point with the specified index,
+     * e.g. to be used as the marker passed to the rendering plugins.
+     *
+     * @param index the index of the track point
+     * @return a new point object
+     */
+    public GpxPoint getPoint(final int index) {
+        return new GpxPoint(xs[index], ys[index], new LatLon(lats[index], lons[index], times[index], getText(index)), times[index]);
+    }
+
+    /**
+     * @param time the time to search for
+     * @return the index of the last point at or before the time, or -1 if there is none
+     */
+    public int floorIndex(final long time) {
+        return upperBound(time) - 1;
+    }
+
+    /**
+     * @param time the time to search for
+     * @return the index of the first point at or after the time, or -1 if there is none
+     */
+    public int ceilingIndex(final long time) {
+        final var index = lowerBound(time);
+        return index < times.length ? index : -1;
+    }
+
+    /**
+     * @param time the time to search for
+     * @return the index of the last point before the time, or -1 if there is none
+     */
+    public int lowerIndex(final long time) {
+        return lowerBound(time) - 1;
+    }
+
+    /**
+     * Returns a new segment containing only the points within the time range.
+     *
+     * @param fromTime the first time to keep (inclusive)
+     * @param toTime   the last time to keep (inclusive)
+     * @return the trimmed segment
+     */
+    public TrackSegment trim(final long fromTime, final long toTime) {
+        final var from = lowerBound(fromTime);
+        final var to = Math.max(from, upperBound(toTime));
+        if (from == 0 && to == times.length) {
+            return this;
+        }
+        return new TrackSegment(Arrays.copyOfRange(times, from, to), Arrays.copyOfRange(xs, from, to), Arrays.copyOfRange(ys, from, to),
+                Arrays.copyOfRange(lats, from, to), Arrays.copyOfRange(lons, from, to), Arrays.copyOfRange(textIndices, from, to), texts);
+    }
+
+    /**
+     * Translates the projected coordinates of all points into the pixel
+     * coordinates of the rendered map.
+     *
+     * @param minX  the projected x coordinate of the left border
+     * @param maxY  the projected y coordinate of the top border
+     * @param scale the scale factor from projected to pixel coordinates
+     */
+    public void translate(final double minX, final double maxY, final double scale) {
+        for (var i = 0; i < times.length; i++) {
+            xs[i] = (xs[i] - minX) * scale;
+            ys[i] = (maxY - ys[i]) * scale;
+        }
+    }
+
+    /**
+     * Returns a segment for drawing with fewer points: a point closer than
+     * the tolerance to the previous point kept is left out, the first and
+     * the last point are always kept. As the kept points are a subsequence,
+     * their times stay in order, and the line drawn up to any time never
+     * ends more than the tolerance away from the point of that time.
+     *
+     * @param tolerance the distance in the coordinates of the points, usually pixels
+     * @return the simplified segment, or this segment if no point is left out
+     */
+    public TrackSegment simplify(final double tolerance) {
+        if (tolerance <= 0 || times.length <= 2) {
+            return this;
+        }
+        final var squaredTolerance = tolerance * tolerance;
+        final var kept = new int[times.length];
+        var size = 0;
+        kept[size++] = 0;
+        for (var i = 1; i < times.length - 1; i++) {
+            final var dx = xs[i] - xs[kept[size - 1]];
+            final var dy = ys[i] - ys[kept[size - 1]];
+            if (dx * dx + dy * dy >= squaredTolerance) {
+                kept[size++] = i;
+            }
+        }
+        kept[size++] = times.length - 1;
+        if (size == times.length) {
+            return this;
+        }
+
+        final var order = Arrays.copyOf(kept, size);
+        return new TrackSegment(Builder.permute(times, order), Builder.permute(xs, order), Builder.permute(ys, order),
+                Builder.permute(lats, order), Builder.permute(lons, order), Builder.permute(textIndices, order), texts);
+    }
+
+    // index of the first point with a time greater than or equal to the specified time
+    private int lowerBound(final long time) {
+        var low = 0;
+        var high = times.length;
+        while (low < high) {
+            final var mid = (low + high) >>> 1;
+            if (times[mid] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // index of the first point with a time greater than the specified time
+    private int upperBound(final long time) {
+        var low = 0;
+        var high = times.length;
+        while (low < high) {
+            final var mid = (low + high) >>> 1;
+            if (times[mid] <= time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    @SuppressWarnings({"PMD.AvoidFieldNameMatchingMethodName", "UnusedReturnValue"}) // This is okay for the builder pattern
+    public static final class Builder {
+
+        private static final int INITIAL_CAPACITY = 256;
+
+        private long[] times = new long[INITIAL_CAPACITY];
+        private double[] xs = new double[INITIAL_CAPACITY];
+        private double[] ys = new double[INITIAL_CAPACITY];
+        private double[] lats = new double[INITIAL_CAPACITY];
+        private double[] lons = new double[INITIAL_CAPACITY];
+        private int[] textIndices = new int[INITIAL_CAPACITY];
+        private final List<String> texts = new ArrayList<>();
+        private final Map<String, Integer> textIndexMap = new HashMap<>();
+        private int size;
+        private boolean sorted = true;
+
+        private Builder() { }
+
+        /**
+         * Pre-sizes the builder, if the number of points is known in advance.
+         *
+         * @param capacity the expected number of points
+         * @return this builder
+         */
+        public Builder capacity(final int capacity) {
+            ensureCapacity(capacity);
+            return this;
+        }
+
+        public Builder add(final long time, final double x, final double y, final double lat, final double lon, final String text) {
+            ensureCapacity(size + 1);
+            if (size > 0 && times[size - 1] > time) {
+                sorted = false;
+            }
+            times[size] = time;
+            xs[size] = x;
+            ys[size] = y;
+            lats[size] = lat;
+            lons[size] = lon;
+            textIndices[size] = text == null ? NO_TEXT : textIndexMap.computeIfAbsent(text, key -> {
+                texts.add(key);
+                return texts.size() - 1;
+            });
+            size++;
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Builds the segment. If the builder was sized exactly, the segment
+         * takes over its storage without copying it, so a builder builds only
+         * one segment.
+         *
+         * @return the segment containing the points sorted by time
+         */
+        public TrackSegment build() {
+            final var textArray = texts.toArray(new String[0]);
+            if (sorted && size == times.length) {
+                return new TrackSegment(times, xs, ys, lats, lons, textIndices, textArray);
+            }
+            if (sorted) {
+                return new TrackSegment(Arrays.copyOf(times, size), Arrays.copyOf(xs, size), Arrays.copyOf(ys, size),
+                        Arrays.copyOf(lats, size), Arrays.copyOf(lons, size), Arrays.copyOf(textIndices, size), textArray);
+            }
+
+            // stable sort by time, points with the same time keep their order
+            final var order = IntStream.range(0, size).boxed()
+                    .sorted(Comparator.comparingLong(i -> times[i]))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            return new TrackSegment(permute(times, order), permute(xs, order), permute(ys, order),
+                    permute(lats, order), permute(lons, order), permute(textIndices, order), textArray);
+        }
+
+        private void ensureCapacity(final int capacity) {
+            if (capacity > times.length) {
+                final var newCapacity = Math.max(capacity, times.length * 2);
+                times = Arrays.copyOf(times, newCapacity);
+                xs = Arrays.copyOf(xs, newCapacity);
+                ys = Arrays.copyOf(ys, newCapacity);
+                lats = Arrays.copyOf(lats, newCapacity);
+                lons = Arrays.copyOf(lons, newCapacity);
+                textIndices = Arrays.copyOf(textIndices, newCapacity);
+            }
+        }
+
+        private static long[] permute(@NonNull final long[] values, @NonNull final int[] order) {
+            final var result = new long[order.length];
+            for (var i = 0; i < order.length; i++) {
+                result[i] = values[order[i]];
+            }
+            return result;
+        }
+
+        private static double[] permute(@NonNull final double[] values, @NonNull final int[] order) {
+            final var result = new double[order.length];
+            for (var i = 0; i < order.length; i++) {
+                result[i] = values[order[i]];
+            }
+            return result;
+        }
+
+        private static int[] permute(@NonNull final int[] values, @NonNull final int[] order) {
+            final var result = new int[order.length];
+            for (var i = 0; i < order.length; i++) {
+                result[i] = values[order[i]];
+            }
+            return result;
+        }
+    }
+
+}
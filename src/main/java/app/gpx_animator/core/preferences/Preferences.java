@@ -23,6 +23,8 @@ public final class Preferences {
     private static final String RECENT_FILES = "recent_files"; //NON-NLS
     private static final String TILE_CACHE_DIR = "tile_cache_dir"; //NON-NLS
     private static final String TILE_CACHE_TIME_LIMIT = "tile_cache_time_limit"; //NON-NLS
+    private static final String TILE_CACHE_MAX_SIZE = "tile_cache_max_size"; //NON-NLS
+    private static final String GPX_CACHE_MAX_SIZE = "gpx_cache_max_size"; //NON-NLS
     private static final String TRACK_COLOR_RANDOM = "track_color_random"; //NON-NLS
     private static final String TRACK_COLOR_DEFAULT = "track_color_default"; //NON-NLS
 
@@ -94,6 +96,36 @@ public final class Preferences {
         PREFS.putLong(TILE_CACHE_TIME_LIMIT, tileCacheTimeLimit);
     }
 
+    /**
+     * @return the maximum size of the tile cache in MiB, 0 if no tiles are stored
+     */
+    public static long getTileCacheMaxSize() {
+        return PREFS.getLong(TILE_CACHE_MAX_SIZE,
+                1_024); // 1 GiB
+    }
+
+    public static void setTileCacheMaxSize(final long tileCacheMaxSize) {
+        PREFS.putLong(TILE_CACHE_MAX_SIZE, tileCacheMaxSize);
+    }
+
+    public static String getGpxCacheDir() {
+        return getConfigurationDir()
+                .concat(FILE_SEPARATOR).concat("caches") //NON-NLS
+                .concat(FILE_SEPARATOR).concat("gpx"); //NON-NLS
+    }
+
+    /**
+     * @return the maximum size of the cache of parsed GPX files in MiB, 0 if they are not cached
+     */
+    public static long getGpxCacheMaxSize() {
+        return PREFS.getLong(GPX_CACHE_MAX_SIZE,
+                256); // 256 MiB
+    }
+
+    public static void setGpxCacheMaxSize(final long gpxCacheMaxSize) {
+        PREFS.putLong(GPX_CACHE_MAX_SIZE, gpxCacheMaxSize);
+    }
+
     public static boolean getTrackColorRandom() {
         return PREFS.getBoolean(TRACK_COLOR_RANDOM, true);
     }
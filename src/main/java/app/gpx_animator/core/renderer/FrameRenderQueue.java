@@ -0,0 +1,195 @@
+package app.gpx_animator.core.renderer;
+
+import app.gpx_animator.core.UserException;
+import app.gpx_animator.core.renderer.framewriter.FrameWriter;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders frames on a pool of worker threads and writes the results to the
+ * frame writer in exactly the order the frames were submitted. Every job
+ * hands its frames over through its own small bounded queue, which is
+ * drained into the real frame writer as soon as all previous jobs are
+ * written. A job rendering more frames than its queue holds (e.g. a photo
+ * shown for some seconds) blocks until it is the next one to be written,
+ * so the number of frames in memory is limited by the number of jobs in
+ * flight, independent of the number of frames per job.
+ *
+ * With only one thread, the jobs are executed immediately on the calling
+ * thread and write directly to the frame writer.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+final class FrameRenderQueue {
+
+    /**
+     * The number of frames a job can render before it has to wait for the
+     * previous jobs to be written.
+     */
+    static final int FRAMES_PER_JOB = 2;
+
+    private static final BufferedImage END_OF_FRAMES = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+
+    /**
+     * A job rendering one frame (and maybe additional frames, e.g. from
+     * plugins) to the frame writer passed as argument.
+     */
+    @FunctionalInterface
+    interface FrameJob {
+        void render(@NonNull FrameWriter frameWriter) throws UserException;
+    }
+
+    private final FrameWriter frameWriter;
+    private final ExecutorService executor;
+    private final int maxJobsInFlight;
+    private final Deque<JobInFlight> jobsInFlight = new ArrayDeque<>();
+
+    FrameRenderQueue(final int threads, @NonNull final FrameWriter frameWriter) {
+        this.frameWriter = frameWriter;
+        if (threads > 1) {
+            final var threadCounter = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+                final var thread = new Thread(runnable, "frame-renderer-" + threadCounter.incrementAndGet()); //NON-NLS
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.maxJobsInFlight = threads * 2;
+        } else {
+            this.executor = null;
+            this.maxJobsInFlight = 0;
+        }
+    }
+
+    void submit(@NonNull final FrameJob job) throws UserException {
+        if (executor == null) {
+            job.render(frameWriter);
+            return;
+        }
+
+        while (jobsInFlight.size() >= maxJobsInFlight) {
+            writeNext();
+        }
+        final var frames = new FrameQueue();
+        jobsInFlight.add(new JobInFlight(executor.submit(() -> {
+            try {
+                job.render(frames);
+            } finally {
+                frames.close();
+            }
+            return null;
+        }), frames));
+    }
+
+    /**
+     * Waits for all submitted frames and writes them to the frame writer.
+     *
+     * @throws UserException if rendering or writing of a frame failed
+     */
+    void finish() throws UserException {
+        try {
+            while (!jobsInFlight.isEmpty()) {
+                writeNext();
+            }
+        } finally {
+            shutdown();
+        }
+    }
+
+    /**
+     * Discards all frames in flight and stops the worker threads. Calling
+     * this method after {@link #finish()} does no harm.
+     */
+    void cancel() {
+        jobsInFlight.forEach(job -> job.future().cancel(true));
+        jobsInFlight.clear();
+        shutdown();
+    }
+
+    private void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    //
+    // The frames of the oldest job are written while it is still rendering,
+    // until it marks the end of its frames. Afterwards an error of the job is
+    // thrown, so the frames are written up to the first error, as they would
+    // be by a single thread.
+    //
+    private void writeNext() throws UserException {
+        final var job = jobsInFlight.removeFirst();
+        try {
+            var frame = job.frames().take();
+            while (frame != END_OF_FRAMES) { // NOPMD -- compare the instance on purpose
+                frameWriter.addFrame(frame);
+                frame = job.frames().take();
+            }
+            job.future().get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel();
+            throw new UserException(e.getMessage(), e);
+        } catch (final ExecutionException e) {
+            cancel();
+            final var cause = e.getCause();
+            if (cause instanceof UserException userException) {
+                throw userException;
+            } else if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            } else if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new UserException(cause.getMessage(), cause);
+        } catch (final UserException | RuntimeException e) {
+            cancel();
+            throw e;
+        }
+    }
+
+    private record JobInFlight(@NonNull Future<Void> future, @NonNull FrameQueue frames) { }
+
+    //
+    // The frame writer of a job: adding a frame blocks while the queue is
+    // full, until the frames of the job are written.
+    //
+    private static final class FrameQueue implements FrameWriter {
+
+        // one more frame fits into the queue for the end of the frames
+        private final BlockingQueue<BufferedImage> queue = new ArrayBlockingQueue<>(FRAMES_PER_JOB + 1);
+
+        @Override
+        public void addFrame(@NonNull final BufferedImage bi) throws UserException {
+            try {
+                queue.put(bi);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UserException("interrupted while waiting for the previous frames", e);
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                queue.put(END_OF_FRAMES);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt(); // the rendering was cancelled, nobody waits for the end
+            }
+        }
+
+        BufferedImage take() throws InterruptedException {
+            return queue.take();
+        }
+
+    }
+
+}
@@ -3,6 +3,8 @@ package app.gpx_animator.core.renderer;
 import app.gpx_animator.core.data.Position;
 import edu.umd.cs.findbugs.annotations.NonNull;
 
+import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 
 import static app.gpx_animator.core.util.RenderUtil.getGraphics;
@@ -27,7 +29,6 @@ public abstract class ImageRenderer {
         final var imageHeight = image.getHeight();
         final var targetImageWidth = targetImage.getWidth();
         final var targetImageHeight = targetImage.getHeight();
-        final var graphics = getGraphics(targetImage);
 
         int xPosition;
         int yPosition;
@@ -58,7 +59,9 @@ public abstract class ImageRenderer {
             }
             default -> throw new IllegalStateException("Unexpected position: " + position);
         }
+        final var graphics = getGraphics(targetImage, new Point(), new Rectangle(xPosition, yPosition, imageWidth, imageHeight));
         graphics.drawImage(image, xPosition, yPosition, imageWidth, imageHeight, null);
+        graphics.dispose();
     }
 
 }
@@ -0,0 +1,13 @@
+package app.gpx_animator.core.renderer;
+
+import app.gpx_animator.core.data.gpx.TrackSegment;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.util.List;
+
+/**
+ * The area and zoom level of the map of a rendering, in the coordinates of
+ * the renderer (Mercator projection in radians), together with the tracks
+ * in the same coordinates. The zoom level is {@code null} without a map.
+ */
+public record MapArea(Integer zoom, double minX, double maxX, double minY, double maxY, @NonNull List<TrackSegment> trackSegments) { }
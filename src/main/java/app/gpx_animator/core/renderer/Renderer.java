@@ -20,10 +20,20 @@ import app.gpx_animator.core.configuration.TrackConfiguration;
 import app.gpx_animator.core.data.LatLon;
 import app.gpx_animator.core.data.TrackIcon;
 import app.gpx_animator.core.data.Waypoint;
-import app.gpx_animator.core.data.gpx.GpxContentHandler;
-import app.gpx_animator.core.data.gpx.GpxParser;
+import app.gpx_animator.core.data.gpx.GpxCache;
 import app.gpx_animator.core.data.gpx.GpxPoint;
+import app.gpx_animator.core.data.gpx.GpxPointListener;
+import app.gpx_animator.core.data.gpx.TrackSegment;
 import app.gpx_animator.core.preferences.Preferences;
+import app.gpx_animator.core.renderer.cache.BackgroundCache;
+import app.gpx_animator.core.renderer.cache.TrackLayerCache;
+import app.gpx_animator.core.renderer.canvas.CanvasStorage;
+import app.gpx_animator.core.renderer.canvas.FrameImagePool;
+import app.gpx_animator.core.renderer.canvas.ImageCanvas;
+import app.gpx_animator.core.renderer.canvas.MapCanvas;
+import app.gpx_animator.core.renderer.canvas.OffHeapDataBuffer;
+import app.gpx_animator.core.renderer.canvas.TiledCanvas;
+import app.gpx_animator.core.renderer.framewriter.AsyncFrameWriter;
 import app.gpx_animator.core.renderer.framewriter.FileFrameWriter;
 import app.gpx_animator.core.renderer.framewriter.FrameWriter;
 import app.gpx_animator.core.renderer.framewriter.VideoFrameWriter;
@@ -40,18 +50,23 @@ import org.slf4j.LoggerFactory;
 import javax.imageio.ImageIO;
 import java.awt.BasicStroke;
 import java.awt.Color;
+import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.Shape;
 import java.awt.font.TextLayout;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
 import java.awt.geom.Ellipse2D;
-import java.awt.geom.Line2D;
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import java.io.Serial;
+import java.nio.file.Path;
 import java.text.DateFormat;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
@@ -61,9 +76,13 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.ResourceBundle;
-import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static app.gpx_animator.core.util.RenderUtil.getGraphics;
+import static app.gpx_animator.core.util.RenderUtil.markChanged;
 import static app.gpx_animator.core.util.Utils.isEqual;
 
 @SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
@@ -73,12 +92,30 @@ public final class Renderer {
     private static final Logger LOGGER = LoggerFactory.getLogger(Renderer.class);
 
     private static final double MS = 1000d;
+    private static final int TAIL_GRADIENT_STEPS = 255;
+    private static final Point ORIGIN = new Point(0, 0);
+    private static final float TEXT_STROKE_WIDTH = 3f;
+    private static final int DEFAULT_WIDTH = 800;
+    private static final int IMAGE_TYPE = BufferedImage.TYPE_3BYTE_BGR;
+    private static final int BYTES_PER_PIXEL = 3;
+    private static final long MAX_IMAGE_PIXELS = 64L * 1_024 * 1_024;
+    private static final int CANVAS_TILE_SIZE = 512;
+    private static final int VIEWPORT_AHEAD_STEPS = 8;
+    private static final long VIEWPORT_AHEAD_STEP_MILLIS = 500;
 
     private final ResourceBundle resourceBundle = Preferences.getResourceBundle();
 
     private final Configuration cfg;
+    private final Path gpxCacheDir;
+    private final long gpxCacheMaxSize;
 
-    private final List<List<TreeMap<Long, Point2D>>> timePointMapListList = new ArrayList<>();
+    private final List<List<TrackSegment>> trackSegmentListList = new ArrayList<>();
+
+    // the track segments with fewer points for drawing the lines, the markers use all points
+    private final List<List<TrackSegment>> drawnTrackSegmentListList = new ArrayList<>();
+
+    // precomputed colors of the tail for every track, blending from the track color (index 0) to the tail color
+    private final List<Color[]> tailGradients = new ArrayList<>();
 
     private final DateFormat dateFormat = DateFormat.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.MEDIUM);
 
@@ -98,8 +135,23 @@ public final class Renderer {
 
     private double speedup;
 
+    // the rasterized pre-drawn track, null if it is not pre-drawn or painted on the map directly
+    private TrackLayer preDrawnTrack;
+
     public Renderer(final Configuration cfg) throws UserException {
+        this(cfg, Path.of(Preferences.getGpxCacheDir()), Preferences.getGpxCacheMaxSize() * 1_024 * 1_024);
+    }
+
+    /**
+     * @param cfg             the configuration
+     * @param gpxCacheDir     the directory of the cache of parsed GPX files
+     * @param gpxCacheMaxSize the maximum size of the cache in bytes, 0 to parse the GPX files without the cache
+     * @throws UserException if the configuration is invalid
+     */
+    Renderer(final Configuration cfg, @NonNull final Path gpxCacheDir, final long gpxCacheMaxSize) throws UserException {
         this.cfg = cfg.validate();
+        this.gpxCacheDir = gpxCacheDir;
+        this.gpxCacheMaxSize = gpxCacheMaxSize;
         this.recentMarkers = new LinkedList<>();
     }
 
@@ -125,34 +177,20 @@ public final class Renderer {
         final var renderStartTime = LocalDateTime.now();
 
         final List<Long[]> spanList = new ArrayList<>();
-        final var wpMap = new TreeMap<Long, Point2D>();
-        parseGPX(spanList, wpMap);
+        final var waypointBuilder = TrackSegment.createBuilder();
+        parseGPX(spanList, waypointBuilder);
+        final var waypoints = waypointBuilder.build();
 
         final var userSpecifiedWidth = cfg.getWidth() != null;
-        final var width = userSpecifiedWidth ? cfg.getWidth() : 800;
+        final var width = userSpecifiedWidth ? cfg.getWidth() : DEFAULT_WIDTH;
         final var zoom = calculateZoomFactor(rc, width);
         final var scale = calculateScaleFactor(width, zoom);
+        extendMapArea(width, scale);
 
-        minX -= cfg.getMargin() / scale;
-        maxX += cfg.getMargin() / scale;
-        minY -= cfg.getMargin() / scale;
-        maxY += cfg.getMargin() / scale;
-
-        if (userSpecifiedWidth) {
-            final var ww = width - (maxX - minX) * scale;
-            minX -= ww / scale / 2.0;
-            maxX += ww / scale / 2.0;
-        }
-
-        if (cfg.getHeight() != null) {
-            final var hh = cfg.getHeight() - (maxY - minY) * scale;
-            minY -= hh / scale / 2.0;
-            maxY += hh / scale / 2.0;
-        }
-
-        timePointMapListList.forEach((timePointMapList) -> timePointMapList
-                            .forEach((timePointMap) -> translateCoordinatesToZeroZero(scale, timePointMap)));
-        translateCoordinatesToZeroZero(scale, wpMap);
+        trackSegmentListList.forEach((trackSegmentList) -> trackSegmentList
+                            .forEach((trackSegment) -> translateCoordinatesToZeroZero(scale, trackSegment)));
+        translateCoordinatesToZeroZero(scale, waypoints);
+        simplifyTracks();
 
         final var frameFilePattern = cfg.getOutput().toString();
         //noinspection MagicCharacter
@@ -173,80 +211,116 @@ public final class Renderer {
             viewportHeight = realHeight;
         }
 
-        final var frameWriter = toImages
-                ? new FileFrameWriter(frameFilePattern, ext, cfg.getFps())
-                : new VideoFrameWriter(cfg.getOutput(), cfg.getFps(), viewportWidth, viewportHeight);
-
-        final var bi = createBufferedImage(realWidth, realHeight, zoom);
+        final var frameWriter = createFrameWriter(toImages
+                ? new FileFrameWriter(frameFilePattern, ext, cfg.getFps(), cfg.getOutputThreads(), cfg.getPngCompressionLevel())
+                : new VideoFrameWriter(cfg.getOutput(), cfg.getFps(), viewportWidth, viewportHeight));
 
         font = cfg.getFont();
 
-        final var plugins = PluginUtil.getAvailablePlugins(cfg, frameWriter, rc);
-        final var frames = calculateSpeedupAndReturnFrames(plugins);
-        final var metadata = new Metadata(zoom, minX, maxX, minY, maxY, minTime, maxTime, speedup);
-
-        for (final var plugin : plugins) {
-            plugin.setMetadata(metadata);
-        }
-
-        drawBackground(plugins, bi);
-        preDrawTracks(bi, frames);
+        final List<RendererPlugin> plugins = new ArrayList<>();
+        FrameRenderQueue renderQueue = null;
+        var completed = false;
+        try {
+            plugins.addAll(PluginUtil.getAvailablePlugins(cfg, frameWriter, rc));
+            final var frames = calculateSpeedupAndReturnFrames(plugins);
+            final var metadata = new Metadata(zoom, minX, maxX, minY, maxY, minTime, maxTime, speedup);
 
-        var skip = -1f;
-        for (var frame = 1; frame <= frames; frame++) {
-            if (rc.isCancelled1()) {
-                return;
+            for (final var plugin : plugins) {
+                plugin.setMetadata(metadata);
             }
 
-            final Long time = getTime(frame);
-            skip:
-            if (cfg.isSkipIdle()) {
-                for (final var span : spanList) {
-                    if (span[0] <= time && span[1] >= time) {
-                        break skip;
+            final var mapCanvas = createCanvas(plugins, rc, realWidth, realHeight, viewportWidth, viewportHeight, zoom);
+            final var framePool = new FrameImagePool(mapCanvas, IMAGE_TYPE);
+            final var canvas = framePool.getCanvas();
+            createTailGradients();
+            preDrawTracks(canvas, frames, realWidth, realHeight);
+
+            final var renderThreads = cfg.getRenderThreads();
+            LOGGER.info("Rendering {} frames using {} thread(s)", frames, renderThreads);
+            renderQueue = new FrameRenderQueue(renderThreads, frameWriter);
+
+            // With a moving map, every frame only copies and draws the area of the viewport, so the costs
+            // per frame depend on the size of the video and not on the size of the map. The images of the
+            // frames are reused, if the area is the same, only the regions which changed are restored.
+            var renderedFrames = 0;
+            final var speedUtil = new SpeedUtil();
+            final var keepLastFrame = cfg.getKeepLastFrame() != null && cfg.getKeepLastFrame() > 0;
+            final var mapSize = new Dimension(realWidth, realHeight);
+            final var mapArea = new Rectangle(0, 0, realWidth, realHeight);
+            var backgroundComplete = false;
+
+            var skip = -1f;
+            for (var frame = 1; frame <= frames; frame++) {
+                if (rc.isCancelled1()) {
+                    return;
+                }
+
+                final Long time = getTime(frame);
+                skip:
+                if (cfg.isSkipIdle()) {
+                    for (final var span : spanList) {
+                        if (span[0] <= time && span[1] >= time) {
+                            break skip;
+                        }
                     }
+                    rc.setProgress1((int) (100.0 * frame / frames),
+                            String.format(resourceBundle.getString("renderer.progress.unusedframes"), frame, frames));
+                    skip = 1f;
+                    continue;
                 }
-                rc.setProgress1((int) (100.0 * frame / frames),
-                        String.format(resourceBundle.getString("renderer.progress.unusedframes"), frame, frames));
-                skip = 1f;
-                continue;
-            }
 
-            final var pct = (int) (100.0 * frame / frames);
-            rc.setProgress1(pct, String.format(resourceBundle.getString("renderer.progress.frame"), frame, frames));
+                final var pct = (int) (100.0 * frame / frames);
+                rc.setProgress1(pct, String.format(resourceBundle.getString("renderer.progress.frame"), frame, frames));
+
+                // everything depending on previous frames is calculated here, in the order of the frames,
+                // the rest of the frame is rendered by the render queue, maybe in parallel
+                final var marker = findMarker(frame);
+                final var viewport = calculateViewport(marker, realWidth, realHeight, viewportWidth, viewportHeight);
+                if (viewport != null) {
+                    updateBackground(plugins, canvas, mapSize, viewport,
+                            calculateViewportsAhead(frame, frames, realWidth, realHeight, viewportWidth, viewportHeight), frame, frames);
+                } else if (!backgroundComplete) {
+                    // the whole map is visible from the first frame on, so the background is complete after one update
+                    updateBackground(plugins, canvas, mapSize, mapArea, List.of(), frame, frames);
+                    backgroundComplete = true;
+                }
+                paint(canvas, frame, 0, false);
+                final var frameImage = framePool.acquire(viewport == null ? mapArea : viewport);
+                renderedFrames++;
 
-            paint(bi, frame, 0, null, false);
-            final var bi2 = Utils.deepCopy(bi);
-            paint(bi2, frame, cfg.getTailDuration(), cfg.getTailColor(), false);
-            drawWaypoints(bi2, frame, wpMap);
+                final var lastFrame = frame == frames && keepLastFrame;
+                final var frameState = new FrameState(frame, frameImage, viewport == null ? ORIGIN : viewport.getLocation(), marker, skip,
+                        createInfo(speedUtil, frame, marker), lastFrame ? createInfo(speedUtil, frame, marker) : null);
+                skip = advanceFlashback(skip);
 
-            final var marker = drawMarker(bi2, frame);
+                for (final var plugin : plugins) {
+                    plugin.prepareFrame(frame, marker);
+                }
 
-            skip = renderFlashback(skip, bi2);
+                renderQueue.submit(writer -> renderFrame(frameState, plugins, rc, writer, frames, waypoints));
+            }
 
-            // apply viewport over bi2 (which could be the full viewport)
-            final var viewportImage = applyViewport(bi2, marker, realWidth, realHeight, viewportWidth, viewportHeight);
+            renderQueue.finish();
+            frameWriter.close();
+            completed = true;
 
-            for (final var plugin : plugins) {
-                plugin.renderFrame(frame, marker, viewportImage);
+            logCompositionStatistics(framePool, renderedFrames, viewportWidth, viewportHeight);
+            if (mapCanvas instanceof TiledCanvas tiledCanvas) {
+                LOGGER.info("Allocated {} of {} map tiles", tiledCanvas.getAllocatedTileCount(), tiledCanvas.getTileCount());
             }
-
-            final var textRenderer = new TextRenderer(font) { };
-            if (font != null) {
-                if (marker != null) {
-                    drawInfo(textRenderer, viewportImage, frame, marker);
+        } finally {
+            if (!completed) {
+                // cancelled or failed: the threads of the render queue and the frame writer would wait for frames forever
+                if (renderQueue != null) {
+                    renderQueue.cancel();
                 }
+                frameWriter.abort();
             }
-
-            frameWriter.addFrame(viewportImage);
-
-            if (frame == frames) {
-                keepLastFrame(plugins, textRenderer, rc, frameWriter, viewportImage, frames, wpMap);
+            for (final var plugin : plugins) {
+                plugin.finishRendering();
             }
         }
 
-        frameWriter.close();
-
         final var renderFinishTime = LocalDateTime.now();
         final var runtimeSeconds = ChronoUnit.SECONDS.between(renderStartTime, renderFinishTime);
 
@@ -262,6 +336,21 @@ public final class Renderer {
         }
     }
 
+    private static void logCompositionStatistics(@NonNull final FrameImagePool framePool, final int frames,
+                                                 final int width, final int height) {
+        LOGGER.info("Composed {} frames of {}x{} pixels, {} of them restored the image of a previous frame of the same area",
+                frames, width, height, framePool.getReusedImageCount());
+        if (frames > 0) {
+            LOGGER.info("Copied {} KiB of the map per frame on average, a whole frame has {} KiB",
+                    framePool.getCopiedPixelCount() * BYTES_PER_PIXEL / frames / 1_024, (long) width * height * BYTES_PER_PIXEL / 1_024);
+        }
+    }
+
+    private FrameWriter createFrameWriter(@NonNull final FrameWriter frameWriter) {
+        final var encoderQueueSize = cfg.getEncoderQueueSize();
+        return encoderQueueSize > 0 ? new AsyncFrameWriter(frameWriter, encoderQueueSize) : frameWriter;
+    }
+
     private int calculateSpeedupAndReturnFrames(@NonNull final List<RendererPlugin> plugins) {
         final var totalTime = cfg.getTotalTime() == null ? 0 : cfg.getTotalTime();
         final var tailDuration = cfg.getTailDuration();
@@ -280,26 +369,101 @@ public final class Renderer {
         }
     }
 
-    private void preDrawTracks(@NonNull final BufferedImage bi, final int frames) {
-        if (cfg.isPreDrawTrack()) {
-            paint(bi, frames, getTime(frames) - getTime(0), null, true);
+    //
+    // The pre-drawn track is rasterized once, in parallel, and cached, so
+    // rendering the same tracks again only draws the cached image. A track
+    // too large for one image is painted on the map directly.
+    //
+    private void preDrawTracks(@NonNull final MapCanvas canvas, final int frames, final int width, final int height)
+            throws UserException {
+        if (!cfg.isPreDrawTrack()) {
+            return;
+        }
+        final var batches = collectTracks(frames, getTime(frames) - getTime(0), true, false);
+        final var bounds = TrackLayer.getBounds(batches, width, height);
+        if (bounds.isEmpty()) {
+            return;
+        }
+        if ((long) bounds.width * bounds.height > MAX_IMAGE_PIXELS) {
+            LOGGER.info("Pre-drawing the track of {}x{} pixels on the map directly", bounds.width, bounds.height);
+            paint(canvas, frames, getTime(frames) - getTime(0), true);
+            return;
+        }
+
+        final var tileCacheDir = Preferences.getTileCacheDir();
+        final var key = TrackLayer.createKey(batches, bounds);
+        var image = TrackLayerCache.load(tileCacheDir, key, bounds.width, bounds.height);
+        if (image != null) {
+            LOGGER.info("Pre-drawn track of {}x{} pixels read from the cache", bounds.width, bounds.height);
+        } else {
+            final var start = System.currentTimeMillis();
+            image = TrackLayer.rasterize(batches, bounds, cfg.getRenderThreads());
+            LOGGER.info("Rasterized the pre-drawn track of {}x{} pixels in {} ms",
+                    bounds.width, bounds.height, System.currentTimeMillis() - start);
+            TrackLayerCache.store(tileCacheDir, key, image);
+        }
+        preDrawnTrack = new TrackLayer(image, bounds.getLocation());
+        preDrawnTrack.draw(canvas, null);
+    }
+
+    //
+    // A moving map too large for one image, or with its map tiles loaded on
+    // demand, is stored in tiles, which are allocated when the track or the
+    // viewport reaches them. The background of the tiles is rendered when
+    // they are allocated. A map stored off the heap is kept in one image, as
+    // long as it can be indexed with an int.
+    //
+    private MapCanvas createCanvas(@NonNull final List<RendererPlugin> plugins, @NonNull final RenderingContext rc,
+                                   final int width, final int height,
+                                   final int viewportWidth, final int viewportHeight, final int zoom) throws UserException {
+        final var storage = cfg.getCanvasStorage();
+        final var offHeap = storage != CanvasStorage.HEAP && (long) width * height * BYTES_PER_PIXEL <= Integer.MAX_VALUE;
+        if (offHeap) {
+            LOGGER.info("Storing the map of {}x{} pixels off the heap ({})", width, height, storage);
+            final var bi = createOffHeapImage(width, height, storage);
+            drawBackground(plugins, rc, bi, zoom);
+            return new ImageCanvas(bi);
+        }
+
+        final var movingMap = viewportWidth < width || viewportHeight < height;
+        if (movingMap && (cfg.isLazyMapTiles() || (long) width * height > MAX_IMAGE_PIXELS)) {
+            LOGGER.info("Using a tiled map canvas for a map of {}x{} pixels", width, height);
+            final var size = new Dimension(width, height);
+            return new TiledCanvas(width, height, CANVAS_TILE_SIZE, IMAGE_TYPE, (tile, area) -> {
+                for (final var plugin : plugins) {
+                    plugin.renderBackground(tile, area, size);
+                }
+            });
+        }
+
+        final var bi = createBufferedImage(width, height, zoom);
+        drawBackground(plugins, rc, bi, zoom);
+        return new ImageCanvas(bi);
+    }
+
+    private BufferedImage createOffHeapImage(final int width, final int height, @NonNull final CanvasStorage storage)
+            throws UserException {
+        try {
+            return OffHeapDataBuffer.createImage(width, height, storage);
+        } catch (final IOException e) {
+            throw new UserException(e.getMessage(), e);
         }
     }
 
     private BufferedImage createBufferedImage(final int width, final int height, final int zoom) throws UserException {
         try {
-            return new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+            return new BufferedImage(width, height, IMAGE_TYPE);
         } catch (final IllegalArgumentException | NegativeArraySizeException e) {
             // these exceptions only occour when the dimension for the BufferedImage are too height
             throw new UserException(resourceBundle.getString("renderer.error.mapsize").formatted(width, height, zoom));
         }
     }
 
-    private BufferedImage applyViewport(final BufferedImage bi, final Point2D marker,
+    private Rectangle calculateViewport(final Point2D marker,
                                         final int realWidth, final int realHeight,
                                         final int viewportWidth, final int viewportHeight) {
         if (viewportHeight == realHeight && viewportWidth == realWidth) {
-            return bi;
+            return null;
         }
 
         // Add most recent markers to a queue (while updating a running average
@@ -320,10 +484,33 @@ public final class Renderer {
         }
         final var xAvg = recentMarkersXSum / (double) this.recentMarkers.size();
         final var yAvg = recentMarkersYSum / (double) this.recentMarkers.size();
+        return createViewport(xAvg, yAvg, realWidth, realHeight, viewportWidth, viewportHeight);
+    }
 
+    //
+    // The viewports ahead follow the marker path of the next seconds without
+    // the inertia, so they cover the area the smoothed viewport is moving to.
+    //
+    private List<Rectangle> calculateViewportsAhead(final int frame, final int frames,
+                                                    final int realWidth, final int realHeight,
+                                                    final int viewportWidth, final int viewportHeight) {
+        final var step = Math.max(1, (int) Math.round(cfg.getFps() * VIEWPORT_AHEAD_STEP_MILLIS / MS));
+        final List<Rectangle> ahead = new ArrayList<>(VIEWPORT_AHEAD_STEPS);
+        for (var i = 1; i <= VIEWPORT_AHEAD_STEPS && frame + i * step <= frames; i++) {
+            final var marker = findMarker(frame + i * step);
+            if (marker != null) {
+                ahead.add(createViewport(marker.getX(), marker.getY(), realWidth, realHeight, viewportWidth, viewportHeight));
+            }
+        }
+        return ahead;
+    }
+
+    private Rectangle createViewport(final double centerX, final double centerY,
+                                     final int realWidth, final int realHeight,
+                                     final int viewportWidth, final int viewportHeight) {
         // top-left (x,y) coords of viewport with boundaries protected
-        var x = xAvg - (double) viewportWidth / 2.0;
-        var y = yAvg - (double) viewportHeight / 2.0;
+        var x = centerX - (double) viewportWidth / 2.0;
+        var y = centerY - (double) viewportHeight / 2.0;
         if (x < 0) {
             x = 0;
         } else if ((x + viewportWidth) > realWidth) {
@@ -335,56 +522,227 @@ public final class Renderer {
         } else if ((y + viewportHeight) > realHeight) {
             y = realHeight - viewportHeight;
         }
-        return bi.getSubimage((int) x, (int) y, viewportWidth, viewportHeight);
+        return new Rectangle((int) x, (int) y, viewportWidth, viewportHeight);
     }
 
-    private float renderFlashback(final float skip, final BufferedImage bi2) {
+    private boolean isFlashback(final float skip) {
         final var flashbackColor = cfg.getFlashbackColor();
-        if (skip > 0f && flashbackColor.getAlpha() > 0 && cfg.getFlashbackDuration() != null && cfg.getFlashbackDuration() > 0) {
+        return skip > 0f && flashbackColor.getAlpha() > 0 && cfg.getFlashbackDuration() != null && cfg.getFlashbackDuration() > 0;
+    }
+
+    private float advanceFlashback(final float skip) {
+        return isFlashback(skip) ? (float) (skip - (1000f / cfg.getFlashbackDuration() / cfg.getFps())) : skip;
+    }
+
+    private void renderFlashback(final float skip, final BufferedImage bi2) {
+        if (isFlashback(skip)) {
+            final var flashbackColor = cfg.getFlashbackColor();
             final var g2 = (Graphics2D) bi2.getGraphics();
             g2.setColor(new Color(flashbackColor.getRed(), flashbackColor.getGreen(), flashbackColor.getBlue(),
                     (int) (flashbackColor.getAlpha() * skip)));
             g2.fillRect(0, 0, bi2.getWidth(), bi2.getHeight());
-            return (float) (skip - (1000f / cfg.getFlashbackDuration() / cfg.getFps()));
         }
-        return skip;
     }
 
-    private void drawBackground(@NonNull final List<RendererPlugin> plugins, @NonNull final BufferedImage bi)
-            throws UserException {
+    /**
+     * Renders one frame based on the state calculated in frame order. This
+     * method is called from the render queue and may run concurrently for
+     * different frames, so it must not change any state of the renderer.
+     */
+    private void renderFrame(@NonNull final FrameState frameState, @NonNull final List<RendererPlugin> plugins,
+                             @NonNull final RenderingContext rc, @NonNull final FrameWriter frameWriter,
+                             final int frames, @NonNull final TrackSegment waypoints) throws UserException {
+        final var frame = frameState.frame();
+        final var bi2 = frameState.image();
+        final var marker = frameState.marker();
+
+        // bi2 contains only the area of the viewport (which could be the full map), located at the origin
+        final var origin = frameState.origin();
+        paint(new ImageCanvas(bi2, origin), frame, cfg.getTailDuration(), false);
+        drawWaypoints(bi2, origin, frame, waypoints);
+        drawMarker(bi2, origin, frame);
+        renderFlashback(frameState.flashback(), bi2);
+        final var viewportImage = bi2;
+
+        for (final var plugin : plugins) {
+            plugin.renderFrame(frame, marker, viewportImage, frameWriter);
+        }
+
+        final var textRenderer = new TextRenderer(font) { };
+        if (frameState.info() != null) {
+            textRenderer.renderText(frameState.info(), cfg.getInformationPosition(), cfg.getInformationMargin(), viewportImage);
+        }
+
+        // the image may be reused for another frame once it is written, so the last frame continues on a copy
+        final var lastFrame = frame == frames && cfg.getKeepLastFrame() != null && cfg.getKeepLastFrame() > 0
+                ? Utils.deepCopy(viewportImage) : null;
+        frameWriter.addFrame(viewportImage);
+
+        if (lastFrame != null) {
+            keepLastFrame(plugins, textRenderer, rc, frameWriter, lastFrame, frameState, waypoints);
+        }
+    }
+
+    //
+    // The composed background of map tiles or a background image is cached
+    // on disk, so rendering the same map again only reads it. A plain
+    // background color is drawn faster than read, and a background which is
+    // not complete yet, because the map tiles are loaded along the viewport
+    // or the rendering was cancelled, is not cached.
+    //
+    private void drawBackground(@NonNull final List<RendererPlugin> plugins, @NonNull final RenderingContext rc,
+                                @NonNull final BufferedImage bi, final int zoom) throws UserException {
+        final var tileCacheDir = Preferences.getTileCacheDir();
+        final var maxSize = Preferences.getTileCacheMaxSize() * 1_024 * 1_024;
+        final var cached = (cfg.getTmsUrlTemplate() != null || cfg.getBackgroundImage() != null) && maxSize > 0;
+        final var key = createBackgroundKey(bi, zoom);
+        if (cached && BackgroundCache.load(tileCacheDir, key, Preferences.getTileCacheTimeLimit(), bi)) {
+            LOGGER.info("Background of {}x{} pixels read from the cache", bi.getWidth(), bi.getHeight());
+            return;
+        }
+
         for (final var plugin : plugins) {
             plugin.renderBackground(bi);
         }
+
+        if (cached && !cfg.isLazyMapTiles() && !rc.isCancelled1()) {
+            BackgroundCache.store(tileCacheDir, key, bi, maxSize);
+        }
     }
 
-    private void parseGPX(final List<Long[]> spanList, final TreeMap<Long, Point2D> wpMap) throws UserException {
-        var trackIndex = -1;
-        for (final var trackConfiguration : cfg.getTrackConfigurationList()) {
-            trackIndex++;
+    //
+    // Everything the background plugins draw depends on: the area and size
+    // of the map, the map tiles and their visibility, the background color
+    // and the background image, which is identified by its modification
+    // time and size.
+    //
+    private String createBackgroundKey(@NonNull final BufferedImage bi, final int zoom) {
+        final var backgroundImage = cfg.getBackgroundImage();
+        final var imageKey = backgroundImage == null || !backgroundImage.exists() ? ""
+                : backgroundImage.getAbsolutePath() + "@" + backgroundImage.lastModified() + "/" + backgroundImage.length(); //NON-NLS
+        final var offlineTileColor = cfg.getOfflineTileColor();
+        return String.join("|", "1", //NON-NLS
+                Integer.toString(bi.getWidth()), Integer.toString(bi.getHeight()), Integer.toString(zoom),
+                Double.toString(minX), Double.toString(maxX), Double.toString(minY), Double.toString(maxY),
+                String.valueOf(cfg.getTmsUrlTemplate()), Float.toString(cfg.getBackgroundMapVisibility()),
+                Integer.toHexString(cfg.getBackgroundColor().getRGB()), imageKey,
+                Boolean.toString(cfg.isOffline()), offlineTileColor == null ? "" : Integer.toHexString(offlineTileColor.getRGB()));
+    }
+
+    //
+    // Plugins rendering the background on demand may draw over the track
+    // drawn so far, so the track is drawn again in the changed areas.
+    //
+    private void updateBackground(@NonNull final List<RendererPlugin> plugins, @NonNull final MapCanvas canvas,
+                                  @NonNull final Dimension size, @NonNull final Rectangle viewport,
+                                  @NonNull final List<Rectangle> ahead, final int frame, final int frames) throws UserException {
+        final var changed = new Area();
+        for (final var plugin : plugins) {
+            for (final var area : plugin.updateBackground(canvas, size, viewport, ahead)) {
+                changed.add(new Area(area));
+            }
+        }
+        if (!changed.isEmpty()) {
+            if (preDrawnTrack != null) {
+                preDrawnTrack.draw(canvas, changed);
+            } else if (cfg.isPreDrawTrack()) {
+                paint(canvas, changed, frames, getTime(frames) - getTime(0), true, false);
+            }
+            paint(canvas, changed, frame - 1, getTime(frame - 1) - getTime(0), false, false);
+        }
+    }
+
+    private void parseGPX(final List<Long[]> spanList, final TrackSegment.Builder waypointBuilder) throws UserException {
+        final var parsedTracks = parseTracks();
+        for (var trackIndex = 0; trackIndex < parsedTracks.size(); trackIndex++) {
+            final var parsedTrack = parsedTracks.get(trackIndex);
+            final var bounds = parsedTrack.bounds();
+
+            final List<TrackSegment> trackSegmentList = new ArrayList<>();
+            for (final var trackSegment : parsedTrack.trackSegments()) {
+                trackSegmentList.add(trackSegment);
+                toTrackSegment(waypointBuilder, trackIndex, parsedTrack.waypoints(), bounds);
+                mergeConnectedSpans(spanList, trackSegment);
+            }
 
-            final var inputGpxFile = trackConfiguration.getInputGpx();
-            final var gch = new GpxContentHandler();
-            GpxParser.parseGpx(inputGpxFile, gch);
+            minX = Math.min(minX, bounds.minX);
+            maxX = Math.max(maxX, bounds.maxX);
+            minY = Math.min(minY, bounds.minY);
+            maxY = Math.max(maxY, bounds.maxY);
+            setFixedBounds();
 
-            final List<TreeMap<Long, Point2D>> timePointMapList = new ArrayList<>();
+            Collections.reverse(trackSegmentList); // reversing because of last known location drawing
+            trackSegmentListList.add(trackSegmentList);
+        }
+    }
 
-            final var pointLists = gch.getPointLists();
-            if (pointLists.isEmpty()) {
-                throw new UserException(resourceBundle.getString("renderer.error.notrack").formatted(inputGpxFile));
+    //
+    // The GPX files are parsed on a pool of threads, one task per file. The
+    // results are merged in the order of the tracks, so everything depending
+    // on the order, like the spans, the waypoints and the first error, is
+    // exactly the same as if the files were parsed one after the other.
+    //
+    private List<ParsedTrack> parseTracks() throws UserException {
+        final var trackCount = cfg.getTrackConfigurationList().size();
+        final var threads = Math.min(cfg.getRenderThreads(), trackCount);
+        final List<ParsedTrack> parsedTracks = new ArrayList<>(trackCount);
+        if (threads <= 1) {
+            for (var trackIndex = 0; trackIndex < trackCount; trackIndex++) {
+                parsedTracks.add(parseTrack(trackIndex));
             }
-            for (final var latLonList : pointLists) {
-                sigmaRoxRepair(latLonList);
-                final var timePointMap = new TreeMap<Long, Point2D>();
-                toTimePointMap(timePointMap, trackIndex, latLonList);
-                trimGpxData(timePointMap, trackConfiguration);
-                timePointMapList.add(timePointMap);
-                toTimePointMap(wpMap, trackIndex, gch.getWaypointList());
-                mergeConnectedSpans(spanList, timePointMap);
+            return parsedTracks;
+        }
+
+        LOGGER.info("Parsing {} GPX files using {} threads", trackCount, threads);
+        final var threadCounter = new AtomicInteger();
+        final var executor = Executors.newFixedThreadPool(threads, runnable -> {
+            final var thread = new Thread(runnable, "gpx-parser-" + threadCounter.incrementAndGet()); //NON-NLS
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            final List<Future<ParsedTrack>> futures = new ArrayList<>(trackCount);
+            for (var trackIndex = 0; trackIndex < trackCount; trackIndex++) {
+                final var index = trackIndex;
+                futures.add(executor.submit(() -> parseTrack(index)));
+            }
+            for (final var future : futures) {
+                parsedTracks.add(future.get());
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UserException(e.getMessage(), e);
+        } catch (final ExecutionException e) {
+            final var cause = e.getCause();
+            if (cause instanceof UserException userException) {
+                throw userException;
+            } else if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            } else if (cause instanceof Error error) {
+                throw error;
             }
+            throw new UserException(cause.getMessage(), cause);
+        } finally {
+            executor.shutdownNow();
+        }
+        return parsedTracks;
+    }
+
+    //
+    // Parses the GPX file of a track, without changing anything shared by
+    // the tracks, so the tracks can be parsed at the same time. The points
+    // are written straight into the track segments while the file is read.
+    //
+    private ParsedTrack parseTrack(final int trackIndex) throws UserException {
+        final var trackConfiguration = cfg.getTrackConfigurationList().get(trackIndex);
+        final var inputGpxFile = trackConfiguration.getInputGpx();
+        final var trackReader = new TrackReader(trackConfiguration);
+        GpxCache.parseGpx(inputGpxFile, trackReader, gpxCacheDir, gpxCacheMaxSize);
 
-            Collections.reverse(timePointMapList); // reversing because of last known location drawing
-            timePointMapListList.add(timePointMapList);
+        if (trackReader.trackSegments.isEmpty()) {
+            throw new UserException(resourceBundle.getString("renderer.error.notrack").formatted(inputGpxFile));
         }
+        return new ParsedTrack(trackReader.trackSegments, trackReader.waypoints, trackReader.bounds);
     }
 
     /**
@@ -396,25 +754,59 @@ public final class Renderer {
      * result is a fixed list of track points containing the correct track and
      * timestamps.
      *
-     * @param latLonList list of track points loaded from the GPX file
+     * @param point    the first or last track point of a segment
+     * @param neighbor the second or penultimate track point of the segment
+     * @return {@code true} if the point has to be ignored
+     */
+    private static boolean isSigmaRoxError(@NonNull final LatLon point, @NonNull final LatLon neighbor) {
+        return point.getTime() == Long.MIN_VALUE && neighbor.getTime() > Long.MIN_VALUE
+                && point.getLat() == neighbor.getLat() && point.getLon() == neighbor.getLon();
+    }
+
+    /**
+     * Reads the GPX files and calculates the area and the zoom level of the
+     * map exactly like {@link #render(RenderingContext)} does, but without
+     * rendering anything, e.g. to know the map tiles a rendering will need.
+     * Without any GPX files, the area is given by the configured bounds.
+     *
+     * @param rc the rendering context
+     * @return the area of the map
+     * @throws UserException if the GPX files can't be read or there is no area
      */
-    @SuppressWarnings("PMD.AvoidLiteralsInIfCondition") // here 2 is magic :-)
-    private void sigmaRoxRepair(final List<LatLon> latLonList) {
-        if (latLonList.size() >= 2) {
-            final var first = latLonList.get(0);
-            final var second = latLonList.get(1);
-            if (first.getTime() == Long.MIN_VALUE && second.getTime() > Long.MIN_VALUE
-                    && first.getLat() == second.getLat() && first.getLon() == second.getLon()) {
-                latLonList.remove(0);
+    public MapArea calculateMapArea(final RenderingContext rc) throws UserException {
+        parseGPX(new ArrayList<>(), TrackSegment.createBuilder());
+        if (trackSegmentListList.isEmpty()) {
+            if (cfg.getMinLon() == null || cfg.getMinLat() == null) {
+                throw new UserException(resourceBundle.getString("renderer.error.noarea"));
             }
+            setFixedBounds();
         }
-        if (latLonList.size() >= 2) {
-            final var last = latLonList.get(latLonList.size() - 1);
-            final var penultimate = latLonList.get(latLonList.size() - 2);
-            if (last.getTime() == Long.MIN_VALUE && penultimate.getTime() > Long.MIN_VALUE
-                    && last.getLat() == penultimate.getLat() && last.getLon() == penultimate.getLon()) {
-                latLonList.remove(latLonList.size() - 1);
-            }
+
+        final var width = cfg.getWidth() != null ? cfg.getWidth() : DEFAULT_WIDTH;
+        final var zoom = calculateZoomFactor(rc, width);
+        extendMapArea(width, calculateScaleFactor(width, zoom));
+
+        final List<TrackSegment> trackSegments = new ArrayList<>();
+        trackSegmentListList.forEach(trackSegments::addAll);
+        return new MapArea(zoom, minX, maxX, minY, maxY, trackSegments);
+    }
+
+    private void extendMapArea(final int width, final double scale) {
+        minX -= cfg.getMargin() / scale;
+        maxX += cfg.getMargin() / scale;
+        minY -= cfg.getMargin() / scale;
+        maxY += cfg.getMargin() / scale;
+
+        if (cfg.getWidth() != null) {
+            final var ww = width - (maxX - minX) * scale;
+            minX -= ww / scale / 2.0;
+            maxX += ww / scale / 2.0;
+        }
+
+        if (cfg.getHeight() != null) {
+            final var hh = cfg.getHeight() - (maxY - minY) * scale;
+            minY -= hh / scale / 2.0;
+            maxY += hh / scale / 2.0;
         }
     }
 
@@ -434,20 +826,38 @@ public final class Renderer {
         return realWidth;
     }
 
-    private void translateCoordinatesToZeroZero(final double scale, final TreeMap<Long, Point2D> timePointMap) {
-        if (!timePointMap.isEmpty()) {
-            maxTime = Math.max(maxTime, timePointMap.lastKey());
-            minTime = Math.min(minTime, timePointMap.firstKey());
+    private void translateCoordinatesToZeroZero(final double scale, final TrackSegment trackSegment) {
+        if (!trackSegment.isEmpty()) {
+            maxTime = Math.max(maxTime, trackSegment.getLastTime());
+            minTime = Math.min(minTime, trackSegment.getFirstTime());
+            trackSegment.translate(minX, maxY, scale);
+        }
+    }
 
-            for (final var point : timePointMap.values()) {
-                point.setLocation((point.getX() - minX) * scale, (maxY - point.getY()) * scale);
+    //
+    // Many points of a dense track are drawn on the same pixel, so the lines
+    // are drawn through the points at least the tolerance apart only.
+    //
+    private void simplifyTracks() {
+        final var tolerance = cfg.getSimplifyTolerance();
+        var pointCount = 0L;
+        var drawnPointCount = 0L;
+        for (final var trackSegmentList : trackSegmentListList) {
+            final List<TrackSegment> drawnTrackSegmentList = new ArrayList<>(trackSegmentList.size());
+            for (final var trackSegment : trackSegmentList) {
+                final var drawnTrackSegment = trackSegment.simplify(tolerance);
+                drawnTrackSegmentList.add(drawnTrackSegment);
+                pointCount += trackSegment.size();
+                drawnPointCount += drawnTrackSegment.size();
             }
+            drawnTrackSegmentListList.add(drawnTrackSegmentList);
         }
+        LOGGER.info("Drawing the tracks through {} of {} points with a tolerance of {} pixels", drawnPointCount, pointCount, tolerance);
     }
 
-    private void mergeConnectedSpans(final List<Long[]> spanList, final TreeMap<Long, Point2D> timePointMap) {
-        long t0 = timePointMap.firstKey();
-        var t1 = timePointMap.lastKey() + cfg.getTailDuration();
+    private void mergeConnectedSpans(final List<Long[]> spanList, final TrackSegment trackSegment) {
+        var t0 = trackSegment.getFirstTime();
+        var t1 = trackSegment.getLastTime() + cfg.getTailDuration();
 
         for (final var iter = spanList.iterator(); iter.hasNext();) {
             final var span = iter.next();
@@ -498,168 +908,160 @@ public final class Renderer {
                 : (128.0 * (1 << zoom)) / Math.PI;
     }
 
-    private void trimGpxData(final TreeMap<Long, Point2D> timePointMap, final TrackConfiguration trackConfiguration) {
+    private TrackSegment trimGpxData(final TrackSegment trackSegment, final TrackConfiguration trackConfiguration) {
+        var trimmedTrackSegment = trackSegment;
 
         final var trimGpxStart = trackConfiguration.getTrimGpxStart();
-        if (trimGpxStart != null && trimGpxStart > 0 && timePointMap.size() > 0) {
-            final Long skipToTime = timePointMap.firstKey() + trimGpxStart;
-            timePointMap.entrySet().removeIf(e -> e.getKey() < skipToTime);
+        if (trimGpxStart != null && trimGpxStart > 0 && !trimmedTrackSegment.isEmpty()) {
+            final var skipToTime = trimmedTrackSegment.getFirstTime() + trimGpxStart;
+            trimmedTrackSegment = trimmedTrackSegment.trim(skipToTime, Long.MAX_VALUE);
         }
 
         final var trimGpxEnd = trackConfiguration.getTrimGpxEnd();
-        if (trimGpxEnd != null && trimGpxEnd > 0 && timePointMap.size() > 0) {
-            final Long skipAfterTime = timePointMap.lastKey() - trimGpxEnd;
-            timePointMap.entrySet().removeIf(e -> e.getKey() > skipAfterTime);
+        if (trimGpxEnd != null && trimGpxEnd > 0 && !trimmedTrackSegment.isEmpty()) {
+            final var skipAfterTime = trimmedTrackSegment.getLastTime() - trimGpxEnd;
+            trimmedTrackSegment = trimmedTrackSegment.trim(Long.MIN_VALUE, skipAfterTime);
         }
+
+        return trimmedTrackSegment;
     }
 
     private void keepLastFrame(@NonNull final List<RendererPlugin> plugins, @NonNull final TextRenderer textRenderer,
                                @NonNull final RenderingContext rc, @NonNull final FrameWriter frameWriter, @NonNull final BufferedImage bi,
-                               final int frames, @NonNull final TreeMap<Long, Point2D> wpMap) throws UserException {
-        final var keepLastFrame = cfg.getKeepLastFrame() != null && cfg.getKeepLastFrame() > 0;
-        if (keepLastFrame) {
-            drawWaypoints(bi, frames, wpMap);
-            final var marker = drawMarker(bi, frames);
+                               @NonNull final FrameState frameState, @NonNull final TrackSegment waypoints) throws UserException {
+        final var frames = frameState.frame();
+        drawWaypoints(bi, ORIGIN, frames, waypoints);
+        final var marker = drawMarker(bi, ORIGIN, frames);
 
-            for (final var plugin : plugins) {
-                plugin.renderFrame(frames, marker, bi);
-            }
-            if (font != null) {
-                if (marker != null) {
-                    drawInfo(textRenderer, bi, frames, marker);
-                }
-            }
+        for (final var plugin : plugins) {
+            plugin.renderFrame(frames, marker, bi, frameWriter);
+        }
+        if (frameState.lastFrameInfo() != null) {
+            textRenderer.renderText(frameState.lastFrameInfo(), cfg.getInformationPosition(), cfg.getInformationMargin(), bi);
+        }
 
-            final long ms = cfg.getKeepLastFrame();
-            final var fps = Double.valueOf(cfg.getFps()).longValue();
-            final var stillFrames = ms / 1_000 * fps;
-            for (long stillFrame = 0; stillFrame < stillFrames; stillFrame++) {
-                final var pct = (int) (100.0 * stillFrame / stillFrames);
-                rc.setProgress1(pct, String.format(resourceBundle.getString("renderer.progress.keeplastframe"), stillFrame, stillFrames));
-                frameWriter.addFrame(bi);
-                if (rc.isCancelled1()) {
-                    return;
-                }
+        final long ms = cfg.getKeepLastFrame();
+        final var fps = Double.valueOf(cfg.getFps()).longValue();
+        final var stillFrames = ms / 1_000 * fps;
+        for (long stillFrame = 0; stillFrame < stillFrames; stillFrame++) {
+            final var pct = (int) (100.0 * stillFrame / stillFrames);
+            rc.setProgress1(pct, String.format(resourceBundle.getString("renderer.progress.keeplastframe"), stillFrame, stillFrames));
+            frameWriter.addFrame(bi);
+            if (rc.isCancelled1()) {
+                return;
             }
         }
     }
 
-    private void drawWaypoints(final BufferedImage bi, final int frame, final TreeMap<Long, Point2D> wpMap) {
+    private void drawWaypoints(final BufferedImage bi, final Point origin, final int frame, final TrackSegment waypoints) {
         final var waypointSize = cfg.getWaypointSize();
-        if (waypointSize == null || waypointSize == 0.0 || wpMap.isEmpty()) {
+        if (waypointSize == null || waypointSize == 0.0 || waypoints.isEmpty()) {
             return;
         }
 
-        final var g2 = getGraphics(bi);
+        final var g2 = getGraphics(bi, origin, null);
 
         final var t2 = getTime(frame);
 
-
-        if (t2 >= wpMap.firstKey()) {
-            for (final var p : wpMap.subMap(wpMap.firstKey(), t2).values()) {
-                g2.setColor(Color.white);
-                final var marker = createMarker(waypointSize, p);
-                g2.setStroke(new BasicStroke(1f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-                g2.fill(marker);
-                g2.setColor(Color.black);
-                g2.draw(marker);
-
-                printText(g2, ((NamedPoint) p).getName(), (float) p.getX() + 8f, (float) p.getY() + 4f);
-            }
+        final var last = waypoints.lowerIndex(t2);
+        for (var i = 0; i <= last; i++) {
+            final var x = waypoints.getX(i);
+            final var y = waypoints.getY(i);
+            g2.setColor(Color.white);
+            final var marker = createMarker(waypointSize, x, y);
+            g2.setStroke(new BasicStroke(1f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+            g2.fill(marker);
+            g2.setColor(Color.black);
+            g2.draw(marker);
+            markChanged(bi, origin, grow(marker.getBounds2D(), 1f));
+
+            markChanged(bi, origin, printText(g2, waypoints.getText(i), (float) x + 8f, (float) y + 4f));
         }
+        g2.dispose();
     }
 
-    private Ellipse2D.Double createMarker(final Double size, final Point2D point) {
-        return new Ellipse2D.Double(point.getX() - size / 2.0, point.getY() - size / 2.0, size, size);
+    private void setFixedBounds() {
+        if (cfg.getMinLon() != null) {
+            minX = lonToX(cfg.getMinLon());
+        }
+        if (cfg.getMaxLon() != null) {
+            maxX = lonToX(cfg.getMaxLon());
+        }
+        if (cfg.getMinLat() != null) {
+            minY = latToY(cfg.getMinLat());
+        }
+        if (cfg.getMaxLat() != null) {
+            maxY = latToY(cfg.getMaxLat());
+        }
     }
 
-    private void toTimePointMap(final TreeMap<Long, Point2D> timePointMap, final int trackIndex, final List<LatLon> latLonList) throws UserException {
-        long forcedTime = 0;
+    private Ellipse2D.Double createMarker(final Double size, final double x, final double y) {
+        return new Ellipse2D.Double(x - size / 2.0, y - size / 2.0, size, size);
+    }
 
+    private void toTrackSegment(final TrackSegment.Builder trackSegmentBuilder, final int trackIndex, final List<LatLon> latLonList,
+                                final Bounds bounds) throws UserException {
         final var trackConfiguration = cfg.getTrackConfigurationList().get(trackIndex);
+        for (var index = 0; index < latLonList.size(); index++) {
+            final var latLon = latLonList.get(index);
+            final var text = latLon instanceof Waypoint waypoint ? waypoint.getName() : latLon.getCmt();
+            addPoint(trackSegmentBuilder, trackConfiguration, index, latLon, text, bounds);
+        }
+    }
 
-        final var minLon = cfg.getMinLon();
-        final var maxLon = cfg.getMaxLon();
-        final var minLat = cfg.getMinLat();
-        final var maxLat = cfg.getMaxLat();
-
-        if (minLon != null) {
-            minX = lonToX(minLon);
+    //
+    // Adds a point to a track segment, the index is the position of the
+    // point in the list of points it was read with.
+    //
+    private void addPoint(final TrackSegment.Builder trackSegmentBuilder, final TrackConfiguration trackConfiguration,
+                          final int index, final LatLon latLon, final String text, final Bounds bounds) throws UserException {
+        final var x = lonToX(latLon.getLon());
+        final var y = latToY(latLon.getLat());
+
+        if (cfg.getMinLon() == null) {
+            bounds.minX = Math.min(x, bounds.minX);
         }
-        if (maxLon != null) {
-            maxX = lonToX(maxLon);
+        if (cfg.getMaxLat() == null) {
+            bounds.minY = Math.min(y, bounds.minY);
         }
-        if (minLat != null) {
-            minY = latToY(minLat);
+        if (cfg.getMaxLon() == null) {
+            bounds.maxX = Math.max(x, bounds.maxX);
         }
-        if (maxLat != null) {
-            maxY = latToY(maxLat);
+        if (cfg.getMinLat() == null) {
+            bounds.maxY = Math.max(y, bounds.maxY);
         }
 
-        for (final var latLon : latLonList) {
-            final var x = lonToX(latLon.getLon());
-            final var y = latToY(latLon.getLat());
-
-            if (minLon == null) {
-                minX = Math.min(x, minX);
-            }
-            if (maxLat == null) {
-                minY = Math.min(y, minY);
-            }
-            if (maxLon == null) {
-                maxX = Math.max(x, maxX);
-            }
-            if (minLat == null) {
-                maxY = Math.max(y, maxY);
-            }
-
-            long time;
-            final var forcedPointInterval = trackConfiguration.getForcedPointInterval();
-            if (forcedPointInterval != null) {
-                forcedTime += forcedPointInterval;
-                time = forcedTime;
-            } else {
-                time = latLon.getTime();
-                if (time == Long.MIN_VALUE) {
-                    final var filename = trackConfiguration.getInputGpx().getName();
-                    throw new UserException(
-                            String.format(resourceBundle.getString("error.missingtime"), filename));
-                }
+        long time;
+        final var forcedPointInterval = trackConfiguration.getForcedPointInterval();
+        if (forcedPointInterval != null) {
+            time = (index + 1) * forcedPointInterval;
+        } else {
+            time = latLon.getTime();
+            if (time == Long.MIN_VALUE) {
+                final var filename = trackConfiguration.getInputGpx().getName();
+                throw new UserException(
+                        String.format(resourceBundle.getString("error.missingtime"), filename));
             }
+        }
 
-            if (trackConfiguration.getTimeOffset() != null) {
-                time += trackConfiguration.getTimeOffset();
-            }
+        if (trackConfiguration.getTimeOffset() != null) {
+            time += trackConfiguration.getTimeOffset();
+        }
 
-            final Point2D point;
-            if (latLon instanceof Waypoint) {
-                final var namedPoint = new NamedPoint();
-                namedPoint.setLocation(x, y);
-                namedPoint.setName(((Waypoint) latLon).getName());
-                point = namedPoint;
-            } else {
-                point = new GpxPoint(x, y, latLon, time);
-            }
+        // points with the same time keep their order, so no point is lost
+        trackSegmentBuilder.add(time, x, y, latLon.getLat(), latLon.getLon(), text);
+    }
 
-            // hack to prevent overwriting existing (way)point with same time
-            var freeTime = time;
-            while (timePointMap.containsKey(freeTime)) {
-                freeTime++;
-            }
-            timePointMap.put(freeTime, point);
+    private String createInfo(@NonNull final SpeedUtil speedUtil, final int frame, final Point2D marker) {
+        if (font == null || marker == null) {
+            return null;
         }
-    }
 
-    private void drawInfo(@NonNull final TextRenderer textRenderer, @NonNull final BufferedImage bi, final int frame, @NonNull final Point2D marker) {
         final var dateString = dateFormat.format(getTime(frame));
         final var latLongString = getLatLonString(marker);
-        final var speedString = SpeedUtil.getSpeedString(marker, getTime(frame), frame, cfg.getFps(), cfg.getSpeedUnit());
+        final var speedString = speedUtil.getSpeedString(marker, getTime(frame), frame, cfg.getFps(), cfg.getSpeedUnit());
 
-        final var text = "%s\n%s\n%s".formatted(speedString, latLongString, dateString);
-        final var position = cfg.getInformationPosition();
-        final var margin = cfg.getInformationMargin();
-
-        textRenderer.renderText(text, position, margin, bi);
+        return "%s\n%s\n%s".formatted(speedString, latLongString, dateString);
     }
 
     private String getLatLonString(final Point2D point) {
@@ -671,85 +1073,105 @@ public final class Renderer {
         }
     }
 
-    private Point2D drawMarker(final BufferedImage bi, final int frame) throws UserException {
+    private Point2D findMarker(final int frame) {
+        if (cfg.getMarkerSize() == null || cfg.getMarkerSize() == 0.0) {
+            return null;
+        }
+
+        Point2D point = null;
+        final var t2 = getTime(frame);
+        for (final var trackSegmentList : trackSegmentListList) {
+            for (final var trackSegment : trackSegmentList) {
+                final var floorIndex = trackSegment.floorIndex(t2);
+                if (floorIndex >= 0) {
+                    point = trackSegment.getPoint(floorIndex);
+                    break;
+                }
+            }
+        }
+        return point;
+    }
+
+    private Point2D drawMarker(final BufferedImage bi, final Point origin, final int frame) throws UserException {
         if (cfg.getMarkerSize() == null || cfg.getMarkerSize() == 0.0) {
             return null;
         }
 
         Point2D point = null;
 
-        final var g2 = getGraphics(bi);
+        final var g2 = getGraphics(bi, origin, null);
         final var t2 = getTime(frame);
         final var trackConfigurationList = cfg.getTrackConfigurationList();
 
         var i = 0;
         outer:
-        for (final var timePointMapList : timePointMapListList) {
+        for (final var trackSegmentList : trackSegmentListList) {
             final var trackConfiguration = trackConfigurationList.get(i++);
-            for (final var timePointMap : timePointMapList) {
-                final var ceilingEntry = timePointMap.ceilingEntry(t2);
-                final var floorEntry = timePointMap.floorEntry(t2);
-                if (floorEntry == null) {
+            for (final var trackSegment : trackSegmentList) {
+                final var floorIndex = trackSegment.floorIndex(t2);
+                if (floorIndex < 0) {
                     continue;
                 }
 
-                point = floorEntry.getValue();
-                g2.setColor(ceilingEntry == null ? Color.white : trackConfiguration.getColor());
+                point = trackSegment.getPoint(floorIndex);
+                g2.setColor(trackSegment.getLastTime() < t2 ? Color.white : trackConfiguration.getColor());
 
                 final var trackIcon = trackConfiguration.getTrackIcon();
                 final var trackIconFile = trackConfiguration.getInputIcon();
                 if (trackIconFile != null && trackIconFile.exists() && trackIconFile.canRead()) {
                     try {
-                        drawIconFileOnGraphics2D(point, g2, trackIconFile, trackConfiguration.isTrackIconMirrored());
+                        markChanged(bi, origin, drawIconFileOnGraphics2D(point, g2, trackIconFile, trackConfiguration.isTrackIconMirrored()));
                     } catch (final IOException e) {
                         throw new UserException(resourceBundle.getString("renderer.error.iconfile").formatted(trackIconFile), e);
                     }
                 } else if (trackIcon != null && !trackIcon.getKey().isEmpty()) {
                     try {
-                        drawIconOnGraphics2D(point, g2, trackIcon, trackConfiguration.isTrackIconMirrored());
+                        markChanged(bi, origin, drawIconOnGraphics2D(point, g2, trackIcon, trackConfiguration.isTrackIconMirrored()));
                     } catch (final IOException e) {
                         throw new UserException(resourceBundle.getString("renderer.error.icon"), e);
                     }
                 } else {
-                    drawSimpleCircleOnGraphics2D(point, g2);
+                    markChanged(bi, origin, drawSimpleCircleOnGraphics2D(point, g2));
                 }
 
                 final var label = trackConfiguration.getLabel();
                 if (!label.isEmpty()) {
-                    printText(g2, label, (float) point.getX() + 8f, (float) point.getY() + 4f);
+                    markChanged(bi, origin, printText(g2, label, (float) point.getX() + 8f, (float) point.getY() + 4f));
                 }
 
                 continue outer; // NOPMD -- Continue the outer loop, not the inner one
             }
         }
+        g2.dispose();
         return point;
     }
 
-    private void drawSimpleCircleOnGraphics2D(final Point2D point, final Graphics2D g2) {
+    private Rectangle2D drawSimpleCircleOnGraphics2D(final Point2D point, final Graphics2D g2) {
 
         final double markerSize = cfg.getMarkerSize();
 
-        final var marker = createMarker(markerSize, point);
+        final var marker = createMarker(markerSize, point.getX(), point.getY());
         g2.setStroke(new BasicStroke(1f));
         g2.fill(marker);
         g2.setColor(Color.black);
         g2.draw(marker);
+        return grow(marker.getBounds2D(), 1f);
     }
 
-    private void drawIconOnGraphics2D(final Point2D point, final Graphics2D g2, final TrackIcon trackIcon, final boolean mirrorTrackIcon)
-            throws IOException {
+    private Rectangle2D drawIconOnGraphics2D(final Point2D point, final Graphics2D g2, final TrackIcon trackIcon,
+                                             final boolean mirrorTrackIcon) throws IOException {
         final var trackIconImage = ImageIO.read(getClass().getResource(trackIcon.getFilename()));
-        drawImageOnGraphics2D(point, g2, trackIconImage, mirrorTrackIcon);
+        return drawImageOnGraphics2D(point, g2, trackIconImage, mirrorTrackIcon);
     }
 
-    private void drawIconFileOnGraphics2D(final Point2D point, final Graphics2D g2, final File trackIconFile, final boolean mirrorTrackIcon)
-            throws IOException {
+    private Rectangle2D drawIconFileOnGraphics2D(final Point2D point, final Graphics2D g2, final File trackIconFile,
+                                                 final boolean mirrorTrackIcon) throws IOException {
         final var trackIconImage = ImageIO.read(trackIconFile);
-        drawImageOnGraphics2D(point, g2, trackIconImage, mirrorTrackIcon);
+        return drawImageOnGraphics2D(point, g2, trackIconImage, mirrorTrackIcon);
     }
 
-    private void drawImageOnGraphics2D(final Point2D point, final Graphics2D g2, final BufferedImage trackIconImage, final boolean mirrorTrackIcon)
-            throws IOException {
+    private Rectangle2D drawImageOnGraphics2D(final Point2D point, final Graphics2D g2, final BufferedImage trackIconImage,
+                                              final boolean mirrorTrackIcon) throws IOException {
         var image = trackIconImage;
         final var at = new AffineTransform();
         at.translate((int) point.getX() + 8f, (int) point.getY() + 4f);
@@ -765,82 +1187,118 @@ public final class Renderer {
             throw new IOException(e.getMessage());
         }
         g2.drawImage(image, at, null);
+        return at.createTransformedShape(new Rectangle(image.getWidth(), image.getHeight())).getBounds2D();
     }
 
-    private void paint(final BufferedImage bi, final int frame, final long backTime, final Color overrideColor, final boolean isPreDrawTrack) {
-        final var g2 = getGraphics(bi);
+    private void createTailGradients() {
+        final var tailColor = cfg.getTailColor();
+        for (final var trackConfiguration : cfg.getTrackConfigurationList()) {
+            final var gradient = new Color[TAIL_GRADIENT_STEPS + 1];
+            for (var step = 0; step <= TAIL_GRADIENT_STEPS; step++) {
+                gradient[step] = blendTailColor(trackConfiguration.getColor(), tailColor, (float) step / TAIL_GRADIENT_STEPS);
+            }
+            tailGradients.add(gradient);
+        }
+    }
 
+    private void paint(final MapCanvas canvas, final int frame, final long backTime, final boolean isPreDrawTrack) throws UserException {
+        paint(canvas, null, frame, backTime, isPreDrawTrack, backTime != 0 && !isPreDrawTrack);
+    }
+
+    /**
+     * Paints the track up to the frame. With a back time, the track of that
+     * duration is painted, as a tail fading into the tail color or in one
+     * color, otherwise only the part added since the previous frame. With a
+     * clip, only the part of the track inside the clip is painted.
+     */
+    private void paint(final MapCanvas canvas, final Shape clip, final int frame, final long backTime,
+                       final boolean isPreDrawTrack, final boolean isTail) throws UserException {
+        // the segments of a track are drawn together, the tracks are drawn one after the other
+        for (final var batch : collectTracks(frame, backTime, isPreDrawTrack, isTail)) {
+            canvas.draw(batch.getBounds(), g2 -> {
+                if (clip != null) {
+                    g2.clip(clip);
+                }
+                batch.draw(g2);
+            });
+        }
+    }
+
+    //
+    // Collects the track painted up to the frame, one batch per track with
+    // anything to paint, see paint(...).
+    //
+    private List<TrackPathBatch> collectTracks(final int frame, final long backTime, final boolean isPreDrawTrack, final boolean isTail) {
         final var time = getTime(frame);
 
         final var trackConfigurationList = cfg.getTrackConfigurationList();
+        final List<TrackPathBatch> batches = new ArrayList<>();
 
         var i = 0;
-        for (final var timePointMapList : timePointMapListList) {
-            final var trackConfiguration = trackConfigurationList.get(i++);
+        for (final var trackSegmentList : drawnTrackSegmentListList) {
+            final var trackConfiguration = trackConfigurationList.get(i);
+            final var colors = isTail ? tailGradients.get(i)
+                    : new Color[] {isPreDrawTrack ? trackConfiguration.getPreDrawTrackColor() : trackConfiguration.getColor()};
+            i++;
 
-            for (final var timePointMap : timePointMapList) {
-                g2.setStroke(new BasicStroke(trackConfiguration.getLineWidth(), BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+            final var batch = new TrackPathBatch(trackConfiguration.getLineWidth(), colors);
 
-                final var toTime = timePointMap.floorKey(time);
+            for (final var trackSegment : trackSegmentList) {
+                final var toIndex = trackSegment.floorIndex(time);
 
-                if (toTime == null) {
+                if (toIndex < 0) {
                     continue;
                 }
 
-                Point2D prevPoint = null;
-
                 if (backTime == 0) {
                     final var prevTime = getTime(frame - 1);
-                    var fromTime = timePointMap.floorKey(prevTime);
-                    if (fromTime == null) {
+                    var fromIndex = trackSegment.floorIndex(prevTime);
+                    if (fromIndex < 0) {
                         // try ceiling because we may be at beginning
-                        fromTime = timePointMap.ceilingKey(prevTime);
+                        fromIndex = trackSegment.ceilingIndex(prevTime);
                     }
-                    if (fromTime == null) {
+                    if (fromIndex < 0) {
                         continue;
                     }
 
-                    g2.setPaint(trackConfiguration.getColor());
-                    for (final var entry : timePointMap.subMap(fromTime, true, toTime, true).entrySet()) {
-                        if (prevPoint != null) {
-                            g2.draw(new Line2D.Double(prevPoint, entry.getValue()));
-                        }
-                        prevPoint = entry.getValue();
+                    for (var index = fromIndex + 1; index <= toIndex; index++) {
+                        batch.addLine(0, trackSegment, index);
                     }
                 } else {
-                    for (final var entry : timePointMap.subMap(toTime - backTime, true, toTime, true).entrySet()) {
-                        if (prevPoint != null) {
-                            var drawSegment = false;
-                            if (isPreDrawTrack) {
-                                g2.setColor(trackConfiguration.getPreDrawTrackColor());
-                                drawSegment = true;
-                            } else {
-                                final var ratio = (backTime - time + entry.getKey()) * 1f / backTime;
-                                if (ratio > 0) {
-                                    g2.setPaint(blendTailColor(trackConfiguration.getColor(), overrideColor, ratio));
-                                    drawSegment = true;
-                                }
-                            }
-
-                            if (drawSegment) {
-                                g2.draw(new Line2D.Double(prevPoint, entry.getValue()));
+                    final var fromIndex = trackSegment.ceilingIndex(trackSegment.getTime(toIndex) - backTime);
+                    for (var index = fromIndex + 1; index <= toIndex; index++) {
+                        if (!isTail) {
+                            batch.addLine(0, trackSegment, index);
+                        } else {
+                            final var ratio = (backTime - time + trackSegment.getTime(index)) * 1f / backTime;
+                            if (ratio > 0) {
+                                batch.addLine(Math.round(Math.min(ratio, 1f) * TAIL_GRADIENT_STEPS), trackSegment, index);
                             }
                         }
-                        prevPoint = entry.getValue();
                     }
                 }
             }
+
+            if (!batch.isEmpty()) {
+                batches.add(batch);
+            }
         }
+        return batches;
     }
 
     private long getTime(final int frame) {
         return RenderUtil.getTime(frame, minTime, cfg.getFps(), speedup);
     }
 
-    private void printText(final Graphics2D g2, final String text, final float x, final float y) {
+    //
+    // Prints the text with an outline and returns the bounds of everything
+    // drawn, the outlines of the letters contain the letters.
+    //
+    private Rectangle2D printText(final Graphics2D g2, final String text, final float x, final float y) {
         final var frc = g2.getFontRenderContext();
-        g2.setStroke(new BasicStroke(3f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+        g2.setStroke(new BasicStroke(TEXT_STROKE_WIDTH, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
         final var height = g2.getFontMetrics(font).getHeight();
+        final var bounds = new Rectangle2D.Double();
 
         final var lines = text == null ? new String[0] : text.split("\n");
         var yy = y - (lines.length - 1) * height;
@@ -851,6 +1309,12 @@ public final class Renderer {
                 g2.setColor(Color.white);
                 g2.fill(sha);
                 g2.draw(sha);
+                final var lineBounds = grow(sha.getBounds2D(), TEXT_STROKE_WIDTH / 2);
+                if (bounds.isEmpty()) {
+                    bounds.setRect(lineBounds);
+                } else {
+                    bounds.add(lineBounds);
+                }
 
                 g2.setFont(font);
                 g2.setColor(Color.black);
@@ -859,21 +1323,97 @@ public final class Renderer {
 
             yy += height;
         }
+        return bounds;
+    }
+
+    private static Rectangle2D grow(final Rectangle2D bounds, final float margin) {
+        return new Rectangle2D.Double(bounds.getX() - margin, bounds.getY() - margin,
+                bounds.getWidth() + 2 * margin, bounds.getHeight() + 2 * margin);
     }
 
-    private static class NamedPoint extends Point2D.Double {
-        @Serial
-        private static final long serialVersionUID = 4011941819652468006L;
+    /**
+     * The state of a frame which depends on the previous frames and therefore
+     * has to be calculated in the order of the frames.
+     */
+    private record FrameState(int frame, @NonNull BufferedImage image, @NonNull Point origin, Point2D marker, float flashback,
+                              String info, String lastFrameInfo) { }
+
+    private record ParsedTrack(@NonNull List<TrackSegment> trackSegments, @NonNull List<LatLon> waypoints, @NonNull Bounds bounds) { }
+
+    //
+    // Receives the points of the GPX file of a track and writes them into
+    // track segments of the size known in advance. The newest point of a
+    // segment is held back, as the first and the last point of a segment
+    // may have to be ignored, see isSigmaRoxError().
+    //
+    @SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+    private final class TrackReader implements GpxPointListener {
+
+        private final TrackConfiguration trackConfiguration;
+        private final Bounds bounds = new Bounds();
+        private final List<TrackSegment> trackSegments = new ArrayList<>();
+        private final List<LatLon> waypoints = new ArrayList<>();
+        private TrackSegment.Builder segmentBuilder;
+        private LatLon previous;
+        private LatLon pending;
+        private boolean pendingIsFirst;
+
+        private TrackReader(@NonNull final TrackConfiguration trackConfiguration) {
+            this.trackConfiguration = trackConfiguration;
+        }
 
-        private String name;
+        @Override
+        @SuppressWarnings("PMD.NullAssignment") // A new segment has no points yet
+        public void startTrackSegment(final int pointCount) {
+            segmentBuilder = TrackSegment.createBuilder();
+            if (pointCount > 0) {
+                segmentBuilder.capacity(pointCount);
+            }
+            previous = null;
+            pending = null;
+        }
 
-        public String getName() {
-            return name;
+        @Override
+        public void trackPoint(final double lat, final double lon, final long time, final String cmt) throws UserException {
+            final var point = new LatLon(lat, lon, time, cmt);
+            if (pending == null) {
+                pendingIsFirst = true;
+            } else {
+                if (!pendingIsFirst || !isSigmaRoxError(pending, point)) {
+                    add(pending);
+                }
+                pendingIsFirst = false;
+            }
+            pending = point;
         }
 
-        public void setName(final String name) {
-            this.name = name;
+        @Override
+        @SuppressWarnings("PMD.NullAssignment") // The segment is complete
+        public void endTrackSegment() throws UserException {
+            if (pending != null && (previous == null || !isSigmaRoxError(pending, previous))) {
+                add(pending);
+            }
+            trackSegments.add(trimGpxData(segmentBuilder.build(), trackConfiguration));
+            segmentBuilder = null;
+        }
+
+        @Override
+        public void waypoint(final double lat, final double lon, final long time, final String name) {
+            waypoints.add(new Waypoint(lat, lon, time, name));
         }
+
+        private void add(@NonNull final LatLon point) throws UserException {
+            addPoint(segmentBuilder, trackConfiguration, segmentBuilder.size(), point, point.getCmt(), bounds);
+            previous = point;
+        }
+    }
+
+    // the area covered by the points of a track, merged into the area of the map when all tracks are parsed
+    private static final class Bounds {
+        private double minX = Double.POSITIVE_INFINITY;
+        private double maxX = Double.NEGATIVE_INFINITY;
+        private double minY = Double.POSITIVE_INFINITY;
+        private double maxY = Double.NEGATIVE_INFINITY;
     }
 
 }
@@ -0,0 +1,248 @@
+package app.gpx_animator.core.renderer;
+
+import app.gpx_animator.core.UserException;
+import app.gpx_animator.core.configuration.Configuration;
+import app.gpx_animator.core.preferences.Preferences;
+import app.gpx_animator.core.renderer.cache.TileCache;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.jetbrains.annotations.NonNls;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static app.gpx_animator.core.util.TileUtil.createTileUrl;
+import static app.gpx_animator.core.util.TileUtil.getSwitchOptions;
+import static app.gpx_animator.core.util.TileUtil.getTileRange;
+import static app.gpx_animator.core.util.TileUtil.latToTileY;
+import static app.gpx_animator.core.util.TileUtil.lonToTileX;
+
+/**
+ * Downloads the map tiles of a rendering into the tile cache in advance, so
+ * that the rendering itself doesn't need network access (e.g. on a render
+ * farm). The tiles of the map of the rendering are calculated exactly like
+ * the renderer does. Optionally, the tiles of other zoom levels are seeded
+ * along the route, within a corridor of a given width. The seeded tiles can
+ * be stored in a tile pack, which never expires, to copy them to other
+ * machines.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+public final class TileSeeder {
+
+    @NonNls
+    private static final Logger LOGGER = LoggerFactory.getLogger(TileSeeder.class);
+
+    public static final double DEFAULT_CORRIDOR = 500.0;
+
+    private static final double EARTH_RADIUS = 6_371_000.0;
+    private static final long ESTIMATED_TILE_SIZE = 20 * 1_024;
+    private static final int SEED_THREADS = 8;
+
+    private final ResourceBundle resourceBundle = Preferences.getResourceBundle();
+
+    private final Configuration cfg;
+    private final Integer minZoom;
+    private final Integer maxZoom;
+    private final double corridor;
+    private final File tilePack;
+    private final boolean dryRun;
+
+    /**
+     * @param cfg      the configuration of the rendering
+     * @param minZoom  the lowest additional zoom level to seed along the route or {@code null}
+     * @param maxZoom  the highest additional zoom level to seed along the route or {@code null}
+     * @param corridor the width of the corridor on each side of the route in meters
+     * @param tilePack the tile pack to build from the seeded tiles or {@code null}
+     * @param dryRun   {@code true} to only report the tiles to download
+     */
+    public TileSeeder(@NonNull final Configuration cfg, final Integer minZoom, final Integer maxZoom,
+                      final double corridor, final File tilePack, final boolean dryRun) {
+        this.cfg = cfg;
+        this.minZoom = minZoom;
+        this.maxZoom = maxZoom;
+        this.corridor = corridor;
+        this.tilePack = tilePack;
+        this.dryRun = dryRun;
+    }
+
+    /**
+     * Seeds the tile cache: reports the number and the estimated size of
+     * the tiles first, then downloads the tiles which are not cached yet.
+     *
+     * @param rc the rendering context for progress and cancellation
+     * @throws UserException if there is no map, no tile cache or tiles could not be downloaded
+     */
+    public void seed(@NonNull final RenderingContext rc) throws UserException {
+        final var tileCacheDir = Preferences.getTileCacheDir();
+        if (tileCacheDir == null || tileCacheDir.isBlank()) {
+            throw new UserException(resourceBundle.getString("seeder.error.nocache"));
+        }
+        final var tileCacheTimeLimit = Preferences.getTileCacheTimeLimit();
+
+        final var urls = collectTileUrls(rc);
+        final List<String> missing = new ArrayList<>();
+        var cachedBytes = 0L;
+        for (final var url : urls) {
+            final var size = TileCache.getCachedTileSize(url, tileCacheDir, tileCacheTimeLimit);
+            if (size < 0) {
+                missing.add(url);
+            } else {
+                cachedBytes += size;
+            }
+        }
+        final var cached = urls.size() - missing.size();
+        final var averageSize = cached > 0 ? cachedBytes / cached : ESTIMATED_TILE_SIZE;
+        LOGGER.info("{} tiles needed: {} tiles ({} KiB) are cached, {} tiles (about {} KiB) have to be downloaded",
+                urls.size(), cached, cachedBytes / 1_024, missing.size(), missing.size() * averageSize / 1_024);
+        if (cachedBytes + missing.size() * averageSize > Preferences.getTileCacheMaxSize() * 1_024 * 1_024) {
+            LOGGER.warn("The tiles are larger than the maximum size of the tile cache, some of them will be removed again");
+        }
+        if (dryRun) {
+            return;
+        }
+
+        final long downloaded;
+        try {
+            downloaded = download(rc, missing, tileCacheDir, tileCacheTimeLimit);
+        } finally {
+            TileCache.sweepCache(); // writes the index of the cache
+        }
+        if (tilePack != null) {
+            TileCache.buildTilePack(tilePack, urls);
+        }
+        LOGGER.info("Downloaded {} tiles ({} KiB)", missing.size(), downloaded / 1_024);
+    }
+
+    private long download(@NonNull final RenderingContext rc, @NonNull final List<String> urls,
+                          @NonNull final String tileCacheDir, final long tileCacheTimeLimit) throws UserException {
+        final var threadCounter = new AtomicInteger();
+        final var executor = Executors.newFixedThreadPool(SEED_THREADS, runnable -> {
+            final var thread = new Thread(runnable, "tile-seeder-" + threadCounter.incrementAndGet()); //NON-NLS
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            final var completionService = new ExecutorCompletionService<Long>(executor);
+            for (final var url : urls) {
+                completionService.submit(() -> TileCache.seedTile(url, tileCacheDir, tileCacheTimeLimit));
+            }
+
+            var bytes = 0L;
+            var failed = 0;
+            for (var done = 1; done <= urls.size() && !rc.isCancelled1(); done++) {
+                try {
+                    bytes += completionService.take().get();
+                } catch (final ExecutionException e) {
+                    failed++;
+                    LOGGER.error("{}", e.getCause().getMessage());
+                }
+                rc.setProgress1((int) (100.0 * done / urls.size()),
+                        String.format(resourceBundle.getString("seeder.progress"), done, urls.size()));
+            }
+            if (failed > 0) {
+                throw new UserException(String.format(resourceBundle.getString("seeder.error.failed"), failed, urls.size()));
+            }
+            return bytes;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UserException(e.getMessage(), e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Calculates the URLs of all tiles to seed: the tiles of the map of the
+     * rendering and, for the additional zoom levels, the tiles along the route.
+     *
+     * @param rc the rendering context
+     * @return the URLs of the tiles
+     * @throws UserException if there is no map or the GPX files can't be read
+     */
+    public Set<String> collectTileUrls(@NonNull final RenderingContext rc) throws UserException {
+        final var tmsUrlTemplate = cfg.getTmsUrlTemplate();
+        if (tmsUrlTemplate == null) {
+            throw new UserException(resourceBundle.getString("seeder.error.nomap"));
+        }
+        final var options = getSwitchOptions(tmsUrlTemplate);
+        final var mapArea = new Renderer(cfg).calculateMapArea(rc);
+        final Set<String> urls = new LinkedHashSet<>();
+
+        // the tiles of the rendering, exactly like the background map plugin loads them
+        final int zoom = mapArea.zoom();
+        addTiles(urls, tmsUrlTemplate, options, zoom,
+                getTileRange(zoom, mapArea.minX(), mapArea.maxX(), mapArea.minY(), mapArea.maxY()));
+
+        if (minZoom != null || maxZoom != null) {
+            final var fromZoom = minZoom != null ? minZoom : zoom;
+            final var toZoom = maxZoom != null ? maxZoom : zoom;
+            for (var z = fromZoom; z <= toZoom; z++) {
+                if (z != zoom) {
+                    addCorridorTiles(urls, tmsUrlTemplate, options, z, mapArea);
+                }
+            }
+        }
+        return urls;
+    }
+
+    private void addTiles(@NonNull final Set<String> urls, @NonNull final String tmsUrlTemplate, final String[] options,
+                          final int zoom, @NonNull final Rectangle tiles) {
+        for (var x = tiles.x; x < tiles.x + tiles.width; x++) {
+            for (var y = tiles.y + tiles.height - 1; y >= tiles.y; y--) {
+                urls.add(createTileUrl(tmsUrlTemplate, options, zoom, x, y));
+            }
+        }
+    }
+
+    //
+    // Add the tiles within the corridor around the route. Without a route
+    // (only bounds given), all tiles of the area are added. The corridor is
+    // approximated by squares around points sampled along the route at
+    // intervals of half a tile.
+    //
+    private void addCorridorTiles(@NonNull final Set<String> urls, @NonNull final String tmsUrlTemplate, final String[] options,
+                                  final int zoom, @NonNull final MapArea mapArea) {
+        if (mapArea.trackSegments().isEmpty()) {
+            addTiles(urls, tmsUrlTemplate, options, zoom,
+                    getTileRange(zoom, mapArea.minX(), mapArea.maxX(), mapArea.minY(), mapArea.maxY()));
+            return;
+        }
+
+        final var tileCount = 1 << zoom;
+        for (final var trackSegment : mapArea.trackSegments()) {
+            for (var i = 0; i < trackSegment.size(); i++) {
+                final var lat = trackSegment.getLat(i);
+                final var tileX = lonToTileX(zoom, trackSegment.getLon(i));
+                final var tileY = latToTileY(zoom, lat);
+                final var radius = corridor / (2 * Math.PI * EARTH_RADIUS * Math.cos(Math.toRadians(lat))) * tileCount;
+
+                final var previous = Math.max(i - 1, 0);
+                final var dx = tileX - lonToTileX(zoom, trackSegment.getLon(previous));
+                final var dy = tileY - latToTileY(zoom, trackSegment.getLat(previous));
+                final var steps = (int) Math.ceil(Math.hypot(dx, dy) * 2);
+                for (var step = 0; step <= steps; step++) {
+                    final var fraction = steps == 0 ? 0.0 : (double) step / steps;
+                    final var x = tileX - dx * fraction;
+                    final var y = tileY - dy * fraction;
+                    final var minTileX = Math.max((int) Math.floor(x - radius), 0);
+                    final var maxTileX = Math.min((int) Math.floor(x + radius), tileCount - 1);
+                    final var minTileY = Math.max((int) Math.floor(y - radius), 0);
+                    final var maxTileY = Math.min((int) Math.floor(y + radius), tileCount - 1);
+                    addTiles(urls, tmsUrlTemplate, options, zoom,
+                            new Rectangle(minTileX, minTileY, maxTileX - minTileX + 1, maxTileY - minTileY + 1));
+                }
+            }
+        }
+    }
+
+}
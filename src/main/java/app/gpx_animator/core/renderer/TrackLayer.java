@@ -0,0 +1,176 @@
+package app.gpx_animator.core.renderer;
+
+import app.gpx_animator.core.UserException;
+import app.gpx_animator.core.renderer.canvas.MapCanvas;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static app.gpx_animator.core.util.RenderUtil.getGraphics;
+
+/**
+ * A track rasterized into a transparent image covering its bounds, which
+ * is drawn on the map like any other image. The image is rasterized in
+ * horizontal stripes, one per thread, which are put together afterwards.
+ * Every stripe draws the tracks in the same order, so the tracks overlap
+ * exactly as if they were drawn on the map directly.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+final class TrackLayer {
+
+    private static final int MIN_STRIPE_HEIGHT = 64;
+
+    private final BufferedImage image;
+    private final Point origin;
+
+    /**
+     * @param image  the rasterized track
+     * @param origin the position of the image in the map
+     */
+    TrackLayer(@NonNull final BufferedImage image, @NonNull final Point origin) {
+        this.image = image;
+        this.origin = new Point(origin);
+    }
+
+    /**
+     * Calculates the area of the map the tracks are drawn in.
+     *
+     * @param batches the tracks
+     * @param width   the width of the map
+     * @param height  the height of the map
+     * @return the area, empty if nothing is drawn
+     */
+    static Rectangle getBounds(@NonNull final List<TrackPathBatch> batches, final int width, final int height) {
+        Rectangle2D bounds = new Rectangle();
+        for (final var batch : batches) {
+            bounds = bounds.isEmpty() ? batch.getBounds() : bounds.createUnion(batch.getBounds());
+        }
+        return bounds.getBounds().intersection(new Rectangle(0, 0, width, height));
+    }
+
+    /**
+     * Creates the key identifying the rasterized tracks, a digest of
+     * everything drawn: the projected track points, the colors, the line
+     * widths and the area.
+     *
+     * @param batches the tracks
+     * @param bounds  the area the tracks are rasterized in
+     * @return the key
+     * @throws UserException if the digest can't be calculated
+     */
+    static String createKey(@NonNull final List<TrackPathBatch> batches, @NonNull final Rectangle bounds) throws UserException {
+        try {
+            final var digest = MessageDigest.getInstance("SHA-256");
+            digest.update(ByteBuffer.allocate(4 * Integer.BYTES)
+                    .putInt(bounds.x).putInt(bounds.y).putInt(bounds.width).putInt(bounds.height).flip());
+            for (final var batch : batches) {
+                batch.update(digest);
+            }
+            return String.format("%064x", new BigInteger(1, digest.digest())); //NON-NLS
+        } catch (final NoSuchAlgorithmException e) {
+            throw new UserException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Rasterizes the tracks into a transparent image of the area.
+     *
+     * @param batches the tracks, in the order they are drawn
+     * @param bounds  the area of the map the image covers
+     * @param threads the number of threads rasterizing the stripes
+     * @return the image
+     * @throws UserException if rasterizing was interrupted
+     */
+    static BufferedImage rasterize(@NonNull final List<TrackPathBatch> batches, @NonNull final Rectangle bounds, final int threads)
+            throws UserException {
+        final var image = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_ARGB);
+        final var stripes = Math.max(1, Math.min(threads, bounds.height / MIN_STRIPE_HEIGHT));
+        if (stripes == 1) {
+            drawStripe(image, bounds.getLocation(), batches);
+            return image;
+        }
+
+        final var stripeHeight = (bounds.height + stripes - 1) / stripes;
+        final var threadCounter = new AtomicInteger();
+        final var executor = Executors.newFixedThreadPool(stripes, runnable -> {
+            final var thread = new Thread(runnable, "track-rasterizer-" + threadCounter.incrementAndGet()); //NON-NLS
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            final List<Future<BufferedImage>> futures = new ArrayList<>();
+            for (var top = 0; top < bounds.height; top += stripeHeight) {
+                final var origin = new Point(bounds.x, bounds.y + top);
+                final var height = Math.min(stripeHeight, bounds.height - top);
+                futures.add(executor.submit(() -> {
+                    final var stripe = new BufferedImage(bounds.width, height, BufferedImage.TYPE_INT_ARGB);
+                    drawStripe(stripe, origin, batches);
+                    return stripe;
+                }));
+            }
+            for (var i = 0; i < futures.size(); i++) {
+                image.getRaster().setRect(0, i * stripeHeight, futures.get(i).get().getRaster());
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UserException(e.getMessage(), e);
+        } catch (final ExecutionException e) {
+            final var cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            } else if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new UserException(cause.getMessage(), cause);
+        } finally {
+            executor.shutdownNow();
+        }
+        return image;
+    }
+
+    private static void drawStripe(@NonNull final BufferedImage stripe, @NonNull final Point origin,
+                                   @NonNull final List<TrackPathBatch> batches) {
+        final var area = new Rectangle(origin.x, origin.y, stripe.getWidth(), stripe.getHeight());
+        final var g2 = getGraphics(stripe, origin);
+        try {
+            for (final var batch : batches) {
+                if (batch.getBounds().intersects(area)) {
+                    batch.draw(g2);
+                }
+            }
+        } finally {
+            g2.dispose();
+        }
+    }
+
+    /**
+     * Draws the tracks on the map.
+     *
+     * @param canvas the map
+     * @param clip   the part of the map to draw, or {@code null} to draw everything
+     * @throws UserException if drawing on the map failed
+     */
+    void draw(@NonNull final MapCanvas canvas, final Shape clip) throws UserException {
+        canvas.draw(new Rectangle(origin.x, origin.y, image.getWidth(), image.getHeight()), g2 -> {
+            if (clip != null) {
+                g2.clip(clip);
+            }
+            g2.drawImage(image, origin.x, origin.y, null);
+        });
+    }
+
+}
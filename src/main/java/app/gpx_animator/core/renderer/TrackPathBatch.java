@@ -0,0 +1,127 @@
+package app.gpx_animator.core.renderer;
+
+import app.gpx_animator.core.data.gpx.TrackSegment;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Collects the lines of a track into one path per color bucket, so that
+ * connected lines of the same color are drawn with a single stroke instead
+ * of one {@code Line2D} per line. The buckets are drawn in ascending order,
+ * so lines in higher buckets are drawn on top of lines in lower buckets.
+ */
+final class TrackPathBatch {
+
+    private final Path2D.Double[] paths;
+    private final int[] lastIndices;
+    private final Color[] colors;
+    private final float lineWidth;
+
+    /**
+     * @param lineWidth the width of the lines
+     * @param colors    the colors of the buckets, one per bucket
+     */
+    TrackPathBatch(final float lineWidth, @NonNull final Color... colors) {
+        this.paths = new Path2D.Double[colors.length];
+        this.lastIndices = new int[colors.length];
+        this.colors = colors.clone();
+        this.lineWidth = lineWidth;
+    }
+
+    /**
+     * Adds the line from the previous track point to the track point with
+     * the specified index to the path of the color bucket.
+     *
+     * @param bucket       the color bucket
+     * @param trackSegment the track segment
+     * @param index        the index of the track point the line ends at
+     */
+    void addLine(final int bucket, @NonNull final TrackSegment trackSegment, final int index) {
+        var path = paths[bucket];
+        if (path == null) {
+            path = new Path2D.Double();
+            paths[bucket] = path;
+            path.moveTo(trackSegment.getX(index - 1), trackSegment.getY(index - 1));
+        } else if (lastIndices[bucket] != index - 1) {
+            path.moveTo(trackSegment.getX(index - 1), trackSegment.getY(index - 1));
+        }
+        path.lineTo(trackSegment.getX(index), trackSegment.getY(index));
+        lastIndices[bucket] = index;
+    }
+
+    boolean isEmpty() {
+        return Arrays.stream(paths).allMatch(Objects::isNull);
+    }
+
+    /**
+     * @return the bounds of everything drawn by the batch, including the width of the stroke,
+     *         or {@code null} if the batch is empty
+     */
+    Rectangle2D getBounds() {
+        Rectangle2D bounds = null;
+        for (final var path : paths) {
+            if (path != null) {
+                bounds = bounds == null ? path.getBounds2D() : bounds.createUnion(path.getBounds2D());
+            }
+        }
+        if (bounds != null) {
+            // the line reaches beyond the path by half of its width, plus a pixel of antialiasing
+            final var margin = lineWidth / 2.0 + 1.0;
+            bounds.setRect(bounds.getX() - margin, bounds.getY() - margin,
+                    bounds.getWidth() + 2 * margin, bounds.getHeight() + 2 * margin);
+        }
+        return bounds;
+    }
+
+    /**
+     * Draws the paths of all color buckets. The batch is not changed, so it
+     * can be drawn on more than one graphics.
+     *
+     * @param g2 the graphics to draw on
+     */
+    void draw(@NonNull final Graphics2D g2) {
+        g2.setStroke(new BasicStroke(lineWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+        for (var bucket = 0; bucket < paths.length; bucket++) {
+            final var path = paths[bucket];
+            if (path != null) {
+                g2.setPaint(colors[bucket]);
+                g2.draw(path);
+            }
+        }
+    }
+
+    /**
+     * Adds everything the batch draws, the paths and their style, to the
+     * digest, so equal digests mean equal drawings.
+     *
+     * @param digest the digest to update
+     */
+    void update(@NonNull final MessageDigest digest) {
+        final var buffer = ByteBuffer.allocate(Double.BYTES * 2 + Integer.BYTES * 2);
+        buffer.putFloat(lineWidth).putInt(paths.length);
+        digest.update(buffer.flip());
+        final var coords = new double[6];
+        for (var bucket = 0; bucket < paths.length; bucket++) {
+            buffer.clear().putInt(bucket).putInt(colors[bucket].getRGB());
+            digest.update(buffer.flip());
+            if (paths[bucket] == null) {
+                continue;
+            }
+            for (final var iterator = paths[bucket].getPathIterator(null); !iterator.isDone(); iterator.next()) {
+                // the paths consist of lines only, so every segment has one point
+                buffer.clear().putInt(iterator.currentSegment(coords)).putDouble(coords[0]).putDouble(coords[1]);
+                digest.update(buffer.flip());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,181 @@
+package app.gpx_animator.core.renderer.cache;
+
+import app.gpx_animator.core.UserException;
+import app.gpx_animator.core.renderer.canvas.OffHeapDataBuffer;
+import app.gpx_animator.core.util.CacheFiles;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.jetbrains.annotations.NonNls;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Keeps the composed backgrounds of recent renderings on disk, in the
+ * directory "backgrounds" of the tile cache. A background is identified by
+ * a key describing everything it depends on, so rendering the same map
+ * again, e.g. with another font or marker color, reads the background with
+ * one sequential read instead of loading the map tiles and the background
+ * image again.
+ *
+ * The pixels are stored as they are, in the layout of
+ * {@link BufferedImage#TYPE_3BYTE_BGR}. Only the most recently used
+ * backgrounds are kept, as they are as large as the map, and together they
+ * don't exceed the maximum size of the tile cache.
+ */
+public final class BackgroundCache {
+
+    @NonNls
+    private static final Logger LOGGER = LoggerFactory.getLogger(BackgroundCache.class);
+
+    static final String DIRECTORY = "backgrounds"; //NON-NLS
+    private static final String FILE_EXTENSION = ".gpxac.bgr"; //NON-NLS
+    private static final String TEMP_FILE_SUFFIX = ".tmp"; //NON-NLS
+    private static final int MAGIC = 0x47504247; // "GPBG"
+    private static final int HEADER_SIZE = 3 * Integer.BYTES;
+    private static final int MAX_FILES = 3;
+    private static final int BLOCK_SIZE = 8 * 1_024 * 1_024;
+
+    private BackgroundCache() throws InstantiationException {
+        throw new InstantiationException("BackgroundCache is a utility class which can't be instantiated!");
+    }
+
+    /**
+     * Reads a cached background into the image.
+     *
+     * @param tileCacheDir the directory of the tile cache, {@code null} or empty if caching is disabled
+     * @param key          the description of everything the background depends on
+     * @param maxAge       the maximum age of the cached background in milliseconds
+     * @param image        the image to read the background into
+     * @return {@code true} if the background was cached, otherwise it has to be rendered
+     * @throws UserException if the key can't be hashed
+     */
+    public static boolean load(final String tileCacheDir, @NonNull final String key, final long maxAge,
+                               @NonNull final BufferedImage image) throws UserException {
+        if (!isSupported(tileCacheDir, image)) {
+            return false;
+        }
+        final var file = getFile(tileCacheDir, key);
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (System.currentTimeMillis() - Files.getLastModifiedTime(file).toMillis() > maxAge
+                    || !readHeader(channel, image) || channel.size() != HEADER_SIZE + getSize(image)) {
+                return false;
+            }
+            final var buffer = image.getRaster().getDataBuffer();
+            if (buffer instanceof DataBufferByte bytes) {
+                readFully(channel, ByteBuffer.wrap(bytes.getData()));
+            } else {
+                final var block = new byte[BLOCK_SIZE];
+                for (var index = 0; index < getSize(image); index += BLOCK_SIZE) {
+                    final var length = Math.min(BLOCK_SIZE, getSize(image) - index);
+                    readFully(channel, ByteBuffer.wrap(block, 0, length));
+                    ((OffHeapDataBuffer) buffer).putBytes(index, block, 0, length);
+                }
+            }
+        } catch (final NoSuchFileException e) {
+            return false;
+        } catch (final IOException e) {
+            LOGGER.error("Can't read cached background {}", file, e);
+            return false;
+        }
+        CacheFiles.touch(file);
+        return true;
+    }
+
+    /**
+     * Writes the background to the cache, replacing the least recently used
+     * ones if there are too many or they are too large. A background larger
+     * than the maximum size is not stored at all.
+     *
+     * @param tileCacheDir the directory of the tile cache, {@code null} or empty if caching is disabled
+     * @param key          the description of everything the background depends on
+     * @param image        the background
+     * @param maxSize      the maximum size of the cached backgrounds in bytes, 0 if none are stored
+     * @throws UserException if the key can't be hashed
+     */
+    public static void store(final String tileCacheDir, @NonNull final String key, @NonNull final BufferedImage image,
+                             final long maxSize) throws UserException {
+        if (!isSupported(tileCacheDir, image) || HEADER_SIZE + (long) getSize(image) > maxSize) {
+            return;
+        }
+        final var file = getFile(tileCacheDir, key);
+        try {
+            Files.createDirectories(file.getParent());
+            final var tempFile = Files.createTempFile(file.getParent(), file.getFileName().toString(), TEMP_FILE_SUFFIX);
+            try {
+                write(tempFile, image);
+                Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+            CacheFiles.evict(file, FILE_EXTENSION, MAX_FILES);
+            CacheFiles.evictBySize(file, FILE_EXTENSION, maxSize);
+        } catch (final IOException e) {
+            LOGGER.error("Can't write cached background {}", file, e);
+        }
+    }
+
+    private static boolean isSupported(final String tileCacheDir, @NonNull final BufferedImage image) {
+        final var buffer = image.getRaster().getDataBuffer();
+        final var bgr = image.getType() == BufferedImage.TYPE_3BYTE_BGR && buffer instanceof DataBufferByte
+                || buffer instanceof OffHeapDataBuffer;
+        return bgr && tileCacheDir != null && !tileCacheDir.isBlank();
+    }
+
+    private static void write(@NonNull final Path file, @NonNull final BufferedImage image) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final var header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(image.getWidth()).putInt(image.getHeight());
+            writeFully(channel, header.flip());
+            final var buffer = image.getRaster().getDataBuffer();
+            if (buffer instanceof DataBufferByte bytes) {
+                writeFully(channel, ByteBuffer.wrap(bytes.getData()));
+            } else {
+                final var block = new byte[BLOCK_SIZE];
+                for (var index = 0; index < getSize(image); index += BLOCK_SIZE) {
+                    final var length = Math.min(BLOCK_SIZE, getSize(image) - index);
+                    ((OffHeapDataBuffer) buffer).getBytes(index, block, 0, length);
+                    writeFully(channel, ByteBuffer.wrap(block, 0, length));
+                }
+            }
+        }
+    }
+
+    private static boolean readHeader(@NonNull final FileChannel channel, @NonNull final BufferedImage image) throws IOException {
+        final var header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(channel, header);
+        header.flip();
+        return header.getInt() == MAGIC && header.getInt() == image.getWidth() && header.getInt() == image.getHeight();
+    }
+
+    private static void readFully(@NonNull final FileChannel channel, @NonNull final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Unexpected end of the cached background"); //NON-NLS
+            }
+        }
+    }
+
+    private static void writeFully(@NonNull final FileChannel channel, @NonNull final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static int getSize(@NonNull final BufferedImage image) {
+        return image.getWidth() * image.getHeight() * 3;
+    }
+
+    private static Path getFile(@NonNull final String tileCacheDir, @NonNull final String key) throws UserException {
+        return CacheFiles.getFile(tileCacheDir, DIRECTORY, key, FILE_EXTENSION);
+    }
+
+}
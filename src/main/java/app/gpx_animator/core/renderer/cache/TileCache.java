@@ -17,8 +17,13 @@
  *  Caching characteristics:
  *  1. User specifies location of map tile image file cache.
  *  2. If no cache specified, then no caching occurs.
- *  3. Cache design assumes relatively few files (within OS limits of
- *     number of files per directory).
+ *  3. The files are distributed over 256 shard directories (named after
+ *     the first two characters of the hash), so that the directories stay
+ *     small even with hundreds of thousands of tiles. Tiles of older
+ *     versions, stored directly in the cache directory, are moved into
+ *     their shard directory when they are used. An index file in the
+ *     cache directory knows the size and the last access of every tile,
+ *     so lookups don't have to scan the directory.
  *  4. Cache file names are based on a hash of the URL. This should remove
  *     any naming issues because of special characters in the URL that might
  *     be incompatible with the OS file naming restrictions. It also allows
@@ -28,26 +33,58 @@
  *     this is quite large (12 hours) because with the possible exception of
  *     tiles from the default renderer at openstreetmap.org map tile generation
  *     is not done very often (might be a month or two between changes).
+ *     Additionally, the cache is limited to a user specified size; if it
+ *     grows larger, the least recently used tiles are removed first. Both
+ *     is done by a background sweep using the index. A size of 0 disables
+ *     storing tiles, the sweep removes the cached tiles then. Expired tiles
+ *     with caching metadata of the tile server (ETag, Last-Modified) are
+ *     kept and revalidated with a conditional request when they are used,
+ *     so unchanged tiles are not downloaded again.
+ *  6. Cache files contain the tiles exactly as downloaded, so they are
+ *     never encoded again and keep their original format (e.g. JPEG).
+ *     They are written to a temporary file first and renamed afterwards,
+ *     so concurrent renderings never read a partially written tile.
+ *  7. Tile packs (*.gpxtp files in the cache directory) are read only,
+ *     memory mapped collections of tiles, e.g. a pre-seeded set of tiles
+ *     built from another cache. They are used before the cache files.
+ *  8. Decoded tiles are additionally kept in memory (least recently used
+ *     tiles are dropped first), independent of the file cache, so repeated
+ *     renderings in the same session don't read the files again.
  */
 
 package app.gpx_animator.core.renderer.cache;
 
-import app.gpx_animator.core.Constants;
 import app.gpx_animator.core.UserException;
 import app.gpx_animator.core.preferences.Preferences;
+import app.gpx_animator.core.util.CacheFiles;
 import org.jetbrains.annotations.NonNls;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
-import java.net.URL;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 public final class TileCache {
 
@@ -58,67 +95,222 @@ public final class TileCache {
         throw new InstantiationException("TileCache is a utility class which can't be instantiated!");
     }
 
+    // the files contain the tiles as downloaded, which may be another format than PNG
     private static final String CACHED_FILE_TYPE = "png"; //NON-NLS
     private static final String CACHED_FILE_EXTENSION = ".gpxac.".concat(CACHED_FILE_TYPE); //NON-NLS
-    private static MessageDigest messageDigest = null;
+    private static final ThreadLocal<MessageDigest> MESSAGE_DIGEST = new ThreadLocal<>();
+
+    // decoded tiles in memory, limited to an eighth of the heap
+    private static final TileMemoryCache MEMORY_CACHE = new TileMemoryCache(Runtime.getRuntime().maxMemory() / 8);
+
+    private static final Map<String, TileCacheIndex> INDICES = new ConcurrentHashMap<>();
+    private static final Map<String, List<TilePack>> TILE_PACKS = new ConcurrentHashMap<>();
+    private static final long SWEEP_INTERVAL_MILLIS = 10 * 60 * 1_000;
+    private static final int SWEEP_BATCH_SIZE = 1_000;
+    private static final long SWEEP_BATCH_PAUSE_MILLIS = 10;
+    private static final int SHARD_NAME_LENGTH = 2;
+    private static final String TEMP_FILE_SUFFIX = ".tmp"; //NON-NLS
+    private static final long STALE_TEMP_FILE_MILLIS = 60 * 60 * 1_000;
+
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+    private static final LongAdder REVALIDATED = new LongAdder();
+    private static final LongAdder REFETCHED = new LongAdder();
+
+    /**
+     * Starts a background thread, which periodically removes expired tiles
+     * and the least recently used tiles if the cache is larger than allowed.
+     * If the cache directory has no index yet (e.g. a cache of an older
+     * version), the index is rebuilt from the files in the directory first.
+     */
+    public static void startBackgroundSweep() {
+        final var thread = new Thread(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    sweepCache(true);
+                    Thread.sleep(SWEEP_INTERVAL_MILLIS);
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "tile-cache-sweeper"); //NON-NLS
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Removes expired tiles and the least recently used tiles if the cache
+     * is larger than allowed, and writes the index of the cache.
+     */
+    public static void sweepCache() {
+        try {
+            sweepCache(false);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sweepCache(final boolean rebuildIndex) throws InterruptedException {
+        final var tileCacheDir = Preferences.getTileCacheDir();
+        if (!cachingEnabled(tileCacheDir)) {
+            return;
+        }
+
+        final var index = getIndex(tileCacheDir);
+        if (rebuildIndex && !index.isComplete()) {
+            rebuildIndex(Path.of(tileCacheDir), index);
+        }
+
+        final var evicted = index.evict(Preferences.getTileCacheMaxSize() * 1_024 * 1_024, Preferences.getTileCacheTimeLimit());
+        for (final var filename : evicted) {
+            deleteCacheFile(tileCacheDir, filename);
+        }
+        if (!evicted.isEmpty()) {
+            LOGGER.info("Removed {} tiles from the tile cache, {} tiles ({} MiB) left",
+                    evicted.size(), index.getFileCount(), index.getSize() / 1_024 / 1_024);
+        }
+
+        try {
+            index.save();
+        } catch (final IOException e) {
+            LOGGER.error("Can't write tile cache index in {}", tileCacheDir, e);
+        }
+    }
 
     //
-    // Remove all old cached map tiles
+    // Rebuild the index from the files in the cache directory.
     //
     // It is possible that the user has pointed our cache to a directory
     // that holds other files. We will make a sanity check on files before
-    // we delete them.
+    // we add them to the index (only files in the index are ever deleted).
     //
     // The sanity checks are very basic:
     //  1. Is the length of the name what we expect?
     //  2. Is the file extension (string suffix) correct?
     //
-    // If either check fails, log a warning rather than delete the file.
+    // Tiles are found in the shard directories and, for caches of older
+    // versions, directly in the cache directory. Temporary files left
+    // behind by crashed writes are removed. The directories are read in
+    // small batches to keep the impact on a running rendering low.
     //
-    public static void ageCache() {
-        final var tileCacheDir = Preferences.getTileCacheDir();
-        final var tileCacheTimeLimit = Preferences.getTileCacheTimeLimit();
-        if (cachingEnabled(tileCacheDir)) {
-            // Remove any cached tiles that are too old
-            final var cacheDir = new File(tileCacheDir);
-            final var files = cacheDir.listFiles();
-            if (files != null) {
-                for (var cacheEntry : files) {
-                    final var cacheFilename = cacheEntry.getName();
-                    if ((cacheFilename.length() == 74) && (cacheFilename.endsWith(CACHED_FILE_EXTENSION))) {
-                        ageCacheFile(cacheEntry, tileCacheTimeLimit);
-                    } else {
-                        LOGGER.error("Error: Unknown file in tile cache: {}", cacheFilename);
+    private static void rebuildIndex(final Path cacheDir, final TileCacheIndex index) throws InterruptedException {
+        try {
+            final var files = rebuildIndex(cacheDir, index, 0);
+            index.markComplete();
+            LOGGER.info("Rebuilt tile cache index with {} tiles ({} MiB) from {} files",
+                    index.getFileCount(), index.getSize() / 1_024 / 1_024, files);
+        } catch (final IOException e) {
+            LOGGER.error("Can't read tile cache directory {}", cacheDir, e);
+        }
+    }
+
+    private static int rebuildIndex(final Path directory, final TileCacheIndex index, final int filesBefore)
+            throws IOException, InterruptedException {
+        var files = filesBefore;
+        try (var directoryStream = Files.newDirectoryStream(directory)) {
+            for (final var file : directoryStream) {
+                final var cacheFilename = file.getFileName().toString();
+                final var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                if (attributes.isDirectory() && cacheFilename.length() == SHARD_NAME_LENGTH) {
+                    files = rebuildIndex(file, index, files);
+                } else if (attributes.isDirectory()
+                        && (cacheFilename.equals(BackgroundCache.DIRECTORY) || cacheFilename.equals(TrackLayerCache.DIRECTORY))) {
+                    continue; // the files of the other caches in the tile cache directory are no tiles
+                } else if (cacheFilename.length() == 74 && cacheFilename.endsWith(CACHED_FILE_EXTENSION)) {
+                    index.adopt(cacheFilename, attributes.size(), attributes.lastModifiedTime().toMillis());
+                } else if (cacheFilename.endsWith(TEMP_FILE_SUFFIX)) {
+                    if (System.currentTimeMillis() - attributes.lastModifiedTime().toMillis() > STALE_TEMP_FILE_MILLIS) {
+                        Files.deleteIfExists(file);
                     }
+                } else if (!cacheFilename.equals(TileCacheIndex.INDEX_FILE_NAME) && !cacheFilename.equals(TileCacheIndex.LOCK_FILE_NAME)
+                        && !cacheFilename.endsWith(TilePack.FILE_EXTENSION)) {
+                    LOGGER.warn("Unknown file in tile cache: {}", file);
+                }
+                if (++files % SWEEP_BATCH_SIZE == 0) {
+                    Thread.sleep(SWEEP_BATCH_PAUSE_MILLIS);
                 }
             }
         }
+        return files;
+    }
+
+    private static TileCacheIndex getIndex(final String tileCacheDir) {
+        return INDICES.computeIfAbsent(tileCacheDir, dir -> TileCacheIndex.load(Path.of(dir)));
     }
 
     public static BufferedImage getTile(final String url, final String tileCacheDir, final Long tileCacheTimeLimit) throws UserException {
 
-        BufferedImage image;
+        BufferedImage image = MEMORY_CACHE.get(url, tileCacheTimeLimit);
+        if (image != null) {
+            HITS.increment();
+            return image;
+        }
 
         if (cachingEnabled(tileCacheDir)) {
-            try {
-                image = cachedGetTile(url, tileCacheDir, tileCacheTimeLimit);
-            } catch (final UserException e) {
-                image = unCachedGetTile(url);
+            image = packedGetTile(url, tileCacheDir);
+            if (image != null) {
+                HITS.increment();
+            } else {
+                try {
+                    image = cachedGetTile(url, tileCacheDir, tileCacheTimeLimit);
+                } catch (final UserException e) {
+                    image = unCachedGetTile(url);
+                }
             }
         } else {
+            MISSES.increment();
             image = unCachedGetTile(url);
         }
+
+        MEMORY_CACHE.put(url, image);
+        return image;
+    }
+
+    /**
+     * Gets a tile without any network access, from memory, the tile packs or
+     * the cache directory. In offline mode, expired tiles are used, too.
+     *
+     * @return the tile or {@code null} if it is not cached
+     */
+    public static BufferedImage getCachedTile(final String url, final String tileCacheDir) throws UserException {
+        var image = MEMORY_CACHE.get(url, Long.MAX_VALUE);
+        if (image == null && cachingEnabled(tileCacheDir)) {
+            image = packedGetTile(url, tileCacheDir);
+            if (image == null) {
+                final var filename = hashName(url).concat(CACHED_FILE_EXTENSION);
+                if (lookUpCacheFile(tileCacheDir, filename) != null) {
+                    final var data = readCachedTile(url, tileCacheDir, filename);
+                    if (data != null) {
+                        image = decodeTile(url, data);
+                    }
+                }
+            }
+            if (image != null) {
+                MEMORY_CACHE.put(url, image);
+            }
+        }
+        if (image != null) {
+            HITS.increment();
+        } else {
+            MISSES.increment();
+        }
         return image;
     }
 
     private static BufferedImage unCachedGetTile(final String url) throws UserException {
+        return decodeTile(url, TileDownloader.getDefault().download(url));
+    }
+
+    private static BufferedImage decodeTile(final String url, final byte[] data) throws UserException {
+        return decodeTile(url, new ByteArrayInputStream(data));
+    }
+
+    private static BufferedImage decodeTile(final String url, final InputStream data) throws UserException {
         BufferedImage mapTile;
 
-        final var userAgent = String.format("%s %s on %s %s (%s)", //NON-NLS
-                Constants.APPNAME, Constants.VERSION, Constants.OS_NAME, Constants.OS_VERSION, Constants.OS_ARCH);
-        System.setProperty("http.agent", userAgent);
         try {
-            mapTile = ImageIO.read(new URL(url));
+            mapTile = ImageIO.read(data);
         } catch (final IOException e) {
             throw new UserException("error getting tile ".concat(url), e);
         }
@@ -129,48 +321,333 @@ public final class TileCache {
         return mapTile;
     }
 
+    //
+    // Look up the tile in the tile packs of the cache directory. The tiles in
+    // the packs are pre-seeded and never expire.
+    //
+    private static BufferedImage packedGetTile(final String url, final String tileCacheDir) throws UserException {
+        final var packs = getTilePacks(tileCacheDir);
+        if (packs.isEmpty()) {
+            return null;
+        }
+        final var hash = hashBytes(url);
+        for (final var pack : packs) {
+            final var data = pack.get(hash);
+            if (data != null) {
+                try {
+                    return decodeTile(url, new ByteBufferInputStream(data));
+                } catch (final UserException e) {
+                    LOGGER.error("Error: Failed to read tile {} from tile pack {}", url, pack.getFile(), e);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static List<TilePack> getTilePacks(final String tileCacheDir) {
+        return TILE_PACKS.computeIfAbsent(tileCacheDir, dir -> {
+            final List<TilePack> packs = new ArrayList<>();
+            try (var directoryStream = Files.newDirectoryStream(Path.of(dir), "*".concat(TilePack.FILE_EXTENSION))) {
+                for (final var file : directoryStream) {
+                    try {
+                        final var pack = TilePack.open(file);
+                        LOGGER.info("Using tile pack {} with {} tiles", file, pack.size());
+                        packs.add(pack);
+                    } catch (final IOException e) {
+                        LOGGER.error("Can't open tile pack {}", file, e);
+                    }
+                }
+            } catch (final IOException e) {
+                LOGGER.error("Can't read tile cache directory {}", dir, e);
+            }
+            return packs;
+        });
+    }
+
+    /**
+     * Builds a tile pack from all tiles in the tile cache directory. The
+     * pack can be used by copying it into the tile cache directory of
+     * another installation.
+     *
+     * @param packFile the tile pack file to create
+     * @throws UserException if the pack can't be built
+     */
+    public static void buildTilePack(final File packFile) throws UserException {
+        buildTilePack(packFile, Preferences.getTileCacheDir());
+    }
+
+    //
+    // The tiles are only searched in the shard directories and, for caches
+    // of older versions, directly in the cache directory, the directories of
+    // the other caches in the tile cache directory are left out.
+    //
+    static void buildTilePack(final File packFile, final String tileCacheDir) throws UserException {
+        final var cacheDir = Path.of(tileCacheDir);
+        final Map<String, Path> tiles = new TreeMap<>();
+        try (var files = Files.walk(cacheDir, 2)) {
+            files.filter(file -> {
+                final var directory = file.getParent();
+                final var cacheFilename = file.getFileName().toString();
+                return (cacheDir.equals(directory) || cacheDir.equals(directory.getParent())
+                        && directory.getFileName().toString().length() == SHARD_NAME_LENGTH)
+                        && cacheFilename.length() == 74 && cacheFilename.endsWith(CACHED_FILE_EXTENSION);
+            }).forEach(file -> tiles.putIfAbsent(file.getFileName().toString(), file));
+        } catch (final IOException | UncheckedIOException e) {
+            throw new UserException("error building tile pack %s: %s".formatted(packFile, e.getMessage()), e);
+        }
+        buildTilePack(packFile, tiles.values(), tileCacheDir);
+    }
+
+    /**
+     * Builds a tile pack from some tiles of the tile cache directory, e.g.
+     * the tiles seeded for a rendering. Tiles which are not in the cache
+     * directory are left out.
+     *
+     * @param packFile the tile pack file to create
+     * @param urls     the URLs of the tiles
+     * @throws UserException if the pack can't be built
+     */
+    public static void buildTilePack(final File packFile, final Collection<String> urls) throws UserException {
+        final var tileCacheDir = Preferences.getTileCacheDir();
+        final Map<String, Path> tiles = new TreeMap<>();
+        for (final var url : urls) {
+            final var filename = hashName(url).concat(CACHED_FILE_EXTENSION);
+            final var cacheFile = getCacheFile(tileCacheDir, filename);
+            final var legacyCacheFile = getLegacyCacheFile(tileCacheDir, filename);
+            if (Files.isRegularFile(cacheFile)) {
+                tiles.put(filename, cacheFile);
+            } else if (Files.isRegularFile(legacyCacheFile)) {
+                tiles.put(filename, legacyCacheFile);
+            } else {
+                LOGGER.warn("Tile {} is not in the tile cache, it is missing in the tile pack", url);
+            }
+        }
+        buildTilePack(packFile, tiles.values(), tileCacheDir);
+    }
+
+    private static void buildTilePack(final File packFile, final Collection<Path> tiles, final String tileCacheDir) throws UserException {
+        try {
+            final var count = TilePack.build(new ArrayList<>(tiles), packFile.toPath());
+            LOGGER.info("Built tile pack {} with {} tiles from {}", packFile, count, tileCacheDir);
+        } catch (final IOException e) {
+            throw new UserException("error building tile pack %s: %s".formatted(packFile, e.getMessage()), e);
+        }
+    }
+
     private static BufferedImage cachedGetTile(final String url, final String tileCacheDir, final Long tileCacheTimeLimit) throws UserException {
-        BufferedImage mapTile = null;
+        final var tile = cachedGetTileData(url, tileCacheDir, tileCacheTimeLimit);
+        try {
+            return decodeTile(url, tile.data());
+        } catch (final UserException e) {
+            // Remove the file we could not read, it will be downloaded again.
+            LOGGER.error("Error: Failed to read cached tile {}", url, e);
+            final var filename = hashName(url).concat(CACHED_FILE_EXTENSION);
+            getIndex(tileCacheDir).remove(filename);
+            deleteCacheFile(tileCacheDir, filename);
+            throw e;
+        }
+    }
+
+    //
+    // Get the raw data of a tile from the cache directory. If the tile is not
+    // in the cache, it is downloaded and written into the cache. If the tile
+    // is expired, it is revalidated with the tile server if possible, which
+    // avoids downloading tiles that have not changed.
+    //
+    private static CachedTile cachedGetTileData(final String url, final String tileCacheDir, final Long tileCacheTimeLimit)
+            throws UserException {
         final var filename = hashName(url).concat(CACHED_FILE_EXTENSION);
-        final var path = tileCacheDir.concat(File.separator).concat(filename);
-        final var cacheFile = new File(path);
+        final var cacheFile = getCacheFile(tileCacheDir, filename);
+        final var index = getIndex(tileCacheDir);
+        var entry = lookUpCacheFile(tileCacheDir, filename);
 
-        // Age out old tile file in cache directory.
-        ageCacheFile(cacheFile, tileCacheTimeLimit);
+        // If map tile is in cache and not expired, then return it.
+        if (entry != null && !entry.isExpired(System.currentTimeMillis(), tileCacheTimeLimit)) {
+            final var data = readCachedTile(url, tileCacheDir, filename);
+            if (data != null) {
+                HITS.increment();
+                return new CachedTile(data, 0);
+            }
+            entry = null;
+        }
 
-        // If map tile is in cache, then return it.
-        if (cacheFile.isFile()) {
-            try {
-                mapTile = ImageIO.read(cacheFile);
-            } catch (final IOException e) {
-                // Treat as non-fatal, we will notify the user then attempt to
-                // remove the file we could not read.
+        // If the expired tile has caching metadata, ask the tile server whether it has changed.
+        var metadata = TileMetadata.NONE;
+        if (entry != null && entry.metadata().canRevalidate()) {
+            metadata = entry.metadata();
+        } else if (entry != null) {
+            index.remove(filename);
+            deleteCacheFile(tileCacheDir, filename);
+        }
+        final var response = TileDownloader.getDefault().download(url, metadata);
+        if (response.isNotModified()) {
+            final var data = readCachedTile(url, tileCacheDir, filename);
+            if (data != null) {
+                index.refresh(filename, System.currentTimeMillis(), response.metadata());
+                REVALIDATED.increment();
+                return new CachedTile(data, 0);
+            }
+            return cachedGetTileData(url, tileCacheDir, tileCacheTimeLimit); // removed meanwhile, download it again
+        }
+        if (entry != null) {
+            REFETCHED.increment();
+        } else {
+            MISSES.increment();
+        }
 
-                LOGGER.error("Error: Failed to read cached tile {} ({})", url, path, e);
-                if (cacheFile.exists() && !cacheFile.delete()) {
-                    //noinspection DuplicateStringLiteralInspection
-                    LOGGER.error("Can't delete tile cache file: {}", cacheFile);
-                }
+        // the tile is stored exactly as it was downloaded, without encoding it again
+        final var data = response.data();
+        try {
+            storeCacheFile(tileCacheDir, filename, data, response.metadata());
+        } catch (final IOException e) {
+            // Treat as non-fatal. This should revert the behavior to the same
+            // as running without a cache.
+            LOGGER.error("Error writing cached tile {} ({})", url, cacheFile, e);
+        }
+        return new CachedTile(data, data.length);
+    }
+
+    //
+    // Read a tile file of the cache. If it is missing or can't be read, it is
+    // removed from the index and null is returned.
+    //
+    private static byte[] readCachedTile(final String url, final String tileCacheDir, final String filename) {
+        try {
+            return readCacheFile(tileCacheDir, filename);
+        } catch (final NoSuchFileException e) {
+            LOGGER.debug("Cached tile {} was removed ({})", url, filename);
+            getIndex(tileCacheDir).remove(filename);
+        } catch (final IOException e) {
+            // Treat as non-fatal, we will notify the user then attempt to
+            // remove the file we could not read.
+            LOGGER.error("Error: Failed to read cached tile {} ({})", url, filename, e);
+            getIndex(tileCacheDir).remove(filename);
+            deleteCacheFile(tileCacheDir, filename);
+        }
+        return null;
+    }
+
+    //
+    // Look up a tile file in the index. The tile may be in the directory
+    // without being in the index, as long as the index is not complete or
+    // if another process stored it since the index was merged last time.
+    //
+    private static TileCacheIndex.Entry lookUpCacheFile(final String tileCacheDir, final String filename) {
+        final var index = getIndex(tileCacheDir);
+        var entry = index.get(filename);
+        if (entry == null) {
+            final var cacheFile = getCacheFile(tileCacheDir, filename).toFile();
+            final var existingFile = cacheFile.isFile() ? cacheFile : getLegacyCacheFile(tileCacheDir, filename).toFile();
+            if (existingFile.isFile()) {
+                index.adopt(filename, existingFile.length(), existingFile.lastModified());
+                entry = index.get(filename);
+            }
+        }
+        return entry;
+    }
+
+    private static void storeCacheFile(final String tileCacheDir, final String filename, final byte[] data, final TileMetadata metadata)
+            throws IOException {
+        if (Preferences.getTileCacheMaxSize() <= 0) {
+            return; // storing tiles is disabled, the sweep removes the cached tiles
+        }
+        writeCacheFile(getCacheFile(tileCacheDir, filename), data);
+        getIndex(tileCacheDir).put(filename, data.length, System.currentTimeMillis(), metadata);
+    }
+
+    /**
+     * Checks whether a tile is available without downloading it, either in
+     * a tile pack or (not expired) in the cache directory.
+     *
+     * @return the size of the tile in bytes or {@code -1} if the tile is not available
+     */
+    public static long getCachedTileSize(final String url, final String tileCacheDir, final Long tileCacheTimeLimit) throws UserException {
+        if (!cachingEnabled(tileCacheDir)) {
+            return -1;
+        }
+        final var hash = hashBytes(url);
+        for (final var pack : getTilePacks(tileCacheDir)) {
+            final var data = pack.get(hash);
+            if (data != null) {
+                return data.remaining();
             }
         }
+        final var entry = lookUpCacheFile(tileCacheDir, CacheFiles.toHex(hash).concat(CACHED_FILE_EXTENSION));
+        return entry != null && !entry.isExpired(System.currentTimeMillis(), tileCacheTimeLimit) ? entry.size() : -1;
+    }
+
+    /**
+     * Downloads a tile into the cache directory, unless it is available
+     * already. Expired tiles are revalidated. The tile is not decoded.
+     *
+     * @return the number of bytes downloaded, {@code 0} if the tile was available or has not changed
+     * @throws UserException if the tile can't be downloaded
+     */
+    public static long seedTile(final String url, final String tileCacheDir, final Long tileCacheTimeLimit) throws UserException {
+        if (getCachedTileSize(url, tileCacheDir, tileCacheTimeLimit) >= 0) {
+            return 0;
+        }
+        return cachedGetTileData(url, tileCacheDir, tileCacheTimeLimit).downloaded();
+    }
+
+    /**
+     * @return the number of tiles loaded since the start, by their origin
+     */
+    public static TileCacheStatistics getStatistics() {
+        return new TileCacheStatistics(HITS.sum(), MISSES.sum(), REVALIDATED.sum(), REFETCHED.sum());
+    }
+
+    //
+    // The tiles are stored in 256 shard directories, named after the first
+    // two characters of the hash, to keep the directories small.
+    //
+    private static Path getCacheFile(final String tileCacheDir, final String filename) {
+        return Path.of(tileCacheDir, filename.substring(0, SHARD_NAME_LENGTH), filename);
+    }
 
-        //
-        // If we have been successful in reading our cached map tile then mapTile
-        // will be non-null. If it is null, then we need to download the image
-        // tile from the server and then write it into our cache.
-        //
-        if (mapTile == null) {          // Map tile doesn't exist or we could not read it
-            mapTile = unCachedGetTile(url);
+    //
+    // Older versions stored all tiles directly in the cache directory.
+    //
+    private static Path getLegacyCacheFile(final String tileCacheDir, final String filename) {
+        return Path.of(tileCacheDir, filename);
+    }
+
+    //
+    // Read a cached tile. A tile found at the location of older versions is
+    // moved into its shard directory first (lazy migration).
+    //
+    private static byte[] readCacheFile(final String tileCacheDir, final String filename) throws IOException {
+        final var cacheFile = getCacheFile(tileCacheDir, filename);
+        try {
+            return Files.readAllBytes(cacheFile);
+        } catch (final NoSuchFileException e) {
+            final var legacyCacheFile = getLegacyCacheFile(tileCacheDir, filename);
+            if (!Files.isRegularFile(legacyCacheFile)) {
+                throw e;
+            }
+            Files.createDirectories(cacheFile.getParent());
             try {
-                ImageIO.write(mapTile, CACHED_FILE_TYPE, cacheFile);
-            } catch (final IOException e) {
-                // Treat as non-fatal. This should revert the behavior to the same
-                // as running without a cache.
-                LOGGER.error("Error writing cached tile {} ({})", url, path, e);
+                Files.move(legacyCacheFile, cacheFile, StandardCopyOption.ATOMIC_MOVE);
+            } catch (final NoSuchFileException | FileAlreadyExistsException ignored) {
+                // migrated concurrently by another rendering
             }
+            return Files.readAllBytes(cacheFile);
         }
+    }
 
-        return mapTile;
+    //
+    // Write a tile to a temporary file and rename it afterwards, so that
+    // concurrent renderings never read a partially written tile.
+    //
+    static void writeCacheFile(final Path cacheFile, final byte[] data) throws IOException {
+        Files.createDirectories(cacheFile.getParent());
+        final var tempFile = Files.createTempFile(cacheFile.getParent(), cacheFile.getFileName().toString(), TEMP_FILE_SUFFIX);
+        try {
+            Files.write(tempFile, data);
+            Files.move(tempFile, cacheFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
     }
 
     //
@@ -200,41 +677,66 @@ public final class TileCache {
         return result;
     }
 
-    //
-    // Check age on a file and remove it if it is too old.
-    //
-    private static void ageCacheFile(final File cacheFile, final Long tileCacheTimeLimit) {
-        final var fileDate = new Date(cacheFile.lastModified());
-        var msBetweenDates = new Date().getTime() - fileDate.getTime();
-        if ((msBetweenDates) > tileCacheTimeLimit) {
-            if (cacheFile.exists() && !cacheFile.delete()) {
+    private static void deleteCacheFile(final String tileCacheDir, final String filename) {
+        for (final var cacheFile : List.of(getCacheFile(tileCacheDir, filename), getLegacyCacheFile(tileCacheDir, filename))) {
+            try {
+                Files.deleteIfExists(cacheFile);
+            } catch (final IOException e) {
                 //noinspection DuplicateStringLiteralInspection
-                LOGGER.error("Can't delete tile cache file: {}", cacheFile);
+                LOGGER.error("Can't delete tile cache file: {}", cacheFile, e);
             }
         }
     }
 
     private static String hashName(final String url) throws UserException {
+        return CacheFiles.toHex(hashBytes(url));
+    }
+
+    private static byte[] hashBytes(final String url) throws UserException {
         try {
+            // a message digest is not thread safe, and tiles are loaded concurrently
+            var messageDigest = MESSAGE_DIGEST.get();
             if (messageDigest == null) {
                 messageDigest = MessageDigest.getInstance("SHA-256");
+                MESSAGE_DIGEST.set(messageDigest);
             }
-            return bytesToHex(messageDigest.digest(url.getBytes(StandardCharsets.UTF_8)));
+            return messageDigest.digest(url.getBytes(StandardCharsets.UTF_8));
         } catch (final NoSuchAlgorithmException e) {
             throw new UserException("error creating hash name ".concat(url), e);
         }
     }
 
-    private static String bytesToHex(final byte... hash) {
-        final var hexString = new StringBuilder();
-        for (var b : hash) {
-            final var hex = Integer.toHexString(0xff & b);
-            if (hex.length() == 1) { // NOPMD -- Ignore magic number literal
-                //noinspection MagicCharacter
-                hexString.append('0');
+    private record CachedTile(byte[] data, long downloaded) { }
+
+    /**
+     * Reads the tile data of a tile pack without copying it first.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset, final int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
             }
-            hexString.append(hex);
+            final var count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
         }
-        return hexString.toString();
     }
 }
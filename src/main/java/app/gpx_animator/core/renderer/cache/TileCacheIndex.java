@@ -0,0 +1,370 @@
+package app.gpx_animator.core.renderer.cache;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.jetbrains.annotations.NonNls;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The persistent index of the tile cache directory. It knows the size, the
+ * time of the last access and the time of creation of every cached tile
+ * file, so that lookups don't need to access the file system and the cache
+ * can be limited in size without scanning the directory. The entries are
+ * kept in the order of their last access, the least recently used first.
+ * For every tile, the HTTP caching metadata is kept, too, so that expired
+ * tiles can be revalidated instead of downloaded again.
+ *
+ * The index is stored in the cache directory itself. If it is missing or
+ * unreadable, it is rebuilt from the files in the directory. Several
+ * processes may use the same cache directory: before the index is written,
+ * it is merged with the index written by the other processes meanwhile,
+ * while holding a lock on the lock file of the index.
+ *
+ * This class is thread safe.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+final class TileCacheIndex {
+
+    @NonNls
+    private static final Logger LOGGER = LoggerFactory.getLogger(TileCacheIndex.class);
+
+    static final String INDEX_FILE_NAME = "index.gpxac"; //NON-NLS
+    static final String LOCK_FILE_NAME = "index.gpxac.lock"; //NON-NLS
+
+    private static final int MAGIC = 0x47504143; // "GPAC"
+    private static final int VERSION = 2;
+    private static final int VERSION_WITHOUT_METADATA = 1;
+
+    private final Path indexFile;
+    private final Path lockFile;
+    private final Object saveLock = new Object();
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<String> removed = new HashSet<>(); // since the last save, so they are not merged again
+    private volatile boolean complete;
+    private long size;
+    private boolean modified;
+
+    private TileCacheIndex(@NonNull final Path directory, final boolean complete) {
+        this.indexFile = directory.resolve(INDEX_FILE_NAME);
+        this.lockFile = directory.resolve(LOCK_FILE_NAME);
+        this.complete = complete;
+    }
+
+    /**
+     * Loads the index of a cache directory. If there is no valid index yet,
+     * an empty index is returned, which has to be filled using
+     * {@link #adopt(String, long, long)} for the files in the directory.
+     *
+     * @param directory the cache directory
+     * @return the index
+     */
+    static TileCacheIndex load(@NonNull final Path directory) {
+        final var indexFile = directory.resolve(INDEX_FILE_NAME);
+        try {
+            final var index = new TileCacheIndex(directory, true);
+            for (final var entry : read(indexFile)) {
+                index.entries.put(entry.fileName(), entry);
+                index.size += entry.size();
+            }
+            return index;
+        } catch (final NoSuchFileException e) {
+            LOGGER.info("No tile cache index found in {}, rebuilding it", directory);
+        } catch (final IOException e) {
+            LOGGER.warn("Can't read tile cache index {}, rebuilding it", indexFile, e);
+        }
+        return new TileCacheIndex(directory, false);
+    }
+
+    /**
+     * @return {@code true} if the index was loaded or rebuilt, {@code false} if it has to be rebuilt from the directory
+     */
+    boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Marks the index as complete after all files of the directory were adopted.
+     */
+    void markComplete() {
+        complete = true;
+    }
+
+    /**
+     * Looks up a file and marks it as used.
+     *
+     * @param fileName the name of the tile file
+     * @return the entry or {@code null} if the file is not in the index
+     */
+    synchronized Entry get(@NonNull final String fileName) {
+        final var entry = entries.get(fileName);
+        if (entry == null) {
+            return null;
+        }
+        final var used = new Entry(fileName, entry.size(), System.currentTimeMillis(), entry.created(), entry.metadata());
+        entries.put(fileName, used);
+        modified = true;
+        return used;
+    }
+
+    /**
+     * Adds a new file without caching metadata to the index (as the most recently used one).
+     */
+    void put(@NonNull final String fileName, final long fileSize, final long created) {
+        put(fileName, fileSize, created, TileMetadata.NONE);
+    }
+
+    /**
+     * Adds a new file to the index (as the most recently used one).
+     */
+    synchronized void put(@NonNull final String fileName, final long fileSize, final long created, @NonNull final TileMetadata metadata) {
+        remove(fileName);
+        removed.remove(fileName);
+        entries.put(fileName, new Entry(fileName, fileSize, created, created, metadata));
+        size += fileSize;
+        modified = true;
+    }
+
+    /**
+     * Marks a file as created now, after the tile server confirmed that the
+     * tile has not changed.
+     */
+    synchronized void refresh(@NonNull final String fileName, final long created, @NonNull final TileMetadata metadata) {
+        final var entry = entries.get(fileName);
+        if (entry != null) {
+            entries.put(fileName, new Entry(fileName, entry.size(), created, created, metadata));
+            modified = true;
+        }
+    }
+
+    /**
+     * Adds an existing file which was found in the directory, but only if it
+     * is not in the index already. The last access is unknown, so the time
+     * of the last modification is used instead.
+     */
+    synchronized void adopt(@NonNull final String fileName, final long fileSize, final long lastModified) {
+        if (entries.containsKey(fileName)) {
+            return;
+        }
+        entries.put(fileName, new Entry(fileName, fileSize, lastModified, lastModified, TileMetadata.NONE));
+        size += fileSize;
+        modified = true;
+    }
+
+    synchronized void remove(@NonNull final String fileName) {
+        final var entry = entries.remove(fileName);
+        if (entry != null) {
+            size -= entry.size();
+            removed.add(fileName);
+            modified = true;
+        }
+    }
+
+    /**
+     * @return the total size of all files in the index in bytes
+     */
+    synchronized long getSize() {
+        return size;
+    }
+
+    synchronized int getFileCount() {
+        return entries.size();
+    }
+
+    /**
+     * Removes all expired files, which can't be revalidated, and then the
+     * least recently used files until the cache fits into the maximum size.
+     * The files are removed from the index only; the caller is responsible
+     * to delete them.
+     *
+     * @param maxSize the maximum size of the cache in bytes
+     * @param maxAge  the maximum age of a file in milliseconds
+     * @return the names of the files to delete
+     */
+    synchronized List<String> evict(final long maxSize, final long maxAge) {
+        final List<String> evicted = new ArrayList<>();
+        final var now = System.currentTimeMillis();
+
+        final var iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            final var entry = iterator.next();
+            if (entry.isExpired(now, maxAge) && !entry.metadata().canRevalidate()) {
+                evicted.add(entry.fileName());
+                removed.add(entry.fileName());
+                size -= entry.size();
+                iterator.remove();
+            }
+        }
+
+        final var lruIterator = entries.values().iterator();
+        while (size > maxSize && lruIterator.hasNext()) {
+            final var entry = lruIterator.next();
+            evicted.add(entry.fileName());
+            removed.add(entry.fileName());
+            size -= entry.size();
+            lruIterator.remove();
+        }
+
+        modified |= !evicted.isEmpty();
+        return evicted;
+    }
+
+    /**
+     * Writes the index to the cache directory, if it was modified. The index
+     * written by other processes meanwhile is merged first, so their tiles
+     * stay in the index. The file is replaced atomically, so a crash can't
+     * leave a broken index behind.
+     *
+     * @throws IOException if the index can't be written
+     */
+    void save() throws IOException {
+        synchronized (saveLock) { // the file lock is held by the process, not by the thread
+            synchronized (this) {
+                if (!modified) {
+                    return;
+                }
+            }
+            try (var channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                final var lock = channel.lock();
+                try {
+                    merge(readSaved());
+                    write();
+                } finally {
+                    lock.release();
+                }
+            }
+        }
+    }
+
+    private List<Entry> readSaved() {
+        try {
+            return read(indexFile);
+        } catch (final NoSuchFileException e) {
+            return List.of();
+        } catch (final IOException e) {
+            LOGGER.warn("Can't read tile cache index {}, replacing it", indexFile, e);
+            return List.of();
+        }
+    }
+
+    //
+    // Adds the files of the saved index which this process doesn't know,
+    // except the ones it removed, and takes the later access of the files
+    // both know. The entries are ordered by their last access again.
+    //
+    private synchronized void merge(@NonNull final List<Entry> saved) {
+        final Map<String, Entry> merged = new LinkedHashMap<>(entries); // keeps the order of the same access times
+        for (final var entry : saved) {
+            if (removed.contains(entry.fileName())) {
+                continue;
+            }
+            final var known = merged.get(entry.fileName());
+            if (known == null) {
+                merged.put(entry.fileName(), entry);
+                size += entry.size();
+            } else if (entry.lastAccess() > known.lastAccess()) {
+                merged.put(entry.fileName(), new Entry(known.fileName(), known.size(), entry.lastAccess(), known.created(), known.metadata()));
+            }
+        }
+        final List<Entry> ordered = new ArrayList<>(merged.values());
+        ordered.sort(Comparator.comparingLong(Entry::lastAccess));
+        entries.clear();
+        for (final var entry : ordered) {
+            entries.put(entry.fileName(), entry);
+        }
+        removed.clear();
+    }
+
+    private void write() throws IOException {
+        final List<Entry> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(entries.values());
+            modified = false;
+        }
+
+        final var tempFile = Files.createTempFile(indexFile.getParent(), INDEX_FILE_NAME, ".tmp"); //NON-NLS
+        try {
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(snapshot.size());
+                for (final var entry : snapshot) {
+                    out.writeUTF(entry.fileName());
+                    out.writeLong(entry.size());
+                    out.writeLong(entry.lastAccess());
+                    out.writeLong(entry.created());
+                    out.writeUTF(entry.metadata().eTag() != null ? entry.metadata().eTag() : "");
+                    out.writeUTF(entry.metadata().lastModified() != null ? entry.metadata().lastModified() : "");
+                    out.writeLong(entry.metadata().maxAge());
+                }
+            }
+            Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException e) {
+            synchronized (this) {
+                modified = true;
+            }
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+    }
+
+    private static List<Entry> read(@NonNull final Path indexFile) throws IOException {
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("unknown format");
+            }
+            final var version = in.readInt();
+            if (version != VERSION && version != VERSION_WITHOUT_METADATA) {
+                throw new IOException("unknown version " + version);
+            }
+            final var count = in.readInt();
+            final List<Entry> entries = new ArrayList<>(count);
+            for (var i = 0; i < count; i++) {
+                final var fileName = in.readUTF();
+                final var fileSize = in.readLong();
+                final var lastAccess = in.readLong();
+                final var created = in.readLong();
+                final var metadata = version == VERSION
+                        ? new TileMetadata(readOptionalUTF(in), readOptionalUTF(in), in.readLong())
+                        : TileMetadata.NONE;
+                entries.add(new Entry(fileName, fileSize, lastAccess, created, metadata));
+            }
+            return entries;
+        }
+    }
+
+    private static String readOptionalUTF(@NonNull final DataInputStream in) throws IOException {
+        final var value = in.readUTF();
+        return value.isEmpty() ? null : value;
+    }
+
+    record Entry(@NonNull String fileName, long size, long lastAccess, long created, @NonNull TileMetadata metadata) {
+
+        /**
+         * A file is expired if it is older than the maximum age of the cache
+         * and older than the maximum age given by the tile server.
+         */
+        boolean isExpired(final long now, final long maxAge) {
+            return now - created > Math.max(maxAge, metadata.maxAge());
+        }
+    }
+
+}
@@ -0,0 +1,21 @@
+package app.gpx_animator.core.renderer.cache;
+
+/**
+ * The number of map tiles loaded by the tile cache, by their origin.
+ *
+ * @param hits        tiles found in memory, in a tile pack or in the cache directory
+ * @param misses      tiles not cached, which were downloaded
+ * @param revalidated expired tiles, which the tile server confirmed as unchanged
+ * @param refetched   expired tiles, which were downloaded again
+ */
+public record TileCacheStatistics(long hits, long misses, long revalidated, long refetched) {
+
+    /**
+     * @return the number of tiles loaded since an earlier snapshot of the statistics
+     */
+    public TileCacheStatistics since(final TileCacheStatistics earlier) {
+        return new TileCacheStatistics(hits - earlier.hits, misses - earlier.misses,
+                revalidated - earlier.revalidated, refetched - earlier.refetched);
+    }
+
+}
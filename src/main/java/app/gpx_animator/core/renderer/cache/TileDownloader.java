@@ -0,0 +1,183 @@
+package app.gpx_animator.core.renderer.cache;
+
+import app.gpx_animator.core.Constants;
+import app.gpx_animator.core.UserException;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.jetbrains.annotations.NonNls;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Downloads map tiles using one shared HTTP client, so that connections to
+ * the tile servers are kept alive and reused between the tiles. The number
+ * of concurrent requests is limited per host to respect the usage policies
+ * of the tile servers; templates with {@code {switch:a,b,c}} subdomains get
+ * this limit for every subdomain. Failed requests (connection errors,
+ * timeouts, HTTP 429 and 5xx) are retried with an exponential backoff.
+ * Cached tiles can be revalidated using conditional requests.
+ *
+ * This class is thread safe.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+public final class TileDownloader {
+
+    @NonNls
+    private static final Logger LOGGER = LoggerFactory.getLogger(TileDownloader.class);
+
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 2;
+    private static final int DEFAULT_MAX_RETRIES = 3;
+    private static final Duration DEFAULT_BACKOFF = Duration.ofMillis(500);
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30);
+
+    private static final int HTTP_OK = 200;
+    private static final int HTTP_NOT_MODIFIED = 304;
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final int HTTP_SERVER_ERROR = 500;
+
+    private static final TileDownloader DEFAULT_INSTANCE = new TileDownloader(
+            DEFAULT_MAX_CONNECTIONS_PER_HOST, DEFAULT_MAX_RETRIES, DEFAULT_BACKOFF, DEFAULT_TIMEOUT);
+
+    private final HttpClient httpClient;
+    private final int maxConnectionsPerHost;
+    private final int maxRetries;
+    private final Duration backoff;
+    private final Duration timeout;
+    private final String userAgent;
+    private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+
+    public TileDownloader(final int maxConnectionsPerHost, final int maxRetries,
+                          @NonNull final Duration backoff, @NonNull final Duration timeout) {
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.maxRetries = maxRetries;
+        this.backoff = backoff;
+        this.timeout = timeout;
+        this.userAgent = String.format("%s %s on %s %s (%s)", //NON-NLS
+                Constants.APPNAME, Constants.VERSION, Constants.OS_NAME, Constants.OS_VERSION, Constants.OS_ARCH);
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(timeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    /**
+     * @return the downloader shared by all renderings
+     */
+    public static TileDownloader getDefault() {
+        return DEFAULT_INSTANCE;
+    }
+
+    /**
+     * Downloads a tile, waiting for a free connection to the host first.
+     *
+     * @param url the URL of the tile
+     * @return the raw (still encoded) image data of the tile
+     * @throws UserException if the tile could not be downloaded, even after retrying
+     */
+    public byte[] download(@NonNull final String url) throws UserException {
+        return download(url, TileMetadata.NONE).data();
+    }
+
+    /**
+     * Downloads a tile, or revalidates a cached tile if its caching metadata
+     * is given: the tile server answers with "not modified" instead of the
+     * tile if it has not changed.
+     *
+     * @param url      the URL of the tile
+     * @param metadata the caching metadata of the cached tile or {@link TileMetadata#NONE}
+     * @return the response, without data if the cached tile has not changed
+     * @throws UserException if the tile could not be downloaded, even after retrying
+     */
+    public Response download(@NonNull final String url, @NonNull final TileMetadata metadata) throws UserException {
+        final URI uri;
+        try {
+            uri = new URI(url);
+        } catch (final URISyntaxException e) {
+            throw new UserException("invalid tile URL ".concat(url), e);
+        }
+
+        final var permits = hostPermits.computeIfAbsent(String.valueOf(uri.getHost()), host -> new Semaphore(maxConnectionsPerHost));
+        try {
+            permits.acquire();
+            try {
+                return downloadWithRetries(uri, metadata);
+            } finally {
+                permits.release();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UserException("interrupted while getting tile ".concat(url), e);
+        }
+    }
+
+    private Response downloadWithRetries(@NonNull final URI uri, @NonNull final TileMetadata metadata)
+            throws UserException, InterruptedException {
+        final var requestBuilder = HttpRequest.newBuilder(uri)
+                .timeout(timeout)
+                .header("User-Agent", userAgent) //NON-NLS
+                .GET();
+        if (metadata.eTag() != null) {
+            requestBuilder.header("If-None-Match", metadata.eTag()); //NON-NLS
+        }
+        if (metadata.lastModified() != null) {
+            requestBuilder.header("If-Modified-Since", metadata.lastModified()); //NON-NLS
+        }
+        final var request = requestBuilder.build();
+
+        var attempt = 0;
+        while (true) {
+            String error;
+            try {
+                final var response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                final var status = response.statusCode();
+                if (status == HTTP_OK) {
+                    return new Response(response.body(), TileMetadata.of(response.headers()));
+                }
+                if (status == HTTP_NOT_MODIFIED && metadata.canRevalidate()) {
+                    return new Response(null, TileMetadata.of(response.headers()).orElse(metadata));
+                }
+                if (status != HTTP_TOO_MANY_REQUESTS && status < HTTP_SERVER_ERROR) {
+                    throw new UserException("error getting tile %s: HTTP status %d".formatted(uri, status));
+                }
+                error = "HTTP status %d".formatted(status);
+            } catch (final IOException e) {
+                if (attempt >= maxRetries) {
+                    throw new UserException("error getting tile ".concat(uri.toString()), e);
+                }
+                error = e.toString();
+            }
+
+            if (attempt >= maxRetries) {
+                throw new UserException("error getting tile %s: %s".formatted(uri, error));
+            }
+            final var delay = backoff.toMillis() << attempt;
+            attempt++;
+            LOGGER.warn("Getting tile {} failed ({}), retry {} of {} in {} ms", uri, error, attempt, maxRetries, delay);
+            Thread.sleep(delay);
+        }
+    }
+
+    /**
+     * The response of the tile server.
+     *
+     * @param data     the raw (still encoded) image data or {@code null} if the cached tile has not changed
+     * @param metadata the caching metadata of the tile
+     */
+    public record Response(byte[] data, @NonNull TileMetadata metadata) {
+
+        public boolean isNotModified() {
+            return data == null;
+        }
+    }
+
+}
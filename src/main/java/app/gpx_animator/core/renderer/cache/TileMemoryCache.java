@@ -0,0 +1,84 @@
+package app.gpx_animator.core.renderer.cache;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps recently used decoded map tiles in memory, so that repeated
+ * renderings in the same JVM don't have to read and decode the tiles again.
+ * The cache is limited by the memory used by the pixels of the tiles; the
+ * least recently used tiles are removed first. The cached images are
+ * shared and must not be modified.
+ *
+ * This class is thread safe.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+final class TileMemoryCache {
+
+    private final long maxBytes;
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    TileMemoryCache(final long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param url    the URL of the tile
+     * @param maxAge the maximum age of the tile in milliseconds
+     * @return the cached tile or {@code null} if the tile is not cached or too old
+     */
+    synchronized BufferedImage get(@NonNull final String url, final long maxAge) {
+        final var entry = entries.get(url);
+        if (entry == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - entry.created() > maxAge) {
+            remove(url);
+            return null;
+        }
+        return entry.image();
+    }
+
+    synchronized void put(@NonNull final String url, @NonNull final BufferedImage image) {
+        final var size = sizeOf(image);
+        if (size > maxBytes) {
+            return;
+        }
+        remove(url);
+        entries.put(url, new Entry(image, size, System.currentTimeMillis()));
+        bytes += size;
+
+        final var iterator = entries.values().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            bytes -= iterator.next().size();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * @return the memory used by the cached tiles in bytes
+     */
+    synchronized long getSize() {
+        return bytes;
+    }
+
+    private void remove(@NonNull final String url) {
+        final var entry = entries.remove(url);
+        if (entry != null) {
+            bytes -= entry.size();
+        }
+    }
+
+    static long sizeOf(@NonNull final BufferedImage image) {
+        final var dataBuffer = image.getRaster().getDataBuffer();
+        return (long) dataBuffer.getSize() * dataBuffer.getNumBanks() * DataBuffer.getDataTypeSize(dataBuffer.getDataType()) / 8;
+    }
+
+    private record Entry(@NonNull BufferedImage image, long size, long created) { }
+
+}
@@ -0,0 +1,62 @@
+package app.gpx_animator.core.renderer.cache;
+
+import java.net.http.HttpHeaders;
+import java.util.regex.Pattern;
+
+/**
+ * The HTTP caching metadata of a map tile, which allows to ask the tile
+ * server whether an expired tile has changed (conditional request) instead
+ * of downloading it again.
+ *
+ * @param eTag         the value of the {@code ETag} header or {@code null}
+ * @param lastModified the value of the {@code Last-Modified} header or {@code null}
+ * @param maxAge       the {@code max-age} of the {@code Cache-Control} header in milliseconds or {@code -1}
+ */
+public record TileMetadata(String eTag, String lastModified, long maxAge) {
+
+    public static final TileMetadata NONE = new TileMetadata(null, null, -1);
+
+    private static final Pattern MAX_AGE_PATTERN = Pattern.compile("max-age=\"?(\\d+)\"?"); //NON-NLS
+
+    /**
+     * @return {@code true} if the tile can be revalidated with a conditional request
+     */
+    public boolean canRevalidate() {
+        return eTag != null || lastModified != null;
+    }
+
+    /**
+     * A "not modified" response may omit some of the headers, they are
+     * taken from the previous metadata then.
+     *
+     * @param previous the metadata of the cached tile
+     * @return the combined metadata
+     */
+    public TileMetadata orElse(final TileMetadata previous) {
+        return new TileMetadata(eTag != null ? eTag : previous.eTag(),
+                lastModified != null ? lastModified : previous.lastModified(),
+                maxAge >= 0 ? maxAge : previous.maxAge());
+    }
+
+    /**
+     * Reads the caching metadata from the headers of a response.
+     */
+    public static TileMetadata of(final HttpHeaders headers) {
+        final var eTag = headers.firstValue("ETag").orElse(null); //NON-NLS
+        final var lastModified = headers.firstValue("Last-Modified").orElse(null); //NON-NLS
+        var maxAge = -1L;
+        final var cacheControl = headers.firstValue("Cache-Control"); //NON-NLS
+        if (cacheControl.isPresent()) {
+            final var matcher = MAX_AGE_PATTERN.matcher(cacheControl.get());
+            if (matcher.find()) {
+                try {
+                    maxAge = Long.parseLong(matcher.group(1)) * 1_000;
+                } catch (final NumberFormatException ignored) {
+                    // too large to be useful
+                }
+            }
+        }
+        return new TileMetadata(eTag, lastModified, maxAge);
+    }
+
+}
@@ -0,0 +1,212 @@
+package app.gpx_animator.core.renderer.cache;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.jetbrains.annotations.NonNls;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A read only pack of many map tiles in one file, e.g. to distribute a
+ * pre-seeded set of tiles. The file is memory mapped, so looking up a tile
+ * doesn't copy any data and the operating system caches the pages.
+ *
+ * The tiles are identified by the SHA-256 hash of their URL, the same key
+ * the tile cache uses for its files, so a pack can be built from any
+ * existing tile cache directory. The file format is:
+ *
+ * <pre>
+ * header: int magic, int version, int count
+ * index:  count times (32 bytes hash, long offset, int length), sorted by hash
+ * data:   the tiles as downloaded, concatenated
+ * </pre>
+ *
+ * This class is thread safe.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+public final class TilePack {
+
+    @NonNls
+    private static final Logger LOGGER = LoggerFactory.getLogger(TilePack.class);
+
+    public static final String FILE_EXTENSION = ".gpxtp"; //NON-NLS
+
+    private static final int MAGIC = 0x47505450; // "GPTP"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 3 * Integer.BYTES;
+    private static final int HASH_SIZE = 32;
+    private static final int INDEX_ENTRY_SIZE = HASH_SIZE + Long.BYTES + Integer.BYTES;
+
+    // the data is mapped in segments, because a single mapping is limited to 2 GiB;
+    // the segments overlap by the maximum tile size, so every tile is within one segment
+    private static final long SEGMENT_SIZE = 1L << 30;
+    private static final int MAX_TILE_SIZE = 16 * 1_024 * 1_024;
+
+    private final Path file;
+    private final int count;
+    private final ByteBuffer index;
+    private final MappedByteBuffer[] segments;
+
+    private TilePack(@NonNull final Path file, final int count, @NonNull final ByteBuffer index,
+                     @NonNull final MappedByteBuffer... segments) {
+        this.file = file;
+        this.count = count;
+        this.index = index;
+        this.segments = segments;
+    }
+
+    /**
+     * Opens and maps a tile pack file.
+     *
+     * @param file the tile pack file
+     * @return the tile pack
+     * @throws IOException if the file can't be read or is not a tile pack
+     */
+    public static TilePack open(@NonNull final Path file) throws IOException {
+        try (var channel = FileChannel.open(file)) {
+            final var fileSize = channel.size();
+            final var header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("%s is not a tile pack".formatted(file));
+            }
+            final var count = header.getInt();
+            final var indexSize = (long) count * INDEX_ENTRY_SIZE;
+            if (count < 0 || indexSize > Integer.MAX_VALUE || HEADER_SIZE + indexSize > fileSize) {
+                throw new IOException("%s has an invalid index".formatted(file));
+            }
+            final var index = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, indexSize);
+
+            final var segments = new MappedByteBuffer[(int) ((fileSize + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+            for (var i = 0; i < segments.length; i++) {
+                final var start = i * SEGMENT_SIZE;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE + MAX_TILE_SIZE, fileSize - start));
+            }
+            return new TilePack(file, count, index, segments);
+        }
+    }
+
+    /**
+     * Looks up a tile.
+     *
+     * @param hash the SHA-256 hash of the tile URL
+     * @return a read only view of the tile data or {@code null} if the tile is not in the pack
+     */
+    public ByteBuffer get(@NonNull final byte[] hash) {
+        var low = 0;
+        var high = count - 1;
+        while (low <= high) {
+            final var mid = (low + high) >>> 1;
+            final var comparison = compareHash(mid * INDEX_ENTRY_SIZE, hash);
+            if (comparison < 0) {
+                low = mid + 1;
+            } else if (comparison > 0) {
+                high = mid - 1;
+            } else {
+                final var entry = mid * INDEX_ENTRY_SIZE + HASH_SIZE;
+                final var offset = index.getLong(entry);
+                final var length = index.getInt(entry + Long.BYTES);
+                final var segment = segments[(int) (offset / SEGMENT_SIZE)];
+                final var position = (int) (offset % SEGMENT_SIZE);
+                return segment.slice(position, length).asReadOnlyBuffer();
+            }
+        }
+        return null;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    private int compareHash(final int entry, @NonNull final byte[] hash) {
+        for (var i = 0; i < HASH_SIZE; i++) {
+            final var comparison = Byte.compareUnsigned(index.get(entry + i), hash[i]);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Builds a tile pack from the tiles of a tile cache directory.
+     *
+     * @param tiles    the tile files, each named after the hex encoded hash of its URL (plus the extension)
+     * @param packFile the tile pack file to create (replaced if it exists)
+     * @return the number of tiles in the pack
+     * @throws IOException if a tile can't be read or the pack can't be written
+     */
+    public static int build(@NonNull final List<Path> tiles, @NonNull final Path packFile) throws IOException {
+        final List<Tile> sortedTiles = new ArrayList<>(tiles.size());
+        for (final var tile : tiles) {
+            final var hash = parseHash(tile.getFileName().toString());
+            final var size = Files.size(tile);
+            if (size > MAX_TILE_SIZE) {
+                LOGGER.warn("Skipping tile {}, it is larger than {} bytes", tile, MAX_TILE_SIZE);
+            } else {
+                sortedTiles.add(new Tile(hash, tile, (int) size));
+            }
+        }
+        sortedTiles.sort(Comparator.comparing(Tile::hash, Arrays::compareUnsigned));
+
+        final var tempFile = Files.createTempFile(packFile.toAbsolutePath().getParent(), packFile.getFileName().toString(), ".tmp"); //NON-NLS
+        try {
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(sortedTiles.size());
+
+                var offset = HEADER_SIZE + (long) sortedTiles.size() * INDEX_ENTRY_SIZE;
+                for (final var tile : sortedTiles) {
+                    out.write(tile.hash());
+                    out.writeLong(offset);
+                    out.writeInt(tile.size());
+                    offset += tile.size();
+                }
+                for (final var tile : sortedTiles) {
+                    final var data = Files.readAllBytes(tile.file());
+                    if (data.length != tile.size()) {
+                        throw new IOException("%s was modified while building the tile pack".formatted(tile.file()));
+                    }
+                    out.write(data);
+                }
+            }
+            Files.move(tempFile, packFile, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+        return sortedTiles.size();
+    }
+
+    private static byte[] parseHash(@NonNull final String fileName) throws IOException {
+        final var hash = new byte[HASH_SIZE];
+        for (var i = 0; i < HASH_SIZE; i++) {
+            final var high = Character.digit(fileName.charAt(2 * i), 16);
+            final var low = Character.digit(fileName.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IOException("%s is not named after a hash".formatted(fileName));
+            }
+            hash[i] = (byte) (high << 4 | low);
+        }
+        return hash;
+    }
+
+    private record Tile(@NonNull byte[] hash, @NonNull Path file, int size) { }
+
+}
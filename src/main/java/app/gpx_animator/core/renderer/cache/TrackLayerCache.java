@@ -0,0 +1,118 @@
+package app.gpx_animator.core.renderer.cache;
+
+import app.gpx_animator.core.UserException;
+import app.gpx_animator.core.util.CacheFiles;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.jetbrains.annotations.NonNls;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Keeps the rasterized pre-drawn tracks of recent renderings, the most
+ * recent one in memory as long as the memory is not needed otherwise, and
+ * a few on disk, as PNG files in the directory "tracks" of the tile cache.
+ * A track is identified by a digest of everything drawn, so a cached track
+ * never gets outdated.
+ */
+public final class TrackLayerCache {
+
+    @NonNls
+    private static final Logger LOGGER = LoggerFactory.getLogger(TrackLayerCache.class);
+
+    static final String DIRECTORY = "tracks"; //NON-NLS
+    private static final String FILE_TYPE = "png"; //NON-NLS
+    // not the extension of the map tiles, so the tracks are never taken for tiles
+    private static final String FILE_EXTENSION = ".gpxac.trk.".concat(FILE_TYPE); //NON-NLS
+    private static final String TEMP_FILE_SUFFIX = ".tmp"; //NON-NLS
+    private static final int MAX_FILES = 3;
+
+    private static SoftReference<CachedLayer> recent = new SoftReference<>(null);
+
+    private TrackLayerCache() throws InstantiationException {
+        throw new InstantiationException("TrackLayerCache is a utility class which can't be instantiated!");
+    }
+
+    /**
+     * Looks up a cached track, first in memory, then on disk.
+     *
+     * @param tileCacheDir the directory of the tile cache, {@code null} or empty if caching on disk is disabled
+     * @param key          the digest of everything drawn
+     * @param width        the width of the track image
+     * @param height       the height of the track image
+     * @return the track image, or {@code null} if the track is not cached
+     * @throws UserException if the key can't be hashed
+     */
+    public static synchronized BufferedImage load(final String tileCacheDir, @NonNull final String key,
+                                                  final int width, final int height) throws UserException {
+        final var cached = recent.get();
+        if (cached != null && cached.key().equals(key) && isSize(cached.image(), width, height)) {
+            return cached.image();
+        }
+        if (tileCacheDir == null || tileCacheDir.isBlank()) {
+            return null;
+        }
+
+        final var file = CacheFiles.getFile(tileCacheDir, DIRECTORY, key, FILE_EXTENSION);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            final var image = ImageIO.read(file.toFile());
+            if (image == null || !isSize(image, width, height)) {
+                return null;
+            }
+            CacheFiles.touch(file);
+            recent = new SoftReference<>(new CachedLayer(key, image));
+            return image;
+        } catch (final IOException e) {
+            LOGGER.error("Can't read cached track {}", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Keeps the track in memory and writes it to disk, replacing the least
+     * recently used one if there are too many.
+     *
+     * @param tileCacheDir the directory of the tile cache, {@code null} or empty if caching on disk is disabled
+     * @param key          the digest of everything drawn
+     * @param image        the track image, which must not be changed anymore
+     * @throws UserException if the key can't be hashed
+     */
+    public static synchronized void store(final String tileCacheDir, @NonNull final String key, @NonNull final BufferedImage image)
+            throws UserException {
+        recent = new SoftReference<>(new CachedLayer(key, image));
+        if (tileCacheDir == null || tileCacheDir.isBlank()) {
+            return;
+        }
+
+        final var file = CacheFiles.getFile(tileCacheDir, DIRECTORY, key, FILE_EXTENSION);
+        try {
+            Files.createDirectories(file.getParent());
+            final var tempFile = Files.createTempFile(file.getParent(), file.getFileName().toString(), TEMP_FILE_SUFFIX);
+            try {
+                ImageIO.write(image, FILE_TYPE, tempFile.toFile());
+                Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+            CacheFiles.evict(file, FILE_EXTENSION, MAX_FILES);
+        } catch (final IOException e) {
+            LOGGER.error("Can't write cached track {}", file, e);
+        }
+    }
+
+    private static boolean isSize(@NonNull final BufferedImage image, final int width, final int height) {
+        return image.getWidth() == width && image.getHeight() == height;
+    }
+
+    private record CachedLayer(@NonNull String key, @NonNull BufferedImage image) { }
+
+}
@@ -0,0 +1,34 @@
+package app.gpx_animator.core.renderer.canvas;
+
+import java.util.Locale;
+
+/**
+ * Where the pixels of a map stored in one image are kept.
+ */
+public enum CanvasStorage {
+
+    /**
+     * In an array on the Java heap.
+     */
+    HEAP,
+
+    /**
+     * In direct byte buffers outside of the Java heap.
+     */
+    DIRECT,
+
+    /**
+     * In a memory mapped temporary file, paged in and out by the operating system.
+     */
+    MAPPED;
+
+    @Override
+    public String toString() {
+        return name().toLowerCase(Locale.ENGLISH);
+    }
+
+    public static CanvasStorage parse(final String storage) {
+        return CanvasStorage.valueOf(storage.toUpperCase(Locale.ENGLISH));
+    }
+
+}
@@ -0,0 +1,110 @@
+package app.gpx_animator.core.renderer.canvas;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the regions of an image which were changed, so that only these
+ * regions have to be restored instead of copying the whole image. Regions
+ * which intersect are merged, and if the regions cover more than half of
+ * the image, the whole image is marked as changed.
+ *
+ * This class is not thread safe.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+final class DirtyRegions {
+
+    // additional pixels around every region to cover anti-aliasing
+    private static final int ANTI_ALIAS_MARGIN = 1;
+
+    private final Rectangle imageBounds;
+    private final List<Rectangle> regions = new ArrayList<>();
+    private boolean everything;
+
+    DirtyRegions(final int width, final int height) {
+        this.imageBounds = new Rectangle(0, 0, width, height);
+    }
+
+    /**
+     * Marks a region as changed.
+     *
+     * @param bounds the bounds of the change, in the coordinates of the image
+     */
+    void add(@NonNull final Rectangle2D bounds) {
+        if (everything || bounds.isEmpty()) {
+            return;
+        }
+        var region = bounds.getBounds();
+        region.grow(ANTI_ALIAS_MARGIN, ANTI_ALIAS_MARGIN);
+        region = region.intersection(imageBounds);
+        if (region.isEmpty()) {
+            return;
+        }
+
+        // merge all regions intersecting the new one, the union may intersect more regions
+        var merged = true;
+        while (merged) {
+            merged = false;
+            final var iterator = regions.iterator();
+            while (iterator.hasNext()) {
+                final var other = iterator.next();
+                if (other.intersects(region)) {
+                    region = region.union(other);
+                    iterator.remove();
+                    merged = true;
+                }
+            }
+        }
+        regions.add(region);
+
+        if (getArea() * 2 > (long) imageBounds.width * imageBounds.height) {
+            addEverything();
+        }
+    }
+
+    /**
+     * Marks the whole image as changed.
+     */
+    void addEverything() {
+        everything = true;
+        regions.clear();
+    }
+
+    /**
+     * @return {@code true} if the whole image is marked as changed
+     */
+    boolean isEverything() {
+        return everything;
+    }
+
+    /**
+     * @return the changed regions, the whole image if everything is marked as changed
+     */
+    List<Rectangle> getRegions() {
+        return everything ? List.of(new Rectangle(imageBounds)) : List.copyOf(regions);
+    }
+
+    /**
+     * @return the number of changed pixels
+     */
+    long getArea() {
+        if (everything) {
+            return (long) imageBounds.width * imageBounds.height;
+        }
+        var area = 0L;
+        for (final var region : regions) {
+            area += (long) region.width * region.height;
+        }
+        return area;
+    }
+
+    void clear() {
+        regions.clear();
+        everything = false;
+    }
+
+}
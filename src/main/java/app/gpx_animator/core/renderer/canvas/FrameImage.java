@@ -0,0 +1,93 @@
+package app.gpx_animator.core.renderer.canvas;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * The image of a frame provided by a {@link FrameImagePool}. The image
+ * keeps track of the regions drawn on it, so it can be reused for another
+ * frame by restoring only these regions from the map.
+ *
+ * Graphics created by {@link #createGraphics()} mark the whole image as
+ * changed, so drawing on it like on any other image is always safe. To
+ * mark only the area actually drawn, use {@link #createGraphics(Rectangle2D)}
+ * or {@link #addChangedArea(Rectangle2D)}.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+public final class FrameImage extends BufferedImage {
+
+    private final FrameImagePool pool;
+    private final DirtyRegions changes;
+
+    // set by the pool when the image is acquired
+    private Rectangle area;
+    private long version;
+
+    FrameImage(@NonNull final FrameImagePool pool, final int width, final int height, final int imageType) {
+        super(width, height, imageType);
+        this.pool = pool;
+        this.changes = new DirtyRegions(width, height);
+    }
+
+    @Override
+    public Graphics2D createGraphics() {
+        changes.addEverything();
+        return super.createGraphics();
+    }
+
+    /**
+     * Creates the graphics to draw on a known area of the image, only this
+     * area is marked as changed.
+     *
+     * @param bounds the bounds of everything drawn, or {@code null} if the
+     *               caller marks the changes using {@link #addChangedArea(Rectangle2D)}
+     * @return the graphics to draw on the image
+     */
+    public Graphics2D createGraphics(@Nullable final Rectangle2D bounds) {
+        if (bounds != null) {
+            changes.add(bounds);
+        }
+        return super.createGraphics();
+    }
+
+    /**
+     * Marks an area of the image as changed.
+     *
+     * @param bounds the bounds of the area, in the coordinates of the image
+     */
+    public void addChangedArea(@NonNull final Rectangle2D bounds) {
+        changes.add(bounds);
+    }
+
+    /**
+     * Returns the image to its pool, after the frame was written. The image
+     * must not be used anymore afterwards.
+     */
+    public void release() {
+        pool.release(this);
+    }
+
+    DirtyRegions getChanges() {
+        return changes;
+    }
+
+    Rectangle getArea() {
+        return area;
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    void reset(@NonNull final Rectangle area, final long version) {
+        this.area = new Rectangle(area);
+        this.version = version;
+        changes.clear();
+    }
+
+}
@@ -0,0 +1,177 @@
+package app.gpx_animator.core.renderer.canvas;
+
+import app.gpx_animator.core.UserException;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Provides the images of the frames, copied from an area of the map. Once
+ * a frame is written, its image is released back into the pool and reused
+ * for a later frame: if the frame shows the same area of the map, only the
+ * regions drawn on the image and the regions of the map which changed in
+ * the meantime are copied from the map again, instead of the whole area.
+ *
+ * To know the changes of the map, everything has to be drawn using the
+ * canvas of the pool, see {@link #getCanvas()}. The images are acquired
+ * and the map is changed by one thread, the images may be released by any
+ * thread.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+public final class FrameImagePool {
+
+    // the changes of the map remembered for the images not released yet
+    private static final int MAX_CHANGES = 4_096;
+
+    private final MapCanvas canvas;
+    private final MapCanvas recordingCanvas;
+    private final int imageType;
+    private final Queue<FrameImage> released = new ConcurrentLinkedQueue<>();
+    private final Deque<Change> changes = new ArrayDeque<>();
+
+    private long version;
+    private long forgottenVersion; // the changes up to this version are not remembered anymore
+
+    // statistics
+    private long acquiredImages;
+    private long reusedImages;
+    private long copiedPixels;
+
+    /**
+     * @param canvas    the map
+     * @param imageType the type of the images, the same as the images copied from the map
+     */
+    public FrameImagePool(@NonNull final MapCanvas canvas, final int imageType) {
+        this.canvas = canvas;
+        this.recordingCanvas = new RecordingCanvas();
+        this.imageType = imageType;
+    }
+
+    /**
+     * @return the canvas to draw on the map, which remembers the changes
+     */
+    public MapCanvas getCanvas() {
+        return recordingCanvas;
+    }
+
+    /**
+     * Provides an image of an area of the map, which can be modified
+     * without changing the map.
+     *
+     * @param area the area of the map
+     * @return the image of the area
+     * @throws UserException error to be shown to the user
+     */
+    public FrameImage acquire(@NonNull final Rectangle area) throws UserException {
+        acquiredImages++;
+        version++;
+
+        var image = released.poll();
+        while (image != null && (image.getWidth() != area.width || image.getHeight() != area.height)) {
+            image = released.poll(); // an image of another size is left to the garbage collector
+        }
+
+        if (image == null) {
+            image = new FrameImage(this, area.width, area.height, imageType);
+            copy(area, image, new Rectangle(0, 0, area.width, area.height));
+        } else if (area.equals(image.getArea()) && image.getVersion() > forgottenVersion) {
+            reusedImages++;
+            restore(area, image);
+        } else {
+            copy(area, image, new Rectangle(0, 0, area.width, area.height));
+        }
+
+        image.reset(area, version);
+        return image;
+    }
+
+    void release(@NonNull final FrameImage image) {
+        released.add(image);
+    }
+
+    /**
+     * @return the number of images provided so far
+     */
+    public long getAcquiredImageCount() {
+        return acquiredImages;
+    }
+
+    /**
+     * @return the number of images provided by restoring only the changed regions
+     */
+    public long getReusedImageCount() {
+        return reusedImages;
+    }
+
+    /**
+     * @return the number of pixels copied from the map into the images so far
+     */
+    public long getCopiedPixelCount() {
+        return copiedPixels;
+    }
+
+    //
+    // The regions drawn on the image are completed with the changes of the
+    // map since the image was acquired last time, the changes are ordered by
+    // their version.
+    //
+    private void restore(@NonNull final Rectangle area, @NonNull final FrameImage image) throws UserException {
+        final var regions = image.getChanges();
+        final var iterator = changes.descendingIterator();
+        while (iterator.hasNext() && !regions.isEverything()) {
+            final var change = iterator.next();
+            if (change.version() < image.getVersion()) {
+                break;
+            }
+            final var bounds = change.bounds().createIntersection(area);
+            if (!bounds.isEmpty()) {
+                regions.add(new Rectangle2D.Double(bounds.getX() - area.x, bounds.getY() - area.y, bounds.getWidth(), bounds.getHeight()));
+            }
+        }
+        for (final var region : regions.getRegions()) {
+            copy(area, image, region);
+        }
+    }
+
+    private void copy(@NonNull final Rectangle area, @NonNull final BufferedImage image, @NonNull final Rectangle region)
+            throws UserException {
+        canvas.copyTo(new Rectangle(area.x + region.x, area.y + region.y, region.width, region.height), image, region.x, region.y);
+        copiedPixels += (long) region.width * region.height;
+    }
+
+    private record Change(long version, @NonNull Rectangle2D bounds) { }
+
+    //
+    // Remembers the bounds of everything drawn on the map, so the images
+    // released can be updated.
+    //
+    private final class RecordingCanvas implements MapCanvas {
+
+        @Override
+        public void draw(@NonNull final Rectangle2D bounds, @NonNull final Painter painter) throws UserException {
+            changes.add(new Change(version, bounds.getBounds2D()));
+            if (changes.size() > MAX_CHANGES) {
+                forgottenVersion = changes.removeFirst().version();
+            }
+            canvas.draw(bounds, painter);
+        }
+
+        @Override
+        public BufferedImage copy(@NonNull final Rectangle area) throws UserException {
+            return canvas.copy(area);
+        }
+
+        @Override
+        public void copyTo(@NonNull final Rectangle area, @NonNull final BufferedImage target, final int x, final int y)
+                throws UserException {
+            canvas.copyTo(area, target, x, y);
+        }
+    }
+
+}
@@ -0,0 +1,95 @@
+package app.gpx_animator.core.renderer.canvas;
+
+import app.gpx_animator.core.UserException;
+import app.gpx_animator.core.util.Utils;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+
+import static app.gpx_animator.core.util.RenderUtil.getGraphics;
+
+/**
+ * A canvas backed by one image, which shows the area of the map starting
+ * at the origin: the whole map, or the viewport of a single frame. The
+ * image may store its pixels outside of the Java heap, see
+ * {@link OffHeapDataBuffer}.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+public final class ImageCanvas implements MapCanvas {
+
+    private final BufferedImage image;
+    private final Point origin;
+
+    public ImageCanvas(@NonNull final BufferedImage image) {
+        this(image, new Point(0, 0));
+    }
+
+    /**
+     * @param image  the image
+     * @param origin the position of the image in the map
+     */
+    public ImageCanvas(@NonNull final BufferedImage image, @NonNull final Point origin) {
+        this.image = image;
+        this.origin = new Point(origin);
+    }
+
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    @Override
+    public void draw(@NonNull final Rectangle2D bounds, @NonNull final Painter painter) throws UserException {
+        if (!bounds.intersects(origin.x, origin.y, image.getWidth(), image.getHeight())) {
+            return; // nothing visible in this image
+        }
+        final var g2 = getGraphics(image, origin, bounds);
+        try {
+            painter.paint(g2);
+        } finally {
+            g2.dispose();
+        }
+    }
+
+    @Override
+    public BufferedImage copy(@NonNull final Rectangle area) {
+        if (image.getRaster().getDataBuffer() instanceof OffHeapDataBuffer buffer) {
+            return copy(buffer, area);
+        }
+        if (area.x == origin.x && area.y == origin.y && area.width == image.getWidth() && area.height == image.getHeight()) {
+            return Utils.deepCopy(image);
+        }
+        return Utils.deepCopy(image.getSubimage(area.x - origin.x, area.y - origin.y, area.width, area.height));
+    }
+
+    @Override
+    public void copyTo(@NonNull final Rectangle area, @NonNull final BufferedImage target, final int x, final int y) {
+        final var pixels = image.getRaster().getDataBuffer() instanceof OffHeapDataBuffer buffer
+                ? copy(buffer, area).getRaster()
+                : image.getRaster().createChild(area.x - origin.x, area.y - origin.y, area.width, area.height, 0, 0, null);
+        target.getRaster().setDataElements(x, y, pixels);
+    }
+
+    //
+    // The rows of the area are copied straight from the buffer into the
+    // pixels of the new image, which have the same layout.
+    //
+    private BufferedImage copy(@NonNull final OffHeapDataBuffer buffer, @NonNull final Rectangle area) {
+        final var copy = new BufferedImage(area.width, area.height, BufferedImage.TYPE_3BYTE_BGR);
+        final var pixels = ((DataBufferByte) copy.getRaster().getDataBuffer()).getData();
+        final var sampleModel = (ComponentSampleModel) image.getSampleModel();
+        final var scanlineStride = sampleModel.getScanlineStride();
+        final var pixelStride = sampleModel.getPixelStride();
+        final var rowLength = area.width * pixelStride;
+        for (var row = 0; row < area.height; row++) {
+            final var index = (area.y - origin.y + row) * scanlineStride + (area.x - origin.x) * pixelStride;
+            buffer.getBytes(index, pixels, row * rowLength, rowLength);
+        }
+        return copy;
+    }
+
+}
@@ -0,0 +1,66 @@
+package app.gpx_animator.core.renderer.canvas;
+
+import app.gpx_animator.core.UserException;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * The map the tracks are drawn on, holding the background and the track
+ * drawn so far. The coordinates are the ones of the whole map, independent
+ * of how the pixels are stored.
+ */
+public interface MapCanvas {
+
+    /**
+     * Draws on the canvas. The painter may be called more than once, each
+     * time with a graphics for another part of the canvas, so it must draw
+     * the same shapes every time and must not change any state.
+     *
+     * @param bounds  the bounds of everything the painter draws
+     * @param painter the painter drawing in the coordinates of the map
+     * @throws UserException error to be shown to the user
+     */
+    void draw(@NonNull Rectangle2D bounds, @NonNull Painter painter) throws UserException;
+
+    /**
+     * Copies an area of the canvas into a new image, e.g. the viewport of a
+     * frame. The image can be modified without changing the canvas.
+     *
+     * @param area the area of the canvas
+     * @return a new image of the size of the area
+     * @throws UserException error to be shown to the user
+     */
+    BufferedImage copy(@NonNull Rectangle area) throws UserException;
+
+    /**
+     * Copies an area of the canvas into an existing image, which has the
+     * same type as the images returned by {@link #copy(Rectangle)}.
+     *
+     * @param area   the area of the canvas
+     * @param target the image to copy the area into
+     * @param x      the x coordinate of the area in the image
+     * @param y      the y coordinate of the area in the image
+     * @throws UserException error to be shown to the user
+     */
+    default void copyTo(@NonNull Rectangle area, @NonNull BufferedImage target, int x, int y) throws UserException {
+        target.getRaster().setDataElements(x, y, copy(area).getRaster());
+    }
+
+    /**
+     * Draws on a part of the canvas.
+     */
+    @FunctionalInterface
+    interface Painter {
+
+        /**
+         * @param g2 the graphics to draw on, in the coordinates of the map
+         * @throws UserException error to be shown to the user
+         */
+        void paint(@NonNull Graphics2D g2) throws UserException;
+    }
+
+}
@@ -0,0 +1,145 @@
+package app.gpx_animator.core.renderer.canvas;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A buffer of bytes stored outside of the Java heap, in direct byte buffers
+ * or in a memory mapped temporary file. The garbage collector neither scans
+ * nor copies the pixels of an image backed by this buffer, and a mapped
+ * file is paged in and out by the operating system as needed.
+ *
+ * Java2D draws on such an image with its generic loops, which are slower
+ * than the ones for images on the heap, so use {@link #getBytes} to copy
+ * larger areas and {@link #putBytes} to fill them.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+public final class OffHeapDataBuffer extends DataBuffer {
+
+    private static final int CHUNK_BITS = 30;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int BYTES_PER_PIXEL = 3;
+
+    private final ByteBuffer[] chunks;
+
+    private OffHeapDataBuffer(@NonNull final ByteBuffer[] chunks, final int size) {
+        super(TYPE_BYTE, size);
+        this.chunks = chunks;
+    }
+
+    /**
+     * Creates an image in the layout of {@link BufferedImage#TYPE_3BYTE_BGR},
+     * with the pixels stored outside of the Java heap.
+     *
+     * @param width   the width of the image
+     * @param height  the height of the image
+     * @param storage {@link CanvasStorage#DIRECT} or {@link CanvasStorage#MAPPED}
+     * @return the new image, all black
+     * @throws IOException if the temporary file can't be created
+     */
+    public static BufferedImage createImage(final int width, final int height, @NonNull final CanvasStorage storage)
+            throws IOException {
+        final var size = Math.toIntExact((long) width * height * BYTES_PER_PIXEL);
+        final var buffer = storage == CanvasStorage.MAPPED ? map(size) : allocateDirect(size);
+        final var colorModel = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB), new int[] {8, 8, 8},
+                false, false, Transparency.OPAQUE, TYPE_BYTE);
+        final var sampleModel = new PixelInterleavedSampleModel(TYPE_BYTE, width, height,
+                BYTES_PER_PIXEL, BYTES_PER_PIXEL * width, new int[] {2, 1, 0});
+        return new BufferedImage(colorModel, Raster.createWritableRaster(sampleModel, buffer, null), false, null);
+    }
+
+    private static OffHeapDataBuffer allocateDirect(final int size) {
+        final var chunks = new ByteBuffer[(int) (((long) size + CHUNK_SIZE - 1) >> CHUNK_BITS)];
+        for (var i = 0; i < chunks.length; i++) {
+            chunks[i] = ByteBuffer.allocateDirect(Math.min(CHUNK_SIZE, size - i * CHUNK_SIZE));
+        }
+        return new OffHeapDataBuffer(chunks, size);
+    }
+
+    //
+    // The mapping stays valid after the file is closed and, on most systems,
+    // after it is deleted. Where the mapped file can't be deleted, it is
+    // deleted when the JVM exits.
+    //
+    private static OffHeapDataBuffer map(final int size) throws IOException {
+        final var file = Files.createTempFile("gpx-animator-canvas-", ".raw"); //NON-NLS
+        final var chunks = new ByteBuffer[(int) (((long) size + CHUNK_SIZE - 1) >> CHUNK_BITS)];
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            for (var i = 0; i < chunks.length; i++) {
+                chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i * CHUNK_SIZE, Math.min(CHUNK_SIZE, size - i * CHUNK_SIZE));
+            }
+        }
+        try {
+            Files.delete(file);
+        } catch (final IOException e) {
+            file.toFile().deleteOnExit();
+        }
+        return new OffHeapDataBuffer(chunks, size);
+    }
+
+    @Override
+    public int getElem(final int bank, final int i) {
+        return chunks[i >>> CHUNK_BITS].get(i & CHUNK_MASK) & 0xFF;
+    }
+
+    @Override
+    public void setElem(final int bank, final int i, final int val) {
+        chunks[i >>> CHUNK_BITS].put(i & CHUNK_MASK, (byte) val);
+    }
+
+    /**
+     * Copies bytes out of the buffer, without going through the elements
+     * one by one.
+     *
+     * @param index       the index of the first byte in the buffer
+     * @param destination the array to copy the bytes to
+     * @param offset      the index of the first byte in the array
+     * @param length      the number of bytes
+     */
+    public void getBytes(final int index, @NonNull final byte[] destination, final int offset, final int length) {
+        var copied = 0;
+        while (copied < length) {
+            final var position = index + copied;
+            final var chunk = chunks[position >>> CHUNK_BITS];
+            final var chunkOffset = position & CHUNK_MASK;
+            final var count = Math.min(length - copied, chunk.capacity() - chunkOffset);
+            chunk.get(chunkOffset, destination, offset + copied, count);
+            copied += count;
+        }
+    }
+
+    /**
+     * Copies bytes into the buffer, without going through the elements one
+     * by one.
+     *
+     * @param index  the index of the first byte in the buffer
+     * @param source the array to copy the bytes from
+     * @param offset the index of the first byte in the array
+     * @param length the number of bytes
+     */
+    public void putBytes(final int index, @NonNull final byte[] source, final int offset, final int length) {
+        var copied = 0;
+        while (copied < length) {
+            final var position = index + copied;
+            final var chunk = chunks[position >>> CHUNK_BITS];
+            final var chunkOffset = position & CHUNK_MASK;
+            final var count = Math.min(length - copied, chunk.capacity() - chunkOffset);
+            chunk.put(chunkOffset, source, offset + copied, count);
+            copied += count;
+        }
+    }
+
+}
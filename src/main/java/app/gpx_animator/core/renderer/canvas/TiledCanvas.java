@@ -0,0 +1,163 @@
+package app.gpx_animator.core.renderer.canvas;
+
+import app.gpx_animator.core.UserException;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+import static app.gpx_animator.core.util.RenderUtil.getGraphics;
+
+/**
+ * A canvas made of tiles of a fixed size, for maps too large to be stored
+ * in one image. A tile is only allocated when something is drawn on it or
+ * it is copied for the first time, e.g. because the track or the viewport
+ * reaches it. A new tile is filled by the initializer, which draws the
+ * background of its area.
+ *
+ * This class is not thread safe.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+public final class TiledCanvas implements MapCanvas {
+
+    /**
+     * Draws the background of a new tile.
+     */
+    @FunctionalInterface
+    public interface TileInitializer {
+
+        /**
+         * @param tile the new tile
+         * @param area the area of the tile in the map
+         * @throws UserException error to be shown to the user
+         */
+        void initialize(@NonNull BufferedImage tile, @NonNull Rectangle area) throws UserException;
+    }
+
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final int imageType;
+    private final TileInitializer initializer;
+
+    private final int columns;
+    private final BufferedImage[] tiles;
+    private int allocated;
+
+    /**
+     * @param width       the width of the map
+     * @param height      the height of the map
+     * @param tileSize    the width and height of the tiles
+     * @param imageType   the type of the tile images, see {@link BufferedImage#getType()}
+     * @param initializer the initializer of new tiles
+     */
+    public TiledCanvas(final int width, final int height, final int tileSize, final int imageType,
+                       @NonNull final TileInitializer initializer) {
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        this.imageType = imageType;
+        this.initializer = initializer;
+        this.columns = (width + tileSize - 1) / tileSize;
+        this.tiles = new BufferedImage[Math.multiplyExact(columns, (height + tileSize - 1) / tileSize)];
+    }
+
+    @Override
+    public void draw(@NonNull final Rectangle2D bounds, @NonNull final Painter painter) throws UserException {
+        final var area = clip(bounds.getBounds());
+        if (area.isEmpty()) {
+            return; // outside of the map
+        }
+        for (var row = area.y / tileSize; row <= (area.y + area.height - 1) / tileSize; row++) {
+            for (var column = area.x / tileSize; column <= (area.x + area.width - 1) / tileSize; column++) {
+                final var g2 = getGraphics(getTile(column, row));
+                try {
+                    g2.translate(-column * tileSize, -row * tileSize);
+                    painter.paint(g2);
+                } finally {
+                    g2.dispose();
+                }
+            }
+        }
+    }
+
+    @Override
+    public BufferedImage copy(@NonNull final Rectangle area) throws UserException {
+        final var image = new BufferedImage(area.width, area.height, imageType);
+        final var clipped = clip(area);
+        if (clipped.isEmpty()) {
+            return image;
+        }
+        final var g = image.createGraphics();
+        try {
+            for (var row = clipped.y / tileSize; row <= (clipped.y + clipped.height - 1) / tileSize; row++) {
+                for (var column = clipped.x / tileSize; column <= (clipped.x + clipped.width - 1) / tileSize; column++) {
+                    g.drawImage(getTile(column, row), column * tileSize - area.x, row * tileSize - area.y, null);
+                }
+            }
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    //
+    // The pixels are copied straight from the tiles, without an image in
+    // between, if the area is inside of the map.
+    //
+    @Override
+    public void copyTo(@NonNull final Rectangle area, @NonNull final BufferedImage target, final int x, final int y)
+            throws UserException {
+        final var clipped = clip(area);
+        if (!clipped.equals(area)) {
+            MapCanvas.super.copyTo(area, target, x, y);
+            return;
+        }
+        final var raster = target.getRaster();
+        for (var row = area.y / tileSize; row <= (area.y + area.height - 1) / tileSize; row++) {
+            for (var column = area.x / tileSize; column <= (area.x + area.width - 1) / tileSize; column++) {
+                final var tile = getTile(column, row);
+                final var tileX = column * tileSize;
+                final var tileY = row * tileSize;
+                final var part = area.intersection(new Rectangle(tileX, tileY, tile.getWidth(), tile.getHeight()));
+                raster.setDataElements(x + part.x - area.x, y + part.y - area.y,
+                        tile.getRaster().createChild(part.x - tileX, part.y - tileY, part.width, part.height, 0, 0, null));
+            }
+        }
+    }
+
+    /**
+     * @return the number of tiles allocated so far
+     */
+    public int getAllocatedTileCount() {
+        return allocated;
+    }
+
+    /**
+     * @return the number of tiles covering the whole map
+     */
+    public int getTileCount() {
+        return tiles.length;
+    }
+
+    private Rectangle clip(@NonNull final Rectangle area) {
+        return area.intersection(new Rectangle(0, 0, width, height));
+    }
+
+    private BufferedImage getTile(final int column, final int row) throws UserException {
+        final var index = row * columns + column;
+        var tile = tiles[index];
+        if (tile == null) {
+            final var x = column * tileSize;
+            final var y = row * tileSize;
+            final var area = new Rectangle(x, y, Math.min(tileSize, width - x), Math.min(tileSize, height - y));
+            tile = new BufferedImage(area.width, area.height, imageType);
+            initializer.initialize(tile, area);
+            tiles[index] = tile;
+            allocated++;
+        }
+        return tile;
+    }
+
+}
@@ -0,0 +1,165 @@
+package app.gpx_animator.core.renderer.framewriter;
+
+import app.gpx_animator.core.UserException;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.jetbrains.annotations.NonNls;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decorates another frame writer and writes the frames on a dedicated
+ * thread, so that rendering and encoding of the frames overlap. The frames
+ * are handed over using a bounded queue: if the encoder can't keep up, the
+ * rendering thread blocks until there is space in the queue again.
+ *
+ * Errors of the encoder thread are thrown on the next call of
+ * {@link #addFrame(BufferedImage)} or {@link #close()}. If the rendering is
+ * cancelled or fails, {@link #abort()} stops the encoder thread.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+public final class AsyncFrameWriter implements FrameWriter {
+
+    @NonNls
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncFrameWriter.class);
+
+    private static final BufferedImage END_OF_FRAMES = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+    private static final long POLL_INTERVAL_MILLIS = 100;
+
+    private final FrameWriter frameWriter;
+    private final int queueSize;
+    private final BlockingQueue<BufferedImage> queue;
+    private final Thread encoderThread;
+
+    private volatile Throwable error;
+    private boolean closed;
+
+    // statistics, updated by the rendering thread only
+    private long frames;
+    private long queueDepthSum;
+    private int maxQueueDepth;
+    private long stalls;
+    private long stallNanos;
+
+    // statistics, updated by the encoder thread only
+    private volatile long encoderIdleNanos;
+    private volatile long encoderBusyNanos;
+
+    public AsyncFrameWriter(@NonNull final FrameWriter frameWriter, final int queueSize) {
+        this.frameWriter = frameWriter;
+        this.queueSize = queueSize;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.encoderThread = new Thread(this::encode, "frame-encoder"); //NON-NLS
+        encoderThread.setDaemon(true);
+        encoderThread.start();
+    }
+
+    @Override
+    public void addFrame(@NonNull final BufferedImage bi) throws UserException {
+        checkError();
+
+        final var depth = queue.size();
+        queueDepthSum += depth;
+        maxQueueDepth = Math.max(maxQueueDepth, depth);
+        frames++;
+
+        if (!queue.offer(bi)) {
+            stalls++;
+            final var start = System.nanoTime();
+            try {
+                while (!queue.offer(bi, POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    checkError();
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UserException("interrupted while waiting for the encoder", e);
+            } finally {
+                stallNanos += System.nanoTime() - start;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws UserException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            while (error == null && !queue.offer(END_OF_FRAMES, POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+                LOGGER.trace("Waiting for the encoder to accept the end of the frames");
+            }
+            encoderThread.join();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UserException("interrupted while waiting for the encoder", e);
+        }
+
+        logStatistics();
+        checkError();
+        frameWriter.close();
+    }
+
+    @Override
+    public void abort() {
+        closed = true;
+        encoderThread.interrupt();
+        try {
+            encoderThread.join(); // the frame being encoded is finished first
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        queue.clear();
+        frameWriter.abort();
+    }
+
+    private void encode() {
+        try {
+            while (true) {
+                final var idleStart = System.nanoTime();
+                final var bi = queue.take();
+                final var busyStart = System.nanoTime();
+                encoderIdleNanos += busyStart - idleStart;
+                if (bi == END_OF_FRAMES) { // NOPMD -- compare the instance on purpose
+                    return;
+                }
+                frameWriter.addFrame(bi);
+                encoderBusyNanos += System.nanoTime() - busyStart;
+            }
+        } catch (final InterruptedException e) {
+            error = e;
+            Thread.currentThread().interrupt();
+        } catch (final Exception | Error e) { // NOPMD -- everything has to be reported to the rendering thread
+            LOGGER.error("Error encoding frame", e);
+            error = e;
+        } finally {
+            if (error != null) {
+                queue.clear();
+            }
+        }
+    }
+
+    private void checkError() throws UserException {
+        final var throwable = error;
+        if (throwable instanceof UserException userException) {
+            throw userException;
+        } else if (throwable != null) {
+            throw new UserException("error encoding frame: %s".formatted(throwable.getMessage()), throwable);
+        }
+    }
+
+    private void logStatistics() {
+        final var averageQueueDepth = frames == 0 ? 0.0 : (double) queueDepthSum / frames;
+        LOGGER.info("Encoder queue: {} frames, capacity {}, average depth {}, max depth {}",
+                frames, queueSize, "%.1f".formatted(averageQueueDepth), maxQueueDepth); //NON-NLS
+        LOGGER.info("Renderer stalled {} times for {} ms waiting for the encoder, encoder busy {} ms and idle {} ms",
+                stalls, TimeUnit.NANOSECONDS.toMillis(stallNanos),
+                TimeUnit.NANOSECONDS.toMillis(encoderBusyNanos), TimeUnit.NANOSECONDS.toMillis(encoderIdleNanos));
+    }
+
+}
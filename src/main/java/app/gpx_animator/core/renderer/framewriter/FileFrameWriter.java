@@ -16,29 +16,54 @@ package app.gpx_animator.core.renderer.framewriter;
 
 import app.gpx_animator.core.UserException;
 import app.gpx_animator.core.preferences.Preferences;
+import app.gpx_animator.core.renderer.canvas.FrameImage;
 import org.jetbrains.annotations.NonNls;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.stream.FileImageOutputStream;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static app.gpx_animator.core.util.Utils.isEqual;
 
+/**
+ * Writes every frame to its own image file. With more than one thread, the
+ * frames are compressed and written concurrently by a pool of threads. The
+ * frame files are named by their index, so the order of completion does not
+ * matter. The number of frames waiting to be written is limited, so that the
+ * memory usage stays bounded even for large frames.
+ */
 @SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
 public final class FileFrameWriter implements FrameWriter {
 
     @NonNls
     private static final Logger LOGGER = LoggerFactory.getLogger(FileFrameWriter.class);
 
+    private static final int MAX_PNG_COMPRESSION_LEVEL = 9;
+
     private final String frameFilePattern;
     private final String imageType;
     private final double fps;
+    private final int pngCompressionLevel;
+    private final ExecutorService executor;
+    private final Semaphore framesInFlight;
+    private final int maxFramesInFlight;
+    private final AtomicReference<UserException> error = new AtomicReference<>();
     private int frame;
 
-    public FileFrameWriter(final String frameFilePattern, final String imageType, final double fps) throws UserException {
+    public FileFrameWriter(final String frameFilePattern, final String imageType, final double fps,
+                           final int threads, final int pngCompressionLevel) throws UserException {
         if (isEqual(String.format(frameFilePattern, 100), String.format(frameFilePattern, 200))) {
             final var resourceBundle = Preferences.getResourceBundle();
             throw new UserException(resourceBundle.getString("framewriter.error.outputpattern"));
@@ -47,21 +72,118 @@ public final class FileFrameWriter implements FrameWriter {
         this.frameFilePattern = frameFilePattern;
         this.imageType = imageType;
         this.fps = fps;
+        this.pngCompressionLevel = Math.min(pngCompressionLevel, MAX_PNG_COMPRESSION_LEVEL);
+
+        if (threads > 1) {
+            final var threadCounter = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+                final var thread = new Thread(runnable, "frame-file-writer-" + threadCounter.incrementAndGet()); //NON-NLS
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.maxFramesInFlight = threads * 2;
+            this.framesInFlight = new Semaphore(maxFramesInFlight);
+        } else {
+            this.executor = null;
+            this.maxFramesInFlight = 0;
+            this.framesInFlight = null;
+        }
     }
 
     @Override
     public void addFrame(final BufferedImage bi) throws UserException {
         final var outputfile = new File(String.format(frameFilePattern, ++frame));
+        if (executor == null) {
+            write(bi, outputfile);
+            return;
+        }
+
+        checkError();
+        acquire(1);
+        executor.execute(() -> {
+            try {
+                write(bi, outputfile);
+            } catch (final UserException e) {
+                error.compareAndSet(null, e);
+            } catch (final RuntimeException e) {
+                error.compareAndSet(null, new UserException(String.format("error writing frame to '%s'", outputfile), e));
+            } finally {
+                framesInFlight.release();
+            }
+        });
+    }
+
+    private void write(final BufferedImage bi, final File outputfile) throws UserException {
         try {
-            ImageIO.write(bi, imageType, outputfile);
+            if (pngCompressionLevel >= 0 && isEqual("png", imageType)) { //NON-NLS
+                writeCompressed(bi, outputfile);
+            } else {
+                ImageIO.write(bi, imageType, outputfile);
+            }
         } catch (final IOException e) {
             throw new UserException(String.format("error writing frame to '%s'", outputfile), e);
         }
+        if (bi instanceof FrameImage frameImage) {
+            frameImage.release();
+        }
+    }
+
+    private void writeCompressed(final BufferedImage bi, final File outputfile) throws IOException {
+        final var writer = ImageIO.getImageWritersByFormatName(imageType).next();
+        try (var output = new FileImageOutputStream(outputfile)) {
+            final var param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed()) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                // the PNG writer maps the quality 1.0 to no compression and 0.0 to the best compression
+                param.setCompressionQuality(1f - (float) pngCompressionLevel / MAX_PNG_COMPRESSION_LEVEL);
+            }
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(bi, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private void acquire(final int permits) throws UserException {
+        try {
+            while (!framesInFlight.tryAcquire(permits, 100, TimeUnit.MILLISECONDS)) {
+                checkError();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UserException("interrupted while writing frames", e);
+        }
+    }
+
+    private void checkError() throws UserException {
+        final var exception = error.get();
+        if (exception != null) {
+            executor.shutdownNow();
+            throw exception;
+        }
     }
 
     @Override
-    public void close() {
+    public void close() throws UserException {
+        if (executor != null) {
+            try {
+                // wait until all frames in flight are written
+                acquire(maxFramesInFlight);
+                framesInFlight.release(maxFramesInFlight);
+            } finally {
+                executor.shutdown();
+            }
+            checkError();
+        }
+
         LOGGER.info("To encode generated frames you may run this command:");
         LOGGER.info("ffmpeg -i {} -vcodec mpeg4 -b 3000k -r {} video.avi", frameFilePattern, fps); //NON-NLS
     }
+
+    @Override
+    public void abort() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
 }
@@ -15,13 +15,36 @@
 package app.gpx_animator.core.renderer.framewriter;
 
 import app.gpx_animator.core.UserException;
+import app.gpx_animator.core.renderer.canvas.FrameImage;
 
 import java.awt.image.BufferedImage;
 
 public interface FrameWriter {
 
+    /**
+     * Adds a frame to the output. The frame may be written asynchronously,
+     * so the image must not be modified after it was added. The image of a
+     * frame provided by a pool is released once it is written, see
+     * {@link FrameImage#release()}, so it must be added only once.
+     *
+     * @param bi the image of the frame
+     * @throws UserException error to be shown to the user
+     */
     void addFrame(BufferedImage bi) throws UserException;
 
-    void close();
+    /**
+     * Writes all pending frames and closes the output.
+     *
+     * @throws UserException error to be shown to the user
+     */
+    void close() throws UserException;
+
+    /**
+     * Stops writing after the rendering was cancelled or failed: the pending
+     * frames are discarded and the resources are released, without waiting
+     * for the output to be complete. Calling this method after
+     * {@link #close()} does no harm.
+     */
+    default void abort() { }
 
 }
@@ -14,6 +14,7 @@
  */
 package app.gpx_animator.core.renderer.framewriter;
 
+import app.gpx_animator.core.renderer.canvas.FrameImage;
 import com.xuggle.mediatool.IMediaWriter;
 import com.xuggle.mediatool.ToolFactory;
 import com.xuggle.xuggler.IRational;
@@ -37,10 +38,20 @@ public final class VideoFrameWriter implements FrameWriter {
     @Override
     public void addFrame(final BufferedImage bi) {
         writer.encodeVideo(0, bi, (int) (frame++ * interval), TimeUnit.MILLISECONDS);
+        if (bi instanceof FrameImage frameImage) {
+            frameImage.release();
+        }
     }
 
     @Override
     public void close() {
         writer.close();
     }
+
+    @Override
+    public void abort() {
+        if (writer.isOpen()) {
+            writer.close(); // release the file, the video ends with the last frame written
+        }
+    }
 }
@@ -4,6 +4,8 @@ import app.gpx_animator.core.configuration.Configuration;
 import edu.umd.cs.findbugs.annotations.NonNull;
 
 import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 
 import static app.gpx_animator.core.util.RenderUtil.getGraphics;
@@ -29,4 +31,9 @@ public final class BackgroundColorPlugin implements RendererPlugin {
         graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
     }
 
+    @Override
+    public void renderBackground(@NonNull final BufferedImage image, @NonNull final Rectangle area, @NonNull final Dimension size) {
+        renderBackground(image);
+    }
+
 }
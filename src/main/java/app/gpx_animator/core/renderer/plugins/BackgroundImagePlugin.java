@@ -6,6 +6,8 @@ import edu.umd.cs.findbugs.annotations.NonNull;
 import org.imgscalr.Scalr;
 
 import javax.imageio.ImageIO;
+import java.awt.Dimension;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 
@@ -15,6 +17,7 @@ import static app.gpx_animator.core.util.RenderUtil.getGraphics;
 public final class BackgroundImagePlugin implements RendererPlugin {
 
     private final transient BufferedImage backgroundImage;
+    private transient BufferedImage scaledImage;
 
     public BackgroundImagePlugin(@NonNull final Configuration configuration) throws UserException {
         final var file = configuration.getBackgroundImage();
@@ -41,14 +44,31 @@ public final class BackgroundImagePlugin implements RendererPlugin {
             return;
         }
 
-        final var scaledImage = backgroundImage.getWidth() <= image.getWidth() && backgroundImage.getHeight() <= image.getHeight()
-                ? backgroundImage
-                : Scalr.resize(Scalr.resize(backgroundImage,
-                Scalr.Method.ULTRA_QUALITY, Scalr.Mode.FIT_TO_WIDTH, image.getWidth()),
-                Scalr.Method.ULTRA_QUALITY, Scalr.Mode.FIT_TO_HEIGHT, image.getHeight());
+        final var scaled = scale(image.getWidth(), image.getHeight());
+        final var graphics = getGraphics(image);
+        graphics.drawImage(scaled, 0, 0, scaled.getWidth(), scaled.getHeight(), null);
+    }
 
+    @Override
+    public void renderBackground(@NonNull final BufferedImage image, @NonNull final Rectangle area, @NonNull final Dimension size) {
+        if (backgroundImage == null) {
+            // no image defined
+            return;
+        }
+
+        if (scaledImage == null) {
+            scaledImage = scale(size.width, size.height); // the same for all areas of the map
+        }
         final var graphics = getGraphics(image);
-        graphics.drawImage(scaledImage, 0, 0, scaledImage.getWidth(), scaledImage.getHeight(), null);
+        graphics.drawImage(scaledImage, -area.x, -area.y, scaledImage.getWidth(), scaledImage.getHeight(), null);
+    }
+
+    private BufferedImage scale(final int width, final int height) {
+        return backgroundImage.getWidth() <= width && backgroundImage.getHeight() <= height
+                ? backgroundImage
+                : Scalr.resize(Scalr.resize(backgroundImage,
+                Scalr.Method.ULTRA_QUALITY, Scalr.Mode.FIT_TO_WIDTH, width),
+                Scalr.Method.ULTRA_QUALITY, Scalr.Mode.FIT_TO_HEIGHT, height);
     }
 
 }
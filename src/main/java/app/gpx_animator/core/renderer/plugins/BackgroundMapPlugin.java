@@ -6,26 +6,55 @@ import app.gpx_animator.core.preferences.Preferences;
 import app.gpx_animator.core.renderer.Metadata;
 import app.gpx_animator.core.renderer.RenderingContext;
 import app.gpx_animator.core.renderer.cache.TileCache;
+import app.gpx_animator.core.renderer.cache.TileCacheStatistics;
+import app.gpx_animator.core.renderer.canvas.MapCanvas;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.awt.Color;
+import java.awt.Dimension;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.awt.image.RescaleOp;
+import java.util.List;
 import java.util.ResourceBundle;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static app.gpx_animator.core.util.TileUtil.TILE_SIZE;
+import static app.gpx_animator.core.util.TileUtil.createTileUrl;
+import static app.gpx_animator.core.util.TileUtil.getSwitchOptions;
+import static app.gpx_animator.core.util.TileUtil.getTileRange;
+import static app.gpx_animator.core.util.TileUtil.xToTileX;
+import static app.gpx_animator.core.util.TileUtil.yToTileY;
 
 @SuppressWarnings("unused") // Plugins are loaded using reflection
 public final class BackgroundMapPlugin implements RendererPlugin {
 
-    @SuppressWarnings({"RegExpAnonymousGroup", "RegExpRedundantEscape"})
-    // This regex is tested and I don't want to rewrite it which may potentionally break it.
-    private static final Pattern SWITCH_PATTERN = Pattern.compile("\\{switch:([^}]*)\\}");
+    @NonNls
+    private static final Logger LOGGER = LoggerFactory.getLogger(BackgroundMapPlugin.class);
+
+    private static final int TILE_LOADER_THREADS = 8;
+    private static final long CANCEL_CHECK_INTERVAL_MILLIS = 100;
+    private static final int MAX_PARENT_LEVELS = 8;
 
     private final transient ResourceBundle resourceBundle = Preferences.getResourceBundle();
 
     private final transient String tmsUrlTemplate;
     private final transient float backgroundMapVisibility;
+    private final transient boolean offline;
+    private final transient Color offlineTileColor;
+    private final transient boolean lazy;
 
     private transient int zoom;
     private transient double minX;
@@ -35,9 +64,24 @@ public final class BackgroundMapPlugin implements RendererPlugin {
 
     private transient RenderingContext context;
 
+    // only used if the tiles are loaded on demand, along the viewport or for the tiles of the map canvas
+    private transient MapTileGrid tileGrid;
+    private transient ExecutorService tileExecutor;
+    private transient TileCacheStatistics statistics;
+
     public BackgroundMapPlugin(@NonNull final Configuration configuration) {
         tmsUrlTemplate = configuration.getTmsUrlTemplate();
         backgroundMapVisibility = configuration.getBackgroundMapVisibility();
+        offline = configuration.isOffline();
+        offlineTileColor = configuration.getOfflineTileColor();
+
+        // without a viewport the whole map is visible in the first frame anyway, and
+        // a background image drawn on top of the map would be covered by lazily drawn tiles
+        final var viewport = configuration.getViewportWidth() != null || configuration.getViewportHeight() != null;
+        lazy = configuration.isLazyMapTiles() && viewport && configuration.getBackgroundImage() == null;
+        if (configuration.isLazyMapTiles() && !lazy) {
+            LOGGER.info("Map tiles are loaded up front, lazy loading needs a viewport and no background image");
+        }
     }
 
     @Override
@@ -61,101 +105,308 @@ public final class BackgroundMapPlugin implements RendererPlugin {
 
     @Override
     public void renderBackground(@NonNull final BufferedImage image) throws UserException {
-        if (tmsUrlTemplate == null || backgroundMapVisibility <= 0.0) {
-            // no map defined or map should not be visible
+        if (tmsUrlTemplate == null || backgroundMapVisibility <= 0.0 || lazy) {
+            // no map defined, map should not be visible or the tiles are drawn by updateBackground
             return;
         }
 
-        final var ga = (Graphics2D) image.getGraphics();
-
-        final var tileDblX = xToTileX(zoom, minX);
-        final var tileX = (int) Math.floor(tileDblX);
-        final var offsetX = (int) Math.floor(256.0 * (tileX - tileDblX));
+        final var tiles = getTileRange(zoom, minX, maxX, minY, maxY);
+        final var tileX = tiles.x;
+        final var offsetX = (int) Math.floor(TILE_SIZE * (tileX - xToTileX(zoom, minX)));
+        final var tileY = tiles.y + tiles.height - 1;
+        final var offsetY = (int) Math.floor(TILE_SIZE * (yToTileY(zoom, minY) - tileY));
+        final var total = tiles.width * tiles.height;
 
-        final var tileDblY = yToTileY(zoom, minY);
-        final var tileY = (int) Math.floor(tileDblY);
-        final var offsetY = (int) Math.floor(256.0 * (tileDblY - tileY));
-
-        final var maxXtile = (int) Math.floor(xToTileX(zoom, maxX));
-        final var maxYtile = (int) Math.floor(yToTileY(zoom, maxY));
-
-        final var total = (maxXtile - tileX + 1) * (tileY - maxYtile + 1);
-        var i = 0;
-
-        final var m = SWITCH_PATTERN.matcher(tmsUrlTemplate); // note that only one switch in pattern is supported
-        final var options = m.find() ? m.group(1).split(",") : null;
+        final var options = getSwitchOptions(tmsUrlTemplate);
 
         final var tileCacheDir = Preferences.getTileCacheDir();
         final var tileCacheTimeLimit = Preferences.getTileCacheTimeLimit();
+        final var rescaleOp = new RescaleOp(backgroundMapVisibility, (1f - backgroundMapVisibility) * 255f, null);
 
-        for (var x = tileX; x <= maxXtile; x++) {
-            for (var y = tileY; y >= maxYtile; y--) {
-                if (context.isCancelled1()) {
-                    return;
-                }
+        if (offline) {
+            reportCoverage(tiles, options, tileCacheDir);
+        }
 
-                i++;
+        // the tiles are downloaded and decoded concurrently (the downloader limits the connections per host),
+        // and drawn onto the background as soon as they are available
+        statistics = TileCache.getStatistics();
+        final var executor = createExecutor();
 
-                var url = tmsUrlTemplate
-                        .replace("{zoom}", Integer.toString(zoom)) //NON-NLS
-                        .replace("{x}", Integer.toString(x)) //NON-NLS
-                        .replace("{y}", Integer.toString(y)); //NON-NLS
+        final var ga = (Graphics2D) image.getGraphics();
+        var placeholders = 0;
+        var missing = 0;
+        try {
+            final var completionService = new ExecutorCompletionService<LoadedTile>(executor);
+            for (var x = tileX; x < tileX + tiles.width; x++) {
+                for (var y = tileY; y >= tiles.y; y--) {
+                    final var x1 = x;
+                    final var y1 = y;
+                    completionService.submit(() -> loadTile(options, x1, y1, tileCacheDir, tileCacheTimeLimit, rescaleOp));
+                }
+            }
 
-                if (options != null) {
-                    final var sb = new StringBuffer();
-                    final var matcher = SWITCH_PATTERN.matcher(url);
-                    if (matcher.find()) {
-                        matcher.appendReplacement(sb, options[i % options.length]);
+            for (var loaded = 1; loaded <= total; loaded++) {
+                final var tile = takeTile(completionService);
+                if (tile == null) {
+                    return; // cancelled
+                }
+                if (tile.image() != null) {
+                    final var imageX = TILE_SIZE * (tile.x() - tileX) + offsetX;
+                    final var imageY = image.getHeight() - (TILE_SIZE * (tileY - tile.y()) + offsetY);
+                    ga.drawImage(tile.image(), imageX, imageY, null);
+                }
+                if (tile.placeholder()) {
+                    if (tile.image() != null) {
+                        placeholders++;
+                    } else {
+                        missing++;
                     }
-                    matcher.appendTail(sb);
-                    url = sb.toString();
                 }
+                context.setProgress1((int) (100.0 * loaded / total),
+                        String.format(resourceBundle.getString("map.loadingtiles.progress"), loaded, total));
+            }
+            if (offline) {
+                LOGGER.info("Map tiles (offline): {} from the cache, {} replaced by placeholders, {} missing",
+                        total - placeholders - missing, placeholders, missing);
+            }
+        } finally {
+            shutdown(executor);
+        }
+    }
+
+    @Override
+    public void renderBackground(@NonNull final BufferedImage image, @NonNull final Rectangle area,
+                                 @NonNull final Dimension size) throws UserException {
+        if (tmsUrlTemplate == null || backgroundMapVisibility <= 0.0 || lazy) {
+            // no map defined, map should not be visible or the tiles are drawn by updateBackground
+            return;
+        }
 
-                context.setProgress1((int) (100.0 * i / total), String.format(resourceBundle.getString("map.loadingtiles.progress"), i, total));
+        final var tiles = getTileRange(zoom, minX, maxX, minY, maxY);
+        final var originX = (int) Math.floor(TILE_SIZE * (tiles.x - xToTileX(zoom, minX)));
+        final var offsetY = (int) Math.floor(TILE_SIZE * (yToTileY(zoom, minY) - (tiles.y + tiles.height - 1)));
+        final var originY = size.height - offsetY - TILE_SIZE * (tiles.height - 1);
 
-                final var tile = TileCache.getTile(url, tileCacheDir, tileCacheTimeLimit);
+        final var minColumn = Math.max(Math.floorDiv(area.x - originX, TILE_SIZE), 0);
+        final var maxColumn = Math.min(Math.floorDiv(area.x + area.width - 1 - originX, TILE_SIZE), tiles.width - 1);
+        final var minRow = Math.max(Math.floorDiv(area.y - originY, TILE_SIZE), 0);
+        final var maxRow = Math.min(Math.floorDiv(area.y + area.height - 1 - originY, TILE_SIZE), tiles.height - 1);
+        if (minColumn > maxColumn || minRow > maxRow) {
+            return;
+        }
 
-                // convert to RGB format
-                final var tile1 = new BufferedImage(tile.getWidth(), tile.getHeight(), BufferedImage.TYPE_INT_RGB);
-                tile1.getGraphics().drawImage(tile, 0, 0, null);
+        final var options = getSwitchOptions(tmsUrlTemplate);
+        final var tileCacheDir = Preferences.getTileCacheDir();
+        final var tileCacheTimeLimit = Preferences.getTileCacheTimeLimit();
+        final var rescaleOp = new RescaleOp(backgroundMapVisibility, (1f - backgroundMapVisibility) * 255f, null);
 
-                ga.drawImage(tile1,
-                        new RescaleOp(backgroundMapVisibility, (1f - backgroundMapVisibility) * 255f, null),
-                        256 * (x - tileX) + offsetX,
-                        image.getHeight() - (256 * (tileY - y) + offsetY));
+        // the executor is kept for all areas of the map, until the rendering is finished
+        if (tileExecutor == null) {
+            statistics = TileCache.getStatistics();
+            tileExecutor = createExecutor();
+        }
+        final var completionService = new ExecutorCompletionService<LoadedTile>(tileExecutor);
+        for (var column = minColumn; column <= maxColumn; column++) {
+            for (var row = minRow; row <= maxRow; row++) {
+                final var x = tiles.x + column;
+                final var y = tiles.y + row;
+                completionService.submit(() -> loadTile(options, x, y, tileCacheDir, tileCacheTimeLimit, rescaleOp));
             }
         }
 
-        context.setProgress1(100, String.format(resourceBundle.getString("map.loadingtiles.progress"), i, total));
+        final var ga = (Graphics2D) image.getGraphics();
+        try {
+            for (var loaded = 0; loaded < (maxColumn - minColumn + 1) * (maxRow - minRow + 1); loaded++) {
+                final var tile = takeTile(completionService);
+                if (tile == null) {
+                    return; // cancelled
+                }
+                if (tile.image() != null) {
+                    final var imageX = originX + TILE_SIZE * (tile.x() - tiles.x) - area.x;
+                    final var imageY = originY + TILE_SIZE * (tile.y() - tiles.y) - area.y;
+                    ga.drawImage(tile.image(), imageX, imageY, null);
+                }
+            }
+        } finally {
+            ga.dispose();
+        }
     }
 
-    private static double yToTileY(final int zoom, final double minY) {
-        return latToTileY(zoom, yToLat(minY));
+    @Override
+    public List<Rectangle> updateBackground(@NonNull final MapCanvas canvas, @NonNull final Dimension size,
+                                            @NonNull final Rectangle viewport, @NonNull final List<Rectangle> ahead)
+            throws UserException {
+        if (tmsUrlTemplate == null || backgroundMapVisibility <= 0.0 || !lazy) {
+            return List.of();
+        }
+        if (tileGrid == null) {
+            tileGrid = createTileGrid(size);
+        }
+        final var changed = tileGrid.update(canvas, viewport, ahead);
+        if (tileGrid.getDrawnCount() == tileGrid.getTileCount() && tileExecutor != null) {
+            // the whole map is drawn, nothing left to load
+            shutdown(tileExecutor);
+            tileExecutor = null;
+        }
+        return changed;
     }
 
+    //
+    // The tile grid draws the tiles of the map when the viewport reaches
+    // them, it is created for the first frame.
+    //
+    private MapTileGrid createTileGrid(@NonNull final Dimension size) throws UserException {
+        final var tiles = getTileRange(zoom, minX, maxX, minY, maxY);
+        final var originX = (int) Math.floor(TILE_SIZE * (tiles.x - xToTileX(zoom, minX)));
+        final var offsetY = (int) Math.floor(TILE_SIZE * (yToTileY(zoom, minY) - (tiles.y + tiles.height - 1)));
+        final var originY = size.height - offsetY - TILE_SIZE * (tiles.height - 1);
+
+        final var options = getSwitchOptions(tmsUrlTemplate);
+        final var tileCacheDir = Preferences.getTileCacheDir();
+        final var tileCacheTimeLimit = Preferences.getTileCacheTimeLimit();
+        final var rescaleOp = new RescaleOp(backgroundMapVisibility, (1f - backgroundMapVisibility) * 255f, null);
 
-    private static double xToTileX(final int zoom, final double minX) {
-        return lonToTileX(zoom, xToLon(minX));
-    }
+        if (offline) {
+            reportCoverage(tiles, options, tileCacheDir);
+        }
 
+        statistics = TileCache.getStatistics();
+        tileExecutor = createExecutor();
+        LOGGER.info("Map tiles: loading {} tiles on demand along the viewport", tiles.width * tiles.height);
+        return new MapTileGrid(tiles, originX, originY,
+                (x, y) -> loadTile(options, x, y, tileCacheDir, tileCacheTimeLimit, rescaleOp).image(),
+                tileExecutor, context::isCancelled1);
+    }
 
-    private static double lonToTileX(final int zoom, final double lon) {
-        return (lon + 180.0) / 360.0 * (1 << zoom);
+    @Override
+    public void finishRendering() {
+        if (tileGrid != null) {
+            LOGGER.info("Map tiles: {} of {} tiles drawn on demand", tileGrid.getDrawnCount(), tileGrid.getTileCount());
+            tileGrid = null;
+        }
+        if (tileExecutor != null) {
+            shutdown(tileExecutor);
+            tileExecutor = null;
+        }
     }
 
+    private ExecutorService createExecutor() {
+        final var threadCounter = new AtomicInteger();
+        return Executors.newFixedThreadPool(TILE_LOADER_THREADS, runnable -> {
+            final var thread = new Thread(runnable, "tile-loader-" + threadCounter.incrementAndGet()); //NON-NLS
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
 
-    private static double latToTileY(final int zoom, final double lat) {
-        return (1 - Math.log(Math.tan(Math.toRadians(lat)) + 1 / Math.cos(Math.toRadians(lat))) / Math.PI) / 2 * (1 << zoom);
+    private void shutdown(@NonNull final ExecutorService executor) {
+        executor.shutdownNow();
+        TileCache.sweepCache();
+        if (!offline) {
+            final var loaded = TileCache.getStatistics().since(statistics);
+            LOGGER.info("Map tiles: {} from the cache, {} downloaded, {} revalidated, {} expired and downloaded again",
+                    loaded.hits(), loaded.misses(), loaded.revalidated(), loaded.refetched());
+        }
     }
 
+    //
+    // Load a tile and convert it to the RGB format with the visibility of
+    // the map applied. In offline mode a missing tile is replaced by a
+    // placeholder, without any, the image is null and the tile stays empty.
+    //
+    LoadedTile loadTile(final String[] options, final int x, final int y, final String tileCacheDir,
+                        final long tileCacheTimeLimit, @NonNull final RescaleOp rescaleOp) throws UserException {
+        final var url = createTileUrl(tmsUrlTemplate, options, zoom, x, y);
+        var tile = offline
+                ? TileCache.getCachedTile(url, tileCacheDir)
+                : TileCache.getTile(url, tileCacheDir, tileCacheTimeLimit);
+        final var placeholder = tile == null;
+        if (placeholder) {
+            tile = createPlaceholder(options, x, y, tileCacheDir);
+            if (tile == null) {
+                return new LoadedTile(null, x, y, true); // stays empty
+            }
+        }
+
+        // convert to RGB format
+        final var tile1 = new BufferedImage(tile.getWidth(), tile.getHeight(), BufferedImage.TYPE_INT_RGB);
+        tile1.getGraphics().drawImage(tile, 0, 0, null);
 
-    private static double xToLon(final double x) {
-        return Math.toDegrees(x);
+        return new LoadedTile(rescaleOp.filter(tile1, null), x, y, placeholder);
     }
 
+    private void reportCoverage(@NonNull final Rectangle tiles, final String[] options, final String tileCacheDir) throws UserException {
+        var cached = 0;
+        for (var x = tiles.x; x < tiles.x + tiles.width; x++) {
+            for (var y = tiles.y; y < tiles.y + tiles.height; y++) {
+                final var url = createTileUrl(tmsUrlTemplate, options, zoom, x, y);
+                if (TileCache.getCachedTileSize(url, tileCacheDir, Long.MAX_VALUE) >= 0) {
+                    cached++;
+                }
+            }
+        }
+        final var total = tiles.width * tiles.height;
+        context.setProgress1(0, String.format(resourceBundle.getString("map.offline.coverage"),
+                (int) (100.0 * cached / total), cached, total));
+    }
+
+    //
+    // Create the placeholder for a tile missing in offline mode: a colored
+    // tile, or the enlarged part of the nearest cached tile of a lower zoom
+    // level. Without any, the tile stays empty (null).
+    //
+    private BufferedImage createPlaceholder(final String[] options, final int x, final int y, final String tileCacheDir) throws UserException {
+        if (offlineTileColor != null) {
+            final var placeholder = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+            final var g = placeholder.createGraphics();
+            g.setColor(offlineTileColor);
+            g.fillRect(0, 0, TILE_SIZE, TILE_SIZE);
+            g.dispose();
+            return placeholder;
+        }
+
+        for (var level = 1; level <= MAX_PARENT_LEVELS && level <= zoom; level++) {
+            final var parentUrl = createTileUrl(tmsUrlTemplate, options, zoom - level, x >> level, y >> level);
+            final var parent = TileCache.getCachedTile(parentUrl, tileCacheDir);
+            if (parent != null) {
+                final var size = parent.getWidth() >> level;
+                if (size == 0) {
+                    break;
+                }
+                final var sx = (x & ((1 << level) - 1)) * size;
+                final var sy = (y & ((1 << level) - 1)) * size;
+                final var placeholder = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+                final var g = placeholder.createGraphics();
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.drawImage(parent, 0, 0, TILE_SIZE, TILE_SIZE, sx, sy, sx + size, sy + size, null);
+                g.dispose();
+                return placeholder;
+            }
+        }
+        return null;
+    }
 
-    private static double yToLat(final double y) {
-        return Math.toDegrees(2.0 * (Math.atan(Math.exp(y)) - Math.PI / 4.0));
+    private LoadedTile takeTile(@NonNull final CompletionService<LoadedTile> completionService) throws UserException {
+        try {
+            while (!context.isCancelled1()) {
+                final var future = completionService.poll(CANCEL_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (future != null) {
+                    return future.get();
+                }
+            }
+            return null;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UserException(e.getMessage(), e);
+        } catch (final ExecutionException e) {
+            final var cause = e.getCause();
+            if (cause instanceof UserException userException) {
+                throw userException;
+            }
+            throw new UserException(cause.getMessage(), cause);
+        }
     }
 
+    record LoadedTile(BufferedImage image, int x, int y, boolean placeholder) { }
+
 }
@@ -9,6 +9,8 @@ import edu.umd.cs.findbugs.annotations.Nullable;
 
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 @SuppressWarnings("unused") // Plugins are loaded using reflection
 public final class CommentPlugin extends TextRenderer implements RendererPlugin {
@@ -16,6 +18,8 @@ public final class CommentPlugin extends TextRenderer implements RendererPlugin
     private final transient Position position;
     private final transient int margin;
 
+    private final transient NavigableMap<Integer, String> commentChanges = new ConcurrentSkipListMap<>();
+
     private String lastComment;
 
     public CommentPlugin(@NonNull final Configuration configuration) {
@@ -29,6 +33,15 @@ public final class CommentPlugin extends TextRenderer implements RendererPlugin
         return 0;
     }
 
+    @Override
+    public void prepareFrame(final int frame, @Nullable final Point2D marker) {
+        final var previousComment = lastComment;
+        final var comment = getCommentString(marker);
+        if (comment != null && !comment.equals(previousComment)) {
+            commentChanges.put(frame, comment);
+        }
+    }
+
     @Override
     public void renderFrame(final int frame, @Nullable final Point2D marker, @NonNull final BufferedImage image) {
         if (Position.HIDDEN.equals(position)) {
@@ -36,7 +49,8 @@ public final class CommentPlugin extends TextRenderer implements RendererPlugin
             return;
         }
 
-        final var comment = getCommentString(marker);
+        final var entry = commentChanges.floorEntry(frame);
+        final var comment = entry != null ? entry.getValue() : null;
         if (comment != null && !comment.isBlank()) {
             renderText(comment, position, margin, image);
         }
@@ -47,6 +61,9 @@ public final class CommentPlugin extends TextRenderer implements RendererPlugin
      * - If the track point has a comment, it returns the comment.
      * - If the track point has no comment, it returns the last comment.
      * - If the track point has an empty comment, it resets the comment.
+     *
+     * As the result depends on all previous frames, it is called in frame
+     * order only, and the changes are remembered per frame number.
      */
     private String getCommentString(@Nullable final Point2D marker) {
         if (marker instanceof GpxPoint gpxPoint) {
@@ -0,0 +1,240 @@
+package app.gpx_animator.core.renderer.plugins;
+
+import app.gpx_animator.core.UserException;
+import app.gpx_animator.core.renderer.canvas.MapCanvas;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+
+import static app.gpx_animator.core.util.TileUtil.TILE_SIZE;
+
+/**
+ * The map tiles behind a moving map, loaded on demand. Only the tiles of
+ * the visible area are drawn onto the background, when the viewport
+ * reaches them for the first time. The tiles of the areas the viewport
+ * will reach next are loaded in advance, but kept in memory until they
+ * become visible. The number of tiles loaded in advance is limited and
+ * the least recently requested ones are dropped first, so the memory used
+ * depends on the size of the viewport and not on the length of the route.
+ *
+ * This class is not thread safe, it has to be used in the order of the
+ * frames; the tiles are loaded by the executor.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+final class MapTileGrid {
+
+    /**
+     * Loads a tile, ready to be drawn.
+     */
+    @FunctionalInterface
+    interface TileLoader {
+
+        /**
+         * @return the tile or {@code null} if the area of the tile stays empty
+         */
+        BufferedImage load(int x, int y) throws UserException;
+    }
+
+    private static final int PREFETCH_VIEWPORTS = 4;
+    private static final int MIN_PREFETCH_TILES = 16;
+    private static final long CANCEL_CHECK_INTERVAL_MILLIS = 100;
+
+    private final Rectangle tiles;
+    private final int originX;
+    private final int originY;
+    private final TileLoader loader;
+    private final ExecutorService executor;
+    private final BooleanSupplier cancelled;
+
+    private final BitSet drawn = new BitSet();
+    private final Map<Integer, Future<BufferedImage>> pending = new LinkedHashMap<>();
+    private final Map<Integer, BufferedImage> loaded = new LinkedHashMap<>(16, 0.75f, true);
+    private int capacity = MIN_PREFETCH_TILES;
+
+    /**
+     * @param tiles     the tiles of the map, {@code x} and {@code y} being the tile with the smallest coordinates
+     * @param originX   the x position of the tile with the smallest coordinates in the map
+     * @param originY   the y position of the tile with the smallest coordinates in the map
+     * @param loader    the loader of the tiles, called by the executor
+     * @param executor  the executor to load the tiles
+     * @param cancelled returns {@code true} if the rendering was cancelled
+     */
+    MapTileGrid(@NonNull final Rectangle tiles, final int originX, final int originY, @NonNull final TileLoader loader,
+                @NonNull final ExecutorService executor, @NonNull final BooleanSupplier cancelled) {
+        this.tiles = new Rectangle(tiles);
+        this.originX = originX;
+        this.originY = originY;
+        this.loader = loader;
+        this.executor = executor;
+        this.cancelled = cancelled;
+    }
+
+    /**
+     * Draws the tiles of the visible area, which are not drawn yet, and
+     * starts loading the tiles of the areas ahead.
+     *
+     * @param canvas  the map to draw the tiles on
+     * @param visible the visible area of the map
+     * @param ahead   the areas of the map which will be visible next, nearest first
+     * @return the areas of the drawn tiles, empty if the rendering was cancelled
+     * @throws UserException if a tile can't be loaded
+     */
+    List<Rectangle> update(@NonNull final MapCanvas canvas, @NonNull final Rectangle visible,
+                           @NonNull final List<Rectangle> ahead) throws UserException {
+        final var missing = new ArrayList<Integer>();
+        forEachTile(visible, index -> {
+            if (!drawn.get(index)) {
+                missing.add(index);
+            }
+        });
+        capacity = Math.max(capacity, PREFETCH_VIEWPORTS * countTiles(visible));
+
+        for (final var index : missing) {
+            if (!loaded.containsKey(index)) {
+                pending.computeIfAbsent(index, this::submit);
+            }
+        }
+
+        final List<Rectangle> changed = new ArrayList<>(missing.size());
+        for (final var index : missing) {
+            final var future = pending.remove(index);
+            final var tile = future != null ? await(future) : loaded.remove(index);
+            if (cancelled.getAsBoolean()) {
+                return List.of();
+            }
+            final var bounds = getBounds(index);
+            if (tile != null) {
+                canvas.draw(bounds, g -> g.drawImage(tile, bounds.x, bounds.y, null));
+            }
+            drawn.set(index);
+            changed.add(bounds);
+        }
+
+        collectLoadedTiles();
+        prefetch(ahead);
+        return changed;
+    }
+
+    /**
+     * @return the number of tiles drawn so far
+     */
+    int getDrawnCount() {
+        return drawn.cardinality();
+    }
+
+    int getTileCount() {
+        return tiles.width * tiles.height;
+    }
+
+    private void prefetch(@NonNull final List<Rectangle> ahead) {
+        for (final var area : ahead) {
+            forEachTile(area, index -> {
+                if (drawn.get(index) || pending.containsKey(index)) {
+                    return;
+                }
+                if (loaded.containsKey(index)) {
+                    loaded.get(index); // requested again, so it is dropped later
+                } else if (pending.size() + loaded.size() < capacity) {
+                    pending.put(index, submit(index));
+                }
+            });
+        }
+    }
+
+    //
+    // Move the tiles loaded in advance out of the executor, and drop the
+    // least recently requested ones if there are too many of them. A tile
+    // which failed to load is tried again when it becomes visible, so the
+    // error is only reported if the tile is really needed.
+    //
+    private void collectLoadedTiles() {
+        final var iterator = pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final var entry = iterator.next();
+            final var future = entry.getValue();
+            if (future.isDone()) {
+                iterator.remove();
+                try {
+                    if (!future.isCancelled()) {
+                        loaded.put(entry.getKey(), future.get());
+                    }
+                } catch (final ExecutionException e) {
+                    // the tile is loaded again when it becomes visible
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        final var iterator2 = loaded.keySet().iterator();
+        while (loaded.size() > capacity && iterator2.hasNext()) {
+            iterator2.next();
+            iterator2.remove();
+        }
+    }
+
+    private Future<BufferedImage> submit(final int index) {
+        final var x = tiles.x + index / tiles.height;
+        final var y = tiles.y + index % tiles.height;
+        return executor.submit(() -> loader.load(x, y));
+    }
+
+    private BufferedImage await(@NonNull final Future<BufferedImage> future) throws UserException {
+        try {
+            while (!cancelled.getAsBoolean()) {
+                try {
+                    return future.get(CANCEL_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (final TimeoutException e) {
+                    // check for cancellation and wait again
+                }
+            }
+            future.cancel(true);
+            return null;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UserException(e.getMessage(), e);
+        } catch (final ExecutionException e) {
+            final var cause = e.getCause();
+            if (cause instanceof UserException userException) {
+                throw userException;
+            }
+            throw new UserException(cause.getMessage(), cause);
+        }
+    }
+
+    private Rectangle getBounds(final int index) {
+        return new Rectangle(originX + TILE_SIZE * (index / tiles.height), originY + TILE_SIZE * (index % tiles.height),
+                TILE_SIZE, TILE_SIZE);
+    }
+
+    private int countTiles(@NonNull final Rectangle area) {
+        final var count = new int[1];
+        forEachTile(area, index -> count[0]++);
+        return count[0];
+    }
+
+    private void forEachTile(@NonNull final Rectangle area, @NonNull final IntConsumer consumer) {
+        final var minColumn = Math.max(Math.floorDiv(area.x - originX, TILE_SIZE), 0);
+        final var maxColumn = Math.min(Math.floorDiv(area.x + area.width - 1 - originX, TILE_SIZE), tiles.width - 1);
+        final var minRow = Math.max(Math.floorDiv(area.y - originY, TILE_SIZE), 0);
+        final var maxRow = Math.min(Math.floorDiv(area.y + area.height - 1 - originY, TILE_SIZE), tiles.height - 1);
+        for (var column = minColumn; column <= maxColumn; column++) {
+            for (var row = minRow; row <= maxRow; row++) {
+                consumer.accept(column * tiles.height + row);
+            }
+        }
+    }
+
+}
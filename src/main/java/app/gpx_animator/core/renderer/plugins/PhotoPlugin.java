@@ -6,6 +6,8 @@ import app.gpx_animator.core.data.Photo;
 import app.gpx_animator.core.preferences.Preferences;
 import app.gpx_animator.core.renderer.Metadata;
 import app.gpx_animator.core.renderer.RenderingContext;
+import app.gpx_animator.core.renderer.canvas.FrameImagePool;
+import app.gpx_animator.core.renderer.canvas.ImageCanvas;
 import app.gpx_animator.core.renderer.framewriter.FrameWriter;
 import app.gpx_animator.core.util.RenderUtil;
 import app.gpx_animator.core.util.Utils;
@@ -22,6 +24,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.imageio.ImageIO;
 import java.awt.Color;
+import java.awt.Rectangle;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
@@ -34,6 +37,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import static java.util.stream.Collectors.groupingBy;
@@ -58,9 +62,9 @@ public final class PhotoPlugin implements RendererPlugin {
     private final transient long photoAnimationDuration;
 
     private final transient Map<Long, List<Photo>> remainingPhotos;
+    private final transient Map<Integer, List<Photo>> scheduledPhotos = new ConcurrentHashMap<>();
 
     private transient Metadata metadata;
-    private transient FrameWriter frameWriter;
     private transient RenderingContext context;
 
     public PhotoPlugin(@NonNull final Configuration configuration) {
@@ -75,11 +79,6 @@ public final class PhotoPlugin implements RendererPlugin {
         this.metadata = metadata;
     }
 
-    @Override
-    public void setFrameWriter(@NotNull final FrameWriter frameWriter) {
-        this.frameWriter = frameWriter;
-    }
-
     @Override
     public void setRenderingContext(@NotNull final RenderingContext renderingContext) {
         this.context = renderingContext;
@@ -158,21 +157,29 @@ public final class PhotoPlugin implements RendererPlugin {
     }
 
     @Override
-    public void renderFrame(final int frame, @Nullable final Point2D marker, @NonNull final BufferedImage bi) {
+    public void prepareFrame(final int frame, @Nullable final Point2D marker) {
         final var time = RenderUtil.getTime(frame, metadata.minTime(), fps, metadata.speedup());
         final var keys = remainingPhotos.keySet().stream()
                 .filter(timeOfPhoto -> time >= timeOfPhoto)
                 .collect(Collectors.toList());
         if (!keys.isEmpty()) {
-            keys.stream()
+            scheduledPhotos.put(frame, keys.stream()
                     .map(remainingPhotos::get)
-                    .flatMap(List::stream).collect(Collectors.toList())
-                    .forEach(photo -> renderPhoto(photo, bi));
+                    .flatMap(List::stream).collect(Collectors.toList()));
             keys.forEach(remainingPhotos::remove);
         }
     }
 
-    private void renderPhoto(@NonNull final Photo photo, @NonNull final BufferedImage frameImage) {
+    @Override
+    public void renderFrame(final int frame, @Nullable final Point2D marker, @NonNull final BufferedImage bi,
+                            @NonNull final FrameWriter frameWriter) {
+        final var photos = scheduledPhotos.remove(frame);
+        if (photos != null) {
+            photos.forEach(photo -> renderPhoto(photo, bi, frameWriter));
+        }
+    }
+
+    private void renderPhoto(@NonNull final Photo photo, @NonNull final BufferedImage frameImage, @NonNull final FrameWriter frameWriter) {
         final var filename = photo.getFile().getName();
         context.setProgress1(0, String.format(resourceBundle.getString(PHOTOS_PROGRESS_RENDERING), filename));
 
@@ -189,14 +196,16 @@ public final class PhotoPlugin implements RendererPlugin {
             final var inOutFrames = (int) Math.round(photoAnimationDuration * fps / 1_000);
             final var allFrames = frames + (2 * inOutFrames);
 
+            // the frames of the animation reuse their images, only the area of the previous photo is restored
+            final var pool = new FrameImagePool(new ImageCanvas(frameImage), frameImage.getType());
             try {
-                renderAnimationIn(frameImage, photoImage, inOutFrames, allFrames, filename);
+                renderAnimationIn(pool, frameImage, photoImage, inOutFrames, allFrames, filename, frameWriter);
                 for (long frame = 0; frame < frames; frame++) {
                     final var pct = (int) (100.0 * (inOutFrames + frame) / allFrames);
                     context.setProgress1(pct, String.format(resourceBundle.getString(PHOTOS_PROGRESS_RENDERING), filename));
                     frameWriter.addFrame(bi2);
                 }
-                renderAnimationOut(frameImage, photoImage, inOutFrames, allFrames, filename);
+                renderAnimationOut(pool, frameImage, photoImage, inOutFrames, allFrames, filename, frameWriter);
             } catch (final UserException e) {
                 LOGGER.error("Problems rendering photo '{}'!", photo, e);
             }
@@ -219,27 +228,30 @@ public final class PhotoPlugin implements RendererPlugin {
         return null;
     }
 
-    private void renderAnimationIn(@NonNull final BufferedImage frameImage, @NonNull final BufferedImage photoImage, final int frames,
-                                   final int allFrames, @NonNull final String filename) throws UserException {
+    private void renderAnimationIn(@NonNull final FrameImagePool pool, @NonNull final BufferedImage frameImage,
+                                   @NonNull final BufferedImage photoImage, final int frames, final int allFrames,
+                                   @NonNull final String filename, @NonNull final FrameWriter frameWriter) throws UserException {
         for (long frame = 1; frame <= frames; frame++) {
             final var pct = (int) (100.0 * frame / allFrames);
             context.setProgress1(pct, String.format(resourceBundle.getString(PHOTOS_PROGRESS_RENDERING), filename));
-            renderAnimation(frameImage, photoImage, frames, frame);
+            renderAnimation(pool, frameImage, photoImage, frames, frame, frameWriter);
         }
     }
 
-    private void renderAnimationOut(@NonNull final BufferedImage frameImage, @NonNull final BufferedImage photoImage, final long frames,
-                                    final int allFrames, @NonNull final String filename) throws UserException {
+    private void renderAnimationOut(@NonNull final FrameImagePool pool, @NonNull final BufferedImage frameImage,
+                                    @NonNull final BufferedImage photoImage, final long frames, final int allFrames,
+                                    @NonNull final String filename, @NonNull final FrameWriter frameWriter) throws UserException {
         for (var frame = frames; frame >= 1; frame--) {
             final var pct = (int) (100.0 * (allFrames - frame) / allFrames);
             context.setProgress1(pct, String.format(resourceBundle.getString(PHOTOS_PROGRESS_RENDERING), filename));
-            renderAnimation(frameImage, photoImage, frames, frame);
+            renderAnimation(pool, frameImage, photoImage, frames, frame, frameWriter);
         }
         context.setProgress1(100, String.format(resourceBundle.getString(PHOTOS_PROGRESS_RENDERING), filename));
     }
 
-    private void renderAnimation(@NonNull final BufferedImage frameImage, @NonNull final BufferedImage photoImage, final long frames,
-                                 final long frame) throws UserException {
+    private void renderAnimation(@NonNull final FrameImagePool pool, @NonNull final BufferedImage frameImage,
+                                 @NonNull final BufferedImage photoImage, final long frames, final long frame,
+                                 @NonNull final FrameWriter frameWriter) throws UserException {
         final var width = (int) (photoImage.getWidth() * frame / frames);
         final var height = (int) (photoImage.getHeight() * frame / frames);
         final var scaledImage = scaleImage(photoImage, width, height);
@@ -247,8 +259,8 @@ public final class PhotoPlugin implements RendererPlugin {
         final var posX = (frameImage.getWidth() - scaledImage.getWidth()) / 2;
         final var posY = (frameImage.getHeight() - scaledImage.getHeight()) / 2;
 
-        final var bi2 = Utils.deepCopy(frameImage);
-        final var g2d = bi2.createGraphics();
+        final var bi2 = pool.acquire(new Rectangle(0, 0, frameImage.getWidth(), frameImage.getHeight()));
+        final var g2d = bi2.createGraphics(new Rectangle(posX, posY, scaledImage.getWidth(), scaledImage.getHeight()));
 
         g2d.drawImage(scaledImage, posX, posY, null);
         g2d.dispose();
@@ -3,12 +3,16 @@ package app.gpx_animator.core.renderer.plugins;
 import app.gpx_animator.core.UserException;
 import app.gpx_animator.core.renderer.Metadata;
 import app.gpx_animator.core.renderer.RenderingContext;
+import app.gpx_animator.core.renderer.canvas.MapCanvas;
 import app.gpx_animator.core.renderer.framewriter.FrameWriter;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.Nullable;
 
+import java.awt.Dimension;
+import java.awt.Rectangle;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
+import java.util.List;
 
 /**
  * To extend the rendering process, just implement this interface. At the
@@ -89,10 +93,65 @@ public interface RendererPlugin {
      */
     default void renderBackground(@NonNull BufferedImage image) throws UserException { }
 
+    /**
+     * This render method is called instead of
+     * {@link #renderBackground(BufferedImage)} if the moving map is too large
+     * to be stored in one image or its map tiles are loaded on demand. The
+     * map is then stored in tiles, and this
+     * method renders the background of one of them, when the track or the
+     * viewport reaches it for the first time. The image has the size of the
+     * area; the position of the area in the image is at the origin.
+     *
+     * @param image the image of the area to be modified
+     * @param area  the area of the map the image covers
+     * @param size  the size of the whole map
+     * @throws UserException error to be shown to the user
+     */
+    default void renderBackground(@NonNull BufferedImage image, @NonNull Rectangle area, @NonNull Dimension size)
+            throws UserException { }
+
+    /**
+     * This method is called once for every frame which will be rendered,
+     * strictly in the order of the frames and before the visible area of the
+     * background is copied into the frame. If the whole map is visible, it is
+     * called only for the first frame. Overwrite it, if your plugin
+     * renders the background on demand: draw the parts of the background
+     * which become visible and return their bounds, so the track drawn so
+     * far can be restored there.
+     *
+     * @param canvas   the map to be modified
+     * @param size     the size of the whole map
+     * @param viewport the area of the background visible in this frame
+     * @param ahead    the areas of the background which will be visible next, nearest first
+     * @return the areas of the background which were modified
+     * @throws UserException error to be shown to the user
+     */
+    default List<Rectangle> updateBackground(@NonNull MapCanvas canvas, @NonNull Dimension size, @NonNull Rectangle viewport,
+                                             @NonNull List<Rectangle> ahead) throws UserException {
+        return List.of();
+    }
+
+    /**
+     * This method is called once for every frame which will be rendered,
+     * strictly in the order of the frames and before the frame is rendered.
+     * Frames may be rendered in parallel, so if your plugin carries state
+     * from one frame to the next one, advance it here and remember the result
+     * per frame number for the render methods.
+     *
+     * @param frame   the frame number
+     * @param marker  the track point marking the actual position
+     * @throws UserException error to be shown to the user
+     */
+    default void prepareFrame(int frame, @Nullable Point2D marker) throws UserException { }
+
     /**
      * This render method is called to render one frame of the video. The size
      * of this frame is equal to the resolution of the resulting video.
      *
+     * This method may be called concurrently for different frames, so it
+     * must only depend on the arguments and on the state prepared in
+     * {@link #prepareFrame(int, Point2D)}.
+     *
      * @param frame   the frame number
      * @param image   the image of the frame to be modified
      * @param marker  the track point marking the actual position // TODO get the marker based on the frame number
@@ -100,4 +159,29 @@ public interface RendererPlugin {
      */
     default void renderFrame(int frame, @Nullable Point2D marker, @NonNull BufferedImage image) throws UserException { }
 
+    /**
+     * Overwrite this method instead of
+     * {@link #renderFrame(int, Point2D, BufferedImage)}, if your plugin adds
+     * more frames to the video. Additional frames must be written to the
+     * frame writer passed as argument, which places them in front of the
+     * current frame.
+     *
+     * @param frame       the frame number
+     * @param marker      the track point marking the actual position
+     * @param image       the image of the frame to be modified
+     * @param frameWriter the frame writer for additional frames
+     * @throws UserException error to be shown to the user
+     */
+    default void renderFrame(int frame, @Nullable Point2D marker, @NonNull BufferedImage image,
+                             @NonNull FrameWriter frameWriter) throws UserException {
+        renderFrame(frame, marker, image);
+    }
+
+    /**
+     * Overwrite this method, if your plugin has to release resources after
+     * the rendering. It is called once after the last frame, even if the
+     * rendering was cancelled or failed.
+     */
+    default void finishRendering() { }
+
 }
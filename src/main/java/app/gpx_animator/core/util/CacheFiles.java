@@ -0,0 +1,140 @@
+package app.gpx_animator.core.util;
+
+import app.gpx_animator.core.UserException;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.jetbrains.annotations.NonNls;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Manages the files of the caches on disk, like the map tiles, the
+ * composed backgrounds and the parsed GPX files. The files are named by
+ * the hash of their key and the least recently used files are removed
+ * first.
+ */
+public final class CacheFiles {
+
+    @NonNls
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheFiles.class);
+
+    private CacheFiles() throws InstantiationException {
+        throw new InstantiationException("CacheFiles is a utility class which can't be instantiated!");
+    }
+
+    /**
+     * @param bytes the bytes, e.g. a hash
+     * @return the bytes as lower case hex digits, two per byte
+     */
+    public static String toHex(@NonNull final byte... bytes) {
+        final var hex = new StringBuilder(bytes.length * 2);
+        for (final var b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * @param cacheDir  the directory of the cache
+     * @param directory the subdirectory of the files
+     * @param key       the key of the file
+     * @param extension the extension of the files
+     * @return the file named by the hash of the key
+     * @throws UserException if the hash can't be created
+     */
+    public static Path getFile(@NonNull final String cacheDir, @NonNull final String directory, @NonNull final String key,
+                               @NonNull final String extension) throws UserException {
+        try {
+            final var hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return Path.of(cacheDir, directory, toHex(hash).concat(extension));
+        } catch (final NoSuchAlgorithmException e) {
+            throw new UserException("error creating hash name ".concat(key), e);
+        }
+    }
+
+    /**
+     * Updates the modification time of a file when it is read, so the least
+     * recently used files are removed first.
+     *
+     * @param file the file read
+     */
+    public static void touch(@NonNull final Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (final IOException e) {
+            LOGGER.warn("Can't update the modification time of cached file {}", file, e);
+        }
+    }
+
+    /**
+     * Removes the least recently used files with the same extension from
+     * the directory of the file just stored, which is always kept.
+     *
+     * @param stored    the file just stored
+     * @param extension the extension of the files
+     * @param maxFiles  the number of files to keep
+     * @throws IOException if the directory can't be listed or a file can't be removed
+     */
+    public static void evict(@NonNull final Path stored, @NonNull final String extension, final int maxFiles) throws IOException {
+        final var files = listOtherFiles(stored, extension);
+        for (final var file : files.subList(Math.min(maxFiles - 1, files.size()), files.size())) {
+            delete(file);
+        }
+    }
+
+    /**
+     * Removes the least recently used files with the same extension from
+     * the directory of the file just stored, until the files together are
+     * not larger than the maximum size. The file just stored is always kept.
+     *
+     * @param stored    the file just stored
+     * @param extension the extension of the files
+     * @param maxSize   the maximum size of the files in bytes
+     * @throws IOException if the directory can't be listed or a file can't be removed
+     */
+    public static void evictBySize(@NonNull final Path stored, @NonNull final String extension, final long maxSize) throws IOException {
+        var size = Files.size(stored);
+        for (final var file : listOtherFiles(stored, extension)) {
+            final var fileSize = Files.size(file);
+            if (size + fileSize > maxSize) {
+                delete(file);
+            } else {
+                size += fileSize;
+            }
+        }
+    }
+
+    // the most recently used files come first
+    private static List<Path> listOtherFiles(@NonNull final Path stored, @NonNull final String extension) throws IOException {
+        try (var stream = Files.list(stored.getParent())) {
+            return stream.filter(file -> file.getFileName().toString().endsWith(extension))
+                    .filter(file -> !file.equals(stored))
+                    .sorted(Comparator.comparing(CacheFiles::getLastModifiedTime).reversed())
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static void delete(@NonNull final Path file) throws IOException {
+        Files.deleteIfExists(file);
+        LOGGER.info("Removed cached file {}", file);
+    }
+
+    private static long getLastModifiedTime(@NonNull final Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (final IOException e) {
+            return 0;
+        }
+    }
+
+}
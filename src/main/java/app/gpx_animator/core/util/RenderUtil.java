@@ -1,9 +1,13 @@
 package app.gpx_animator.core.util;
 
+import app.gpx_animator.core.renderer.canvas.FrameImage;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
 
 import java.awt.Graphics2D;
+import java.awt.Point;
 import java.awt.RenderingHints;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 
 public final class RenderUtil {
@@ -13,7 +17,10 @@ public final class RenderUtil {
     }
 
     public static Graphics2D getGraphics(@NonNull final BufferedImage image) {
-        final var graphics = (Graphics2D) image.getGraphics();
+        return setRenderingHints((Graphics2D) image.getGraphics());
+    }
+
+    private static Graphics2D setRenderingHints(@NonNull final Graphics2D graphics) {
         graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
         graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
         graphics.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
@@ -23,6 +30,61 @@ public final class RenderUtil {
         return graphics;
     }
 
+    /**
+     * Creates the graphics for an image showing only a part of a larger
+     * area, e.g. the viewport of a map. Everything drawn in the coordinates
+     * of the larger area appears at the right position in the image.
+     *
+     * @param image  the image to draw on
+     * @param origin the position of the image in the larger area
+     * @return the graphics with translated coordinates
+     */
+    public static Graphics2D getGraphics(@NonNull final BufferedImage image, @NonNull final Point origin) {
+        final var graphics = getGraphics(image);
+        graphics.translate(-origin.x, -origin.y);
+        return graphics;
+    }
+
+    /**
+     * Creates the graphics to draw on a known area of an image, like
+     * {@link #getGraphics(BufferedImage, Point)}. If the image is the image
+     * of a frame, only this area is marked as changed, see {@link FrameImage}.
+     *
+     * @param image  the image to draw on
+     * @param origin the position of the image in the larger area
+     * @param bounds the bounds of everything drawn in the coordinates of the larger area,
+     *               or {@code null} if the caller marks the changes using {@link #markChanged}
+     * @return the graphics with translated coordinates
+     */
+    public static Graphics2D getGraphics(@NonNull final BufferedImage image, @NonNull final Point origin,
+                                         @Nullable final Rectangle2D bounds) {
+        final Graphics2D graphics;
+        if (image instanceof FrameImage frameImage) {
+            graphics = setRenderingHints(frameImage.createGraphics(bounds == null ? null : translate(bounds, origin)));
+        } else {
+            graphics = getGraphics(image);
+        }
+        graphics.translate(-origin.x, -origin.y);
+        return graphics;
+    }
+
+    /**
+     * Marks an area drawn on the image of a frame as changed, see {@link FrameImage}.
+     *
+     * @param image  the image drawn on
+     * @param origin the position of the image in the larger area
+     * @param bounds the bounds of the area in the coordinates of the larger area
+     */
+    public static void markChanged(@NonNull final BufferedImage image, @NonNull final Point origin, @NonNull final Rectangle2D bounds) {
+        if (image instanceof FrameImage frameImage) {
+            frameImage.addChangedArea(translate(bounds, origin));
+        }
+    }
+
+    private static Rectangle2D translate(@NonNull final Rectangle2D bounds, @NonNull final Point origin) {
+        return new Rectangle2D.Double(bounds.getX() - origin.x, bounds.getY() - origin.y, bounds.getWidth(), bounds.getHeight());
+    }
+
     public static long getTime(final int frame, final long minTime, final double fps, final double speedup) {
         return (long) Math.floor(minTime + frame / fps * 1000d * speedup);
     }
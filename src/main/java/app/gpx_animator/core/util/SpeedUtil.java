@@ -6,19 +6,19 @@ import app.gpx_animator.core.data.gpx.GpxPoint;
 import java.awt.geom.Point2D;
 import java.util.HashMap;
 
+/**
+ * Calculates the speed shown in the info text. The speed is smoothed over the
+ * last second of frames, so one instance must be used per rendering process
+ * and it has to be called in the order of the frames.
+ */
 public final class SpeedUtil {
 
-    private SpeedUtil() throws InstantiationException {
-        throw new InstantiationException("SpeedUtils a utility class and can't be instantiated!");
-    }
-
-
-    private static final java.util.Map<Integer, Long> SPEED_VALUES = new HashMap<>();
+    private final java.util.Map<Integer, Long> speedValues = new HashMap<>();
 
-    private static GpxPoint lastSpeedPoint = null;
+    private GpxPoint lastSpeedPoint = null;
 
 
-    public static String getSpeedString(final Point2D point, final long time, final int frame, final double fps, final SpeedUnit speedUnit) {
+    public String getSpeedString(final Point2D point, final long time, final int frame, final double fps, final SpeedUnit speedUnit) {
         if (point instanceof GpxPoint) {
             final var gpxPoint = (GpxPoint) point;
             final var speed = calculateSpeedForDisplay(gpxPoint, time, frame, fps, speedUnit);
@@ -30,19 +30,19 @@ public final class SpeedUtil {
     }
 
 
-    private static double calculateSpeedForDisplay(final GpxPoint point, final long time, final int frame, final double fps,
+    private double calculateSpeedForDisplay(final GpxPoint point, final long time, final int frame, final double fps,
                                                    final SpeedUnit speedUnit) {
         final var speed = calculateSpeed(point, time);
-        SPEED_VALUES.put(frame, speed);
+        speedValues.put(frame, speed);
 
         final var deleteBefore = frame - (Math.round(fps)); // 1 second
-        SPEED_VALUES.keySet().removeIf((f) -> f < deleteBefore);
+        speedValues.keySet().removeIf((f) -> f < deleteBefore);
 
-        return speedUnit.convertSpeed(Math.round(SPEED_VALUES.values().stream().mapToLong(Long::longValue).average().orElse(0)));
+        return speedUnit.convertSpeed(Math.round(speedValues.values().stream().mapToLong(Long::longValue).average().orElse(0)));
     }
 
 
-    private static long calculateSpeed(final GpxPoint point, final long time) {
+    private long calculateSpeed(final GpxPoint point, final long time) {
         final var timeout = time - 1_000 * 60; // 1 minute
         final var distance = calculateDistance(lastSpeedPoint, point);
         final double timeDiff = lastSpeedPoint == null ? 0 : point.getTime() - lastSpeedPoint.getTime();
@@ -0,0 +1,104 @@
+package app.gpx_animator.core.util;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.awt.Rectangle;
+import java.util.regex.Pattern;
+
+/**
+ * The math of the map tiles (slippy map tile names), shared by the
+ * rendering of the background map and the seeding of the tile cache, so
+ * that both always use exactly the same tiles and tile URLs.
+ */
+public final class TileUtil {
+
+    public static final int TILE_SIZE = 256;
+
+    @SuppressWarnings({"RegExpAnonymousGroup", "RegExpRedundantEscape"})
+    // This regex is tested and I don't want to rewrite it which may potentionally break it.
+    private static final Pattern SWITCH_PATTERN = Pattern.compile("\\{switch:([^}]*)\\}");
+
+    private TileUtil() throws InstantiationException {
+        throw new InstantiationException("TileUtil is a utility class and can't be instantiated!");
+    }
+
+    /**
+     * @param tmsUrlTemplate the URL template of the map
+     * @return the options of the {@code {switch:a,b,c}} placeholder or {@code null} if there is none
+     */
+    public static String[] getSwitchOptions(@NonNull final String tmsUrlTemplate) {
+        final var m = SWITCH_PATTERN.matcher(tmsUrlTemplate); // note that only one switch in pattern is supported
+        return m.find() ? m.group(1).split(",") : null;
+    }
+
+    /**
+     * Creates the URL of a tile. The switch option (usually the subdomain)
+     * is chosen by the position of the tile, so a tile always has the same
+     * URL, independent of the area of the map it is used for. This is
+     * important for the tile cache, which is keyed by the URL.
+     *
+     * @param tmsUrlTemplate the URL template of the map
+     * @param switchOptions  the options of the switch placeholder or {@code null}
+     * @param zoom           the zoom level
+     * @param x              the x coordinate of the tile
+     * @param y              the y coordinate of the tile
+     * @return the URL of the tile
+     */
+    public static String createTileUrl(@NonNull final String tmsUrlTemplate, final String[] switchOptions,
+                                       final int zoom, final int x, final int y) {
+        var url = tmsUrlTemplate
+                .replace("{zoom}", Integer.toString(zoom)) //NON-NLS
+                .replace("{x}", Integer.toString(x)) //NON-NLS
+                .replace("{y}", Integer.toString(y)); //NON-NLS
+
+        if (switchOptions != null) {
+            final var sb = new StringBuffer();
+            final var matcher = SWITCH_PATTERN.matcher(url);
+            if (matcher.find()) {
+                matcher.appendReplacement(sb, switchOptions[Math.floorMod(x + y, switchOptions.length)]);
+            }
+            matcher.appendTail(sb);
+            url = sb.toString();
+        }
+        return url;
+    }
+
+    /**
+     * Calculates the tiles covering an area of the map, given in the
+     * coordinates of the renderer (Mercator projection in radians).
+     *
+     * @return the tiles, {@code x} and {@code y} being the tile with the smallest coordinates
+     */
+    public static Rectangle getTileRange(final int zoom, final double minX, final double maxX, final double minY, final double maxY) {
+        final var minTileX = (int) Math.floor(xToTileX(zoom, minX));
+        final var maxTileX = (int) Math.floor(xToTileX(zoom, maxX));
+        final var maxTileY = (int) Math.floor(yToTileY(zoom, minY));
+        final var minTileY = (int) Math.floor(yToTileY(zoom, maxY));
+        return new Rectangle(minTileX, minTileY, maxTileX - minTileX + 1, maxTileY - minTileY + 1);
+    }
+
+    public static double yToTileY(final int zoom, final double y) {
+        return latToTileY(zoom, yToLat(y));
+    }
+
+    public static double xToTileX(final int zoom, final double x) {
+        return lonToTileX(zoom, xToLon(x));
+    }
+
+    public static double lonToTileX(final int zoom, final double lon) {
+        return (lon + 180.0) / 360.0 * (1 << zoom);
+    }
+
+    public static double latToTileY(final int zoom, final double lat) {
+        return (1 - Math.log(Math.tan(Math.toRadians(lat)) + 1 / Math.cos(Math.toRadians(lat))) / Math.PI) / 2 * (1 << zoom);
+    }
+
+    public static double xToLon(final double x) {
+        return Math.toDegrees(x);
+    }
+
+    public static double yToLat(final double y) {
+        return Math.toDegrees(2.0 * (Math.atan(Math.exp(y)) - Math.PI / 4.0));
+    }
+
+}
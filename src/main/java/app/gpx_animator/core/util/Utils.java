@@ -22,7 +22,8 @@ import java.text.Collator;
 
 public final class Utils {
 
-    private static final Collator COLLATOR = Collator.getInstance();
+    // the collator compares synchronized, so every thread uses its own
+    private static final ThreadLocal<Collator> COLLATOR = ThreadLocal.withInitial(Collator::getInstance);
 
     private Utils() throws InstantiationException {
         throw new InstantiationException("Utility classes can't be instantiated!");
@@ -48,7 +49,7 @@ public final class Utils {
             return false;
         }
 
-        return COLLATOR.compare(source, target) == 0;
+        return COLLATOR.get().compare(source, target) == 0;
     }
 
 }
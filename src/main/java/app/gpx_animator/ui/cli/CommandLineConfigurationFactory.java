@@ -25,6 +25,9 @@ import app.gpx_animator.core.data.Position;
 import app.gpx_animator.core.data.SpeedUnit;
 import app.gpx_animator.core.data.TrackIcon;
 import app.gpx_animator.core.preferences.Preferences;
+import app.gpx_animator.core.renderer.TileSeeder;
+import app.gpx_animator.core.renderer.cache.TileCache;
+import app.gpx_animator.core.renderer.canvas.CanvasStorage;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 import java.awt.Color;
@@ -55,6 +58,8 @@ public final class CommandLineConfigurationFactory {
 
     private final boolean gui;
 
+    private final TileSeeder tileSeeder;
+
 
     private final Configuration configuration;
 
@@ -66,6 +71,12 @@ public final class CommandLineConfigurationFactory {
         final var cfg = Configuration.createBuilder();
 
         var forceGui = false;
+        var seedTiles = false;
+        var seedDryRun = false;
+        Integer seedZoomMin = null;
+        Integer seedZoomMax = null;
+        var seedCorridor = TileSeeder.DEFAULT_CORRIDOR;
+        File seedTilePack = null;
 
         final List<String> labelList = new ArrayList<>();
         final List<Long> timeOffsetList = new ArrayList<>();
@@ -95,6 +106,10 @@ public final class CommandLineConfigurationFactory {
                             cfg.backgroundColor(new Color(lv < Integer.MAX_VALUE ? (int) lv : (int) (0xffffffff00000000L | lv), true));
                         }
                         case BACKGROUND_IMAGE -> cfg.backgroundImage(new File(args[++i]));
+                        case BUILD_TILE_PACK -> {
+                            TileCache.buildTilePack(new File(args[++i]));
+                            exit();
+                        }
                         case FLASHBACK_COLOR -> {
                             final long lv1 = Long.decode(args[++i]);
                             cfg.flashbackColor(new Color(lv1 < Integer.MAX_VALUE ? (int) lv1 : (int) (0xffffffff00000000L | lv1), true));
@@ -118,6 +133,12 @@ public final class CommandLineConfigurationFactory {
                             forceGui = true;
                         }
                         case HEIGHT -> cfg.height(Integer.parseInt(args[++i]));
+                        case SEED_TILES -> seedTiles = true;
+                        case SEED_ZOOM_MIN -> seedZoomMin = Integer.parseInt(args[++i]);
+                        case SEED_ZOOM_MAX -> seedZoomMax = Integer.parseInt(args[++i]);
+                        case SEED_CORRIDOR -> seedCorridor = Double.parseDouble(args[++i]);
+                        case SEED_TILE_PACK -> seedTilePack = new File(args[++i]);
+                        case SEED_DRY_RUN -> seedDryRun = true;
                         case HELP -> {
                             try (var pw = new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))) {
                                 pw.println(Constants.APPNAME_VERSION);
@@ -144,6 +165,8 @@ public final class CommandLineConfigurationFactory {
                         case MIN_LAT -> cfg.minLat(Double.parseDouble(args[++i]));
                         case MIN_LON -> cfg.minLon(Double.parseDouble(args[++i]));
                         case OUTPUT -> cfg.output(new File(args[++i]));
+                        case OUTPUT_THREADS -> cfg.outputThreads(Integer.parseInt(args[++i]));
+                        case PNG_COMPRESSION_LEVEL -> cfg.pngCompressionLevel(Integer.parseInt(args[++i]));
                         case LOGO -> cfg.logo(new File(args[++i]));
                         case LOGO_POSITION -> cfg.logoPosition(Position.parse(args[++i]));
                         case LOGO_MARGIN -> cfg.logoMargin(Integer.parseInt(args[++i]));
@@ -151,7 +174,14 @@ public final class CommandLineConfigurationFactory {
                         case PHOTO_TIME -> cfg.photoTime(Long.parseLong(args[++i]));
                         case PHOTO_ANIMATION_DURATION -> cfg.photoAnimationDuration(Long.parseLong(args[++i]));
                         case SKIP_IDLE -> cfg.skipIdle(Boolean.parseBoolean(args[++i]));
+                        case OFFLINE -> cfg.offline(true);
+                        case OFFLINE_TILE_COLOR -> cfg.offlineTileColor(Color.decode(args[++i]));
+                        case LAZY_MAP_TILES -> cfg.lazyMapTiles(true);
+                        case CANVAS_STORAGE -> cfg.canvasStorage(CanvasStorage.parse(args[++i]));
+                        case SIMPLIFY_TOLERANCE -> cfg.simplifyTolerance(Double.parseDouble(args[++i]));
                         case PRE_DRAW_TRACK -> cfg.preDrawTrack(true);
+                        case RENDER_THREADS -> cfg.renderThreads(Integer.parseInt(args[++i]));
+                        case ENCODER_QUEUE_SIZE -> cfg.encoderQueueSize(Integer.parseInt(args[++i]));
                         case PRE_DRAW_TRACK_COLOR -> preDrawTrackColorList.add((Color.decode(args[++i])));
                         case SPEEDUP -> cfg.speedup(Double.parseDouble(args[++i]));
                         case SPEED_UNIT -> cfg.speedUnit(SpeedUnit.parse(args[++i], SpeedUnit.KMH));
@@ -219,6 +249,7 @@ public final class CommandLineConfigurationFactory {
         gui = args.length == 0 || forceGui;
 
         configuration = cfg.build();
+        tileSeeder = seedTiles ? new TileSeeder(configuration, seedZoomMin, seedZoomMax, seedCorridor, seedTilePack, seedDryRun) : null;
     }
 
     @SuppressWarnings({"PMD.DoNotCallSystemExit", "DuplicateStringLiteralInspection"}) // Exit after printing command line help message
@@ -348,4 +379,11 @@ public final class CommandLineConfigurationFactory {
         return gui;
     }
 
+    /**
+     * @return the seeder of the map tiles, if seeding instead of rendering was requested, otherwise {@code null}
+     */
+    public TileSeeder getTileSeeder() {
+        return tileSeeder;
+    }
+
 }
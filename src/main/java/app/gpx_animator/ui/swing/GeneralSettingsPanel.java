@@ -98,6 +98,9 @@ abstract class GeneralSettingsPanel extends JPanel {
     private final transient JSpinner maxLonSpinner;
     private final transient JSpinner minLatSpinner;
 
+    // the settings without a field in the panel, taken from the configuration loaded last
+    private transient Configuration renderSettings = Configuration.createBuilder().build();
+
     @SuppressWarnings("checkstyle:MethodLength") // TODO Refactor when doing the redesign task https://github.com/zdila/gpx-animator/issues/60
     GeneralSettingsPanel() {
         mapTemplateList = MapUtil.readMaps();
@@ -1137,6 +1140,7 @@ abstract class GeneralSettingsPanel extends JPanel {
     }
 
     public void setConfiguration(final Configuration c) {
+        renderSettings = c;
         heightSpinner.setValue(c.getHeight());
         widthSpinner.setValue(c.getWidth());
         viewportHeightSpinner.setValue(c.getViewportHeight());
@@ -1248,7 +1252,8 @@ abstract class GeneralSettingsPanel extends JPanel {
                 .photoAnimationDuration((Long) photoAnimationDurationSpinner.getValue())
                 .attribution(attribution)
                 .attributionPosition((Position) attriLocationComboBox.getSelectedItem())
-                .speedUnit(speedUnit);
+                .speedUnit(speedUnit)
+                .renderSettings(renderSettings);
     }
 
     private String generateAttributionText(final boolean replacePlaceholders, final Object tmsItem) {
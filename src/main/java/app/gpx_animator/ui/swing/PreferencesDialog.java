@@ -11,6 +11,7 @@ import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JPanel;
 import javax.swing.JSpinner;
+import javax.swing.SpinnerNumberModel;
 import javax.swing.SwingUtilities;
 import javax.swing.border.EmptyBorder;
 import java.awt.BorderLayout;
@@ -46,6 +47,14 @@ public class PreferencesDialog extends JDialog {
         tileCacheTimeLimitSpinner.setModel(new DurationSpinnerModel());
         tileCacheTimeLimitSpinner.setEditor(new DurationEditor(tileCacheTimeLimitSpinner));
 
+        final var tileCacheMaxSizeSpinner = new JSpinner();
+        tileCacheMaxSizeSpinner.setToolTipText(resourceBundle.getString("ui.dialog.preferences.cachemaxsize.tooltip"));
+        tileCacheMaxSizeSpinner.setModel(new SpinnerNumberModel(Long.valueOf(0), Long.valueOf(0), null, Long.valueOf(64)));
+
+        final var gpxCacheMaxSizeSpinner = new JSpinner();
+        gpxCacheMaxSizeSpinner.setToolTipText(resourceBundle.getString("ui.dialog.preferences.gpxcachemaxsize.tooltip"));
+        gpxCacheMaxSizeSpinner.setModel(new SpinnerNumberModel(Long.valueOf(0), Long.valueOf(0), null, Long.valueOf(64)));
+
         final var trackColorPanel = new JPanel(new BorderLayout());
         final var trackColorRandom = new JCheckBox(resourceBundle.getString("ui.dialog.preferences.track.color.random"));
         final var trackColorSelector = new ColorSelector();
@@ -67,6 +76,8 @@ public class PreferencesDialog extends JDialog {
         saveButton.addActionListener(e -> SwingUtilities.invokeLater(() -> {
             Preferences.setTileCacheDir(tileCachePathSelector.getFilename());
             Preferences.setTileCacheTimeLimit((Long) tileCacheTimeLimitSpinner.getValue());
+            Preferences.setTileCacheMaxSize((Long) tileCacheMaxSizeSpinner.getValue());
+            Preferences.setGpxCacheMaxSize((Long) gpxCacheMaxSizeSpinner.getValue());
             Preferences.setTrackColorRandom(trackColorRandom.isSelected());
             Preferences.setTrackColorDefault(trackColorSelector.getColor());
             setVisible(false);
@@ -76,24 +87,30 @@ public class PreferencesDialog extends JDialog {
         setContentPane(FormBuilder.create()
                 .padding(new EmptyBorder(20, 20, 20, 20))
                 .columns("right:p, 5dlu, fill:[200dlu, pref]") //NON-NLS
-                .rows("p, 5dlu, p, 5dlu, p, 5dlu, p, 5dlu, p, 5dlu, p, 10dlu, p") //NON-NLS
+                .rows("p, 5dlu, p, 5dlu, p, 5dlu, p, 5dlu, p, 5dlu, p, 5dlu, p, 5dlu, p, 10dlu, p") //NON-NLS
 
                 .addSeparator(resourceBundle.getString("ui.dialog.preferences.cache.separator")).xyw(1, 1, 3)
                 .add(resourceBundle.getString("ui.dialog.preferences.cachepath.label")).xy(1, 3)
                 .add(tileCachePathSelector).xy(3, 3)
                 .add(resourceBundle.getString("ui.dialog.preferences.cachetimelimit.label")).xy(1, 5)
                 .add(tileCacheTimeLimitSpinner).xy(3, 5)
+                .add(resourceBundle.getString("ui.dialog.preferences.cachemaxsize.label")).xy(1, 7)
+                .add(tileCacheMaxSizeSpinner).xy(3, 7)
+                .add(resourceBundle.getString("ui.dialog.preferences.gpxcachemaxsize.label")).xy(1, 9)
+                .add(gpxCacheMaxSizeSpinner).xy(3, 9)
 
-                .addSeparator(resourceBundle.getString("ui.dialog.preferences.track")).xyw(1, 7, 3)
-                .add(resourceBundle.getString("ui.dialog.preferences.track.color")).xy(1, 9)
-                .add(trackColorPanel).xy(3, 9)
+                .addSeparator(resourceBundle.getString("ui.dialog.preferences.track")).xyw(1, 11, 3)
+                .add(resourceBundle.getString("ui.dialog.preferences.track.color")).xy(1, 13)
+                .add(trackColorPanel).xy(3, 13)
 
-                .addSeparator("").xyw(1, 11, 3)
-                .addBar(cancelButton, saveButton).xyw(1, 13, 3, CellConstraints.RIGHT, CellConstraints.FILL)
+                .addSeparator("").xyw(1, 15, 3)
+                .addBar(cancelButton, saveButton).xyw(1, 17, 3, CellConstraints.RIGHT, CellConstraints.FILL)
                 .build());
 
         tileCachePathSelector.setFilename(Preferences.getTileCacheDir());
         tileCacheTimeLimitSpinner.setValue(Preferences.getTileCacheTimeLimit());
+        tileCacheMaxSizeSpinner.setValue(Preferences.getTileCacheMaxSize());
+        gpxCacheMaxSizeSpinner.setValue(Preferences.getGpxCacheMaxSize());
 
         pack();
         setLocationRelativeTo(owner);
@@ -0,0 +1,189 @@
+package app.gpx_animator.core.data.gpx;
+
+import app.gpx_animator.core.UserException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GpxCacheTest {
+
+    private static final long MAX_SIZE = 1_024 * 1_024;
+
+    private static final String GPX = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <gpx version="1.1" creator="test">
+              <wpt lat="47.1" lon="8.1"><time>2020-05-01T10:00:00Z</time><name>Start</name></wpt>
+              <trk><trkseg>
+                <trkpt lat="47.1" lon="8.1"><time>2020-05-01T10:00:00Z</time><cmt>Start</cmt></trkpt>
+                <trkpt lat="47.15" lon="8.15"><time>2020-05-01T10:00:05.250Z</time></trkpt>
+              </trkseg><trkseg>
+                <trkpt lat="47.2" lon="8.2"><time>2020-05-01T10:01:00Z</time><cmt>Ziel</cmt></trkpt>
+              </trkseg></trk>
+              <wpt lat="47.2" lon="8.2"><name>Ziel</name></wpt>
+            </gpx>
+            """;
+
+    @TempDir
+    Path cacheDir;
+
+    @Test
+    void readsTheCachedPoints() throws UserException, IOException {
+        final var gpxFile = new File("./src/test/resources/gpx/bikeride.gpx");
+        final var parsed = new Recorder();
+        GpxCache.parseGpx(gpxFile, parsed, cacheDir, MAX_SIZE);
+        assertEquals(1, countCachedFiles());
+
+        final var cached = new Recorder();
+        GpxCache.parseGpx(gpxFile, cached, cacheDir, MAX_SIZE);
+        assertEquals(parse(gpxFile).points, parsed.points);
+        assertEquals(parsed.points, cached.points);
+        assertEquals(1, countCachedFiles());
+    }
+
+    @Test
+    void readsTheCachedCommentsAndWaypoints() throws UserException, IOException {
+        final var gpxFile = writeGpx("track.gpx", GPX);
+        GpxCache.parseGpx(gpxFile, new Recorder(), cacheDir, MAX_SIZE);
+
+        final var cached = new Recorder();
+        GpxCache.parseGpx(gpxFile, cached, cacheDir, MAX_SIZE);
+        assertEquals(parse(gpxFile).points, cached.points);
+        assertEquals(List.of(
+                "waypoint 47.1 8.1 1588327200000 Start",
+                "start",
+                "point 47.1 8.1 1588327200000 Start",
+                "point 47.15 8.15 1588327205250 null",
+                "end",
+                "start",
+                "point 47.2 8.2 1588327260000 Ziel",
+                "end",
+                "waypoint 47.2 8.2 " + Long.MIN_VALUE + " Ziel"), cached.points);
+    }
+
+    @Test
+    void knowsTheNumberOfPointsOfCachedSegments() throws UserException, IOException {
+        final var gpxFile = writeGpx("track.gpx", GPX);
+        final var parsed = new Recorder();
+        GpxCache.parseGpx(gpxFile, parsed, cacheDir, MAX_SIZE);
+        assertEquals(List.of(-1, -1), parsed.pointCounts);
+
+        final var cached = new Recorder();
+        GpxCache.parseGpx(gpxFile, cached, cacheDir, MAX_SIZE);
+        assertEquals(List.of(2, 1), cached.pointCounts);
+    }
+
+    @Test
+    void parsesAChangedFileAgain() throws UserException, IOException {
+        final var gpxFile = writeGpx("track.gpx", GPX);
+        GpxCache.parseGpx(gpxFile, new Recorder(), cacheDir, MAX_SIZE);
+
+        writeGpx("track.gpx", GPX.replace("8.15", "8.16"));
+        final var cached = new Recorder();
+        GpxCache.parseGpx(gpxFile, cached, cacheDir, MAX_SIZE);
+        assertEquals("point 47.15 8.16 1588327205250 null", cached.points.get(3));
+        assertEquals(2, countCachedFiles());
+    }
+
+    @Test
+    void keepsTheCacheBelowTheSizeLimit() throws UserException, IOException {
+        for (var i = 0; i < 5; i++) {
+            GpxCache.parseGpx(writeGpx("track" + i + ".gpx", GPX), new Recorder(), cacheDir, 1);
+        }
+        assertEquals(1, countCachedFiles());
+    }
+
+    @Test
+    void doesNotCacheIfDisabled() throws UserException, IOException {
+        final var gpxFile = writeGpx("track.gpx", GPX);
+        final var parsed = new Recorder();
+        GpxCache.parseGpx(gpxFile, parsed, cacheDir, 0);
+        assertEquals(parse(gpxFile).points, parsed.points);
+        assertEquals(0, countCachedFiles());
+    }
+
+    @Test
+    void doesNotCacheIfTheListenerFails() throws IOException {
+        final var gpxFile = writeGpx("track.gpx", GPX);
+        final var failing = new Recorder() {
+            @Override
+            public void trackPoint(final double lat, final double lon, final long time, final String cmt) throws UserException {
+                throw new UserException("invalid point");
+            }
+        };
+        assertEquals("invalid point",
+                assertThrows(UserException.class, () -> GpxCache.parseGpx(gpxFile, failing, cacheDir, MAX_SIZE)).getMessage());
+        assertEquals(0, countCachedFiles());
+    }
+
+    @Test
+    void ignoresABrokenCachedFile() throws UserException, IOException {
+        final var gpxFile = writeGpx("track.gpx", GPX);
+        GpxCache.parseGpx(gpxFile, new Recorder(), cacheDir, MAX_SIZE);
+        try (var files = Files.list(cacheDir)) {
+            final var cachedFile = files.filter(file -> file.toString().endsWith(".trk")).findFirst().orElseThrow();
+            final var content = Files.readAllBytes(cachedFile);
+            content[8] = 42; // an unknown record
+            Files.write(cachedFile, content);
+        }
+
+        final var parsed = new Recorder();
+        GpxCache.parseGpx(gpxFile, parsed, cacheDir, MAX_SIZE);
+        assertEquals(parse(gpxFile).points, parsed.points);
+    }
+
+    private File writeGpx(final String name, final String content) throws IOException {
+        final var dir = Files.createDirectories(cacheDir.resolve("gpx"));
+        return Files.writeString(dir.resolve(name), content).toFile();
+    }
+
+    private long countCachedFiles() throws IOException {
+        assertTrue(Files.isDirectory(cacheDir));
+        try (var files = Files.list(cacheDir)) {
+            return files.filter(Files::isRegularFile).count();
+        }
+    }
+
+    private static Recorder parse(final File gpxFile) throws UserException {
+        final var recorder = new Recorder();
+        GpxParser.parseGpx(gpxFile, recorder);
+        return recorder;
+    }
+
+    private static class Recorder implements GpxPointListener {
+
+        private final List<String> points = new ArrayList<>();
+        private final List<Integer> pointCounts = new ArrayList<>();
+
+        @Override
+        public void startTrackSegment(final int pointCount) {
+            points.add("start");
+            pointCounts.add(pointCount);
+        }
+
+        @Override
+        public void trackPoint(final double lat, final double lon, final long time, final String cmt) throws UserException {
+            points.add("point " + lat + " " + lon + " " + time + " " + cmt);
+        }
+
+        @Override
+        public void endTrackSegment() {
+            points.add("end");
+        }
+
+        @Override
+        public void waypoint(final double lat, final double lon, final long time, final String name) {
+            points.add("waypoint " + lat + " " + lon + " " + time + " " + name);
+        }
+    }
+
+}
@@ -0,0 +1,53 @@
+package app.gpx_animator.core.data.gpx;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SuppressWarnings("HardCodedStringLiteral")
+class TimestampParserTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "2019-10-22T14:36:00Z",
+            "2019-10-22T14:36:00.000Z",
+            "2019-10-22T14:36:01.5Z",
+            "2019-10-22T14:36:01.25Z",
+            "2019-10-22T14:36:01.123456Z",
+            "2019-10-22T14:36:01.999999999Z",
+            "2019-10-22t14:36:01z",
+            "2019-10-22T16:36:00+02:00",
+            "2019-10-22T09:06:00.250-05:30",
+            "2019-12-31T23:59:59.999-18:00",
+            "2020-02-29T12:00:00Z",
+            "2000-03-01T00:00:00+14:00",
+            "1970-01-01T00:00:00Z",
+            "1969-12-31T23:59:59.999Z",
+            "0001-01-01T00:00:00Z",
+            "2019-10-22T14:36Z",
+            "2019-10-22T16:36:00+02:00[Europe/Vienna]"
+    })
+    void parsesLikeZonedDateTime(final String timestamp) {
+        assertEquals(ZonedDateTime.parse(timestamp).toInstant().toEpochMilli(), TimestampParser.parse(timestamp));
+    }
+
+    @Test
+    void parsesFromTheMiddleOfCharactersIgnoringWhitespace() {
+        final var chars = "xx\n    2019-10-22T14:36:00.042Z\n  yy".toCharArray();
+        assertEquals(1_571_754_960_042L, TimestampParser.parse(chars, 2, chars.length - 4));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "2019-02-29T14:36:00Z", "2019-10-22T24:00:00Z", "2019-10-22T14:36:00", "2019-10-22T14:36:00.1234567890Z",
+            "2019-10-22T14:36:00+19:00", "22.10.2019 14:36:00"})
+    void rejectsInvalidTimestamps(final String timestamp) {
+        assertThrows(DateTimeParseException.class, () -> TimestampParser.parse(timestamp));
+    }
+
+}
@@ -0,0 +1,112 @@
+package app.gpx_animator.core.data.gpx;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+@SuppressWarnings("HardCodedStringLiteral")
+class TrackSegmentTest {
+
+    private static TrackSegment createTrackSegment() {
+        return TrackSegment.createBuilder()
+                .add(3_000, 3, 3, 0, 0, "b")
+                .add(1_000, 1, 1, 0, 0, "a")
+                .add(2_000, 2, 2, 0, 0, null)
+                .add(2_000, 4, 4, 0, 0, "a")
+                .add(5_000, 5, 5, 0, 0, "b")
+                .build();
+    }
+
+    @Test
+    void sortsByTimeAndKeepsOrderOfSameTime() {
+        final var trackSegment = createTrackSegment();
+
+        assertEquals(5, trackSegment.size());
+        assertEquals(1_000, trackSegment.getFirstTime());
+        assertEquals(5_000, trackSegment.getLastTime());
+        assertEquals(1, trackSegment.getX(0));
+        assertEquals(2, trackSegment.getX(1));
+        assertEquals(4, trackSegment.getX(2));
+        assertEquals(3, trackSegment.getX(3));
+    }
+
+    @Test
+    void deduplicatesTexts() {
+        final var trackSegment = createTrackSegment();
+
+        assertEquals("a", trackSegment.getText(0));
+        assertNull(trackSegment.getText(1));
+        assertSame(trackSegment.getText(0), trackSegment.getText(2));
+        assertSame(trackSegment.getText(3), trackSegment.getText(4));
+    }
+
+    @Test
+    void searchesByTime() {
+        final var trackSegment = createTrackSegment();
+
+        assertEquals(-1, trackSegment.floorIndex(999));
+        assertEquals(0, trackSegment.floorIndex(1_000));
+        assertEquals(2, trackSegment.floorIndex(2_000));
+        assertEquals(3, trackSegment.floorIndex(4_999));
+        assertEquals(4, trackSegment.floorIndex(9_999));
+
+        assertEquals(0, trackSegment.ceilingIndex(0));
+        assertEquals(1, trackSegment.ceilingIndex(1_001));
+        assertEquals(4, trackSegment.ceilingIndex(5_000));
+        assertEquals(-1, trackSegment.ceilingIndex(5_001));
+
+        assertEquals(-1, trackSegment.lowerIndex(1_000));
+        assertEquals(0, trackSegment.lowerIndex(2_000));
+        assertEquals(2, trackSegment.lowerIndex(2_001));
+    }
+
+    @Test
+    void trimsByTime() {
+        final var trackSegment = createTrackSegment().trim(2_000, 3_000);
+
+        assertEquals(3, trackSegment.size());
+        assertEquals(2_000, trackSegment.getFirstTime());
+        assertEquals(3_000, trackSegment.getLastTime());
+        assertEquals("b", trackSegment.getText(2));
+
+        assertEquals(0, createTrackSegment().trim(6_000, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    void simplifiesToPointsApartByTheTolerance() {
+        final var builder = TrackSegment.createBuilder();
+        for (var i = 0; i <= 100; i++) {
+            builder.add(i * 1_000L, i, 0, i, 0, null);
+        }
+        final var trackSegment = builder.build().simplify(10);
+
+        assertEquals(11, trackSegment.size());
+        assertEquals(0, trackSegment.getFirstTime());
+        assertEquals(100_000, trackSegment.getLastTime());
+        for (var i = 1; i < trackSegment.size(); i++) {
+            assertEquals(i * 10_000L, trackSegment.getTime(i));
+            assertEquals(i * 10.0, trackSegment.getLat(i));
+        }
+    }
+
+    @Test
+    void keepsTheFirstAndLastPointWhenSimplifying() {
+        final var trackSegment = createTrackSegment().simplify(100);
+
+        assertEquals(2, trackSegment.size());
+        assertEquals(1_000, trackSegment.getFirstTime());
+        assertEquals(5_000, trackSegment.getLastTime());
+        assertEquals("b", trackSegment.getText(1));
+    }
+
+    @Test
+    void doesNotSimplifyWithoutTolerance() {
+        final var trackSegment = createTrackSegment();
+
+        assertSame(trackSegment, trackSegment.simplify(0));
+        assertSame(trackSegment, trackSegment.simplify(0.5));
+    }
+
+}
@@ -0,0 +1,148 @@
+package app.gpx_animator.core.renderer;
+
+import app.gpx_animator.core.UserException;
+import app.gpx_animator.core.renderer.framewriter.FrameWriter;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FrameRenderQueueTest {
+
+    @Test
+    void writesTheFramesInTheOrderOfTheJobs() throws UserException {
+        final var writer = new RecordingFrameWriter();
+        final var queue = new FrameRenderQueue(4, writer);
+        final List<Integer> expected = new ArrayList<>();
+
+        for (var job = 0; job < 50; job++) {
+            final var first = expected.size();
+            final var count = job % 7 == 0 ? 10 : 1; // some jobs render more frames, like photos
+            for (var frame = first; frame < first + count; frame++) {
+                expected.add(frame);
+            }
+            final var delay = (50 - job) % 5;
+            queue.submit(frameWriter -> {
+                sleep(delay);
+                for (var frame = first; frame < first + count; frame++) {
+                    frameWriter.addFrame(frame(frame));
+                }
+            });
+        }
+        queue.finish();
+
+        assertEquals(expected, writer.frames);
+    }
+
+    @Test
+    void keepsOnlyAFewFramesOfAJobWaitingForThePreviousOnes() throws UserException {
+        final var writer = new RecordingFrameWriter();
+        final var queue = new FrameRenderQueue(2, writer);
+        final var rendered = new AtomicInteger();
+        final var renderedMeanwhile = new AtomicInteger();
+
+        queue.submit(frameWriter -> {
+            sleep(200);
+            renderedMeanwhile.set(rendered.get());
+            frameWriter.addFrame(frame(0));
+        });
+        queue.submit(frameWriter -> {
+            for (var frame = 1; frame <= 100; frame++) {
+                frameWriter.addFrame(frame(frame));
+                rendered.incrementAndGet();
+            }
+        });
+        queue.finish();
+
+        assertTrue(renderedMeanwhile.get() <= FrameRenderQueue.FRAMES_PER_JOB + 1);
+        final List<Integer> expected = new ArrayList<>();
+        for (var frame = 0; frame <= 100; frame++) {
+            expected.add(frame);
+        }
+        assertEquals(expected, writer.frames);
+    }
+
+    @Test
+    void throwsTheErrorOfTheFirstFailingFrame() {
+        final var writer = new RecordingFrameWriter();
+        final var queue = new FrameRenderQueue(4, writer);
+
+        final var exception = assertThrows(UserException.class, () -> {
+            for (var job = 0; job < 10; job++) {
+                final var frame = job;
+                queue.submit(frameWriter -> {
+                    if (frame == 2) {
+                        sleep(100);
+                        throw new UserException("frame 2 failed");
+                    } else if (frame == 3) {
+                        throw new UserException("frame 3 failed");
+                    }
+                    frameWriter.addFrame(frame(frame));
+                });
+            }
+            queue.finish();
+        });
+
+        assertEquals("frame 2 failed", exception.getMessage());
+        assertEquals(List.of(0, 1), writer.frames);
+    }
+
+    @Test
+    void cancelInterruptsTheRenderingJobs() throws UserException, InterruptedException {
+        final var writer = new RecordingFrameWriter();
+        final var queue = new FrameRenderQueue(2, writer);
+        final var started = new CountDownLatch(1);
+        final var interrupted = new CountDownLatch(1);
+
+        queue.submit(frameWriter -> {
+            started.countDown();
+            try {
+                Thread.sleep(60_000);
+            } catch (final InterruptedException e) {
+                interrupted.countDown();
+            }
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        queue.cancel();
+
+        assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+        assertTrue(writer.frames.isEmpty());
+    }
+
+    private static BufferedImage frame(final int number) {
+        final var image = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, number);
+        return image;
+    }
+
+    private static void sleep(final long millis) throws UserException {
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UserException(e.getMessage(), e);
+        }
+    }
+
+    private static final class RecordingFrameWriter implements FrameWriter {
+
+        private final List<Integer> frames = new ArrayList<>();
+
+        @Override
+        public void addFrame(final BufferedImage bi) {
+            frames.add(bi.getRGB(0, 0) & 0xFFFFFF);
+        }
+
+        @Override
+        public void close() { }
+    }
+
+}
@@ -0,0 +1,171 @@
+package app.gpx_animator.core.renderer;
+
+import app.gpx_animator.core.UserException;
+import app.gpx_animator.core.configuration.Configuration;
+import app.gpx_animator.core.configuration.TrackConfiguration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SuppressWarnings("HardCodedStringLiteral")
+class RendererTest {
+
+    private static final RenderingContext RENDERING_CONTEXT = new RenderingContext() {
+        @Override
+        public void setProgress1(final int pct, final String message) {
+        }
+
+        @Override
+        public boolean isCancelled1() {
+            return false;
+        }
+    };
+
+    // the GPX files parsed by the tests are cached here, instead of the cache of the user
+    private static final long GPX_CACHE_MAX_SIZE = 16L * 1_024 * 1_024;
+
+    @TempDir
+    Path gpxDir;
+
+    @TempDir
+    Path gpxCacheDir;
+
+    @Test
+    void ignoresTheFirstAndLastPointWithoutTime() throws IOException, UserException {
+        final var gpxFile = Files.writeString(gpxDir.resolve("track.gpx"), """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <gpx version="1.1" creator="test"><trk><trkseg>
+                  <trkpt lat="47.1" lon="8.1"/>
+                  <trkpt lat="47.1" lon="8.1"><time>2020-05-01T10:00:00Z</time></trkpt>
+                  <trkpt lat="47.2" lon="8.2"><time>2020-05-01T10:00:10Z</time></trkpt>
+                  <trkpt lat="47.3" lon="8.3"><time>2020-05-01T10:00:20Z</time></trkpt>
+                  <trkpt lat="47.3" lon="8.3"/>
+                </trkseg></trk></gpx>
+                """).toFile();
+        final var configuration = Configuration.createBuilder()
+                .addTrackConfiguration(TrackConfiguration.createBuilder().inputGpx(gpxFile).build())
+                .addTrackConfiguration(TrackConfiguration.createBuilder().inputGpx(gpxFile).forcedPointInterval(1_000L).build())
+                .build();
+        final var trackSegments = createRenderer(configuration).calculateMapArea(RENDERING_CONTEXT).trackSegments();
+
+        assertEquals(2, trackSegments.size());
+        final var repaired = trackSegments.get(0);
+        assertEquals(3, repaired.size());
+        assertEquals(1_588_327_200_000L, repaired.getFirstTime());
+        assertEquals(1_588_327_220_000L, repaired.getLastTime());
+        final var forced = trackSegments.get(1);
+        assertEquals(3, forced.size());
+        assertEquals(1_000L, forced.getFirstTime());
+        assertEquals(3_000L, forced.getLastTime());
+    }
+
+    @Test
+    void parsesGpxFilesInParallelLikeOneAfterTheOther() throws UserException {
+        final var serial = createRenderer(createConfiguration(1)).calculateMapArea(RENDERING_CONTEXT);
+        final var parallel = createRenderer(createConfiguration(4)).calculateMapArea(RENDERING_CONTEXT);
+
+        assertEquals(serial.zoom(), parallel.zoom());
+        assertEquals(serial.minX(), parallel.minX());
+        assertEquals(serial.maxX(), parallel.maxX());
+        assertEquals(serial.minY(), parallel.minY());
+        assertEquals(serial.maxY(), parallel.maxY());
+        assertEquals(serial.trackSegments().size(), parallel.trackSegments().size());
+        for (var segment = 0; segment < serial.trackSegments().size(); segment++) {
+            final var expected = serial.trackSegments().get(segment);
+            final var actual = parallel.trackSegments().get(segment);
+            assertEquals(expected.size(), actual.size());
+            for (var index = 0; index < expected.size(); index++) {
+                assertEquals(expected.getTime(index), actual.getTime(index));
+                assertEquals(expected.getX(index), actual.getX(index));
+                assertEquals(expected.getY(index), actual.getY(index));
+            }
+        }
+    }
+
+    @Test
+    void rendersTheSameFramesWithSeveralThreads(@TempDir final Path outputDir) throws UserException, IOException {
+        assertSameFrames(render(outputDir.resolve("serial"), 1, true, false), render(outputDir.resolve("parallel"), 4, true, false));
+    }
+
+    @Test
+    void rendersTheSameFramesOnATiledCanvas(@TempDir final Path outputDir) throws UserException, IOException {
+        assertSameFrames(render(outputDir.resolve("image"), 1, true, false), render(outputDir.resolve("tiled"), 4, true, true));
+    }
+
+    @Test
+    void rendersTheSameFramesOfTheWholeMapWithSeveralThreads(@TempDir final Path outputDir) throws UserException, IOException {
+        // the images of the frames are reused in another order, depending on the number of frames rendered at the same time
+        assertSameFrames(render(outputDir.resolve("serial"), 1, false, false), render(outputDir.resolve("parallel"), 4, false, false));
+    }
+
+    private static void assertSameFrames(final List<Path> serial, final List<Path> parallel) throws IOException {
+        assertEquals(serial.size(), parallel.size());
+        for (var frame = 0; frame < serial.size(); frame++) {
+            final var expected = ImageIO.read(serial.get(frame).toFile());
+            final var actual = ImageIO.read(parallel.get(frame).toFile());
+            assertEquals(expected.getWidth(), actual.getWidth());
+            assertEquals(expected.getHeight(), actual.getHeight());
+            for (var y = 0; y < expected.getHeight(); y++) {
+                for (var x = 0; x < expected.getWidth(); x++) {
+                    assertEquals(expected.getRGB(x, y), actual.getRGB(x, y), "frame %d at %d,%d".formatted(frame + 1, x, y));
+                }
+            }
+        }
+    }
+
+    private List<Path> render(final Path outputDir, final int renderThreads, final boolean movingMap,
+                                     final boolean lazyMapTiles) throws UserException, IOException {
+        Files.createDirectories(outputDir);
+        final var builder = Configuration.createBuilder()
+                .addTrackConfiguration(TrackConfiguration.createBuilder()
+                        .inputGpx(new File("./src/test/resources/gpx/bikeride.gpx"))
+                        .label("bike ride")
+                        .build())
+                .tmsUrlTemplate(null)
+                .zoom(12)
+                .width(320)
+                .fps(10)
+                .totalTime(3_000L)
+                .keepLastFrame(500L)
+                .renderThreads(renderThreads)
+                .lazyMapTiles(lazyMapTiles)
+                .output(outputDir.resolve("frame%04d.png").toFile());
+        if (movingMap) {
+            builder.viewportWidth(160).viewportHeight(120);
+        }
+        createRenderer(builder.build()).render(RENDERING_CONTEXT);
+
+        try (var files = Files.list(outputDir)) {
+            final var frames = files.sorted().collect(Collectors.toList());
+            assertTrue(frames.size() > 20);
+            return frames;
+        }
+    }
+
+    private Renderer createRenderer(final Configuration configuration) throws UserException {
+        return new Renderer(configuration, gpxCacheDir, GPX_CACHE_MAX_SIZE);
+    }
+
+    private static Configuration createConfiguration(final int renderThreads) {
+        final var builder = Configuration.createBuilder().renderThreads(renderThreads);
+        for (var track = 0; track < 6; track++) {
+            builder.addTrackConfiguration(TrackConfiguration.createBuilder()
+                    .inputGpx(new File("./src/test/resources/gpx/bikeride.gpx"))
+                    .timeOffset(track * 60_000L)
+                    .trimGpxStart(track * 1_000L)
+                    .build());
+        }
+        return builder.build();
+    }
+
+}
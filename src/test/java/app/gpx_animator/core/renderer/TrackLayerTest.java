@@ -0,0 +1,68 @@
+package app.gpx_animator.core.renderer;
+
+import app.gpx_animator.core.UserException;
+import app.gpx_animator.core.data.gpx.TrackSegment;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+import static app.gpx_animator.core.util.RenderUtil.getGraphics;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TrackLayerTest {
+
+    @Test
+    void rasterizesStripesLikeOneImage() throws UserException {
+        final var batches = createTracks();
+        final var bounds = TrackLayer.getBounds(batches, 1_000, 1_000);
+        assertTrue(bounds.width > 0 && bounds.height > 4 * 64);
+
+        final var expected = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_ARGB);
+        final var g2 = getGraphics(expected, bounds.getLocation());
+        batches.forEach(batch -> batch.draw(g2));
+        g2.dispose();
+
+        final var image = TrackLayer.rasterize(batches, bounds, 4);
+        for (var y = 0; y < bounds.height; y++) {
+            for (var x = 0; x < bounds.width; x++) {
+                assertEquals(expected.getRGB(x, y), image.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    void createsTheSameKeyForTheSameTracks() throws UserException {
+        final var bounds = new Rectangle(0, 0, 1_000, 1_000);
+        assertEquals(TrackLayer.createKey(createTracks(), bounds), TrackLayer.createKey(createTracks(), bounds));
+
+        final var other = new TrackPathBatch(3f, Color.RED);
+        other.addLine(0, createSegment(0), 1);
+        assertNotEquals(TrackLayer.createKey(createTracks(), bounds), TrackLayer.createKey(List.of(other), bounds));
+    }
+
+    private static List<TrackPathBatch> createTracks() {
+        final var red = new TrackPathBatch(5f, Color.RED);
+        final var blue = new TrackPathBatch(3f, new Color(0, 0, 255, 128));
+        final var first = createSegment(0);
+        final var second = createSegment(40);
+        for (var index = 1; index < first.size(); index++) {
+            red.addLine(0, first, index);
+            blue.addLine(0, second, index);
+        }
+        return List.of(red, blue);
+    }
+
+    private static TrackSegment createSegment(final double offset) {
+        final var builder = TrackSegment.createBuilder();
+        for (var i = 0; i < 50; i++) {
+            builder.add(i * 1_000L, 100 + offset + 300 * Math.sin(i / 5.0), 50 + i * 12.3, 0, 0, null);
+        }
+        return builder.build();
+    }
+
+}
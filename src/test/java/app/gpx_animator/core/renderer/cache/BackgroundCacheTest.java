@@ -0,0 +1,111 @@
+package app.gpx_animator.core.renderer.cache;
+
+import app.gpx_animator.core.UserException;
+import app.gpx_animator.core.renderer.canvas.CanvasStorage;
+import app.gpx_animator.core.renderer.canvas.OffHeapDataBuffer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BackgroundCacheTest {
+
+    private static final long MAX_AGE = 60_000;
+    private static final long MAX_SIZE = 1_024 * 1_024;
+
+    @TempDir
+    Path tileCacheDir;
+
+    @Test
+    void readsAStoredBackground() throws UserException {
+        final var background = createBackground(new BufferedImage(40, 30, BufferedImage.TYPE_3BYTE_BGR));
+        BackgroundCache.store(tileCacheDir.toString(), "map", background, MAX_SIZE);
+
+        final var image = new BufferedImage(40, 30, BufferedImage.TYPE_3BYTE_BGR);
+        assertTrue(BackgroundCache.load(tileCacheDir.toString(), "map", MAX_AGE, image));
+        assertEquals(Color.ORANGE.getRGB(), image.getRGB(0, 0));
+        assertEquals(Color.BLUE.getRGB(), image.getRGB(10, 10));
+        assertEquals(Color.ORANGE.getRGB(), image.getRGB(39, 29));
+    }
+
+    @Test
+    void readsAStoredBackgroundOffTheHeap() throws IOException, UserException {
+        final var background = createBackground(OffHeapDataBuffer.createImage(40, 30, CanvasStorage.DIRECT));
+        BackgroundCache.store(tileCacheDir.toString(), "map", background, MAX_SIZE);
+
+        final var image = new BufferedImage(40, 30, BufferedImage.TYPE_3BYTE_BGR);
+        assertTrue(BackgroundCache.load(tileCacheDir.toString(), "map", MAX_AGE, image));
+        assertEquals(Color.BLUE.getRGB(), image.getRGB(10, 10));
+
+        final var offHeap = OffHeapDataBuffer.createImage(40, 30, CanvasStorage.DIRECT);
+        assertTrue(BackgroundCache.load(tileCacheDir.toString(), "map", MAX_AGE, offHeap));
+        assertEquals(Color.ORANGE.getRGB(), offHeap.getRGB(0, 0));
+        assertEquals(Color.BLUE.getRGB(), offHeap.getRGB(10, 10));
+    }
+
+    @Test
+    void missesOtherBackgrounds() throws UserException {
+        BackgroundCache.store(tileCacheDir.toString(), "map", createBackground(new BufferedImage(40, 30, BufferedImage.TYPE_3BYTE_BGR)),
+                MAX_SIZE);
+
+        assertFalse(BackgroundCache.load(tileCacheDir.toString(), "other map", MAX_AGE,
+                new BufferedImage(40, 30, BufferedImage.TYPE_3BYTE_BGR)));
+        assertFalse(BackgroundCache.load(tileCacheDir.toString(), "map", MAX_AGE,
+                new BufferedImage(30, 40, BufferedImage.TYPE_3BYTE_BGR)));
+        assertFalse(BackgroundCache.load(tileCacheDir.toString(), "map", -1,
+                new BufferedImage(40, 30, BufferedImage.TYPE_3BYTE_BGR)));
+        assertFalse(BackgroundCache.load("", "map", MAX_AGE,
+                new BufferedImage(40, 30, BufferedImage.TYPE_3BYTE_BGR)));
+    }
+
+    @Test
+    void keepsOnlyTheRecentBackgrounds() throws IOException, UserException {
+        final var background = createBackground(new BufferedImage(4, 3, BufferedImage.TYPE_3BYTE_BGR));
+        for (var i = 0; i < 5; i++) {
+            BackgroundCache.store(tileCacheDir.toString(), "map " + i, background, MAX_SIZE);
+        }
+
+        try (var files = Files.list(tileCacheDir.resolve("backgrounds"))) {
+            assertEquals(3, files.count());
+        }
+        final var image = new BufferedImage(4, 3, BufferedImage.TYPE_3BYTE_BGR);
+        assertTrue(BackgroundCache.load(tileCacheDir.toString(), "map 4", MAX_AGE, image));
+    }
+
+    @Test
+    void keepsTheBackgroundsWithinTheMaximumSize() throws IOException, UserException {
+        // the header and the pixels of a background of 40x30 pixels take 3612 bytes
+        final var background = createBackground(new BufferedImage(40, 30, BufferedImage.TYPE_3BYTE_BGR));
+        BackgroundCache.store(tileCacheDir.toString(), "too large", background, 3_611);
+        assertFalse(Files.exists(tileCacheDir.resolve("backgrounds")));
+
+        BackgroundCache.store(tileCacheDir.toString(), "map 1", background, 2 * 3_612);
+        BackgroundCache.store(tileCacheDir.toString(), "map 2", background, 2 * 3_612);
+        BackgroundCache.store(tileCacheDir.toString(), "map 3", background, 2 * 3_612);
+
+        try (var files = Files.list(tileCacheDir.resolve("backgrounds"))) {
+            assertEquals(2, files.count());
+        }
+        final var image = new BufferedImage(40, 30, BufferedImage.TYPE_3BYTE_BGR);
+        assertTrue(BackgroundCache.load(tileCacheDir.toString(), "map 3", MAX_AGE, image));
+    }
+
+    private static BufferedImage createBackground(final BufferedImage image) {
+        final var g = image.createGraphics();
+        g.setColor(Color.ORANGE);
+        g.fillRect(0, 0, image.getWidth(), image.getHeight());
+        g.setColor(Color.BLUE);
+        g.fillRect(10, 10, 2, 2);
+        g.dispose();
+        return image;
+    }
+
+}
@@ -0,0 +1,128 @@
+package app.gpx_animator.core.renderer.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TileCacheIndexTest {
+
+    @TempDir
+    Path cacheDir;
+
+    @Test
+    void evictsLeastRecentlyUsedFiles() {
+        final var index = TileCacheIndex.load(cacheDir);
+        final var now = System.currentTimeMillis();
+        index.put("a", 100, now);
+        index.put("b", 100, now);
+        index.put("c", 100, now);
+        assertNotNull(index.get("a")); // b is now the least recently used file
+
+        assertEquals(List.of("b"), index.evict(200, Long.MAX_VALUE));
+        assertEquals(200, index.getSize());
+        assertNull(index.get("b"));
+    }
+
+    @Test
+    void evictsExpiredFilesFirst() {
+        final var index = TileCacheIndex.load(cacheDir);
+        final var now = System.currentTimeMillis();
+        index.put("old", 100, now - 10_000);
+        index.put("new", 100, now);
+
+        assertEquals(List.of("old"), index.evict(Long.MAX_VALUE, 5_000));
+        assertEquals(1, index.getFileCount());
+    }
+
+    @Test
+    void keepsExpiredFilesWhichCanBeRevalidated() throws IOException {
+        final var index = TileCacheIndex.load(cacheDir);
+        final var now = System.currentTimeMillis();
+        final var metadata = new TileMetadata("\"v1\"", "Mon, 01 Mar 2021 10:00:00 GMT", -1);
+        index.put("old", 100, now - 10_000, metadata);
+        index.put("older", 100, now - 20_000);
+
+        assertEquals(List.of("older"), index.evict(Long.MAX_VALUE, 5_000));
+        index.save();
+
+        final var entry = TileCacheIndex.load(cacheDir).get("old");
+        assertEquals(metadata, entry.metadata());
+        assertTrue(entry.isExpired(now, 5_000));
+        assertFalse(entry.isExpired(now, 60_000));
+    }
+
+    @Test
+    void keepsTheOrderWhenSavedAndLoaded() throws IOException {
+        final var index = TileCacheIndex.load(cacheDir);
+        assertFalse(index.isComplete());
+        final var now = System.currentTimeMillis();
+        index.put("a", 100, now);
+        index.put("b", 200, now);
+        index.get("a");
+        index.save();
+        assertTrue(Files.exists(cacheDir.resolve(TileCacheIndex.INDEX_FILE_NAME)));
+
+        final var loaded = TileCacheIndex.load(cacheDir);
+        assertTrue(loaded.isComplete());
+        assertEquals(300, loaded.getSize());
+        assertEquals(List.of("b"), loaded.evict(100, Long.MAX_VALUE));
+    }
+
+    @Test
+    void mergesTheFilesOfOtherProcesses() throws IOException {
+        final var first = TileCacheIndex.load(cacheDir);
+        final var second = TileCacheIndex.load(cacheDir);
+        final var now = System.currentTimeMillis();
+        first.put("a", 100, now - 1_000);
+        first.save();
+        second.put("b", 200, now);
+        second.save();
+        assertEquals(300, second.getSize());
+
+        final var loaded = TileCacheIndex.load(cacheDir);
+        assertEquals(2, loaded.getFileCount());
+        assertEquals(300, loaded.getSize());
+        assertEquals(List.of("a"), loaded.evict(200, Long.MAX_VALUE)); // ordered by the last access of both processes
+    }
+
+    @Test
+    void doesNotMergeFilesRemovedMeanwhile() throws IOException {
+        final var first = TileCacheIndex.load(cacheDir);
+        final var now = System.currentTimeMillis();
+        first.put("a", 100, now);
+        first.save();
+        final var second = TileCacheIndex.load(cacheDir);
+        second.remove("a");
+        first.put("c", 300, now);
+        first.save();
+        second.save();
+
+        final var loaded = TileCacheIndex.load(cacheDir);
+        assertNull(loaded.get("a"));
+        assertNotNull(loaded.get("c"));
+        assertEquals(300, loaded.getSize());
+    }
+
+    @Test
+    void rebuildsBrokenIndex() throws IOException {
+        Files.writeString(cacheDir.resolve(TileCacheIndex.INDEX_FILE_NAME), "broken");
+        final var index = TileCacheIndex.load(cacheDir);
+        assertFalse(index.isComplete());
+        assertEquals(0, index.getFileCount());
+
+        index.adopt("a", 100, 0);
+        index.adopt("a", 100, 0);
+        assertEquals(100, index.getSize());
+    }
+
+}
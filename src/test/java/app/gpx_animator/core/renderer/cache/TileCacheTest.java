@@ -0,0 +1,179 @@
+package app.gpx_animator.core.renderer.cache;
+
+import app.gpx_animator.core.UserException;
+import app.gpx_animator.core.util.CacheFiles;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TileCacheTest {
+
+    private static final long TIME_LIMIT = 60 * 60 * 1_000;
+
+    @TempDir
+    Path cacheDir;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private HttpServer server;
+    private String baseUrl;
+    private byte[] tile;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        tile = encodeTile(Color.GREEN);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            requests.incrementAndGet();
+            exchange.sendResponseHeaders(200, tile.length);
+            exchange.getResponseBody().write(tile);
+            exchange.close();
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:%d".formatted(server.getAddress().getPort());
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void storesTheDownloadedTilesInShardDirectories() throws UserException, IOException {
+        final var url = baseUrl + "/shard/1/2/3.png";
+        assertNotNull(TileCache.getTile(url, cacheDir.toString(), TIME_LIMIT));
+
+        final var filename = cacheFilename(url);
+        final var cacheFile = cacheDir.resolve(filename.substring(0, 2)).resolve(filename);
+        assertArrayEquals(tile, Files.readAllBytes(cacheFile));
+        assertEquals(List.of(cacheFile), listFiles(cacheDir));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void movesTilesOfOlderVersionsIntoTheirShardDirectory() throws UserException, IOException {
+        final var url = baseUrl + "/legacy/1/2/3.png";
+        final var filename = cacheFilename(url);
+        final var legacyFile = cacheDir.resolve(filename);
+        Files.write(legacyFile, tile);
+
+        assertNotNull(TileCache.getTile(url, cacheDir.toString(), TIME_LIMIT));
+
+        final var cacheFile = cacheDir.resolve(filename.substring(0, 2)).resolve(filename);
+        assertFalse(Files.exists(legacyFile));
+        assertArrayEquals(tile, Files.readAllBytes(cacheFile));
+        assertEquals(0, requests.get());
+    }
+
+    @Test
+    void getsCachedTilesWithoutNetworkAccess() throws UserException, IOException {
+        final var url = baseUrl + "/offline/1/2/3.png";
+        final var filename = cacheFilename(url);
+        final var cacheFile = cacheDir.resolve(filename.substring(0, 2)).resolve(filename);
+        Files.createDirectories(cacheFile.getParent());
+        Files.write(cacheFile, tile);
+        assertTrue(cacheFile.toFile().setLastModified(0)); // expired long ago
+
+        final var cached = TileCache.getCachedTile(url, cacheDir.toString());
+        assertNotNull(cached);
+        assertEquals(Color.GREEN.getRGB(), cached.getRGB(4, 4));
+        assertNull(TileCache.getCachedTile(baseUrl + "/offline/1/2/4.png", cacheDir.toString()));
+        assertEquals(0, requests.get());
+    }
+
+    @Test
+    void replacesTheCachedFileOnlyWhenTheTileIsCompletelyWritten() throws IOException {
+        final var cacheFile = cacheDir.resolve("ab").resolve("ab.gpxac.png");
+        TileCache.writeCacheFile(cacheFile, tile);
+        assertArrayEquals(tile, Files.readAllBytes(cacheFile));
+
+        final var newTile = encodeTile(Color.RED);
+        TileCache.writeCacheFile(cacheFile, newTile);
+        assertArrayEquals(newTile, Files.readAllBytes(cacheFile));
+        assertEquals(List.of(cacheFile), listFiles(cacheDir));
+    }
+
+    @Test
+    void leavesNoFileBehindIfTheTileCantBeWritten() throws IOException {
+        // a directory in the way can't be replaced by the written tile
+        final var cacheFile = cacheDir.resolve("ab").resolve("ab.gpxac.png");
+        Files.createDirectories(cacheFile);
+        Files.writeString(cacheFile.resolve("other"), "other", StandardCharsets.UTF_8);
+
+        assertThrows(IOException.class, () -> TileCache.writeCacheFile(cacheFile, tile));
+
+        assertEquals(List.of(cacheFile.resolve("other")), listFiles(cacheDir));
+        assertTrue(Files.isDirectory(cacheFile));
+    }
+
+    @Test
+    void packsOnlyTheTilesOfTheCache() throws UserException, IOException {
+        final var shardTile = cacheFilename(baseUrl + "/shard/1/2/3.png");
+        final var legacyTile = cacheFilename(baseUrl + "/legacy/1/2/3.png");
+        Files.createDirectories(cacheDir.resolve(shardTile.substring(0, 2)));
+        Files.write(cacheDir.resolve(shardTile.substring(0, 2)).resolve(shardTile), tile);
+        Files.write(cacheDir.resolve(legacyTile), tile);
+        // the files of the other caches in the tile cache directory may look like tiles
+        Files.createDirectories(cacheDir.resolve(TrackLayerCache.DIRECTORY));
+        Files.write(cacheDir.resolve(TrackLayerCache.DIRECTORY).resolve(cacheFilename(baseUrl + "/track")), tile);
+
+        final var packFile = cacheDir.resolveSibling(cacheDir.getFileName() + ".pack").toFile();
+        try {
+            TileCache.buildTilePack(packFile, cacheDir.toString());
+            assertEquals(2, TilePack.open(packFile.toPath()).size());
+        } finally {
+            Files.deleteIfExists(packFile.toPath());
+        }
+    }
+
+    private static String cacheFilename(final String url) {
+        try {
+            final var hash = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+            return CacheFiles.toHex(hash) + ".gpxac.png";
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static List<Path> listFiles(final Path directory) throws IOException {
+        try (var files = Files.walk(directory)) {
+            return files.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static byte[] encodeTile(final Color color) throws IOException {
+        final var image = new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB);
+        final var g = image.createGraphics();
+        g.setColor(color);
+        g.fillRect(0, 0, 8, 8);
+        g.dispose();
+        final var out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,131 @@
+package app.gpx_animator.core.renderer.cache;
+
+import app.gpx_animator.core.UserException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TileDownloaderTest {
+
+    private static final byte[] TILE = "tile".getBytes(StandardCharsets.UTF_8);
+
+    private HttpServer server;
+    private String baseUrl;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger concurrentRequests = new AtomicInteger();
+    private final AtomicInteger maxConcurrentRequests = new AtomicInteger();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/ok", exchange -> respond(exchange, 200));
+        server.createContext("/missing", exchange -> respond(exchange, 404));
+        server.createContext("/etag", exchange -> {
+            exchange.getResponseHeaders().add("ETag", "\"v1\"");
+            exchange.getResponseHeaders().add("Cache-Control", "max-age=3600");
+            respond(exchange, "\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match")) ? 304 : 200);
+        });
+        server.createContext("/flaky", exchange -> respond(exchange, requests.get() < 2 ? 503 : 200));
+        server.createContext("/slow", exchange -> {
+            final var concurrent = concurrentRequests.incrementAndGet();
+            maxConcurrentRequests.accumulateAndGet(concurrent, Math::max);
+            try {
+                Thread.sleep(50);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            concurrentRequests.decrementAndGet();
+            respond(exchange, 200);
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:%d".formatted(server.getAddress().getPort());
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void downloadsTile() throws UserException {
+        final var downloader = new TileDownloader(2, 0, Duration.ZERO, Duration.ofSeconds(5));
+        assertArrayEquals(TILE, downloader.download(baseUrl + "/ok/1/2/3.png"));
+    }
+
+    @Test
+    void retriesServerErrors() throws UserException {
+        final var downloader = new TileDownloader(2, 3, Duration.ofMillis(1), Duration.ofSeconds(5));
+        assertArrayEquals(TILE, downloader.download(baseUrl + "/flaky/1/2/3.png"));
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    void failsWithoutRetryOnClientErrors() {
+        final var downloader = new TileDownloader(2, 3, Duration.ofMillis(1), Duration.ofSeconds(5));
+        assertThrows(UserException.class, () -> downloader.download(baseUrl + "/missing/1/2/3.png"));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void revalidatesUnchangedTile() throws UserException {
+        final var downloader = new TileDownloader(2, 0, Duration.ZERO, Duration.ofSeconds(5));
+        final var downloaded = downloader.download(baseUrl + "/etag/1/2/3.png", TileMetadata.NONE);
+        assertArrayEquals(TILE, downloaded.data());
+        assertEquals(new TileMetadata("\"v1\"", null, 3_600_000), downloaded.metadata());
+
+        final var revalidated = downloader.download(baseUrl + "/etag/1/2/3.png", downloaded.metadata());
+        assertTrue(revalidated.isNotModified());
+        assertEquals(downloaded.metadata(), revalidated.metadata());
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    void limitsConcurrentRequestsPerHost() throws Exception {
+        final var downloader = new TileDownloader(2, 0, Duration.ZERO, Duration.ofSeconds(5));
+        final var executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Callable<byte[]>> downloads = new ArrayList<>();
+            for (var i = 0; i < 16; i++) {
+                final var url = baseUrl + "/slow/1/%d/0.png".formatted(i);
+                downloads.add(() -> downloader.download(url));
+            }
+            for (final var future : executor.invokeAll(downloads)) {
+                assertArrayEquals(TILE, future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(16, requests.get());
+        assertTrue(maxConcurrentRequests.get() <= 2, "max concurrent requests: " + maxConcurrentRequests.get());
+    }
+
+    private void respond(final HttpExchange exchange, final int status) throws IOException {
+        requests.incrementAndGet();
+        if (status == 200) {
+            exchange.sendResponseHeaders(status, TILE.length);
+            exchange.getResponseBody().write(TILE);
+        } else {
+            exchange.sendResponseHeaders(status, -1);
+        }
+        exchange.close();
+    }
+
+}
@@ -0,0 +1,60 @@
+package app.gpx_animator.core.renderer.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class TileMemoryCacheTest {
+
+    private static final long TILE_SIZE = 256 * 256 * 4;
+
+    @Test
+    void evictsLeastRecentlyUsedTiles() {
+        final var cache = new TileMemoryCache(2 * TILE_SIZE);
+        final var tile1 = createTile();
+        final var tile2 = createTile();
+        final var tile3 = createTile();
+
+        cache.put("1", tile1);
+        cache.put("2", tile2);
+        assertSame(tile1, cache.get("1", Long.MAX_VALUE)); // tile 2 is now the least recently used one
+        cache.put("3", tile3);
+
+        assertSame(tile1, cache.get("1", Long.MAX_VALUE));
+        assertNull(cache.get("2", Long.MAX_VALUE));
+        assertSame(tile3, cache.get("3", Long.MAX_VALUE));
+        assertEquals(2 * TILE_SIZE, cache.getSize());
+    }
+
+    @Test
+    void replacesTilesWithTheSameUrl() {
+        final var cache = new TileMemoryCache(2 * TILE_SIZE);
+        final var tile = createTile();
+        cache.put("1", createTile());
+        cache.put("1", tile);
+
+        assertSame(tile, cache.get("1", Long.MAX_VALUE));
+        assertEquals(TILE_SIZE, cache.getSize());
+    }
+
+    @Test
+    void ignoresTooOldAndTooLargeTiles() throws InterruptedException {
+        final var cache = new TileMemoryCache(TILE_SIZE);
+        cache.put("large", new BufferedImage(512, 512, BufferedImage.TYPE_INT_RGB));
+        assertNull(cache.get("large", Long.MAX_VALUE));
+
+        cache.put("old", createTile());
+        Thread.sleep(5);
+        assertNull(cache.get("old", 1));
+        assertEquals(0, cache.getSize());
+    }
+
+    private static BufferedImage createTile() {
+        return new BufferedImage(256, 256, BufferedImage.TYPE_INT_RGB);
+    }
+
+}
@@ -0,0 +1,71 @@
+package app.gpx_animator.core.renderer.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TilePackTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void findsAllTilesOfThePack() throws IOException {
+        final List<Path> tiles = new ArrayList<>();
+        final List<byte[]> hashes = new ArrayList<>();
+        for (var i = 0; i < 100; i++) {
+            final var hash = new byte[32];
+            hash[0] = (byte) (i * 37); // unsorted, including values above 127
+            hash[31] = (byte) i;
+            hashes.add(hash);
+            final var tile = tempDir.resolve(toHex(hash) + ".gpxac.png");
+            Files.writeString(tile, "tile " + i);
+            tiles.add(tile);
+        }
+
+        final var packFile = tempDir.resolve("tiles.gpxtp");
+        assertEquals(100, TilePack.build(tiles, packFile));
+
+        final var pack = TilePack.open(packFile);
+        assertEquals(100, pack.size());
+        for (var i = 0; i < 100; i++) {
+            assertEquals("tile " + i, toString(pack.get(hashes.get(i))));
+        }
+        final var unknown = new byte[32];
+        Arrays.fill(unknown, (byte) 0xff);
+        assertNull(pack.get(unknown));
+    }
+
+    @Test
+    void rejectsOtherFiles() throws IOException {
+        final var file = Files.writeString(tempDir.resolve("other.gpxtp"), "no tile pack");
+        assertThrows(IOException.class, () -> TilePack.open(file));
+    }
+
+    private static String toHex(final byte[] hash) {
+        final var hex = new StringBuilder();
+        for (final var b : hash) {
+            hex.append("%02x".formatted(b));
+        }
+        return hex.toString();
+    }
+
+    private static String toString(final ByteBuffer buffer) {
+        final var bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,100 @@
+package app.gpx_animator.core.renderer.canvas;
+
+import app.gpx_animator.core.UserException;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class FrameImagePoolTest {
+
+    private static final int WIDTH = 400;
+    private static final int HEIGHT = 300;
+    private static final Rectangle MAP = new Rectangle(0, 0, WIDTH, HEIGHT);
+
+    @Test
+    void restoresTheChangedRegionsOfAReusedImage() throws UserException {
+        final var pool = new FrameImagePool(new ImageCanvas(createMap()), BufferedImage.TYPE_3BYTE_BGR);
+
+        final var first = pool.acquire(MAP);
+        final var g2 = first.createGraphics(new Rectangle(10, 10, 30, 20));
+        g2.setColor(Color.RED);
+        g2.fillRect(10, 10, 30, 20);
+        g2.dispose();
+        first.release();
+
+        pool.getCanvas().draw(new Rectangle(200, 100, 50, 50), g -> {
+            g.setColor(Color.GREEN);
+            g.fillRect(200, 100, 50, 50);
+        });
+
+        final var second = pool.acquire(MAP);
+        assertSame(first, second);
+        assertEquals(1, pool.getReusedImageCount());
+        assertImageEquals(pool.getCanvas().copy(MAP), second);
+        final var copiedForReuse = pool.getCopiedPixelCount() - (long) WIDTH * HEIGHT;
+        assertEquals((30 + 2) * (20 + 2) + (50 + 2) * (50 + 2), copiedForReuse);
+    }
+
+    @Test
+    void copiesEverythingAfterUnknownChanges() throws UserException {
+        final var pool = new FrameImagePool(new ImageCanvas(createMap()), BufferedImage.TYPE_3BYTE_BGR);
+
+        final var first = pool.acquire(MAP);
+        final var g2 = first.createGraphics();
+        g2.setColor(Color.RED);
+        g2.fillRect(300, 200, 5, 5);
+        g2.dispose();
+        first.release();
+
+        final var second = pool.acquire(MAP);
+        assertSame(first, second);
+        assertImageEquals(pool.getCanvas().copy(MAP), second);
+        assertEquals(2L * WIDTH * HEIGHT, pool.getCopiedPixelCount());
+    }
+
+    @Test
+    void providesAnotherImageUntilTheFrameIsReleased() throws UserException {
+        final var pool = new FrameImagePool(new ImageCanvas(createMap()), BufferedImage.TYPE_3BYTE_BGR);
+
+        final var first = pool.acquire(MAP);
+        final var second = pool.acquire(MAP);
+        assertNotSame(first, second);
+
+        second.release();
+        final var moved = new Rectangle(50, 50, WIDTH - 50, HEIGHT - 50);
+        final var third = pool.acquire(moved);
+        assertNotSame(second, third); // another size
+        third.release();
+        final var fourth = pool.acquire(new Rectangle(0, 0, WIDTH - 50, HEIGHT - 50));
+        assertSame(third, fourth); // the same size, but another area
+        assertImageEquals(pool.getCanvas().copy(new Rectangle(0, 0, WIDTH - 50, HEIGHT - 50)), fourth);
+        assertEquals(0, pool.getReusedImageCount());
+    }
+
+    private static BufferedImage createMap() {
+        final var map = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
+        for (var y = 0; y < HEIGHT; y++) {
+            for (var x = 0; x < WIDTH; x++) {
+                map.setRGB(x, y, x * 7 + y * 13 * 256);
+            }
+        }
+        return map;
+    }
+
+    private static void assertImageEquals(final BufferedImage expected, final BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (var y = 0; y < expected.getHeight(); y++) {
+            for (var x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y), "pixel %d/%d".formatted(x, y));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,40 @@
+package app.gpx_animator.core.renderer.canvas;
+
+import app.gpx_animator.core.UserException;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffHeapDataBufferTest {
+
+    @ParameterizedTest
+    @EnumSource(value = CanvasStorage.class, names = {"DIRECT", "MAPPED"})
+    void copiesAreasLikeAnImageOnTheHeap(final CanvasStorage storage) throws IOException, UserException {
+        final var image = OffHeapDataBuffer.createImage(300, 200, storage);
+        assertTrue(image.getRaster().getDataBuffer() instanceof OffHeapDataBuffer);
+
+        final var canvas = new ImageCanvas(image);
+        canvas.draw(new Rectangle(0, 0, 300, 200), g2 -> {
+            g2.setColor(Color.ORANGE);
+            g2.fillRect(0, 0, 300, 200);
+            g2.setColor(Color.BLUE);
+            g2.fillRect(100, 50, 20, 10);
+        });
+
+        final var copy = canvas.copy(new Rectangle(90, 45, 40, 20));
+        assertEquals(BufferedImage.TYPE_3BYTE_BGR, copy.getType());
+        assertEquals(Color.ORANGE.getRGB(), copy.getRGB(9, 4));
+        assertEquals(Color.BLUE.getRGB(), copy.getRGB(10, 5));
+        assertEquals(Color.BLUE.getRGB(), copy.getRGB(29, 14));
+        assertEquals(Color.ORANGE.getRGB(), copy.getRGB(30, 15));
+        assertEquals(image.getRGB(110, 55), copy.getRGB(20, 10));
+    }
+
+}
@@ -0,0 +1,82 @@
+package app.gpx_animator.core.renderer.canvas;
+
+import app.gpx_animator.core.UserException;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TiledCanvasTest {
+
+    private static final int BACKGROUND = Color.BLUE.getRGB();
+    private static final int TRACK = Color.RED.getRGB();
+
+    @Test
+    void allocatesOnlyTouchedTiles() throws UserException {
+        final List<Rectangle> initialized = new ArrayList<>();
+        final var canvas = new TiledCanvas(1_000, 700, 256, BufferedImage.TYPE_INT_RGB, (tile, area) -> initialized.add(area));
+        assertEquals(12, canvas.getTileCount());
+        assertEquals(0, canvas.getAllocatedTileCount());
+
+        canvas.draw(new Rectangle(300, 300, 10, 10), g2 -> g2.fillRect(300, 300, 10, 10));
+        assertEquals(List.of(new Rectangle(256, 256, 256, 256)), initialized);
+
+        canvas.copy(new Rectangle(900, 600, 100, 100)); // the tiles at the edges are smaller
+        assertEquals(new Rectangle(768, 512, 232, 188), initialized.get(1));
+        assertEquals(2, canvas.getAllocatedTileCount());
+
+        canvas.draw(new Rectangle(-50, -50, 10, 10), g2 -> g2.fillRect(-50, -50, 10, 10)); // outside of the map
+        assertEquals(2, canvas.getAllocatedTileCount());
+    }
+
+    @Test
+    void drawsAcrossTiles() throws UserException {
+        final var canvas = new TiledCanvas(512, 512, 256, BufferedImage.TYPE_INT_RGB, (tile, area) -> {
+            final var g = tile.createGraphics();
+            g.setColor(new Color(BACKGROUND));
+            g.fillRect(0, 0, area.width, area.height);
+            g.dispose();
+        });
+
+        canvas.draw(new Rectangle(250, 250, 12, 12), g2 -> {
+            g2.setColor(new Color(TRACK));
+            g2.fillRect(250, 250, 12, 12);
+        });
+        assertEquals(4, canvas.getAllocatedTileCount());
+
+        final var image = canvas.copy(new Rectangle(240, 240, 32, 32));
+        assertEquals(BACKGROUND, image.getRGB(9, 9));
+        assertEquals(TRACK, image.getRGB(10, 10));
+        assertEquals(TRACK, image.getRGB(15, 16));
+        assertEquals(TRACK, image.getRGB(21, 21));
+        assertEquals(BACKGROUND, image.getRGB(22, 22));
+    }
+
+    @Test
+    void copiesIntoAnImageLikeIntoANewOne() throws UserException {
+        final var canvas = new TiledCanvas(512, 512, 256, BufferedImage.TYPE_INT_RGB, (tile, area) -> {
+            for (var y = 0; y < area.height; y++) {
+                for (var x = 0; x < area.width; x++) {
+                    tile.setRGB(x, y, (area.x + x) * 256 + area.y + y);
+                }
+            }
+        });
+
+        final var area = new Rectangle(200, 230, 100, 50);
+        final var expected = canvas.copy(area);
+        final var image = new BufferedImage(120, 60, BufferedImage.TYPE_INT_RGB);
+        canvas.copyTo(area, image, 10, 5);
+        for (var y = 0; y < area.height; y++) {
+            for (var x = 0; x < area.width; x++) {
+                assertEquals(expected.getRGB(x, y), image.getRGB(x + 10, y + 5));
+            }
+        }
+        assertEquals(0, image.getRGB(9, 4) & 0xFFFFFF);
+    }
+
+}
@@ -0,0 +1,110 @@
+package app.gpx_animator.core.renderer.framewriter;
+
+import app.gpx_animator.core.UserException;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsyncFrameWriterTest {
+
+    @Test
+    void writesAllFramesInOrder() throws UserException {
+        final var delegate = new RecordingFrameWriter(-1);
+        final var writer = new AsyncFrameWriter(delegate, 2);
+
+        final List<BufferedImage> frames = new ArrayList<>();
+        for (var i = 0; i < 50; i++) {
+            final var frame = new BufferedImage(1, 1, BufferedImage.TYPE_3BYTE_BGR);
+            frames.add(frame);
+            writer.addFrame(frame);
+        }
+        writer.close();
+
+        assertEquals(frames.size(), delegate.frames.size());
+        for (var i = 0; i < frames.size(); i++) {
+            assertSame(frames.get(i), delegate.frames.get(i));
+        }
+        assertTrue(delegate.closed);
+    }
+
+    @Test
+    void propagatesEncoderErrors() {
+        final var writer = new AsyncFrameWriter(new RecordingFrameWriter(3), 1);
+
+        final var exception = assertThrows(UserException.class, () -> {
+            for (var i = 0; i < 1_000; i++) {
+                writer.addFrame(new BufferedImage(1, 1, BufferedImage.TYPE_3BYTE_BGR));
+            }
+            writer.close();
+        });
+        assertEquals("encoder failed", exception.getMessage());
+    }
+
+    @Test
+    void abortStopsTheEncoderWithoutWritingThePendingFrames() throws UserException {
+        final var delegate = new RecordingFrameWriter(-1, 50);
+        final var writer = new AsyncFrameWriter(delegate, 8);
+
+        for (var i = 0; i < 5; i++) {
+            writer.addFrame(new BufferedImage(1, 1, BufferedImage.TYPE_3BYTE_BGR));
+        }
+        writer.abort();
+
+        assertTrue(delegate.frames.size() < 5);
+        assertTrue(delegate.aborted);
+        assertFalse(delegate.closed);
+    }
+
+    private static final class RecordingFrameWriter implements FrameWriter {
+
+        private final int failAtFrame;
+        private final long delayMillis;
+        private final List<BufferedImage> frames = new ArrayList<>();
+        private boolean closed;
+        private boolean aborted;
+
+        RecordingFrameWriter(final int failAtFrame) {
+            this(failAtFrame, 0);
+        }
+
+        RecordingFrameWriter(final int failAtFrame, final long delayMillis) {
+            this.failAtFrame = failAtFrame;
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public void addFrame(final BufferedImage bi) throws UserException {
+            if (frames.size() == failAtFrame) {
+                throw new UserException("encoder failed");
+            }
+            if (delayMillis > 0) {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new UserException("encoder interrupted", e);
+                }
+            }
+            frames.add(bi);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        @Override
+        public void abort() {
+            aborted = true;
+        }
+    }
+
+}
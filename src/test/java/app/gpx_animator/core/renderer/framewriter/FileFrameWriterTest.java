@@ -0,0 +1,35 @@
+package app.gpx_animator.core.renderer.framewriter;
+
+import app.gpx_animator.core.UserException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FileFrameWriterTest {
+
+    @Test
+    void writesFramesConcurrentlyByIndex(@TempDir final Path tempDir) throws UserException, IOException {
+        final var pattern = tempDir.resolve("frame%03d.png").toString(); //NON-NLS
+        final var writer = new FileFrameWriter(pattern, "png", 30, 4, 1); //NON-NLS
+
+        for (var i = 1; i <= 20; i++) {
+            final var image = new BufferedImage(8, 8, BufferedImage.TYPE_3BYTE_BGR);
+            image.setRGB(0, 0, i);
+            writer.addFrame(image);
+        }
+        writer.close();
+
+        for (var i = 1; i <= 20; i++) {
+            final var image = ImageIO.read(new File(String.format(pattern, i)));
+            assertEquals(i, image.getRGB(0, 0) & 0xFFFFFF);
+        }
+    }
+
+}
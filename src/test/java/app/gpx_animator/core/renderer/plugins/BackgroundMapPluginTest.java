@@ -0,0 +1,129 @@
+package app.gpx_animator.core.renderer.plugins;
+
+import app.gpx_animator.core.UserException;
+import app.gpx_animator.core.configuration.Configuration;
+import app.gpx_animator.core.renderer.Metadata;
+import app.gpx_animator.core.renderer.cache.TileCache;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.RescaleOp;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static app.gpx_animator.core.util.TileUtil.TILE_SIZE;
+import static app.gpx_animator.core.util.TileUtil.createTileUrl;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BackgroundMapPluginTest {
+
+    private static final int ZOOM = 10;
+    private static final RescaleOp FULLY_VISIBLE = new RescaleOp(1f, 0f, null);
+
+    @TempDir
+    Path cacheDir;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private HttpServer server;
+    private String tmsUrlTemplate;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        final var tile = encodeQuarteredTile();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            requests.incrementAndGet();
+            exchange.sendResponseHeaders(200, tile.length);
+            exchange.getResponseBody().write(tile);
+            exchange.close();
+        });
+        server.start();
+        // every test uses its own URLs, as the tiles stay in the memory cache
+        tmsUrlTemplate = "http://127.0.0.1:%d/%d/{zoom}/{x}/{y}.png".formatted(server.getAddress().getPort(), System.nanoTime());
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void replacesMissingTilesByTheOfflineTileColor() throws UserException {
+        final var plugin = createPlugin(Color.MAGENTA);
+
+        final var tile = plugin.loadTile(null, 100, 200, cacheDir.toString(), Long.MAX_VALUE, FULLY_VISIBLE);
+
+        assertTrue(tile.placeholder());
+        assertEquals(Color.MAGENTA.getRGB(), tile.image().getRGB(TILE_SIZE / 2, TILE_SIZE / 2));
+        assertEquals(0, requests.get());
+    }
+
+    @Test
+    void enlargesTheCachedTileOfALowerZoomLevel() throws UserException {
+        // the parent tile is cached while online, its top right quarter covers the missing tile
+        assertNotNull(TileCache.getTile(createTileUrl(tmsUrlTemplate, null, ZOOM - 1, 50, 100), cacheDir.toString(), Long.MAX_VALUE));
+        requests.set(0);
+        final var plugin = createPlugin(null);
+
+        final var tile = plugin.loadTile(null, 101, 200, cacheDir.toString(), Long.MAX_VALUE, FULLY_VISIBLE);
+
+        assertTrue(tile.placeholder());
+        assertEquals(TILE_SIZE, tile.image().getWidth());
+        assertEquals(Color.GREEN.getRGB(), tile.image().getRGB(TILE_SIZE / 2, TILE_SIZE / 2));
+        assertEquals(0, requests.get());
+    }
+
+    @Test
+    void leavesMissingTilesEmptyWithoutAnyCachedTile() throws UserException {
+        final var plugin = createPlugin(null);
+
+        final var tile = plugin.loadTile(null, 100, 200, cacheDir.toString(), Long.MAX_VALUE, FULLY_VISIBLE);
+
+        assertTrue(tile.placeholder());
+        assertNull(tile.image());
+        assertEquals(0, requests.get());
+    }
+
+    private BackgroundMapPlugin createPlugin(final Color offlineTileColor) {
+        final var configuration = Configuration.createBuilder()
+                .tmsUrlTemplate(tmsUrlTemplate)
+                .backgroundMapVisibility(1f)
+                .offline(true)
+                .offlineTileColor(offlineTileColor)
+                .build();
+        final var plugin = new BackgroundMapPlugin(configuration);
+        plugin.setMetadata(new Metadata(ZOOM, 0, 0, 0, 0, 0, 0, 1));
+        return plugin;
+    }
+
+    private static byte[] encodeQuarteredTile() throws IOException {
+        final var image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+        final var g = image.createGraphics();
+        final var half = TILE_SIZE / 2;
+        g.setColor(Color.RED);
+        g.fillRect(0, 0, half, half);
+        g.setColor(Color.GREEN);
+        g.fillRect(half, 0, half, half);
+        g.setColor(Color.BLUE);
+        g.fillRect(0, half, half, half);
+        g.setColor(Color.YELLOW);
+        g.fillRect(half, half, half, half);
+        g.dispose();
+        final var out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+}
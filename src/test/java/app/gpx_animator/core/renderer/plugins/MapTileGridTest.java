@@ -0,0 +1,101 @@
+package app.gpx_animator.core.renderer.plugins;
+
+import app.gpx_animator.core.UserException;
+import app.gpx_animator.core.renderer.canvas.ImageCanvas;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static app.gpx_animator.core.util.TileUtil.TILE_SIZE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MapTileGridTest {
+
+    private static final int TILE = Color.GREEN.getRGB();
+    private static final Rectangle TILES = new Rectangle(100, 200, 10, 1);
+
+    private final List<Point> loads = new ArrayList<>();
+    private ExecutorService executor;
+
+    @BeforeEach
+    void createExecutor() {
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @AfterEach
+    void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void loadsTheTilesAheadInAdvance() throws UserException, InterruptedException, ExecutionException {
+        final var image = new BufferedImage(TILES.width * TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+        final var grid = createGrid();
+
+        final var changed = grid.update(new ImageCanvas(image), tile(0), List.of(tile(3), tile(5)));
+        awaitLoader();
+
+        assertEquals(List.of(tile(0)), changed);
+        assertEquals(List.of(new Point(100, 200), new Point(103, 200), new Point(105, 200)), loads);
+        assertEquals(1, grid.getDrawnCount());
+        assertEquals(TILE, image.getRGB(10, 10));
+        assertEquals(Color.BLACK.getRGB(), image.getRGB(3 * TILE_SIZE + 10, 10)); // loaded, but not visible yet
+    }
+
+    @Test
+    void loadsEveryTileOnlyOnce() throws UserException, InterruptedException, ExecutionException {
+        final var image = new BufferedImage(TILES.width * TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+        final var canvas = new ImageCanvas(image);
+        final var grid = createGrid();
+
+        for (var x = 0; x <= (TILES.width - 2) * TILE_SIZE; x += TILE_SIZE / 4) {
+            final var visible = new Rectangle(x, 0, 2 * TILE_SIZE, TILE_SIZE);
+            grid.update(canvas, visible, List.of(new Rectangle(x + TILE_SIZE, 0, 2 * TILE_SIZE, TILE_SIZE)));
+            awaitLoader();
+        }
+        assertTrue(grid.update(canvas, new Rectangle(0, 0, image.getWidth(), image.getHeight()), List.of()).isEmpty());
+
+        assertEquals(grid.getTileCount(), grid.getDrawnCount());
+        assertEquals(TILES.width, loads.size());
+        assertEquals(TILES.width, new HashSet<>(loads).size());
+        for (var column = 0; column < TILES.width; column++) {
+            assertEquals(TILE, image.getRGB(column * TILE_SIZE + 10, 10));
+        }
+    }
+
+    private MapTileGrid createGrid() {
+        return new MapTileGrid(TILES, 0, 0, (x, y) -> {
+            synchronized (loads) {
+                loads.add(new Point(x, y));
+            }
+            final var tile = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+            final var g = tile.createGraphics();
+            g.setColor(new Color(TILE));
+            g.fillRect(0, 0, TILE_SIZE, TILE_SIZE);
+            g.dispose();
+            return tile;
+        }, executor, () -> false);
+    }
+
+    private static Rectangle tile(final int column) {
+        return new Rectangle(column * TILE_SIZE, 0, TILE_SIZE, TILE_SIZE);
+    }
+
+    // the executor runs one task after the other, so all tiles requested before are loaded then
+    private void awaitLoader() throws InterruptedException, ExecutionException {
+        executor.submit(() -> { }).get();
+    }
+
+}
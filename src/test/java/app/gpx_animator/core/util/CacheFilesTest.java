@@ -0,0 +1,63 @@
+package app.gpx_animator.core.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CacheFilesTest {
+
+    @TempDir
+    Path cacheDir;
+
+    @Test
+    void toHex() {
+        assertEquals("00017f80ff", CacheFiles.toHex((byte) 0x00, (byte) 0x01, (byte) 0x7F, (byte) 0x80, (byte) 0xFF));
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedFiles() throws IOException {
+        writeFile("a.cache", 100, 1_000);
+        final var older = writeFile("b.cache", 100, 2_000);
+        final var other = writeFile("c.other", 100, 1_000);
+        final var stored = writeFile("d.cache", 100, 3_000);
+
+        CacheFiles.evict(stored, ".cache", 2);
+
+        assertEquals(List.of(older, other, stored), listFiles());
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedFilesBeyondTheMaximumSize() throws IOException {
+        writeFile("a.cache", 100, 1_000);
+        final var recent = writeFile("b.cache", 100, 3_000);
+        writeFile("c.cache", 200, 2_000);
+        final var other = writeFile("d.other", 500, 1_000);
+        final var stored = writeFile("e.cache", 100, 4_000);
+
+        CacheFiles.evictBySize(stored, ".cache", 300);
+
+        // the file of 200 bytes doesn't fit anymore, the oldest file still does
+        assertEquals(List.of(cacheDir.resolve("a.cache"), recent, other, stored), listFiles());
+    }
+
+    private Path writeFile(final String name, final int size, final long modified) throws IOException {
+        final var file = Files.write(cacheDir.resolve(name), new byte[size]);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(modified));
+        return file;
+    }
+
+    private List<Path> listFiles() throws IOException {
+        try (var files = Files.list(cacheDir)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+}
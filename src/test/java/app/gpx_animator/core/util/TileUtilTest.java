@@ -0,0 +1,40 @@
+package app.gpx_animator.core.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class TileUtilTest {
+
+    private static final String TEMPLATE = "https://{switch:a,b,c}.tile.example.org/{zoom}/{x}/{y}.png";
+
+    @Test
+    void switchOptions() {
+        assertEquals(List.of("a", "b", "c"), Arrays.asList(TileUtil.getSwitchOptions(TEMPLATE)));
+        assertNull(TileUtil.getSwitchOptions("https://tile.example.org/{zoom}/{x}/{y}.png"));
+    }
+
+    @Test
+    void tileUrlDependsOnTilePositionOnly() {
+        final var options = TileUtil.getSwitchOptions(TEMPLATE);
+        assertEquals("https://a.tile.example.org/12/2198/1342.png", TileUtil.createTileUrl(TEMPLATE, options, 12, 2198, 1342));
+        assertEquals("https://b.tile.example.org/12/2199/1342.png", TileUtil.createTileUrl(TEMPLATE, options, 12, 2199, 1342));
+        assertEquals("https://c.tile.example.org/12/2199/1343.png", TileUtil.createTileUrl(TEMPLATE, options, 12, 2199, 1343));
+    }
+
+    @Test
+    void tileRange() {
+        // 8.5°..8.6° east, 47.3°..47.4° north (Mercator projection in radians)
+        final var minX = Math.toRadians(8.5);
+        final var maxX = Math.toRadians(8.6);
+        final var minY = Math.log(Math.tan(Math.PI / 4 + Math.toRadians(47.3) / 2));
+        final var maxY = Math.log(Math.tan(Math.PI / 4 + Math.toRadians(47.4) / 2));
+        assertEquals(new Rectangle(2144, 1433, 2, 3), TileUtil.getTileRange(12, minX, maxX, minY, maxY));
+    }
+
+}